@@ -4,7 +4,7 @@ import Models.*;
 import java.awt.*;
 import java.awt.event.*;
 import java.time.Duration;
-import java.util.Vector;
+import java.util.List;
 import javax.swing.*;
 import javax.swing.table.*;
 
@@ -446,7 +446,7 @@ public class DriverPanel extends JPanel {
         try {
             Duration duree = Duration.ofMinutes(dureeMinutes);
             Trajet trajet = new Trajet(depart, arrivee, duree, "PENDING", prix, conducteur, null);
-            mainFrame.getGestion().getTrajets().add(trajet);
+            mainFrame.getGestion().ajouter_trajet(trajet);
             
             StyleUtils.showSuccess(this, "Trajet créé avec succès !\n" + 
                 depart + " → " + arrivee + "\nPrix: " + prix + " TND");
@@ -476,19 +476,12 @@ public class DriverPanel extends JPanel {
                 
                 // Find the trajet
                 Conducteur conducteur = mainFrame.getCurrentConducteur();
-                Vector<Trajet> trajets = mainFrame.getGestion().getTrajets();
-                int count = 0;
-                for (Trajet t : trajets) {
-                    if (t.getConducteur() != null && 
-                        t.getConducteur().getCin().equals(conducteur.getCin())) {
-                        if (count == selectedRow) {
-                            t.setPrix(newPrice);
-                            StyleUtils.showSuccess(this, "Prix modifié avec succès !");
-                            refreshTrajetsTable();
-                            return;
-                        }
-                        count++;
-                    }
+                // Les lignes du tableau suivent l'ordre des trajets du conducteur
+                List<Trajet> mesTrajets = mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin());
+                if (selectedRow < mesTrajets.size()) {
+                    mainFrame.getGestion().modifier_prix_trajet(mesTrajets.get(selectedRow), newPrice);
+                    StyleUtils.showSuccess(this, "Prix modifié avec succès !");
+                    refreshTrajetsTable();
                 }
             } catch (NumberFormatException e) {
                 StyleUtils.showError(this, "Prix invalide !");
@@ -505,21 +498,12 @@ public class DriverPanel extends JPanel {
         
         if (StyleUtils.showConfirm(this, "Voulez-vous vraiment supprimer ce trajet ?")) {
             Conducteur conducteur = mainFrame.getCurrentConducteur();
-            Vector<Trajet> trajets = mainFrame.getGestion().getTrajets();
-            int count = 0;
-            for (int i = 0; i < trajets.size(); i++) {
-                Trajet t = trajets.get(i);
-                if (t.getConducteur() != null && 
-                    t.getConducteur().getCin().equals(conducteur.getCin())) {
-                    if (count == selectedRow) {
-                        trajets.remove(i);
-                        StyleUtils.showSuccess(this, "Trajet supprimé !");
-                        refreshTrajetsTable();
-                        refreshDashboard();
-                        return;
-                    }
-                    count++;
-                }
+            List<Trajet> mesTrajets = mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin());
+            if (selectedRow < mesTrajets.size()) {
+                mainFrame.getGestion().supprimer_trajet(mesTrajets.get(selectedRow));
+                StyleUtils.showSuccess(this, "Trajet supprimé !");
+                refreshTrajetsTable();
+                refreshDashboard();
             }
         }
     }
@@ -541,44 +525,40 @@ public class DriverPanel extends JPanel {
 
         // Rechercher le trajet correspondant et le passager en attente correspondant
         int count = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null &&
-                t.getConducteur().getCin().equals(conducteur.getCin())) {
-
-                // itérer les demandes pour ce trajet
-                for (Passager p : t.getPassagersDemandes()) {
-                    if (count == selectedRow) {
-                        Passager passager = p;
+        for (Trajet t : mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin())) {
+            // itérer les demandes pour ce trajet
+            for (Passager p : t.getPassagersDemandes()) {
+                if (count == selectedRow) {
+                    Passager passager = p;
 
-                        if (StyleUtils.showConfirm(this,
-                            "Accepter la demande de " + passager.getPrenom() + " " + passager.getNom() + " ?\n\n" +
-                            "Trajet: " + t.getDepartTrajet() + " → " + t.getArriveeTrajet() + "\n" +
-                            "Prix: " + String.format("%.2f", t.getPrix()) + " TND")) {
+                    if (StyleUtils.showConfirm(this,
+                        "Accepter la demande de " + passager.getPrenom() + " " + passager.getNom() + " ?\n\n" +
+                        "Trajet: " + t.getDepartTrajet() + " → " + t.getArriveeTrajet() + "\n" +
+                        "Prix: " + String.format("%.2f", t.getPrix()) + " TND")) {
 
-                            boolean accepted = mainFrame.getGestion().accepter_passager_pour_trajet(t, passager.getCin());
-                            if (accepted) {
-                                StyleUtils.showSuccess(this,
-                                    "Passager accepté !\n\n" +
-                                    passager.getPrenom() + " " + passager.getNom() + "\n" +
-                                    "Téléphone: " + passager.getTel() + "\n\n" +
-                                    "Places restantes: " + conducteur.getPlacesDisponibles());
+                        boolean accepted = mainFrame.getGestion().accepter_passager_pour_trajet(t, passager.getCin());
+                        if (accepted) {
+                            StyleUtils.showSuccess(this,
+                                "Passager accepté !\n\n" +
+                                passager.getPrenom() + " " + passager.getNom() + "\n" +
+                                "Téléphone: " + passager.getTel() + "\n\n" +
+                                "Places restantes: " + conducteur.getPlacesDisponibles());
 
-                                refreshDemandesTable();
-                                refreshPassagersAcceptesTable();
-                                refreshDashboard();
+                            refreshDemandesTable();
+                            refreshPassagersAcceptesTable();
+                            refreshDashboard();
 
-                                // Notifier le MainFrame pour rafraîchir les autres panneaux (vue passager)
-                                if (mainFrame != null) {
-                                    mainFrame.notifyDataChanged();
-                                }
-                            } else {
-                                StyleUtils.showError(this, "Impossible d'accepter le passager (place peut-être déjà prise).");
+                            // Notifier le MainFrame pour rafraîchir les autres panneaux (vue passager)
+                            if (mainFrame != null) {
+                                mainFrame.notifyDataChanged();
                             }
+                        } else {
+                            StyleUtils.showError(this, "Impossible d'accepter le passager (place peut-être déjà prise).");
                         }
-                        return;
                     }
-                    count++;
+                    return;
                 }
+                count++;
             }
         }
 
@@ -617,23 +597,16 @@ public class DriverPanel extends JPanel {
         }
         
         // Compter les trajets
-        int trajetCount = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null && 
-                t.getConducteur().getCin().equals(conducteur.getCin())) {
-                trajetCount++;
-            }
-        }
+        List<Trajet> mesTrajets = mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin());
+        int trajetCount = mesTrajets.size();
         if (trajetsCountLabel != null) {
             trajetsCountLabel.setText(String.valueOf(trajetCount));
         }
         
         // Compter les demandes en attente (statut PENDING_APPROVAL)
         int demandesCount = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null && 
-                t.getConducteur().getCin().equals(conducteur.getCin()) &&
-                t.isPendingApproval() &&
+        for (Trajet t : mesTrajets) {
+            if (t.isPendingApproval() &&
                 !t.getPassagersDemandes().isEmpty()) {
                 // count all pending requests for this trajet
                 demandesCount += t.getPassagersDemandes().size();
@@ -650,20 +623,17 @@ public class DriverPanel extends JPanel {
         Conducteur conducteur = mainFrame.getCurrentConducteur();
         if (conducteur == null) return;
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null && 
-                t.getConducteur().getCin().equals(conducteur.getCin())) {
-                String passagerInfo = "En attente";
-                if (!t.getPassagersAcceptes().isEmpty()) passagerInfo = t.getPassagersAcceptes().size() + " accepté(s)";
-                trajetsTableModel.addRow(new Object[]{
-                    t.getDepartTrajet(),
-                    t.getArriveeTrajet(),
-                    t.getDureeTrajet().toMinutes() + " min",
-                    String.format("%.2f", t.getPrix()),
-                    t.getStatusTrajet(),
-                    passagerInfo
-                });
-            }
+        for (Trajet t : mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin())) {
+            String passagerInfo = "En attente";
+            if (!t.getPassagersAcceptes().isEmpty()) passagerInfo = t.getPassagersAcceptes().size() + " accepté(s)";
+            trajetsTableModel.addRow(new Object[]{
+                t.getDepartTrajet(),
+                t.getArriveeTrajet(),
+                t.getDureeTrajet().toMinutes() + " min",
+                String.format("%.2f", t.getPrix()),
+                t.getStatusTrajet(),
+                passagerInfo
+            });
         }
     }
 
@@ -673,24 +643,20 @@ public class DriverPanel extends JPanel {
         Conducteur conducteur = mainFrame.getCurrentConducteur();
         if (conducteur == null) return;
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null &&
-                t.getConducteur().getCin().equals(conducteur.getCin())) {
+        for (Trajet t : mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin())) {
+            for (Passager p : t.getPassagersDemandes()) {
+                // CONFIDENTIALITÉ : masquer les données sensibles tant qu'elles ne sont pas acceptées
+                String maskedCin = p.getCin().length() > 3 ? ("*****" + p.getCin().substring(p.getCin().length() - 3)) : p.getCin();
+                String maskedPhone = p.getTel().length() > 4 ? ("****" + p.getTel().substring(p.getTel().length() - 4)) : p.getTel();
+                String maskedEmail = maskEmail(p.getMail());
 
-                for (Passager p : t.getPassagersDemandes()) {
-                    // CONFIDENTIALITÉ : masquer les données sensibles tant qu'elles ne sont pas acceptées
-                    String maskedCin = p.getCin().length() > 3 ? ("*****" + p.getCin().substring(p.getCin().length() - 3)) : p.getCin();
-                    String maskedPhone = p.getTel().length() > 4 ? ("****" + p.getTel().substring(p.getTel().length() - 4)) : p.getTel();
-                    String maskedEmail = maskEmail(p.getMail());
-
-                    demandesTableModel.addRow(new Object[]{
-                        maskedCin,
-                        p.getNom(),
-                        p.getPrenom(),
-                        maskedPhone,
-                        maskedEmail
-                    });
-                }
+                demandesTableModel.addRow(new Object[]{
+                    maskedCin,
+                    p.getNom(),
+                    p.getPrenom(),
+                    maskedPhone,
+                    maskedEmail
+                });
             }
         }
     }
@@ -701,10 +667,8 @@ public class DriverPanel extends JPanel {
         Conducteur conducteur = mainFrame.getCurrentConducteur();
         if (conducteur == null) return;
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null && 
-                t.getConducteur().getCin().equals(conducteur.getCin()) &&
-                (t.isInProgress() || t.isFinished())) {
+        for (Trajet t : mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin())) {
+            if (t.isInProgress() || t.isFinished()) {
 
                 for (Passager p : t.getPassagersAcceptes()) {
                     // CONFIDENTIALITÉ : masquer le CIN même pour les passagers acceptés
@@ -5,7 +5,7 @@ import GUI.ModernUIComponents.Fonts;
 import Models.*;
 import java.awt.*;
 import java.time.Duration;
-import java.util.Vector;
+import java.util.List;
 import javax.swing.*;
 import javax.swing.table.*;
 
@@ -520,7 +520,7 @@ public class EnhancedDriverPanel extends JPanel {
         try {
             Duration duree = Duration.ofMinutes(dureeMinutes);
             Trajet trajet = new Trajet(depart, arrivee, duree, "PENDING", prix, conducteur, null);
-            mainFrame.getGestion().getTrajets().add(trajet);
+            mainFrame.getGestion().ajouter_trajet(trajet);
 
             JOptionPane.showMessageDialog(this,
                     "Trajet créé avec succès !\n" + depart + " → " + arrivee + "\nPrix: " + prix + " TND",
@@ -549,19 +549,12 @@ public class EnhancedDriverPanel extends JPanel {
             try {
                 float newPrice = Float.parseFloat(input);
                 Conducteur conducteur = mainFrame.getCurrentConducteur();
-                Vector<Trajet> trajets = mainFrame.getGestion().getTrajets();
-                int count = 0;
-
-                for (Trajet t : trajets) {
-                    if (t.getConducteur() != null && t.getConducteur().getCin().equals(conducteur.getCin())) {
-                        if (count == row) {
-                            t.setPrix(newPrice);
-                            JOptionPane.showMessageDialog(this, "Prix modifié avec succès !", "Succès ✓", JOptionPane.INFORMATION_MESSAGE);
-                            refreshTrajetsTable();
-                            return;
-                        }
-                        count++;
-                    }
+                // Les lignes du tableau suivent l'ordre des trajets du conducteur
+                List<Trajet> mesTrajets = mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin());
+                if (row < mesTrajets.size()) {
+                    mainFrame.getGestion().modifier_prix_trajet(mesTrajets.get(row), newPrice);
+                    JOptionPane.showMessageDialog(this, "Prix modifié avec succès !", "Succès ✓", JOptionPane.INFORMATION_MESSAGE);
+                    refreshTrajetsTable();
                 }
             } catch (NumberFormatException e) {
                 JOptionPane.showMessageDialog(this, "Prix invalide !", "Erreur", JOptionPane.ERROR_MESSAGE);
@@ -578,21 +571,12 @@ public class EnhancedDriverPanel extends JPanel {
 
         if (JOptionPane.showConfirmDialog(this, "Supprimer ce trajet ?", "Confirmation", JOptionPane.YES_NO_OPTION) == JOptionPane.YES_OPTION) {
             Conducteur conducteur = mainFrame.getCurrentConducteur();
-            Vector<Trajet> trajets = mainFrame.getGestion().getTrajets();
-            int count = 0;
-
-            for (int i = 0; i < trajets.size(); i++) {
-                Trajet t = trajets.get(i);
-                if (t.getConducteur() != null && t.getConducteur().getCin().equals(conducteur.getCin())) {
-                    if (count == row) {
-                        trajets.remove(i);
-                        JOptionPane.showMessageDialog(this, "Trajet supprimé !", "Succès ✓", JOptionPane.INFORMATION_MESSAGE);
-                        refreshTrajetsTable();
-                        refreshDashboard();
-                        return;
-                    }
-                    count++;
-                }
+            List<Trajet> mesTrajets = mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin());
+            if (row < mesTrajets.size()) {
+                mainFrame.getGestion().supprimer_trajet(mesTrajets.get(row));
+                JOptionPane.showMessageDialog(this, "Trajet supprimé !", "Succès ✓", JOptionPane.INFORMATION_MESSAGE);
+                refreshTrajetsTable();
+                refreshDashboard();
             }
         }
     }
@@ -614,11 +598,9 @@ public class EnhancedDriverPanel extends JPanel {
 
         // Rechercher le trajet correspondant (généralement PENDING_APPROVAL)
         int count = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null &&
-                    t.getConducteur().getCin().equals(conducteur.getCin()) &&
-                    // afficher les demandes indépendamment du statut du trajet, tant qu'il y a des demandes et des places
-                    !t.getPassagersDemandes().isEmpty() &&
+        for (Trajet t : mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin())) {
+            // afficher les demandes indépendamment du statut du trajet, tant qu'il y a des demandes et des places
+            if (!t.getPassagersDemandes().isEmpty() &&
                     t.getAvailablePlaces() > 0) {
 
                 for (Passager passager : t.getPassagersDemandes()) {
@@ -677,52 +659,19 @@ public class EnhancedDriverPanel extends JPanel {
             return;
         }
 
-        Vector<Trajet> trajets = mainFrame.getGestion().getTrajets();
-        int count = 0;
-        for (Trajet t : trajets) {
-            if (t.getConducteur() != null && t.getConducteur().getCin().equals(conducteur.getCin())) {
-                if (count == row) {
-                    int acceptedCount = (t.getPassagersAcceptes() != null) ? t.getPassagersAcceptes().size() : 0;
-
-                    // Restauration des places : préférer t.getMaxPlaces() si défini, sinon ajouter acceptedCount
-                    int restoredPlaces = -1;
-                    try {
-                        restoredPlaces = t.getMaxPlaces();
-                    } catch (Exception ignored) {}
-                    if (restoredPlaces <= 0) {
-                        restoredPlaces = conducteur.getPlacesDisponibles() + acceptedCount;
-                    }
+        List<Trajet> mesTrajets = mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin());
+        if (row < mesTrajets.size()) {
+            // Marquer comme TERMINÉ, restaurer les places et remettre les passagers en recherche
+            mainFrame.getGestion().terminer_trajet(mesTrajets.get(row));
 
-                    // Marquer le trajet comme TERMINÉ
-                    try {
-                        t.setStatusTrajet(Trajet.STATUS_FINISHED);
-                    } catch (Exception ex) {
-                        // Repli : affectation directe si le setter refuse (ne devrait pas arriver)
-                        // Ignorer l'exception pour ne pas casser l'UI
-                    }
-                    t.setTrajet_valide(false);
+            JOptionPane.showMessageDialog(this, "Trajet terminé. Places restaurées et passagers remis en recherche.", "Succès", JOptionPane.INFORMATION_MESSAGE);
 
-                    // Remettre les passagers en recherche (chercheCovoit = true)
-                    if (t.getPassagersAcceptes() != null) {
-                        for (Passager p : t.getPassagersAcceptes()) {
-                            if (p != null) p.setChercheCovoit(true);
-                        }
-                    }
-
-                    // Restaurer les places du conducteur
-                    conducteur.setPlacesDisponibles(restoredPlaces);
-
-                    JOptionPane.showMessageDialog(this, "Trajet terminé. Places restaurées et passagers remis en recherche.", "Succès", JOptionPane.INFORMATION_MESSAGE);
-
-                    // Rafraîchir les vues locales et notifier les autres panneaux
-                    refreshTrajetsTable();
-                    refreshPassagersTable();
-                    refreshDashboard();
-                    if (mainFrame != null) mainFrame.notifyDataChanged();
-                    return;
-                }
-                count++;
-            }
+            // Rafraîchir les vues locales et notifier les autres panneaux
+            refreshTrajetsTable();
+            refreshPassagersTable();
+            refreshDashboard();
+            if (mainFrame != null) mainFrame.notifyDataChanged();
+            return;
         }
 
         JOptionPane.showMessageDialog(this, "Trajet non trouvé", "Erreur", JOptionPane.ERROR_MESSAGE);
@@ -755,19 +704,12 @@ public class EnhancedDriverPanel extends JPanel {
 
         placesCard.setValue(String.valueOf(conducteur.getPlacesDisponibles()));
 
-        int trajetCount = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null && t.getConducteur().getCin().equals(conducteur.getCin())) {
-                trajetCount++;
-            }
-        }
-        trajetsCard.setValue(String.valueOf(trajetCount));
+        List<Trajet> mesTrajets = mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin());
+        trajetsCard.setValue(String.valueOf(mesTrajets.size()));
         // Compter le total des demandes pour ce conducteur (sur tous ses trajets)
         int demandesCount = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null && t.getConducteur().getCin().equals(conducteur.getCin())) {
-                if (t.getPassagersDemandes() != null) demandesCount += t.getPassagersDemandes().size();
-            }
+        for (Trajet t : mesTrajets) {
+            if (t.getPassagersDemandes() != null) demandesCount += t.getPassagersDemandes().size();
         }
         demandesCard.setValue(String.valueOf(demandesCount));
     }
@@ -777,17 +719,15 @@ public class EnhancedDriverPanel extends JPanel {
         Conducteur conducteur = mainFrame.getCurrentConducteur();
         if (conducteur == null) return;
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null && t.getConducteur().getCin().equals(conducteur.getCin())) {
-                trajetsModel.addRow(new Object[]{
-                        t.getDepartTrajet(),
-                        t.getArriveeTrajet(),
-                        t.getDureeTrajet().toMinutes() + " min",
-                        String.format("%.2f", t.getPrix()),
-                        t.getStatusTrajet(),
-                        t.getPassagersAcceptes().isEmpty() ? "En attente" : t.getPassagersAcceptes().size() + " accepté(s)"
-                });
-            }
+        for (Trajet t : mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin())) {
+            trajetsModel.addRow(new Object[]{
+                    t.getDepartTrajet(),
+                    t.getArriveeTrajet(),
+                    t.getDureeTrajet().toMinutes() + " min",
+                    String.format("%.2f", t.getPrix()),
+                    t.getStatusTrajet(),
+                    t.getPassagersAcceptes().isEmpty() ? "En attente" : t.getPassagersAcceptes().size() + " accepté(s)"
+            });
         }
     }
 
@@ -799,14 +739,12 @@ public class EnhancedDriverPanel extends JPanel {
 
         // CORRIGÉ : Ne montrer que les passagers ayant demandé les trajets de CE conducteur
         // et qui sont en attente d'approbation (statut PENDING_APPROVAL)
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
+        for (Trajet t : mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin())) {
             // Montrer les demandes seulement si :
-            // 1. Le trajet appartient à ce conducteur
+            // 1. Le trajet appartient à ce conducteur (index des trajets par conducteur)
             // 2. Le trajet est en statut PENDING_APPROVAL (demande envoyée par le passager)
             // 3. La liste des demandes n'est pas vide
-            if (t.getConducteur() != null &&
-                    t.getConducteur().getCin().equals(conducteur.getCin()) &&
-                    !t.getPassagersDemandes().isEmpty() &&
+            if (!t.getPassagersDemandes().isEmpty() &&
                     t.getAvailablePlaces() > 0) {
 
                 for (Passager p : t.getPassagersDemandes()) {
@@ -845,10 +783,8 @@ public class EnhancedDriverPanel extends JPanel {
         if (conducteur == null) return;
 
         // Ne montrer que les passagers acceptés (statut IN_PROGRESS ou FINISHED)
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null &&
-                    t.getConducteur().getCin().equals(conducteur.getCin()) &&
-                    (t.isInProgress() || t.isFinished()) &&
+        for (Trajet t : mainFrame.getGestion().trajets_du_conducteur(conducteur.getCin())) {
+            if ((t.isInProgress() || t.isFinished()) &&
                     !t.getPassagersAcceptes().isEmpty()) {
 
                 for (Passager p : t.getPassagersAcceptes()) {
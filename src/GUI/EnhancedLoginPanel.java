@@ -875,7 +875,7 @@ public class EnhancedLoginPanel extends JPanel {
         try {
             Conducteur conducteur = new Conducteur(cin, nom, prenom, tel, annee, adresse, mail,
                     password, nomVoiture, marque, matricule, places);
-            mainFrame.getGestion().getUsers().add(conducteur);
+            mainFrame.getGestion().ajouter_user(conducteur);
             showModernSuccess("Inscription réussie !");
             clearDriverFields();
             cardLayout.show(cardPanel, "LOGIN");
@@ -955,7 +955,7 @@ public class EnhancedLoginPanel extends JPanel {
         try {
             Passager passager = new Passager(cin.trim(), nom.trim(), prenom.trim(), tel.trim(),
                     annee, adresse.trim(), mail.trim(), password, true, null);
-            mainFrame.getGestion().getUsers().add(passager);
+            mainFrame.getGestion().ajouter_user(passager);
             showModernSuccess("Inscription réussie !");
             clearPassengerFields();
             cardLayout.show(cardPanel, "LOGIN");
@@ -25,6 +25,8 @@ public class EnhancedPassengerPanel extends JPanel {
     // Tables
     private JTable trajetsTable;
     private DefaultTableModel trajetsModel;
+    // Trajets affichés dans trajetsTable, dans l'ordre des lignes
+    private java.util.List<Trajet> trajetsAffiches = new java.util.ArrayList<>();
     private JTable mesReservationsTable;
     private DefaultTableModel reservationsModel;
     
@@ -400,30 +402,28 @@ public class EnhancedPassengerPanel extends JPanel {
     // ==================== Logique Métier ====================
 
     private void filterTrajets(String depart, String arrivee) {
-        trajetsModel.setRowCount(0);
+        // Trajets réservables (conducteur, places disponibles, non terminés) dont les villes
+        // correspondent, par prix croissant (index de la Gestion)
+        afficherTrajets(mainFrame.getGestion().rechercher_trajets_ouverts(depart, arrivee, Double.MAX_VALUE, 1));
+    }
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            // Montrer le trajet uniquement s'il a un conducteur et des places disponibles
+    /**
+     * Remplit trajetsTable ; la liste est gardée pour retrouver le trajet d'une ligne sélectionnée.
+     */
+    private void afficherTrajets(java.util.List<Trajet> trajets) {
+        trajetsModel.setRowCount(0);
+        trajetsAffiches = trajets;
+        for (Trajet t : trajets) {
             Conducteur c = t.getConducteur();
-            // Exclure les trajets terminés car ils ne doivent plus être réservables
-            if (c == null || t.getAvailablePlaces() <= 0 || t.isFinished()) continue;
-
-            boolean matchDepart = depart.isEmpty() ||
-                t.getDepartTrajet().toLowerCase().contains(depart.toLowerCase());
-            boolean matchArrivee = arrivee.isEmpty() || 
-                t.getArriveeTrajet().toLowerCase().contains(arrivee.toLowerCase());
-
-            if (matchDepart && matchArrivee) {
-                trajetsModel.addRow(new Object[]{
-                    c.getNom() + " " + c.getPrenom(),
-                    t.getDepartTrajet(),
-                    t.getArriveeTrajet(),
-                    t.getDureeTrajet().toMinutes() + " min",
-                    String.format("%.2f", t.getPrix()),
-                    t.getAvailablePlaces(),
-                    c.getNomVoiture() + " " + c.getMarqueVoiture()
-                });
-            }
+            trajetsModel.addRow(new Object[]{
+                c.getNom() + " " + c.getPrenom(),
+                t.getDepartTrajet(),
+                t.getArriveeTrajet(),
+                t.getDureeTrajet().toMinutes() + " min",
+                String.format("%.2f", t.getPrix()),
+                t.getAvailablePlaces(),
+                c.getNomVoiture() + " " + c.getMarqueVoiture()
+            });
         }
     }
 
@@ -442,68 +442,61 @@ public class EnhancedPassengerPanel extends JPanel {
             return;
         }
 
-        String conducteurName = (String) trajetsModel.getValueAt(row, 0);
-        String depart = (String) trajetsModel.getValueAt(row, 1);
-        String arrivee = (String) trajetsModel.getValueAt(row, 2);
-        String prix = (String) trajetsModel.getValueAt(row, 4);
+        // Trajet de la ligne sélectionnée (mêmes trajets, même ordre que le tableau)
+        if (row >= trajetsAffiches.size()) return;
+        Trajet t = trajetsAffiches.get(row);
+        Conducteur c = t.getConducteur();
 
         int confirm = JOptionPane.showConfirmDialog(this,
             "Confirmer la demande de réservation ?\n\n" +
-            "Conducteur: " + conducteurName + "\n" +
-            "📍 " + depart + " → " + arrivee + "\n" +
-            "Prix: " + prix + " TND",
+            "Conducteur: " + c.getNom() + " " + c.getPrenom() + "\n" +
+            "📍 " + t.getDepartTrajet() + " → " + t.getArriveeTrajet() + "\n" +
+            "Prix: " + String.format("%.2f", t.getPrix()) + " TND",
             "Demande de Réservation",
             JOptionPane.YES_NO_OPTION);
 
         if (confirm == JOptionPane.YES_OPTION) {
-            // Trouver le trajet et ajouter une demande (ne pas décrémenter les places encore)
-            for (Trajet t : mainFrame.getGestion().getTrajets()) {
-                Conducteur c = t.getConducteur();
-                if (c == null) continue;
-
-                String fullName = c.getNom() + " " + c.getPrenom();
-                if (fullName.equals(conducteurName) && 
-                    t.getDepartTrajet().equals(depart) && 
-                    t.getArriveeTrajet().equals(arrivee)) {
+            // Trajet supprimé depuis l'affichage (autre écran, rechargement à chaud)
+            if (mainFrame.getGestion().rechercher_trajet(t.getId()) != t) {
+                JOptionPane.showMessageDialog(this, "Trajet non disponible",
+                    "Erreur", JOptionPane.ERROR_MESSAGE);
+                refreshTrajetsTable();
+                return;
+            }
 
-                    // Ignorer les trajets terminés - ne doivent pas être réservés
-                    if (t.isFinished()) {
-                        JOptionPane.showMessageDialog(this, "Ce trajet est terminé et n'est plus disponible.", "Info", JOptionPane.INFORMATION_MESSAGE);
-                        return;
-                    }
+            // Ignorer les trajets terminés - ne doivent pas être réservés
+            if (t.isFinished()) {
+                JOptionPane.showMessageDialog(this, "Ce trajet est terminé et n'est plus disponible.", "Info", JOptionPane.INFORMATION_MESSAGE);
+                return;
+            }
 
-                     boolean added = mainFrame.getGestion().ajouter_demande_pour_trajet(t, passager.getCin());
-                    if (added) {
-                        // Mise à jour mapping conducteur->demandes pour notifications
-                        if (t.getConducteur() != null) {
-                            mainFrame.getGestion().ajouter_demande_pour_conducteur(t.getConducteur().getCin(), passager.getCin());
-                        }
+            // Ajouter une demande (ne pas décrémenter les places encore)
+            boolean added = mainFrame.getGestion().ajouter_demande_pour_trajet(t, passager.getCin());
+            if (added) {
+                // Mise à jour mapping conducteur->demandes pour notifications
+                if (t.getConducteur() != null) {
+                    mainFrame.getGestion().ajouter_demande_pour_conducteur(t.getConducteur().getCin(), passager.getCin());
+                }
 
-                        JOptionPane.showMessageDialog(this,
-                            "Demande envoyée !\n\n" +
-                            "Le conducteur sera notifié et pourra accepter votre demande.",
-                            "Succès", JOptionPane.INFORMATION_MESSAGE);
-                    } else {
-                        JOptionPane.showMessageDialog(this,
-                            "Vous avez déjà demandé ou été accepté pour ce trajet.",
-                            "Info", JOptionPane.INFORMATION_MESSAGE);
-                    }
+                JOptionPane.showMessageDialog(this,
+                    "Demande envoyée !\n\n" +
+                    "Le conducteur sera notifié et pourra accepter votre demande.",
+                    "Succès", JOptionPane.INFORMATION_MESSAGE);
+            } else {
+                JOptionPane.showMessageDialog(this,
+                    "Vous avez déjà demandé ou été accepté pour ce trajet.",
+                    "Info", JOptionPane.INFORMATION_MESSAGE);
+            }
 
-                    // Rafraîchir les vues pertinentes
-                    refreshTrajetsTable();
-                    refreshDashboard();
-                    refreshReservationsTable();
+            // Rafraîchir les vues pertinentes
+            refreshTrajetsTable();
+            refreshDashboard();
+            refreshReservationsTable();
 
-                    // Notifier le main frame pour mise à jour globale
-                    if (mainFrame != null) {
-                        mainFrame.notifyDataChanged();
-                    }
-                    return;
-                }
+            // Notifier le main frame pour mise à jour globale
+            if (mainFrame != null) {
+                mainFrame.notifyDataChanged();
             }
-
-            JOptionPane.showMessageDialog(this, "Trajet non disponible",
-                "Erreur", JOptionPane.ERROR_MESSAGE);
         }
     }
 
@@ -528,28 +521,14 @@ public class EnhancedPassengerPanel extends JPanel {
 
     private void refreshDashboard() {
         // Compte des trajets disponibles
-        int availableCount = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null &&
-                t.getAvailablePlaces() > 0 &&
-                !t.isFinished()) {
-                availableCount++;
-            }
-        }
+        int availableCount = mainFrame.getGestion().nombre_trajets_ouverts();
         trajetsDispoCard.setValue(String.valueOf(availableCount));
         
         // Compte des réservations pour le passager courant
         Passager passager = mainFrame.getCurrentPassager();
         int reservationCount = 0;
         if (passager != null) {
-            for (Trajet t : mainFrame.getGestion().getTrajets()) {
-                for (Passager p : t.getPassagersAcceptes()) {
-                    if (p.getCin().equals(passager.getCin())) {
-                        reservationCount++;
-                        break;
-                    }
-                }
-            }
+            reservationCount = mainFrame.getGestion().reservations_du_passager(passager.getCin()).size();
         }
         reservationsCard.setValue(String.valueOf(reservationCount));
         
@@ -562,23 +541,8 @@ public class EnhancedPassengerPanel extends JPanel {
     }
 
     private void refreshTrajetsTable() {
-        trajetsModel.setRowCount(0);
-
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            Conducteur c = t.getConducteur();
-            // Masquer les trajets terminés de la recherche passager
-            if (c == null || t.getAvailablePlaces() <= 0 || t.isFinished()) continue;
-
-            trajetsModel.addRow(new Object[]{
-                c.getNom() + " " + c.getPrenom(),
-                t.getDepartTrajet(),
-                t.getArriveeTrajet(),
-                t.getDureeTrajet().toMinutes() + " min",
-                String.format("%.2f", t.getPrix()),
-                t.getAvailablePlaces(),
-                c.getNomVoiture() + " " + c.getMarqueVoiture()
-            });
-        }
+        // Trajets réservables uniquement (les terminés et complets sont exclus), par prix croissant
+        afficherTrajets(mainFrame.getGestion().rechercher_trajets_ouverts(null, null, Double.MAX_VALUE, 1));
     }
 
     private void refreshReservationsTable() {
@@ -586,45 +550,37 @@ public class EnhancedPassengerPanel extends JPanel {
         Passager passager = mainFrame.getCurrentPassager();
         if (passager == null) return;
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            // D'abord : réservations acceptées
-            for (Passager p : t.getPassagersAcceptes()) {
-                if (p.getCin().equals(passager.getCin())) {
-                    Conducteur c = t.getConducteur();
-                    if (c != null) {
-                        reservationsModel.addRow(new Object[]{
-                            c.getNom() + " " + c.getPrenom(),
-                            c.getTel(),
-                            c.getNomVoiture() + " " + c.getMarqueVoiture(),
-                            t.getDepartTrajet(),
-                            t.getArriveeTrajet(),
-                            String.format("%.2f", t.getPrix()),
-                            "Accepté"
-                        });
-                    }
-                    break;
-                }
+        // D'abord : réservations acceptées
+        for (Trajet t : mainFrame.getGestion().reservations_du_passager(passager.getCin())) {
+            Conducteur c = t.getConducteur();
+            if (c != null) {
+                reservationsModel.addRow(new Object[]{
+                    c.getNom() + " " + c.getPrenom(),
+                    c.getTel(),
+                    c.getNomVoiture() + " " + c.getMarqueVoiture(),
+                    t.getDepartTrajet(),
+                    t.getArriveeTrajet(),
+                    String.format("%.2f", t.getPrix()),
+                    "Accepté"
+                });
             }
+        }
 
-            // Ensuite : demandes en attente où le passager courant est dans les demandes
-            for (Passager p : t.getPassagersDemandes()) {
-                if (p.getCin().equals(passager.getCin())) {
-                    Conducteur c = t.getConducteur();
-                    String conductorName = c != null ? (c.getNom() + " " + c.getPrenom()) : "—";
-                    String phone = c != null ? c.getTel() : "—";
-                    String car = c != null ? (c.getNomVoiture() + " " + c.getMarqueVoiture()) : "—";
-                    reservationsModel.addRow(new Object[]{
-                        conductorName,
-                        phone,
-                        car,
-                        t.getDepartTrajet(),
-                        t.getArriveeTrajet(),
-                        String.format("%.2f", t.getPrix()),
-                        "En attente"
-                    });
-                    break;
-                }
-            }
+        // Ensuite : demandes en attente du passager courant
+        for (Trajet t : mainFrame.getGestion().demandes_du_passager(passager.getCin())) {
+            Conducteur c = t.getConducteur();
+            String conductorName = c != null ? (c.getNom() + " " + c.getPrenom()) : "—";
+            String phone = c != null ? c.getTel() : "—";
+            String car = c != null ? (c.getNomVoiture() + " " + c.getMarqueVoiture()) : "—";
+            reservationsModel.addRow(new Object[]{
+                conductorName,
+                phone,
+                car,
+                t.getDepartTrajet(),
+                t.getArriveeTrajet(),
+                String.format("%.2f", t.getPrix()),
+                "En attente"
+            });
         }
     }
 }
@@ -482,7 +482,7 @@ public class LoginPanel extends JPanel {
             Conducteur conducteur = new Conducteur(cin, nom, prenom, tel, annee, adresse, mail,
                 "TempPass@1", nomVoiture, marqueVoiture, matricule, places);
             
-            mainFrame.getGestion().getUsers().add(conducteur);
+            mainFrame.getGestion().ajouter_user(conducteur);
             
             StyleUtils.showSuccess(this, "Inscription réussie !\nBienvenue " + prenom + " !");
             clearAllRegistrationFields();
@@ -529,7 +529,7 @@ public class LoginPanel extends JPanel {
             Passager passager = new Passager(cin.trim(), nom.trim(), prenom.trim(), tel.trim(), 
                 annee, adresse.trim(), mail.trim(), "TempPass@1", true, null);
             
-            mainFrame.getGestion().getUsers().add(passager);
+            mainFrame.getGestion().ajouter_user(passager);
             
             StyleUtils.showSuccess(this, "Inscription réussie !\nBienvenue " + prenom.trim() + " !");
             cardLayout.show(cardPanel, "LOGIN");
@@ -5,6 +5,11 @@ import Services.*;
 import java.awt.*;
 import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.function.BiFunction;
 import javax.swing.*;
 
 /**
@@ -16,6 +21,12 @@ import javax.swing.*;
  * - Sauvegarde à la fermeture de la fenêtre (confirmation utilisateur)
  * - Hook de shutdown pour terminaisons inattendues
  * - Création de backup avant chaque sauvegarde
+ * - Journal des mutations (data/journal.log) : chaque modification est écrite immédiatement,
+ *   les sauvegardes CSV ne sont plus que des points de contrôle
+ * - Les sauvegardes s'exécutent sur un thread dédié (SauvegardeAsynchrone) : l'interface ne
+ *   se fige plus pendant l'écriture des fichiers
+ * - Les tables CSV modifiées hors de l'application sont rechargées à chaud (SurveillanceDonnees)
+ *   et les panneaux ouverts rafraîchis
  */
 public class MainFrame extends JFrame {
     
@@ -34,18 +45,41 @@ public class MainFrame extends JFrame {
 
     // Timer de sauvegarde automatique
     private Timer autoSaveTimer;
+    private static final String TITRE = "🚗 Plateforme de Covoiturage";
     private static final int AUTO_SAVE_INTERVAL = 5 * 60 * 1000; // 5 minutes en ms
-    private boolean hasUnsavedChanges = false;
+    private static final int LOT_EXPORT = 2000; // objets copiés sur l'EDT par étape d'un export
+    // Les modifications non sauvegardées sont suivies par table dans Gestion_covoiturage
+    private SauvegardeAsynchrone sauvegarde;
+    // Rechargement des tables modifiées hors de l'application
+    private SurveillanceDonnees surveillance;
     
     public MainFrame() {
         gestion = new Gestion_covoiturage();
         
         // ÉTAPE : charger les données depuis les fichiers CSV au démarrage
         loadDataFromCSV();
+        sauvegarde = new SauvegardeAsynchrone(gestion, SwingUtilities::invokeLater, new SauvegardeAsynchrone.Ecouteur() {
+            @Override
+            public void sauvegardeTerminee(java.util.Set<Gestion_covoiturage.Table> tables) {
+                setTitle(TITRE + " — sauvegardé à " + java.time.LocalTime.now().withNano(0));
+            }
+            
+            @Override
+            public void sauvegardeEchouee(java.util.Set<Gestion_covoiturage.Table> tables, String message) {
+                JOptionPane.showMessageDialog(MainFrame.this,
+                    "La sauvegarde a échoué (" + message + ").\n" +
+                    "Les modifications sont conservées dans le journal et seront de nouveau sauvegardées.",
+                    "Erreur de sauvegarde",
+                    JOptionPane.ERROR_MESSAGE);
+            }
+        });
         
         initializeFrame();
         initializePanels();
         
+        surveillance = new SurveillanceDonnees(gestion, SwingUtilities::invokeLater, tables -> notifyDataChanged());
+        surveillance.demarrer();
+        
         // ÉTAPE : configurer le système complet de sauvegarde automatique
         setupAutoSave();
         setupPeriodicAutoSave();
@@ -87,7 +121,7 @@ public class MainFrame extends JFrame {
             autoSaveTimer.stop();
         }
         
-        if (hasUnsavedChanges) {
+        if (gestion.aDesModificationsNonSauvegardees()) {
             int choice = JOptionPane.showConfirmDialog(
                 MainFrame.this,
                 "Vous avez des modifications non sauvegardées.\n" +
@@ -128,6 +162,7 @@ public class MainFrame extends JFrame {
         System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
         System.out.println("Fermeture de l'application...");
         System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        surveillance.arreter();
         dispose();
         System.exit(0);
     }
@@ -137,10 +172,9 @@ public class MainFrame extends JFrame {
      */
     private void setupPeriodicAutoSave() {
         autoSaveTimer = new Timer(AUTO_SAVE_INTERVAL, e -> {
-            if (hasUnsavedChanges) {
+            if (gestion.aDesModificationsNonSauvegardees()) {
                 System.out.println("⏰ Auto-save en cours...");
                 saveDataWithBackup();
-                hasUnsavedChanges = false;
             }
         });
         autoSaveTimer.setRepeats(true);
@@ -156,7 +190,10 @@ public class MainFrame extends JFrame {
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("\n Shutdown détecté - Sauvegarde d'urgence...");
             try {
-                CSVDatabase.saveAllData(gestion);
+                // Laisser la sauvegarde en arrière-plan se terminer avant d'écrire les mêmes fichiers
+                sauvegarde.arreter();
+                CSVDatabase.saveAllData(gestion, true);
+                CSVDatabase.fermerStockage();
                 System.out.println("✓ Sauvegarde d'urgence terminée");
             } catch (Exception ex) {
                 System.err.println("✗ Erreur sauvegarde d'urgence: " + ex.getMessage());
@@ -166,45 +203,97 @@ public class MainFrame extends JFrame {
     
     /**
      * Marque qu'il y a des modifications non sauvegardées.
-     * Appeler après toute modification des données.
+     * Les méthodes de Gestion_covoiturage le font déjà table par table ; à n'appeler qu'après
+     * une modification faite directement sur les objets (toutes les tables seront réécrites).
      */
     public void markUnsavedChanges() {
-        this.hasUnsavedChanges = true;
+        for (Gestion_covoiturage.Table table : Gestion_covoiturage.Table.values()) {
+            gestion.marquerModifie(table);
+        }
     }
     
     /**
-     * Sauvegarde toutes les données en créant d'abord une sauvegarde (backup).
+     * Sauvegarde les données modifiées en créant d'abord une sauvegarde (backup) des tables
+     * qui vont être réécrites. L'écriture se fait en arrière-plan ; le résultat est signalé
+     * dans le titre de la fenêtre (ou par un message d'erreur).
      */
     public void saveDataWithBackup() {
-        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
-        // Crée un backup avant la sauvegarde
-        CSVDatabase.createBackup();
-        // Sauvegarde des données courantes
-        CSVDatabase.saveAllData(gestion);
-        hasUnsavedChanges = false;
-        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        if (!sauvegarde.demander(true)) {
+            System.out.println("ℹ Aucune modification à sauvegarder");
+        }
     }
     
     /**
-     * Sauvegarde toutes les données dans les fichiers CSV.
+     * Sauvegarde toutes les données dans les fichiers CSV (sans backup, en arrière-plan).
      * Peut être appelée manuellement ou automatiquement à la fermeture.
      */
     public void saveDataToCSV() {
-        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
-        CSVDatabase.saveAllData(gestion);
-        hasUnsavedChanges = false;
-        System.out.println("━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━━");
+        if (!sauvegarde.demander(false)) {
+            System.out.println("ℹ Aucune modification à sauvegarder");
+        }
     }
     
     /**
      * Export des trajets vers un fichier CSV lisible par l'utilisateur.
      */
     public void exportTrajetsToCSV(String filename) {
-        CSVDatabase.exportToExcelCSV(gestion.getTrajets(), filename);
+        exporter(ExportDonnees.Donnees.TRAJETS, ExportDonnees.Format.EXCEL_CSV, null, filename);
+    }
+    
+    /**
+     * Export en arrière-plan (voir ExportDonnees) : seuls les identifiants des trajets (ou les CIN)
+     * sont relevés sur l'EDT ; le thread d'export fait copier les objets par lots de LOT_EXPORT,
+     * chaque lot sur l'EDT, et les écrit pendant que l'interface reste utilisable.
+     *
+     * @param filtre null pour tout exporter
+     */
+    public void exporter(ExportDonnees.Donnees donnees, ExportDonnees.Format format,
+                         ExportDonnees.Filtre filtre, String filename) {
+        ExportDonnees.Lots<User> users = ExportDonnees.Lots.de(java.util.List.of());
+        ExportDonnees.Lots<Trajet> trajets = ExportDonnees.Lots.de(java.util.List.of());
+        if (donnees == ExportDonnees.Donnees.UTILISATEURS) {
+            java.util.List<Boolean> conducteurs = new java.util.ArrayList<>();
+            java.util.List<String> cins = gestion.cinsUtilisateurs(conducteurs);
+            users = parLots(cins.size(), (debut, fin) -> gestion.copieUtilisateurs(cins, conducteurs, debut, fin));
+        } else {
+            long[] ids = gestion.idsTrajets();
+            trajets = parLots(ids.length, (debut, fin) -> gestion.copieTrajets(ids, debut, fin));
+        }
+        ExportDonnees.Lots<User> lotsUsers = users;
+        ExportDonnees.Lots<Trajet> lotsTrajets = trajets;
+        Thread export = new Thread(() -> CSVDatabase.exporter(lotsUsers, lotsTrajets,
+            donnees, format, filtre, filename), "Export-" + donnees);
+        export.start();
+    }
+
+    /**
+     * Lots [debut, fin[ de 0 à total, chacun copié sur l'EDT par copier (appelé depuis le
+     * thread d'export, qui attend la copie).
+     */
+    private static <T> ExportDonnees.Lots<T> parLots(int total,
+            BiFunction<Integer, Integer, java.util.List<T>> copier) {
+        int[] position = {0};
+        return () -> {
+            if (position[0] >= total) return null;
+            int debut = position[0];
+            int fin = Math.min(total, debut + LOT_EXPORT);
+            position[0] = fin;
+            FutureTask<java.util.List<T>> copie =
+                new FutureTask<>(() -> copier.apply(debut, fin));
+            SwingUtilities.invokeLater(copie);
+            try {
+                return copie.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Export interrompu");
+            } catch (ExecutionException e) {
+                throw new IOException("Copie d'un lot impossible: " + e.getCause(), e.getCause());
+            }
+        };
     }
     
     private void initializeFrame() {
-        setTitle("🚗 Plateforme de Covoiturage");
+        setTitle(TITRE);
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
         setSize(1280, 850);
         setMinimumSize(new Dimension(1100, 750));
@@ -259,34 +348,8 @@ public class MainFrame extends JFrame {
     public void showDriverPanel(Conducteur conducteur) {
         this.currentUser = conducteur;
         this.userType = "CONDUCTEUR";
-        // Synchronise les index de gestion pour compatibilité console
-        if (conducteur != null) {
-            // cherche l'index du conducteur dans gestion.users
-            int idx = -1;
-            for (int i = 0; i < gestion.getUsers().size(); i++) {
-                User u = gestion.getUsers().get(i);
-                if (u instanceof Conducteur && u.getCin().equals(conducteur.getCin())) {
-                    idx = i; break;
-                }
-            }
-            try {
-                // réflexion pour définir les champs privés Index_conducteur et Index_trajet_conducteur
-                java.lang.reflect.Field f = gestion.getClass().getDeclaredField("Index_conducteur");
-                f.setAccessible(true);
-                f.setInt(gestion, idx);
-
-                // définir Index_trajet_conducteur sur le premier trajet du conducteur si existe
-                int trajetIndex = -1;
-                for (int i = 0; i < gestion.getTrajets().size(); i++) {
-                    Trajet t = gestion.getTrajets().get(i);
-                    if (t.getConducteur() != null && t.getConducteur().getCin().equals(conducteur.getCin())) { trajetIndex = i; break; }
-                }
-                java.lang.reflect.Field ft = gestion.getClass().getDeclaredField("Index_trajet_conducteur");
-                ft.setAccessible(true);
-                ft.setInt(gestion, trajetIndex);
-            } catch (Exception ignored) {}
-
-        }
+        // Synchronise les index de gestion pour compatibilité console (via l'index des trajets par conducteur)
+        gestion.selectionner_conducteur(conducteur);
         driverPanel.refresh();
         cardLayout.show(mainPanel, "DRIVER");
     }
@@ -295,18 +358,7 @@ public class MainFrame extends JFrame {
         this.currentUser = passager;
         this.userType = "PASSAGER";
         // Synchronise Index_passager de gestion
-        if (passager != null) {
-            int idx = -1;
-            for (int i = 0; i < gestion.getUsers().size(); i++) {
-                User u = gestion.getUsers().get(i);
-                if (u instanceof Passager && u.getCin().equals(passager.getCin())) { idx = i; break; }
-            }
-            try {
-                java.lang.reflect.Field f = gestion.getClass().getDeclaredField("Index_passager");
-                f.setAccessible(true);
-                f.setInt(gestion, idx);
-            } catch (Exception ignored) {}
-        }
+        gestion.selectionner_passager(passager);
         passengerPanel.refresh();
         cardLayout.show(mainPanel, "PASSENGER");
     }
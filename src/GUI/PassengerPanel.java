@@ -3,6 +3,7 @@ package GUI;
 import Models.*;
 import java.awt.*;
 import java.awt.event.*;
+import java.util.List;
 import javax.swing.*;
 import javax.swing.table.*;
 
@@ -452,29 +453,17 @@ public class PassengerPanel extends JPanel {
 
             searchResultsModel.setRowCount(0);
 
-            for (Trajet t : mainFrame.getGestion().getTrajets()) {
-                // Affiche les trajets ayant un conducteur, des places disponibles et correspondant au prix
-                if (t.getConducteur() != null &&
-                    t.getAvailablePlaces() > 0 &&
-                    !t.isFinished() &&
-                    t.getPrix() <= maxPrice) {
-
-                    boolean matchDepart = depart.isEmpty() ||
-                        t.getDepartTrajet().toLowerCase().contains(depart);
-                    boolean matchArrivee = arrivee.isEmpty() ||
-                        t.getArriveeTrajet().toLowerCase().contains(arrivee);
-
-                    if (matchDepart && matchArrivee) {
-                        Conducteur c = t.getConducteur();
-                        searchResultsModel.addRow(new Object[]{
-                            c.getNom() + " " + c.getPrenom(),
-                            t.getDepartTrajet(),
-                            t.getArriveeTrajet(),
-                            String.format("%.2f", t.getPrix()),
-                            t.getAvailablePlaces()
-                        });
-                    }
-                }
+            // Trajets ayant un conducteur, des places disponibles et correspondant aux villes et au
+            // prix, par prix croissant (index de la Gestion)
+            for (Trajet t : mainFrame.getGestion().rechercher_trajets_ouverts(depart, arrivee, maxPrice, 1)) {
+                Conducteur c = t.getConducteur();
+                searchResultsModel.addRow(new Object[]{
+                    c.getNom() + " " + c.getPrenom(),
+                    t.getDepartTrajet(),
+                    t.getArriveeTrajet(),
+                    String.format("%.2f", t.getPrix()),
+                    t.getAvailablePlaces()
+                });
             }
 
             if (searchResultsModel.getRowCount() == 0) {
@@ -518,45 +507,36 @@ public class PassengerPanel extends JPanel {
             return;
         }
 
-        // Recherche du trajet correspondant à la ligne sélectionnée (on parcourt uniquement les trajets affichables)
-        int count = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null &&
-                t.getAvailablePlaces() > 0 &&
-                !t.isFinished()) {
-
-                if (count == selectedRow) {
-                    if (StyleUtils.showConfirm(this,
-                        "Demander la réservation pour le trajet:\n" +
-                        t.getDepartTrajet() + " → " + t.getArriveeTrajet() + "\n" +
-                        "Prix: " + t.getPrix() + " TND\n\n" +
-                        "Envoyer la demande au conducteur ?")) {
-
-                        boolean added = mainFrame.getGestion().ajouter_demande_pour_trajet(t, passager.getCin());
-                        // Mise à jour complémentaire du mapping conducteur->demandes (compatibilité)
-                        if (t.getConducteur() != null) {
-                            mainFrame.getGestion().ajouter_demande_pour_conducteur(t.getConducteur().getCin(), passager.getCin());
-                        }
-
-                        if (added) {
-                            StyleUtils.showSuccess(this,
-                                "Demande envoyée !\n\n" +
-                                "Votre demande a été envoyée au conducteur:\n" +
-                                t.getConducteur().getNom() + " " + t.getConducteur().getPrenom() + "\n\n" +
-                                "Vous serez notifié lorsque le conducteur\nacceptera votre demande.");
-                        } else {
-                            StyleUtils.showWarning(this, "Vous avez déjà une demande ou une réservation pour ce trajet.");
-                        }
-
-                        refreshTrajetsDisponibles();
-                        refreshMesDemandes();
-                        refreshMesReservations();
-                        refreshDashboard();
-                    }
-                    return;
-                }
-                count++;
+        // Recherche du trajet correspondant à la ligne sélectionnée (mêmes trajets, même ordre que le tableau)
+        List<Trajet> affichables = trajetsAffichables();
+        if (selectedRow >= affichables.size()) return;
+        Trajet t = affichables.get(selectedRow);
+        if (StyleUtils.showConfirm(this,
+            "Demander la réservation pour le trajet:\n" +
+            t.getDepartTrajet() + " → " + t.getArriveeTrajet() + "\n" +
+            "Prix: " + t.getPrix() + " TND\n\n" +
+            "Envoyer la demande au conducteur ?")) {
+
+            boolean added = mainFrame.getGestion().ajouter_demande_pour_trajet(t, passager.getCin());
+            // Mise à jour complémentaire du mapping conducteur->demandes (compatibilité)
+            if (t.getConducteur() != null) {
+                mainFrame.getGestion().ajouter_demande_pour_conducteur(t.getConducteur().getCin(), passager.getCin());
             }
+
+            if (added) {
+                StyleUtils.showSuccess(this,
+                    "Demande envoyée !\n\n" +
+                    "Votre demande a été envoyée au conducteur:\n" +
+                    t.getConducteur().getNom() + " " + t.getConducteur().getPrenom() + "\n\n" +
+                    "Vous serez notifié lorsque le conducteur\nacceptera votre demande.");
+            } else {
+                StyleUtils.showWarning(this, "Vous avez déjà une demande ou une réservation pour ce trajet.");
+            }
+
+            refreshTrajetsDisponibles();
+            refreshMesDemandes();
+            refreshMesReservations();
+            refreshDashboard();
         }
     }
 
@@ -567,48 +547,44 @@ public class PassengerPanel extends JPanel {
             return;
         }
 
-        // Recherche du trajet sélectionné dans la liste des trajets affichables
-        int count = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null &&
-                t.getAvailablePlaces() > 0 &&
-                !t.isFinished()) {
-
-                if (count == selectedRow) {
-                    Conducteur c = t.getConducteur();
-
-                    // CONFIDENTIALITÉ : afficher des informations limitées tant que la réservation n'est pas confirmée
-                    // Masquage partiel du téléphone et de l'email
-                    String maskedPhone = "****" + c.getTel().substring(Math.max(0, c.getTel().length() - 4));
-                    String maskedEmail = maskEmailForDisplay(c.getMail());
-                    String maskedMatricule = "***" + c.getMatricule().substring(Math.max(0, c.getMatricule().length() - 4));
-
-                    // Affiche une boîte de dialogue contenant les informations du conducteur (écran d'information)
-                    JOptionPane.showMessageDialog(this,
-                        "📞 Informations du Conducteur\n\n" +
-                        "Nom: " + c.getNom() + " " + c.getPrenom().charAt(0) + ".\n" +
-                        "Téléphone: " + maskedPhone + "\n" +
-                        "Email: " + maskedEmail + "\n" +
-                        "Véhicule: " + c.getMarqueVoiture() + " " + c.getNomVoiture() + "\n" +
-                        "Matricule: " + maskedMatricule + "\n\n" +
-                        "💡 Les coordonnées complètes seront\n" +
-                        "disponibles après confirmation de réservation.",
-                        "Contact Conducteur",
-                        JOptionPane.INFORMATION_MESSAGE);
-
-                    // Ajoute également un mapping pour notifier le conducteur de l'intérêt
-                    Passager passager = mainFrame.getCurrentPassager();
-                    if (passager != null) {
-                        mainFrame.getGestion().ajouter_demande_pour_conducteur(c.getCin(), passager.getCin());
-                        StyleUtils.showSuccess(this, "Le conducteur a été notifié de votre intérêt.");
-                    }
-                    return;
-                }
-                count++;
-            }
+        // Recherche du trajet sélectionné dans la liste des trajets affichables (même ordre que le tableau)
+        List<Trajet> affichables = trajetsAffichables();
+        if (selectedRow >= affichables.size()) return;
+        Trajet t = affichables.get(selectedRow);
+        Conducteur c = t.getConducteur();
+
+        // CONFIDENTIALITÉ : afficher des informations limitées tant que la réservation n'est pas confirmée
+        // Masquage partiel du téléphone et de l'email
+        String maskedPhone = "****" + c.getTel().substring(Math.max(0, c.getTel().length() - 4));
+        String maskedEmail = maskEmailForDisplay(c.getMail());
+        String maskedMatricule = "***" + c.getMatricule().substring(Math.max(0, c.getMatricule().length() - 4));
+
+        // Affiche une boîte de dialogue contenant les informations du conducteur (écran d'information)
+        JOptionPane.showMessageDialog(this,
+            "📞 Informations du Conducteur\n\n" +
+            "Nom: " + c.getNom() + " " + c.getPrenom().charAt(0) + ".\n" +
+            "Téléphone: " + maskedPhone + "\n" +
+            "Email: " + maskedEmail + "\n" +
+            "Véhicule: " + c.getMarqueVoiture() + " " + c.getNomVoiture() + "\n" +
+            "Matricule: " + maskedMatricule + "\n\n" +
+            "💡 Les coordonnées complètes seront\n" +
+            "disponibles après confirmation de réservation.",
+            "Contact Conducteur",
+            JOptionPane.INFORMATION_MESSAGE);
+
+        // Ajoute également un mapping pour notifier le conducteur de l'intérêt
+        Passager passager = mainFrame.getCurrentPassager();
+        if (passager != null) {
+            mainFrame.getGestion().ajouter_demande_pour_conducteur(c.getCin(), passager.getCin());
+            StyleUtils.showSuccess(this, "Le conducteur a été notifié de votre intérêt.");
         }
     }
     
+    // Trajets du tableau "Trajets disponibles" : réservables, par prix croissant
+    private List<Trajet> trajetsAffichables() {
+        return mainFrame.getGestion().rechercher_trajets_ouverts(null, null, Double.MAX_VALUE, 1);
+    }
+
     // Méthode d'aide pour la confidentialité : masque une partie de l'email pour l'affichage
     private String maskEmailForDisplay(String email) {
         if (email == null || !email.contains("@")) return "***@***";
@@ -633,14 +609,7 @@ public class PassengerPanel extends JPanel {
         Passager passager = mainFrame.getCurrentPassager();
 
         // Compte des trajets disponibles (avec places libres)
-        int trajetsCount = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            if (t.getConducteur() != null &&
-                t.getAvailablePlaces() > 0 &&
-                !t.isFinished()) {
-                trajetsCount++;
-            }
-        }
+        int trajetsCount = mainFrame.getGestion().nombre_trajets_ouverts();
         if (trajetsCountLabel != null) {
             trajetsCountLabel.setText(String.valueOf(trajetsCount));
         }
@@ -648,14 +617,7 @@ public class PassengerPanel extends JPanel {
         // Compte des demandes en attente pour le passager courant
         int demandesCount = 0;
         if (passager != null) {
-            for (Trajet t : mainFrame.getGestion().getTrajets()) {
-                for (Passager p : t.getPassagersDemandes()) {
-                    if (p.getCin().equals(passager.getCin())) {
-                        demandesCount++;
-                        break;
-                    }
-                }
-            }
+            demandesCount = mainFrame.getGestion().demandes_du_passager(passager.getCin()).size();
         }
         if (demandesCountLabel != null) {
             demandesCountLabel.setText(String.valueOf(demandesCount));
@@ -664,14 +626,7 @@ public class PassengerPanel extends JPanel {
         // Compte des réservations acceptées pour le passager courant
         int reservationsCount = 0;
         if (passager != null) {
-            for (Trajet t : mainFrame.getGestion().getTrajets()) {
-                for (Passager p : t.getPassagersAcceptes()) {
-                    if (p.getCin().equals(passager.getCin())) {
-                        reservationsCount++;
-                        break;
-                    }
-                }
-            }
+            reservationsCount = mainFrame.getGestion().reservations_du_passager(passager.getCin()).size();
         }
         if (reservationsCountLabel != null) {
             reservationsCountLabel.setText(String.valueOf(reservationsCount));
@@ -683,22 +638,17 @@ public class PassengerPanel extends JPanel {
 
         Passager passager = mainFrame.getCurrentPassager();
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            // Affiche uniquement les trajets avec des places disponibles
-            if (t.getConducteur() != null &&
-                t.getAvailablePlaces() > 0 &&
-                !t.isFinished()) {
-
-                Conducteur c = t.getConducteur();
-                trajetsDisponiblesModel.addRow(new Object[]{
-                    c.getNom() + " " + c.getPrenom(),
-                    t.getDepartTrajet(),
-                    t.getArriveeTrajet(),
-                    t.getDureeTrajet().toMinutes() + " min",
-                    String.format("%.2f", t.getPrix()),
-                    t.getAvailablePlaces()
-                });
-            }
+        // Affiche uniquement les trajets avec des places disponibles, par prix croissant
+        for (Trajet t : trajetsAffichables()) {
+            Conducteur c = t.getConducteur();
+            trajetsDisponiblesModel.addRow(new Object[]{
+                c.getNom() + " " + c.getPrenom(),
+                t.getDepartTrajet(),
+                t.getArriveeTrajet(),
+                t.getDureeTrajet().toMinutes() + " min",
+                String.format("%.2f", t.getPrix()),
+                t.getAvailablePlaces()
+            });
         }
     }
 
@@ -708,21 +658,18 @@ public class PassengerPanel extends JPanel {
         Passager passager = mainFrame.getCurrentPassager();
         if (passager == null) return;
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            // Affiche les trajets où le passager courant a une demande en attente
-            for (Passager p : t.getPassagersDemandes()) {
-                if (p.getCin().equals(passager.getCin()) && t.getConducteur() != null) {
-                    Conducteur c = t.getConducteur();
-                    mesDemandesModel.addRow(new Object[]{
-                        c.getNom() + " " + c.getPrenom(),
-                        t.getDepartTrajet(),
-                        t.getArriveeTrajet(),
-                        String.format("%.2f", t.getPrix()),
-                        t.getDureeTrajet().toMinutes() + " min",
-                        "⏳ En attente"
-                    });
-                    break;
-                }
+        // Affiche les trajets où le passager courant a une demande en attente
+        for (Trajet t : mainFrame.getGestion().demandes_du_passager(passager.getCin())) {
+            if (t.getConducteur() != null) {
+                Conducteur c = t.getConducteur();
+                mesDemandesModel.addRow(new Object[]{
+                    c.getNom() + " " + c.getPrenom(),
+                    t.getDepartTrajet(),
+                    t.getArriveeTrajet(),
+                    String.format("%.2f", t.getPrix()),
+                    t.getDureeTrajet().toMinutes() + " min",
+                    "⏳ En attente"
+                });
             }
         }
     }
@@ -733,22 +680,19 @@ public class PassengerPanel extends JPanel {
         Passager passager = mainFrame.getCurrentPassager();
         if (passager == null) return;
 
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            // Affiche les trajets où le passager courant a été accepté
-            for (Passager p : t.getPassagersAcceptes()) {
-                if (p.getCin().equals(passager.getCin()) && t.getConducteur() != null) {
-                    Conducteur c = t.getConducteur();
-                    // Affiche les coordonnées complètes - le conducteur a accepté
-                    mesReservationsModel.addRow(new Object[]{
-                        c.getNom() + " " + c.getPrenom(),
-                        c.getTel(),
-                        c.getMail(),
-                        t.getDepartTrajet(),
-                        t.getArriveeTrajet(),
-                        String.format("%.2f", t.getPrix())
-                    });
-                    break;
-                }
+        // Affiche les trajets où le passager courant a été accepté
+        for (Trajet t : mainFrame.getGestion().reservations_du_passager(passager.getCin())) {
+            if (t.getConducteur() != null) {
+                Conducteur c = t.getConducteur();
+                // Affiche les coordonnées complètes - le conducteur a accepté
+                mesReservationsModel.addRow(new Object[]{
+                    c.getNom() + " " + c.getPrenom(),
+                    c.getTel(),
+                    c.getMail(),
+                    t.getDepartTrajet(),
+                    t.getArriveeTrajet(),
+                    String.format("%.2f", t.getPrix())
+                });
             }
         }
     }
@@ -769,27 +713,19 @@ public class PassengerPanel extends JPanel {
 
         // Recherche du trajet correspondant à la demande sélectionnée (parmi les demandes affichées)
         int count = 0;
-        for (Trajet t : mainFrame.getGestion().getTrajets()) {
-            for (Passager p : t.getPassagersDemandes()) {
-                if (p.getCin().equals(passager.getCin())) {
-                    if (count == selectedRow) {
-                        // Supprime la demande du trajet
-                        t.removeDemand(passager);
-                        // Supprime également la mapping conducteur->demandes
-                        if (t.getConducteur() != null) {
-                            // utilise l'aide de suppression récemment ajoutée
-                            mainFrame.getGestion().supprimer_demande_pour_conducteur(t.getConducteur().getCin(), passager.getCin());
-                        }
-                        StyleUtils.showSuccess(this, "Demande annulée avec succès !");
-
-                        refreshTrajetsDisponibles();
-                        refreshMesDemandes();
-                        refreshDashboard();
-                        return;
-                    }
-                    count++;
-                }
+        for (Trajet t : mainFrame.getGestion().demandes_du_passager(passager.getCin())) {
+            if (t.getConducteur() == null) continue;
+            if (count == selectedRow) {
+                // Supprime la demande du trajet ainsi que le mapping conducteur->demandes
+                mainFrame.getGestion().annuler_demande_pour_trajet(t, passager.getCin());
+                StyleUtils.showSuccess(this, "Demande annulée avec succès !");
+
+                refreshTrajetsDisponibles();
+                refreshMesDemandes();
+                refreshDashboard();
+                return;
             }
+            count++;
         }
     }
 }
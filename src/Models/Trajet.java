@@ -7,6 +7,25 @@ import java.time.format.DateTimeParseException;
 import java.util.Vector;
 
 public class Trajet {
+    /**
+     * Prévenu à chaque changement des listes de passagers faites par les méthodes de ce trajet
+     * (addDemand, acceptPassenger, removeDemand, removeAccepted), et après chaque changement du
+     * prix, du statut, de la capacité, du conducteur ou des villes. Sert à tenir à jour les index de
+     * Gestion_covoiturage (passager -> trajets, trajets ouverts par prix, villes).
+     */
+    public interface Ecouteur {
+        void passagerAjoute(Trajet t, Passager p, boolean accepte);
+        void passagerRetire(Trajet t, Passager p, boolean accepte);
+        void trajetModifie(Trajet t);
+        /**
+         * Après un changement de la ville de départ ou d'arrivée : les anciennes valeurs sont
+         * celles sous lesquelles le trajet était indexé.
+         */
+        void villesModifiees(Trajet t, String ancienDepart, String ancienneArrivee);
+    }
+
+    // Identifiant stable du trajet (attribué par Gestion_covoiturage, persisté dans le CSV et le journal)
+    private long id;
     private String departTrajet;
     private String arriveeTrajet;
     private Duration dureeTrajet;
@@ -18,6 +37,8 @@ public class Trajet {
     private Vector<Passager> passagersAcceptes = new Vector<>();
     private Vector<Passager> passagersDemandes = new Vector<>();
     private int maxPlaces = 1; // capacité par défaut
+    // Un seul écouteur : l'index de la Gestion qui contient le trajet (null sinon)
+    private Ecouteur ecouteur;
 
     // ==================== STATUS CONSTANTS ====================
     /**
@@ -142,6 +163,7 @@ public class Trajet {
     }
 
     // Getters
+    public long getId() { return id; }
     public String getDepartTrajet() { return departTrajet; }
     public String getArriveeTrajet() { return arriveeTrajet; }
     public Duration getDureeTrajet() { return dureeTrajet; }
@@ -158,12 +180,23 @@ public class Trajet {
 
 
     // Setters
-    public void setDepartTrajet(String departTrajet) { this.departTrajet = departTrajet; }
-    public void setArriveeTrajet(String arriveeTrajet) { this.arriveeTrajet = arriveeTrajet; }
+    public void setId(long id) { this.id = id; }
+    public void setEcouteur(Ecouteur ecouteur) { this.ecouteur = ecouteur; }
+    public void setDepartTrajet(String departTrajet) {
+        String ancien = this.departTrajet;
+        this.departTrajet = departTrajet;
+        if (ecouteur != null) ecouteur.villesModifiees(this, ancien, arriveeTrajet);
+    }
+    public void setArriveeTrajet(String arriveeTrajet) {
+        String ancienne = this.arriveeTrajet;
+        this.arriveeTrajet = arriveeTrajet;
+        if (ecouteur != null) ecouteur.villesModifiees(this, departTrajet, ancienne);
+    }
     public void setDureeTrajet(Duration dureeTrajet) { this.dureeTrajet = dureeTrajet; }
     public void setStatusTrajet(String statusTrajet) {
         if (isValidStatus(statusTrajet)) {
             this.statusTrajet = statusTrajet;
+            if (ecouteur != null) ecouteur.trajetModifie(this);
         } else {
             throw new IllegalArgumentException("Statut invalide. Utilisez PENDING, PENDING_APPROVAL, IN_PROGRESS ou FINISHED.");
         }
@@ -198,6 +231,7 @@ public class Trajet {
                 // ignore
             }
         }
+        if (ecouteur != null) ecouteur.trajetModifie(this);
     }
 
     /**
@@ -214,6 +248,7 @@ public class Trajet {
             if (dp.getCin().equals(p.getCin())) return false;
         }
         passagersDemandes.add(p);
+        if (ecouteur != null) ecouteur.passagerAjoute(this, p, false);
         // Mettre le statut en attente d'approbation
         if (isPending()) setStatusTrajet(STATUS_PENDING_APPROVAL);
         return true;
@@ -224,7 +259,7 @@ public class Trajet {
      */
     public boolean removeDemand(Passager p) {
         if (p == null) return false;
-        return passagersDemandes.removeIf(pp -> pp.getCin().equals(p.getCin()));
+        return retirer(passagersDemandes, p, false);
     }
 
     /**
@@ -248,6 +283,7 @@ public class Trajet {
         }
         // Ajouter aux acceptés
         passagersAcceptes.add(p);
+        if (ecouteur != null) ecouteur.passagerAjoute(this, p, true);
         // Retirer des demandes si présent
         if (wasInDemande) removeDemand(p);
         // Mettre à jour statut
@@ -266,13 +302,27 @@ public class Trajet {
      * Annule une acceptation (libère une place)
      */
     public boolean removeAccepted(Passager p) {
-        boolean removed = passagersAcceptes.removeIf(pp -> pp.getCin().equals(p.getCin()));
+        boolean removed = retirer(passagersAcceptes, p, true);
         if (passagersAcceptes.isEmpty() && conducteur == null) {
             setStatusTrajet(STATUS_PENDING);
         }
         return removed;
     }
 
+    // Retire de la liste les passagers de même CIN que p, en prévenant l'écouteur
+    private boolean retirer(Vector<Passager> liste, Passager p, boolean accepte) {
+        boolean removed = false;
+        for (int i = liste.size() - 1; i >= 0; i--) {
+            Passager pp = liste.get(i);
+            if (pp.getCin().equals(p.getCin())) {
+                liste.remove(i);
+                if (ecouteur != null) ecouteur.passagerRetire(this, pp, accepte);
+                removed = true;
+            }
+        }
+        return removed;
+    }
+
     /**
      * Retourne le nombre de places disponibles restantes pour ce trajet
      */
@@ -282,8 +332,15 @@ public class Trajet {
 
     public boolean isFull() { return getAvailablePlaces() <= 0; }
 
-    public void setPrix(float prix) { this.prix = prix; }
-    public void setMaxPlaces(int maxPlaces) { if (maxPlaces > 0) this.maxPlaces = maxPlaces; }
+    public void setPrix(float prix) {
+        this.prix = prix;
+        if (ecouteur != null) ecouteur.trajetModifie(this);
+    }
+    public void setMaxPlaces(int maxPlaces) {
+        if (maxPlaces <= 0) return;
+        this.maxPlaces = maxPlaces;
+        if (ecouteur != null) ecouteur.trajetModifie(this);
+    }
 
     /**
      * Sérialisation helper : renvoie CINs des acceptés séparés par des virgules
@@ -314,7 +371,8 @@ public class Trajet {
     @Override
     public String toString() {
         return "Trajet{" +
-                "departTrajet='" + departTrajet + '\'' +
+                "id=" + id +
+                ", departTrajet='" + departTrajet + '\'' +
                 ", arriveeTrajet='" + arriveeTrajet + '\'' +
                 ", dureeTrajet=" + (dureeTrajet != null ? dureeTrajet.toMinutes() + " minutes" : "N/A") +
                 ", statusTrajet=" + statusTrajet +
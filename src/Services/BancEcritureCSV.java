@@ -0,0 +1,204 @@
+package Services;
+
+import Models.*;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * BancEcritureCSV - Mesure de l'écriture des tables CSV, hors sauvegarde.
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Les données du dossier data/ sont chargées une fois (CSVDatabase.loadAllData).
+ * 2. Chaque table est écrite plusieurs fois vers un flux qui jette les octets, de deux façons :
+ *    - "avant" : l'ancienne écriture (escapeCSV, String.join, String.valueOf, BufferedWriter)
+ *    - "après" : EcrivainCSV (tampon d'octets réutilisé, voir sa documentation)
+ * 3. Pour chacune on affiche le débit (Mo/s) et les octets alloués par ligne par le thread
+ *    courant ; les premières passes servent de chauffe et ne sont pas comptées.
+ *
+ * Le disque (fsync, renommages) et l'objet de backup n'interviennent pas : seul l'encodage est
+ * mesuré. Les sauvegardes n'affichent que le nombre de lignes et la taille de chaque table.
+ *
+ * Lancement : java Services.BancEcritureCSV [passes]
+ */
+public class BancEcritureCSV {
+
+    private static final int PASSES_PAR_DEFAUT = 10;
+    private static final int PASSES_CHAUFFE = 3;
+    private static final String SEP = ";";
+
+    /**
+     * Écriture d'une table entière ; renvoie le nombre d'octets produits.
+     */
+    private interface Ecriture {
+        long ecrire(OutputStream sortie) throws IOException;
+    }
+
+    public static void main(String[] args) throws IOException {
+        int passes = (args.length > 0) ? Integer.parseInt(args[0]) : PASSES_PAR_DEFAUT;
+
+        Gestion_covoiturage gestion = new Gestion_covoiturage();
+        CSVDatabase.loadAllData(gestion);
+        List<Conducteur> conducteurs = new ArrayList<>();
+        List<Passager> passagers = new ArrayList<>();
+        for (User u : gestion.getUsers()) {
+            if (u instanceof Conducteur) conducteurs.add((Conducteur) u);
+            else if (u instanceof Passager) passagers.add((Passager) u);
+        }
+        List<Trajet> trajets = gestion.getTrajets();
+
+        System.out.println("Table        Écriture  Lignes   Mo/s     o alloués/ligne");
+        mesurer("conducteurs", conducteurs.size(), passes,
+            out -> ancienne(out, conducteurs, BancEcritureCSV::ligneConducteur),
+            out -> nouvelle(out, conducteurs, CSVDatabase::ecrireConducteur));
+        mesurer("passagers", passagers.size(), passes,
+            out -> ancienne(out, passagers, BancEcritureCSV::lignePassager),
+            out -> nouvelle(out, passagers, CSVDatabase::ecrirePassager));
+        mesurer("trajets", trajets.size(), passes,
+            out -> ancienne(out, trajets, BancEcritureCSV::ligneTrajet),
+            out -> nouvelle(out, trajets, CSVDatabase::ecrireTrajet));
+    }
+
+    private static void mesurer(String table, int lignes, int passes, Ecriture avant, Ecriture apres)
+            throws IOException {
+        afficher(table, "avant", lignes, passes, avant);
+        afficher(table, "après", lignes, passes, apres);
+    }
+
+    private static void afficher(String table, String ecriture, int lignes, int passes, Ecriture e)
+            throws IOException {
+        for (int i = 0; i < PASSES_CHAUFFE; i++) e.ecrire(OutputStream.nullOutputStream());
+
+        long allocationsAvant = octetsAlloues();
+        long debut = System.nanoTime();
+        long octets = 0;
+        for (int i = 0; i < passes; i++) octets += e.ecrire(OutputStream.nullOutputStream());
+        long nanos = Math.max(1, System.nanoTime() - debut);
+        long allocationsApres = octetsAlloues();
+
+        String allocations = (allocationsAvant >= 0 && allocationsApres >= 0)
+            ? String.valueOf((allocationsApres - allocationsAvant) / Math.max(1L, (long) lignes * passes))
+            : "non mesuré";
+        System.out.println(String.format("%-12s %-9s %-8d %-8.1f %s",
+            table, ecriture, lignes, octets / 1e6 / (nanos / 1e9), allocations));
+    }
+
+    // ===== Écriture actuelle =====
+
+    private interface Champs<T> {
+        void ecrire(EcrivainCSV e, T valeur) throws IOException;
+    }
+
+    private static <T> long nouvelle(OutputStream out, List<T> lignes, Champs<T> champs) throws IOException {
+        EcrivainCSV ecrivain = new EcrivainCSV(out);
+        for (T valeur : lignes) {
+            champs.ecrire(ecrivain, valeur);
+            ecrivain.finLigne();
+        }
+        ecrivain.vider();
+        return ecrivain.octetsEcrits();
+    }
+
+    // ===== Ancienne écriture (référence) =====
+
+    private interface Ligne<T> {
+        String ligne(T valeur);
+    }
+
+    private static <T> long ancienne(OutputStream out, List<T> lignes, Ligne<T> ligne) throws IOException {
+        CompteurOctets compteur = new CompteurOctets(out);
+        Writer writer = new BufferedWriter(new OutputStreamWriter(compteur, StandardCharsets.UTF_8));
+        for (T valeur : lignes) {
+            writer.write(ligne.ligne(valeur));
+            writer.write(System.lineSeparator());
+        }
+        writer.flush();
+        return compteur.octets;
+    }
+
+    private static String ligneConducteur(Conducteur c) {
+        return String.join(SEP,
+            CSVDatabase.escapeCSV(c.getCin()),
+            CSVDatabase.escapeCSV(c.getNom()),
+            CSVDatabase.escapeCSV(c.getPrenom()),
+            CSVDatabase.escapeCSV(c.getTel()),
+            String.valueOf(c.getAnneeUniversitaire().getValue()),
+            CSVDatabase.escapeCSV(c.getAdresse()),
+            CSVDatabase.escapeCSV(c.getMail()),
+            CSVDatabase.escapeCSV(c.getPasswordHash()),
+            CSVDatabase.escapeCSV(c.getNomVoiture()),
+            CSVDatabase.escapeCSV(c.getMarqueVoiture()),
+            CSVDatabase.escapeCSV(c.getMatricule()),
+            String.valueOf(c.getPlacesDisponibles()));
+    }
+
+    private static String lignePassager(Passager p) {
+        return String.join(SEP,
+            CSVDatabase.escapeCSV(p.getCin()),
+            CSVDatabase.escapeCSV(p.getNom()),
+            CSVDatabase.escapeCSV(p.getPrenom()),
+            CSVDatabase.escapeCSV(p.getTel()),
+            String.valueOf(p.getAnneeUniversitaire().getValue()),
+            CSVDatabase.escapeCSV(p.getAdresse()),
+            CSVDatabase.escapeCSV(p.getMail()),
+            CSVDatabase.escapeCSV(p.getPasswordHash()),
+            String.valueOf(p.isChercheCovoit()));
+    }
+
+    private static String ligneTrajet(Trajet t) {
+        return String.join(SEP,
+            CSVDatabase.escapeCSV(t.getDepartTrajet()),
+            CSVDatabase.escapeCSV(t.getArriveeTrajet()),
+            String.valueOf(t.getDureeTrajet().toMinutes()),
+            CSVDatabase.escapeCSV(t.getStatusTrajet()),
+            String.valueOf(t.getPrix()),
+            CSVDatabase.escapeCSV(t.getConducteur() != null ? t.getConducteur().getCin() : null),
+            CSVDatabase.escapeCSV(t.getPassagersAcceptes().isEmpty() ? null : t.getPassagersAcceptes().get(0).getCin()),
+            String.valueOf(t.getMaxPlaces()),
+            CSVDatabase.escapeCSV(t.getPassagersAcceptesCINs()),
+            CSVDatabase.escapeCSV(t.getPassagersDemandesCINs()),
+            String.valueOf(t.getId()));
+    }
+
+    /**
+     * Flux qui compte les octets reçus avant de les transmettre.
+     */
+    private static final class CompteurOctets extends OutputStream {
+        private final OutputStream out;
+        long octets;
+
+        CompteurOctets(OutputStream out) {
+            this.out = out;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            octets++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            octets += len;
+        }
+    }
+
+    /**
+     * @return octets alloués jusqu'ici par le thread courant, ou -1 si la JVM ne le mesure pas
+     */
+    private static long octetsAlloues() {
+        java.lang.management.ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean hotspot = (com.sun.management.ThreadMXBean) threads;
+            if (hotspot.isThreadAllocatedMemoryEnabled()) return hotspot.getCurrentThreadAllocatedBytes();
+        }
+        return -1;
+    }
+}
@@ -2,13 +2,25 @@ package Services;
 
 import Models.*;
 import java.io.*;
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
 import java.time.Duration;
 import java.time.Year;
 import java.util.ArrayList;
+import java.util.EnumSet;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
+import java.util.concurrent.CompletableFuture;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 /**
  * CSVDatabase - Classe utilitaire pour la lecture et l'écriture de données dans des fichiers CSV.
@@ -24,6 +36,8 @@ import java.util.Vector;
  *    - LECTURE : charger les données depuis les fichiers CSV vers des objets Java
  *    - ÉCRITURE : sauvegarder les objets Java dans des fichiers CSV
  *    - SAUVEGARDE/APPEND : création de backups avant écriture, rotation des backups
+ *    - JOURNAL : chaque mutation est ajoutée à data/journal.log (voir Journal) ; les CSV
+ *      servent de points de contrôle et le journal est rejoué au chargement
  *
  */
 public class CSVDatabase {
@@ -37,12 +51,142 @@ public class CSVDatabase {
     private static final String CONDUCTEURS_FILE = DATA_FOLDER + "conducteurs.csv";
     private static final String PASSAGERS_FILE = DATA_FOLDER + "passagers.csv";
     private static final String TRAJETS_FILE = DATA_FOLDER + "trajets.csv";
+    // Journal des mutations (append-only) rejoué au chargement, vidé à chaque point de contrôle
+    private static final String JOURNAL_FILE = DATA_FOLDER + "journal.log";
+    // Durabilité des mutations journalisées (voir Journal.Durabilite) : -Dcovoiturage.durabilite=
+    // synchrone|groupe|periodique (défaut), fenêtre du mode groupe : -Dcovoiturage.durabilite.fenetre (ms)
+    private static final String PROPRIETE_DURABILITE = "covoiturage.durabilite";
+    private static final String PROPRIETE_FENETRE_GROUPE = "covoiturage.durabilite.fenetre";
+    private static final long FENETRE_GROUPE_DEFAUT_MS = 2;
+    // Snapshot binaire des trois tables (voir SnapshotBinaire), utilisé au démarrage s'il est à jour
+    private static final String SNAPSHOT_FILE = DATA_FOLDER + "snapshot.bin";
     
     // Délimiteur - utilisation du point-virgule pour la compatibilité avec les textes français
     private static final String DELIMITER = ";";
     
-    // Nombre maximal de fichiers de sauvegarde à conserver
+    // Nombre minimal de générations de backup à conserver (voir EntrepotBackups)
     private static final int MAX_BACKUPS = 5;
+    // Les générations des 7 derniers jours sont toutes conservées (objets compressés et dédupliqués)
+    private static final int RETENTION_BACKUPS_JOURS = 7;
+    
+    // Taille (octets) à partir de laquelle trajets.csv est lu en plusieurs blocs parallèles
+    private static final int SEUIL_CHARGEMENT_PARALLELE = 256 * 1024;
+    
+    // Moteur de stockage des tables (voir Stockage) : CSV par défaut, ou base SQL embarquée avec
+    // -Dcovoiturage.stockage=sql (URL JDBC : -Dcovoiturage.jdbc.url, pilote à ajouter au classpath)
+    private static final String PROPRIETE_STOCKAGE = "covoiturage.stockage";
+    private static final String PROPRIETE_JDBC_URL = "covoiturage.jdbc.url";
+    private static final String JDBC_URL_DEFAUT = "jdbc:h2:./data/covoiturage";
+    private static Stockage stockage;
+    
+    // Mode utilisateurs à la demande (stockage CSV, -Dcovoiturage.utilisateurs=demande) : les tables
+    // utilisateurs restent sur disque, indexées par CIN (voir IndexPagineCIN)
+    private static final String PROPRIETE_UTILISATEURS = "covoiturage.utilisateurs";
+    private static final String INDEX_UTILISATEURS_FILE = DATA_FOLDER + "utilisateurs.idx";
+    private static IndexPagineCIN indexUtilisateurs;
+    
+    // Table des trajets à emplacements fixes (stockage CSV, -Dcovoiturage.trajets=fixe) : un trajet
+    // modifié est réécrit à sa place au lieu de réécrire trajets.csv (voir TableTrajetsFixe)
+    private static final String PROPRIETE_TRAJETS = "covoiturage.trajets";
+    private static final String TRAJETS_FIXES_FILE = DATA_FOLDER + "trajets.fixe";
+    private static TableTrajetsFixe trajetsFixes;
+    
+    private static final String ENTETE_TRAJETS =
+        "Depart;Arrivee;DureeMinutes;Status;Prix;ConducteurCIN;PassagerCIN;MaxPlaces;AcceptedCINs;PendingCINs;Id";
+    
+    // ============================================================
+    // CHOIX DU STOCKAGE
+    // ============================================================
+    
+    /**
+     * Moteur de stockage utilisé, choisi au premier appel d'après les propriétés système.
+     * Si la base SQL est inaccessible (pilote absent...), on revient aux fichiers CSV.
+     */
+    public static synchronized Stockage getStockage() {
+        if (stockage == null) {
+            if ("sql".equalsIgnoreCase(System.getProperty(PROPRIETE_STOCKAGE))) {
+                String url = System.getProperty(PROPRIETE_JDBC_URL, JDBC_URL_DEFAUT);
+                try {
+                    stockage = new StockageSQL(url);
+                } catch (java.sql.SQLException e) {
+                    System.err.println("⚠ Base SQL inaccessible (" + e.getMessage() + "), stockage CSV utilisé");
+                }
+            }
+            if (stockage == null) stockage = new StockageCSV();
+        }
+        return stockage;
+    }
+    
+    /**
+     * Remplace le moteur de stockage (à appeler avant loadAllData).
+     */
+    public static synchronized void setStockage(Stockage nouveau) {
+        stockage = nouveau;
+    }
+    
+    /**
+     * Ferme le moteur de stockage (connexion SQL). Appelé à la fermeture de l'application.
+     * En mode trajets à emplacements fixes, trajets.csv est d'abord régénéré depuis la table :
+     * il reste lisible (et à jour si l'on quitte ce mode) après un arrêt normal.
+     */
+    public static synchronized void fermerStockage() {
+        if (stockage != null) stockage.fermer();
+        if (indexUtilisateurs != null) indexUtilisateurs.fermer();
+        if (trajetsFixes != null) {
+            exporterTrajetsFixes();
+            trajetsFixes.fermer();
+        }
+    }
+    
+    /**
+     * @return fichier CSV d'une table
+     */
+    static Path fichierTable(Gestion_covoiturage.Table table) {
+        switch (table) {
+            case CONDUCTEURS: return Paths.get(CONDUCTEURS_FILE);
+            case PASSAGERS: return Paths.get(PASSAGERS_FILE);
+            default: return Paths.get(TRAJETS_FILE);
+        }
+    }
+    
+    /**
+     * Rechargement à chaud d'une table utilisateurs modifiée hors de l'application : en mode à la
+     * demande, les positions des enregistrements dans l'index CIN ont changé.
+     */
+    static void utilisateursModifiesHorsApplication() throws IOException {
+        if (indexUtilisateurs != null) indexUtilisateurs.reconstruire();
+    }
+    
+    /**
+     * Rechargement à chaud en mode à la demande : relit, via l'index CIN reconstruit par
+     * utilisateursModifiesHorsApplication, les seuls utilisateurs de la table présents en mémoire
+     * (plutôt que la table entière).
+     *
+     * @param cins CIN des utilisateurs en mémoire (voir Gestion_covoiturage.cinsEnMemoire)
+     */
+    static List<User> relireUtilisateurs(Gestion_covoiturage.Table table, List<String> cins) throws IOException {
+        if (indexUtilisateurs == null) throw new IOException("index CIN indisponible");
+        return indexUtilisateurs.relire(table == Gestion_covoiturage.Table.CONDUCTEURS, cins);
+    }
+    
+    /**
+     * Rechargement à chaud de trajets.csv en mode trajets à emplacements fixes : les trajets
+     * fusionnés sont enregistrés à leur place, puis trajets.csv est noté comme contenu de la table
+     * (sinon elle serait reconstruite depuis trajets.csv au prochain démarrage, sans les
+     * sauvegardes faites entre-temps).
+     *
+     * @param ids identifiants des trajets ajoutés, modifiés ou supprimés par la fusion
+     */
+    static void trajetsModifiesHorsApplication(Gestion_covoiturage gestion, Set<Long> ids) {
+        if (trajetsFixes == null) return;
+        if (!ids.isEmpty() && !saveTrajetsFixes(gestion, ids)) return;
+        try {
+            trajetsFixes.noterCSV();
+        } catch (IOException e) {
+            System.err.println("⚠ Table des trajets à emplacements fixes: " + TRAJETS_FILE
+                + " non noté (" + e.getMessage() + "), elle sera reconstruite au prochain démarrage");
+        }
+    }
     
     // ============================================================
     // ÉTAPE 1 : Initialisation du dossier de données
@@ -75,107 +219,178 @@ public class CSVDatabase {
     
     /**
      * Crée une sauvegarde (backup) de tous les fichiers CSV avant d'écrire.
-     * Les backups sont horodatés et on effectue une rotation pour ne pas dépasser MAX_BACKUPS.
+     * On conserve une semaine d'historique (RETENTION_BACKUPS_JOURS), et au moins MAX_BACKUPS
+     * générations.
+     *
+     * Les backups sont dédupliqués par contenu et compressés (voir EntrepotBackups) : l'objet
+     * GZIP d'une table est produit pendant son écriture, un backup ne fait donc que référencer
+     * les objets existants. Une table inchangée n'est ni relue ni recopiée.
      */
     public static void createBackup() {
+        getStockage().creerBackup();
+    }
+    
+    /**
+     * Backup des fichiers CSV (StockageCSV).
+     */
+    static void creerBackupCSV() {
         initializeDataFolder();
+        // Mode trajets à emplacements fixes : trajets.csv n'est pas tenu à jour à chaque sauvegarde
+        if (trajetsFixes != null) exporterTrajetsFixes();
         
-        String timestamp = java.time.LocalDateTime.now()
-            .format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss"));
-        
-        String[] files = {CONDUCTEURS_FILE, PASSAGERS_FILE, TRAJETS_FILE};
+        Map<String, Path> tables = new LinkedHashMap<>();
+        for (String file : new String[] {CONDUCTEURS_FILE, PASSAGERS_FILE, TRAJETS_FILE}) {
+            String fileName = Paths.get(file).getFileName().toString();
+            tables.put(fileName.substring(0, fileName.lastIndexOf('.')), Paths.get(file));
+        }
         
-        for (String file : files) {
-            Path source = Paths.get(file);
-            if (Files.exists(source)) {
-                try {
-                    String fileName = source.getFileName().toString();
-                    String baseName = fileName.substring(0, fileName.lastIndexOf('.'));
-                    String backupName = BACKUP_FOLDER + baseName + "_" + timestamp + ".csv";
-                    Files.copy(source, Paths.get(backupName), StandardCopyOption.REPLACE_EXISTING);
-                } catch (IOException e) {
-                    System.err.println("⚠️ Backup échoué pour " + file + ": " + e.getMessage());
-                }
+        try {
+            String generation = EntrepotBackups.creerGeneration(tables, MAX_BACKUPS, RETENTION_BACKUPS_JOURS);
+            if (generation != null) {
+                System.out.println("✓ Backup créé: " + generation);
+            } else {
+                System.out.println("ℹ Backup inutile: tables identiques au backup précédent");
             }
+        } catch (IOException e) {
+            System.err.println("⚠️ Backup échoué: " + e.getMessage());
         }
-        
-        // Rotation des anciens backups
-        rotateBackups();
-        System.out.println("✓ Backup créé: " + timestamp);
     }
     
     /**
-     * Supprime les anciens fichiers de sauvegarde, en conservant uniquement les plus récents.
+     * Tente de restaurer les fichiers de données à partir du backup le plus récent.
+     * Utiliser cette méthode si les fichiers principaux sont corrompus.
+     *
+     * @return true si la restauration a réussi
+     */
+    public static boolean restoreFromBackup() {
+        return restoreFromBackup(null, null);
+    }
+    
+    /**
+     * Restauration hors session (au démarrage, avant loadAllData) : voir
+     * restoreFromBackup(Gestion_covoiturage, LocalDateTime).
+     */
+    public static boolean restoreFromBackup(java.time.LocalDateTime instant) {
+        return restoreFromBackup(null, instant);
+    }
+    
+    /**
+     * Restaure l'état des données tel qu'il était à un instant donné.
+     *
+     * EXPLICATION PAS À PAS :
+     * 1. Le catalogue des backups (voir EntrepotBackups) donne directement la génération en
+     *    vigueur à cet instant : les trois tables d'une même sauvegarde, jamais un mélange.
+     * 2. Chaque table est décompressée en flux dans son ".tmp" et vérifiée (SHA-256) ; si une
+     *    seule table échoue, rien n'est remplacé.
+     * 3. Le journal est vidé (segments scellés compris) : ses mutations sont postérieures à la
+     *    génération restaurée et ne doivent pas être rejouées dessus au prochain chargement.
+     * 4. Les trois ".tmp" deviennent ".ready", puis remplacent les tables. Après un arrêt brutal,
+     *    terminerRemplacementsInterrompus() termine les ".ready" restants.
+     * 5. Session en cours (session non null) : la gestion est rechargée depuis les tables
+     *    restaurées, sinon sa prochaine sauvegarde écraserait la restauration. Aucune sauvegarde
+     *    en arrière-plan ne doit être en cours (SauvegardeAsynchrone arrêtée ou sans demande).
+     *
+     * Les anciens backups (fichiers "table_horodatage.csv" à la racine de data/backups/) restent
+     * utilisés s'il n'existe encore aucune génération.
+     *
+     * @param session gestion de la session en cours, null si les données ne sont pas chargées
+     * @param instant null pour le backup le plus récent
+     * @return true si la restauration a réussi
      */
-    private static void rotateBackups() {
+    public static boolean restoreFromBackup(Gestion_covoiturage session, java.time.LocalDateTime instant) {
         try {
-            Path backupDir = Paths.get(BACKUP_FOLDER);
-            if (!Files.exists(backupDir)) return;
+            Map.Entry<String, Map<String, EntrepotBackups.TableSauvegardee>> generation = EntrepotBackups.generationAu(instant);
+            if (generation == null) {
+                if (instant != null) {
+                    System.err.println("✗ Aucun backup antérieur à " + instant);
+                    return false;
+                }
+                return restaurerAnciensBackups(session);
+            }
             
-            // Regroupe les backups par nom de base et conserve MAX_BACKUPS par groupe
-            java.util.Map<String, java.util.List<Path>> backupGroups = new java.util.HashMap<>();
+            String[] baseNames = {"conducteurs", "passagers", "trajets"};
+            String[] targetFiles = {CONDUCTEURS_FILE, PASSAGERS_FILE, TRAJETS_FILE};
+            List<Integer> preparees = new ArrayList<>();
             
-            Files.list(backupDir)
-                .filter(p -> p.toString().endsWith(".csv"))
-                .forEach(p -> {
-                    String name = p.getFileName().toString();
-                    // Extrait le nom de base (ex: "conducteurs" depuis "conducteurs_20241217_143022.csv")
-                    int underscoreIdx = name.indexOf('_');
-                    if (underscoreIdx > 0) {
-                        String baseName = name.substring(0, underscoreIdx);
-                        backupGroups.computeIfAbsent(baseName, k -> new java.util.ArrayList<>()).add(p);
+            try {
+                for (int i = 0; i < baseNames.length; i++) {
+                    EntrepotBackups.TableSauvegardee table = generation.getValue().get(baseNames[i]);
+                    if (table == null) continue;
+                    String hash;
+                    try (InputStream in = EntrepotBackups.ouvrirObjet(table.hash)) {
+                        hash = ecrireTemporaire(targetFiles[i], in::transferTo);
                     }
-                });
-            
-            // Pour chaque groupe, tri par date de modification et suppression des plus anciens si > MAX_BACKUPS
-            for (java.util.List<Path> group : backupGroups.values()) {
-                if (group.size() > MAX_BACKUPS) {
-                    group.sort((a, b) -> {
-                        try {
-                            return Files.getLastModifiedTime(b).compareTo(Files.getLastModifiedTime(a));
-                        } catch (IOException e) {
-                            return 0;
-                        }
-                    });
-                    
-                    // Supprimer les backups les plus anciens
-                    for (int i = MAX_BACKUPS; i < group.size(); i++) {
-                        try {
-                            Files.delete(group.get(i));
-                        } catch (IOException e) {
-                            // Ignorer les erreurs de suppression
-                        }
+                    preparees.add(i);
+                    if (!hash.equals(table.hash)) {
+                        throw new IOException("backup altéré pour " + baseNames[i] + " (empreinte différente)");
                     }
                 }
+            } catch (IOException e) {
+                for (int i : preparees) Files.deleteIfExists(Paths.get(targetFiles[i] + ".tmp"));
+                throw e;
+            }
+            
+            viderJournalAvantRestauration(session);
+            for (int i : preparees) {
+                deplacerAtomiquement(Paths.get(targetFiles[i] + ".tmp"), Paths.get(targetFiles[i] + ".ready"));
+            }
+            for (int i : preparees) {
+                deplacerAtomiquement(Paths.get(targetFiles[i] + ".ready"), Paths.get(targetFiles[i]));
+                // Session en cours : les tables restaurées doivent rester visibles comme modifiées
+                if (session == null) {
+                    EntrepotBackups.enregistrerEmpreinte(Paths.get(targetFiles[i]), generation.getValue().get(baseNames[i]).hash);
+                }
+                System.out.println("✓ Restauré: " + targetFiles[i]);
             }
+            synchroniserDossier(Paths.get(DATA_FOLDER).toAbsolutePath());
+            
+            terminerRestauration(session);
+            System.out.println("✓ Restauration depuis le backup " + generation.getKey() + " terminée");
+            return true;
+            
         } catch (IOException e) {
-            // Ignorer les erreurs de rotation
+            System.err.println("✗ Erreur lors de la restauration: " + e.getMessage());
+            return false;
         }
     }
     
     /**
-     * Tente de restaurer les fichiers de données à partir du backup le plus récent.
-     * Utiliser cette méthode si les fichiers principaux sont corrompus.
-     *
-     * @return true si la restauration a réussi
+     * Horodatages des backups disponibles (du plus ancien au plus récent), utilisables avec
+     * restoreFromBackup(instant).
      */
-    public static boolean restoreFromBackup() {
+    public static List<java.time.LocalDateTime> listerBackups() {
+        List<java.time.LocalDateTime> backups = new ArrayList<>();
         try {
-            Path backupDir = Paths.get(BACKUP_FOLDER);
-            if (!Files.exists(backupDir)) {
-                System.err.println("✗ Aucun dossier de backup trouvé");
-                return false;
+            java.time.format.DateTimeFormatter format = java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+            for (String generation : EntrepotBackups.listerGenerations()) {
+                backups.add(java.time.LocalDateTime.parse(generation, format));
             }
-            
-            // Trouve le backup le plus récent pour chaque type de fichier
-            String[] baseNames = {"conducteurs", "passagers", "trajets"};
-            String[] targetFiles = {CONDUCTEURS_FILE, PASSAGERS_FILE, TRAJETS_FILE};
-            
-            for (int i = 0; i < baseNames.length; i++) {
-                final String baseName = baseNames[i];
-                final String targetFile = targetFiles[i];
-                
-                java.util.Optional<Path> latestBackup = Files.list(backupDir)
+        } catch (IOException | java.time.format.DateTimeParseException e) {
+            System.err.println("⚠ Catalogue des backups illisible: " + e.getMessage());
+        }
+        return backups;
+    }
+    
+    /**
+     * Restauration depuis les anciens backups (avant les générations) : pour chaque table,
+     * le fichier "table_horodatage.csv" le plus récent.
+     */
+    private static boolean restaurerAnciensBackups(Gestion_covoiturage session) throws IOException {
+        Path backupDir = Paths.get(BACKUP_FOLDER);
+        if (!Files.exists(backupDir)) {
+            System.err.println("✗ Aucun dossier de backup trouvé");
+            return false;
+        }
+        
+        String[] baseNames = {"conducteurs", "passagers", "trajets"};
+        String[] targetFiles = {CONDUCTEURS_FILE, PASSAGERS_FILE, TRAJETS_FILE};
+        
+        // Trouver le backup le plus récent pour chaque type de fichier
+        List<Path> derniers = new ArrayList<>();
+        for (String baseName : baseNames) {
+            java.util.Optional<Path> latestBackup;
+            try (java.util.stream.Stream<Path> fichiers = Files.list(backupDir)) {
+                latestBackup = fichiers
                     .filter(p -> p.getFileName().toString().startsWith(baseName + "_"))
                     .max((a, b) -> {
                         try {
@@ -184,20 +399,59 @@ public class CSVDatabase {
                             return 0;
                         }
                     });
-                
-                if (latestBackup.isPresent()) {
-                    Files.copy(latestBackup.get(), Paths.get(targetFile), StandardCopyOption.REPLACE_EXISTING);
-                    System.out.println("✓ Restauré: " + targetFile + " depuis " + latestBackup.get().getFileName());
-                }
             }
-            
-            System.out.println("✓ Restauration depuis backup terminée");
-            return true;
-            
-        } catch (IOException e) {
-            System.err.println("✗ Erreur lors de la restauration: " + e.getMessage());
+            derniers.add(latestBackup.orElse(null));
+        }
+        if (derniers.stream().allMatch(java.util.Objects::isNull)) {
+            System.err.println("✗ Aucun backup trouvé dans " + backupDir);
             return false;
         }
+        
+        viderJournalAvantRestauration(session);
+        for (int i = 0; i < baseNames.length; i++) {
+            final String targetFile = targetFiles[i];
+            Path latestBackup = derniers.get(i);
+            
+            if (latestBackup != null) {
+                // Remplacement atomique (jamais de table à moitié restaurée)
+                String hash;
+                try (InputStream in = Files.newInputStream(latestBackup)) {
+                    hash = ecrireFichierAtomique(targetFile, in::transferTo);
+                }
+                if (session == null) EntrepotBackups.enregistrerEmpreinte(Paths.get(targetFile), hash);
+                System.out.println("✓ Restauré: " + targetFile + " depuis " + latestBackup.getFileName());
+            }
+        }
+        
+        terminerRestauration(session);
+        System.out.println("✓ Restauration depuis backup terminée");
+        return true;
+    }
+    
+    /**
+     * Vide le journal juste avant de remplacer les tables par celles d'un backup : rejouées sur
+     * une génération plus ancienne, ses mutations y ajouteraient des trajets, acceptations et
+     * prix qui n'en faisaient pas partie. Le journal de la session est détaché (plus rien n'y
+     * est écrit jusqu'au rechargement).
+     */
+    private static void viderJournalAvantRestauration(Gestion_covoiturage session) {
+        Journal journal = (session != null) ? session.getJournal() : null;
+        if (session != null) session.setJournal(null);
+        if (journal == null) journal = new Journal(Paths.get(JOURNAL_FILE));
+        journal.vider();
+    }
+    
+    /**
+     * Après le remplacement des tables : le snapshot binaire et la table des trajets à
+     * emplacements fixes ne leur correspondent plus ; la session en cours est rechargée.
+     */
+    private static void terminerRestauration(Gestion_covoiturage session) throws IOException {
+        Files.deleteIfExists(Paths.get(SNAPSHOT_FILE));
+        abandonnerTrajetsFixes();
+        if (session != null) {
+            session.reinitialiser();
+            loadAllData(session);
+        }
     }
     
     // ============================================================
@@ -208,302 +462,607 @@ public class CSVDatabase {
      * Sauvegarde tous les conducteurs dans le fichier CSV correspondant.
      *
      * COMMENTAIRE DE FONCTIONNEMENT :
-     * 1. Ouvre un BufferedWriter (efficace pour l'écriture de texte)
+     * 1. Ouvre un EcrivainCSV sur un fichier temporaire (voir ecrireTableAtomique)
      * 2. Écrit la ligne d'en-tête
      * 3. Parcourt chaque Conducteur et écrit ses champs séparés par DELIMITER
+     * 4. Remplace atomiquement l'ancien fichier par le nouveau
      *
      * @param users Vecteur d'objets User (seules les instances Conducteur sont sauvegardées ici)
      */
-    public static void saveConducteurs(Vector<User> users) {
-        initializeDataFolder();
-        
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(
-                    new FileOutputStream(CONDUCTEURS_FILE), 
-                    StandardCharsets.UTF_8))) {
-            
-            // LIGNE D'EN-TÊTE - définit les colonnes
-            writer.write("CIN;Nom;Prenom;Tel;AnneeUniv;Adresse;Mail;PasswordHash;NomVoiture;MarqueVoiture;Matricule;PlacesDisponibles");
-            writer.newLine();
-            
-            // LIGNES DE DONNÉES - une par conducteur
-            for (User user : users) {
-                if (user instanceof Conducteur) {
-                    Conducteur c = (Conducteur) user;
-                    
-                    // Construit la ligne CSV en joignant les champs par le délimiteur
-                    String line = String.join(DELIMITER,
-                        escapeCSV(c.getCin()),
-                        escapeCSV(c.getNom()),
-                        escapeCSV(c.getPrenom()),
-                        escapeCSV(c.getTel()),
-                        String.valueOf(c.getAnneeUniversitaire().getValue()),
-                        escapeCSV(c.getAdresse()),
-                        escapeCSV(c.getMail()),
-                        escapeCSV(c.getPasswordHash() != null ? c.getPasswordHash() : ""),
-                        escapeCSV(c.getNomVoiture()),
-                        escapeCSV(c.getMarqueVoiture()),
-                        escapeCSV(c.getMatricule()),
-                        String.valueOf(c.getPlacesDisponibles())
-                    );
-                    
-                    writer.write(line);
-                    writer.newLine();
-                }
-            }
+    public static boolean saveConducteurs(Vector<User> users) {
+        try {
+            String mesure = ecrireTableAtomique(CONDUCTEURS_FILE, contenuConducteurs(users));
             
-            System.out.println("✓ Conducteurs sauvegardés: " + CONDUCTEURS_FILE);
+            System.out.println("✓ Conducteurs sauvegardés: " + CONDUCTEURS_FILE + " " + mesure);
+            return true;
             
         } catch (IOException e) {
             System.err.println("✗ Erreur sauvegarde conducteurs: " + e.getMessage());
+            return false;
         }
     }
     
     /**
-     * Sauvegarde tous les passagers dans le fichier CSV correspondant.
+     * Contenu de conducteurs.csv (voir saveConducteurs).
      */
-    public static void savePassagers(Vector<User> users) {
-        initializeDataFolder();
-        
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(
-                    new FileOutputStream(PASSAGERS_FILE), 
-                    StandardCharsets.UTF_8))) {
+    private static EcritureTable contenuConducteurs(Vector<User> users) {
+        return ecrivain -> {
+            // LIGNE D'EN-TÊTE - définit les colonnes
+            ecrivain.texte("CIN;Nom;Prenom;Tel;AnneeUniv;Adresse;Mail;PasswordHash;NomVoiture;MarqueVoiture;Matricule;PlacesDisponibles");
+            ecrivain.finLigne();
             
-            // LIGNE D'EN-TÊTE
-            writer.write("CIN;Nom;Prenom;Tel;AnneeUniv;Adresse;Mail;PasswordHash;ChercheCovoit");
-            writer.newLine();
+            // Mode à la demande : fusion avec la table existante
+            if (indexUtilisateurs != null) {
+                ecrireUtilisateursFusionnes(ecrivain, CONDUCTEURS_FILE, users, Conducteur.class,
+                    (e, u) -> ecrireConducteur(e, (Conducteur) u));
+                return;
+            }
             
-            // LIGNES DE DONNÉES
+            // LIGNES DE DONNÉES - une par conducteur
             for (User user : users) {
-                if (user instanceof Passager) {
-                    Passager p = (Passager) user;
-                    
-                    String line = String.join(DELIMITER,
-                        escapeCSV(p.getCin()),
-                        escapeCSV(p.getNom()),
-                        escapeCSV(p.getPrenom()),
-                        escapeCSV(p.getTel()),
-                        String.valueOf(p.getAnneeUniversitaire().getValue()),
-                        escapeCSV(p.getAdresse()),
-                        escapeCSV(p.getMail()),
-                        escapeCSV(p.getPasswordHash() != null ? p.getPasswordHash() : ""),
-                        String.valueOf(p.isChercheCovoit())
-                    );
-                    
-                    writer.write(line);
-                    writer.newLine();
+                if (user instanceof Conducteur) {
+                    ecrireConducteur(ecrivain, (Conducteur) user);
+                    ecrivain.finLigne();
                 }
             }
+        };
+    }
+    
+    /**
+     * Sauvegarde tous les passagers dans le fichier CSV correspondant.
+     */
+    public static boolean savePassagers(Vector<User> users) {
+        try {
+            String mesure = ecrireTableAtomique(PASSAGERS_FILE, contenuPassagers(users));
             
-            System.out.println("✓ Passagers sauvegardés: " + PASSAGERS_FILE);
+            System.out.println("✓ Passagers sauvegardés: " + PASSAGERS_FILE + " " + mesure);
+            return true;
             
         } catch (IOException e) {
             System.err.println("✗ Erreur sauvegarde passagers: " + e.getMessage());
+            return false;
         }
     }
     
     /**
-     * Sauvegarde tous les trajets dans le fichier CSV correspondant.
+     * Contenu de passagers.csv (voir savePassagers).
      */
-    public static void saveTrajets(Vector<Trajet> trajets) {
-        initializeDataFolder();
-        
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(
-                    new FileOutputStream(TRAJETS_FILE), 
-                    StandardCharsets.UTF_8))) {
-            
+    private static EcritureTable contenuPassagers(Vector<User> users) {
+        return ecrivain -> {
             // LIGNE D'EN-TÊTE
-            // Nouveau format: ajout de MaxPlaces;AcceptedCINs;PendingCINs
-            writer.write("Depart;Arrivee;DureeMinutes;Status;Prix;ConducteurCIN;PassagerCIN;MaxPlaces;AcceptedCINs;PendingCINs");
-            writer.newLine();
+            ecrivain.texte("CIN;Nom;Prenom;Tel;AnneeUniv;Adresse;Mail;PasswordHash;ChercheCovoit");
+            ecrivain.finLigne();
+            
+            // Mode à la demande : fusion avec la table existante
+            if (indexUtilisateurs != null) {
+                ecrireUtilisateursFusionnes(ecrivain, PASSAGERS_FILE, users, Passager.class,
+                    (e, u) -> ecrirePassager(e, (Passager) u));
+                return;
+            }
             
             // LIGNES DE DONNÉES
-            for (Trajet t : trajets) {
-                String conducteurCIN = (t.getConducteur() != null) ? t.getConducteur().getCin() : "";
-                // Pour compatibilité ascendante, fournir le premier CIN de passager accepté dans l'ancienne colonne
-                String passagerCIN = "";
-                if (!t.getPassagersAcceptes().isEmpty()) {
-                    passagerCIN = t.getPassagersAcceptes().get(0).getCin();
+            for (User user : users) {
+                if (user instanceof Passager) {
+                    ecrirePassager(ecrivain, (Passager) user);
+                    ecrivain.finLigne();
                 }
-                String maxPlaces = String.valueOf(t.getMaxPlaces());
-                String accepted = t.getPassagersAcceptesCINs();
-                String pending = t.getPassagersDemandesCINs();
-
-                String line = String.join(DELIMITER,
-                    escapeCSV(t.getDepartTrajet()),
-                    escapeCSV(t.getArriveeTrajet()),
-                    String.valueOf(t.getDureeTrajet().toMinutes()),
-                    escapeCSV(t.getStatusTrajet()),
-                    String.valueOf(t.getPrix()),
-                    escapeCSV(conducteurCIN),
-                    escapeCSV(passagerCIN),
-                    escapeCSV(maxPlaces),
-                    escapeCSV(accepted),
-                    escapeCSV(pending)
-                );
-                
-                writer.write(line);
-                writer.newLine();
             }
-            
-            System.out.println("✓ Trajets sauvegardés: " + TRAJETS_FILE);
-            
-        } catch (IOException e) {
-            System.err.println("✗ Erreur sauvegarde trajets: " + e.getMessage());
-        }
+        };
     }
     
-    // ============================================================
-    // ÉTAPE 3 : Opérations DE LECTURE - chargement des données depuis CSV
-    // ============================================================
-    
     /**
-     * Charge les conducteurs depuis le fichier CSV.
+     * Mode utilisateurs à la demande : les utilisateurs en mémoire ne sont qu'une partie de la table.
      *
      * COMMENTAIRE DE FONCTIONNEMENT :
-     * 1. Ouvre un BufferedReader (efficace pour la lecture de texte)
-     * 2. Saute la ligne d'en-tête
-     * 3. Lit chaque ligne et split par DELIMITER
-     * 4. Crée des objets Conducteur à partir des valeurs
-     *
-     * @return Liste d'objets Conducteur
+     * 1. Les utilisateurs du type donné présents en mémoire sont indexés par CIN
+     * 2. La table actuelle est parcourue dans l'ordre : un enregistrement dont l'utilisateur est en
+     *    mémoire est réécrit depuis la mémoire, les autres sont recopiés tels quels
+     * 3. Les utilisateurs en mémoire absents de la table (inscriptions) sont ajoutés à la fin
      */
-    public static List<Conducteur> loadConducteurs() {
-        List<Conducteur> conducteurs = new ArrayList<>();
-        Path filePath = Paths.get(CONDUCTEURS_FILE);
-        
-        // Vérifie si le fichier existe
-        if (!Files.exists(filePath)) {
-            System.out.println("ℹ Fichier conducteurs non trouvé, liste vide retournée");
-            return conducteurs;
+    private static void ecrireUtilisateursFusionnes(EcrivainCSV ecrivain, String file, Vector<User> users,
+                                                   Class<? extends User> type, EcritureUtilisateur ligne) throws IOException {
+        Map<String, User> enMemoire = new LinkedHashMap<>();
+        for (User u : users) {
+            if (type.isInstance(u)) enMemoire.putIfAbsent(IndexPagineCIN.cle(u.getCin()), u);
         }
         
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(
-                    new FileInputStream(CONDUCTEURS_FILE), 
-                    StandardCharsets.UTF_8))) {
-            
-            String line;
-            boolean isHeader = true;
-            
-            while ((line = reader.readLine()) != null) {
-                // Saute la ligne d'en-tête
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
-                
-                // Saute les lignes vides
-                if (line.trim().isEmpty()) continue;
-                
-                // Sépare la ligne par le délimiteur
-                String[] values = line.split(DELIMITER, -1); // -1 conserve les valeurs vides
-
-                // Valide qu'il y a suffisamment de colonnes
-                if (values.length >= 12) {
-                    try {
-                        Conducteur c = new Conducteur(
-                            unescapeCSV(values[0]),  // CIN
-                            unescapeCSV(values[1]),  // Nom
-                            unescapeCSV(values[2]),  // Prenom
-                            unescapeCSV(values[3]),  // Tel
-                            Year.of(Integer.parseInt(values[4])), // AnneeUniv
-                            unescapeCSV(values[5]),  // Adresse
-                            unescapeCSV(values[6]),  // Mail
-                            unescapeCSV(values[7]),  // PasswordHash (déjà haché)
-                            true,                     // isHashedPassword = true
-                            unescapeCSV(values[8]),  // NomVoiture
-                            unescapeCSV(values[9]),  // MarqueVoiture
-                            unescapeCSV(values[10]), // Matricule
-                            Integer.parseInt(values[11]) // PlacesDisponibles
-                        );
-                        conducteurs.add(c);
-                    } catch (Exception e) {
-                        System.err.println("⚠ Erreur parsing conducteur: " + e.getMessage());
-                    }
+        Path table = Paths.get(file);
+        if (Files.exists(table)) {
+            ByteBuffer buffer = LecteurCSV.projeter(table);
+            LecteurCSV lecteur = new LecteurCSV(buffer);
+            lecteur.suivant(); // en-tête
+            while (lecteur.suivant()) {
+                User u = enMemoire.remove(IndexPagineCIN.cle(lecteur.champ(0)));
+                if (u != null) {
+                    ligne.ecrire(ecrivain, u);
+                } else {
+                    ecrivain.brut(buffer, lecteur.debutEnregistrement(), lecteur.finEnregistrement());
                 }
+                ecrivain.finLigne();
             }
-            
-            System.out.println("✓ " + conducteurs.size() + " conducteurs chargés");
-            
-        } catch (IOException e) {
-            System.err.println("✗ Erreur lecture conducteurs: " + e.getMessage());
         }
-        
-        return conducteurs;
+        for (User u : enMemoire.values()) {
+            ligne.ecrire(ecrivain, u);
+            ecrivain.finLigne();
+        }
     }
     
     /**
-     * Charge les passagers depuis le fichier CSV.
+     * Écriture des champs d'un utilisateur (ecrireConducteur ou ecrirePassager).
      */
-    public static List<Passager> loadPassagers() {
-        List<Passager> passagers = new ArrayList<>();
-        Path filePath = Paths.get(PASSAGERS_FILE);
-        
-        if (!Files.exists(filePath)) {
-            System.out.println("ℹ Fichier passagers non trouvé, liste vide retournée");
-            return passagers;
-        }
-        
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(
-                    new FileInputStream(PASSAGERS_FILE), 
-                    StandardCharsets.UTF_8))) {
-            
-            String line;
-            boolean isHeader = true;
-            
-            while ((line = reader.readLine()) != null) {
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
-                
-                if (line.trim().isEmpty()) continue;
-                
-                String[] values = line.split(DELIMITER, -1);
-                
-                if (values.length >= 9) {
-                    try {
-                        // Remarque : le constructeur de Passager peut nécessiter une référence vers un Conducteur
-                        // Nous passons null initialement ; les relations seront recréées lors du chargement des trajets
-                        Passager p = new Passager(
-                            unescapeCSV(values[0]),  // CIN
-                            unescapeCSV(values[1]),  // Nom
-                            unescapeCSV(values[2]),  // Prenom
-                            unescapeCSV(values[3]),  // Tel
-                            Year.of(Integer.parseInt(values[4])), // AnneeUniv
-                            unescapeCSV(values[5]),  // Adresse
-                            unescapeCSV(values[6]),  // Mail
-                            unescapeCSV(values[7]),  // PasswordHash (déjà haché)
-                            true,                     // isHashedPassword = true
-                            Boolean.parseBoolean(values[8]), // ChercheCovoit
-                            null  // Conducteur - sera défini lors du chargement des trajets
-                        );
-                        passagers.add(p);
-                    } catch (Exception e) {
-                        System.err.println("⚠ Erreur parsing passager: " + e.getMessage());
-                    }
-                }
-            }
+    private interface EcritureUtilisateur {
+        void ecrire(EcrivainCSV ecrivain, User u) throws IOException;
+    }
+    
+    /**
+     * Sauvegarde tous les trajets dans le fichier CSV correspondant.
+     */
+    public static boolean saveTrajets(Vector<Trajet> trajets) {
+        try {
+            String mesure = ecrireTableAtomique(TRAJETS_FILE, contenuTrajets(trajets));
             
-            System.out.println("✓ " + passagers.size() + " passagers chargés");
+            System.out.println("✓ Trajets sauvegardés: " + TRAJETS_FILE + " " + mesure);
+            return true;
             
         } catch (IOException e) {
-            System.err.println("✗ Erreur lecture passagers: " + e.getMessage());
+            System.err.println("✗ Erreur sauvegarde trajets: " + e.getMessage());
+            return false;
         }
-        
-        return passagers;
     }
     
     /**
-     * Charge les trajets depuis le fichier CSV.
-     * Remarque : nécessite que les conducteurs et passagers soient chargés au préalable
-     * afin de reconstruire les références par CIN.
+     * Contenu de trajets.csv (voir saveTrajets).
+     */
+    private static EcritureTable contenuTrajets(Vector<Trajet> trajets) {
+        return ecrivain -> {
+            // LIGNE D'EN-TÊTE
+            // Nouveau format: ajout de MaxPlaces;AcceptedCINs;PendingCINs puis Id (identifiant stable du trajet)
+            ecrivain.texte(ENTETE_TRAJETS);
+            ecrivain.finLigne();
+            
+            // LIGNES DE DONNÉES
+            for (Trajet t : trajets) {
+                ecrireTrajet(ecrivain, t);
+                ecrivain.finLigne();
+            }
+        };
+    }
+    
+    /**
+     * Mode trajets à emplacements fixes : enregistre les trajets modifiés à leur place.
+     *
+     * @param ids identifiants des trajets modifiés, null si toute la table est à réécrire
+     */
+    private static boolean saveTrajetsFixes(Gestion_covoiturage gestion, Set<Long> ids) {
+        try {
+            trajetsFixes.enregistrer(gestion, ids);
+            return true;
+        } catch (IOException e) {
+            System.err.println("✗ Erreur sauvegarde trajets: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    /**
+     * Régénère trajets.csv depuis la table des trajets à emplacements fixes (backup, fermeture).
+     */
+    private static void exporterTrajetsFixes() {
+        if (trajetsFixes.csvAJour()) return;
+        try {
+            String mesure = ecrireTableAtomique(TRAJETS_FILE, ecrivain -> {
+                ecrivain.texte(ENTETE_TRAJETS);
+                ecrivain.finLigne();
+                trajetsFixes.exporterCSV(ecrivain);
+            });
+            trajetsFixes.noterCSV();
+            System.out.println("✓ Trajets exportés: " + TRAJETS_FILE + " " + mesure);
+        } catch (IOException e) {
+            System.err.println("⚠ Export de " + TRAJETS_FILE + " échoué: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Après une restauration, trajets.csv redevient la référence : la table à emplacements fixes
+     * n'est plus utilisée pendant cette session et sera reconstruite au prochain chargement.
+     */
+    private static void abandonnerTrajetsFixes() {
+        if (trajetsFixes != null) {
+            trajetsFixes.fermer();
+            trajetsFixes = null;
+        }
+    }
+    
+    /**
+     * Écrit le snapshot binaire des trois tables (voir SnapshotBinaire).
+     * Appelé après l'écriture des CSV : le snapshot est alors plus récent qu'eux.
+     */
+    public static boolean saveSnapshot(Vector<User> users, Vector<Trajet> trajets) {
+        try {
+            ecrireFichierAtomique(SNAPSHOT_FILE, out -> SnapshotBinaire.ecrire(out, users, trajets));
+            System.out.println("✓ Snapshot binaire sauvegardé: " + SNAPSHOT_FILE);
+            return true;
+        } catch (IOException e) {
+            System.err.println("✗ Erreur sauvegarde snapshot: " + e.getMessage());
+            return false;
+        }
+    }
+    
+    // ============================================================
+    // REMPLACEMENT ATOMIQUE DES TABLES
+    // ============================================================
+    
+    /**
+     * Contenu d'une table à écrire (en-tête + lignes).
+     */
+    private interface EcritureTable {
+        void ecrire(EcrivainCSV ecrivain) throws IOException;
+    }
+    
+    /**
+     * Contenu binaire d'un fichier à écrire (snapshot).
+     */
+    interface EcritureFichier {
+        void ecrire(OutputStream out) throws IOException;
+    }
+    
+    /**
+     * Écrit une table sans jamais laisser de fichier tronqué, même en cas d'arrêt brutal.
+     *
+     * EXPLICATION PAS À PAS :
+     * 1. Le contenu est écrit dans "table.csv.tmp" puis forcé sur disque (fsync)
+     * 2. "table.csv.tmp" est renommé en "table.csv.ready" : le fichier est alors complet
+     * 3. "table.csv.ready" remplace "table.csv" par un déplacement atomique
+     *
+     * Un ".tmp" restant au démarrage est incomplet (on le jette) ; un ".ready" restant est
+     * complet (on termine le remplacement) - voir terminerRemplacementsInterrompus().
+     *
+     * Plusieurs tables d'un même point de contrôle passent ensemble par ces étapes (voir
+     * ecrireTablesCSV) : preparerTable pour chacune, puis mettreEnPlace.
+     */
+    private static String ecrireTableAtomique(String file, EcritureTable contenu) throws IOException {
+        List<TablePreparee> tables = new ArrayList<>();
+        try {
+            tables.add(preparerTable(file, contenu));
+            mettreEnPlace(tables);
+        } catch (IOException e) {
+            abandonner(tables);
+            throw e;
+        }
+        return tables.get(0).mesure;
+    }
+    
+    /**
+     * Table écrite dans "table.csv.tmp" (étape 1), pas encore mise en place.
+     */
+    private static final class TablePreparee {
+        final String file;
+        final String hash;
+        final EntrepotBackups.ObjetEnCours objet;
+        final EcrivainCSV ecrivain;
+        final String mesure;
+        
+        TablePreparee(String file, String hash, EntrepotBackups.ObjetEnCours objet, EcrivainCSV ecrivain, String mesure) {
+            this.file = file;
+            this.hash = hash;
+            this.objet = objet;
+            this.ecrivain = ecrivain;
+            this.mesure = mesure;
+        }
+    }
+    
+    /**
+     * Étape 1 de ecrireTableAtomique : écrit et force sur disque "table.csv.tmp", avec l'objet de
+     * backup compressé et les sommes de contrôle produits dans la même passe.
+     */
+    private static TablePreparee preparerTable(String file, EcritureTable contenu) throws IOException {
+        // L'objet de backup compressé est produit dans la même passe (voir EntrepotBackups)
+        EntrepotBackups.ObjetEnCours objet = EntrepotBackups.nouvelObjet();
+        EcrivainCSV[] ecrit = new EcrivainCSV[1];
+        String hash;
+        try {
+            hash = ecrireTemporaire(file, out -> {
+                OutputStream sortie = (objet != null) ? objet.dedoubler(out) : out;
+                EcrivainCSV ecrivain = new EcrivainCSV(sortie);
+                ecrivain.calculerSommes();
+                contenu.ecrire(ecrivain);
+                ecrivain.vider();
+                ecrit[0] = ecrivain;
+            });
+        } catch (IOException e) {
+            if (objet != null) objet.abandonner();
+            throw e;
+        }
+        return new TablePreparee(file, hash, objet, ecrit[0], mesureEcriture(ecrit[0]));
+    }
+    
+    /**
+     * Étapes 2 et 3 de ecrireTableAtomique pour un ensemble de tables, comme restoreFromBackup :
+     * tous les ".tmp" deviennent ".ready" avant qu'une seule table ne soit remplacée.
+     *
+     * COMMENTAIRE DE FONCTIONNEMENT :
+     * - Un échec avant que toutes les tables soient ".ready" ne remplace aucune table (les
+     *   ".ready" déjà créés sont supprimés, l'appelant jette les ".tmp" avec abandonner).
+     * - Ensuite le point de contrôle est acquis : un remplacement qui échoue ici, ou qu'un arrêt
+     *   brutal interrompt, est terminé au prochain démarrage (terminerRemplacementsInterrompus).
+     */
+    private static void mettreEnPlace(List<TablePreparee> tables) throws IOException {
+        List<Path> pretes = new ArrayList<>();
+        try {
+            for (TablePreparee table : tables) {
+                Path ready = Paths.get(table.file + ".ready");
+                deplacerAtomiquement(Paths.get(table.file + ".tmp"), ready);
+                pretes.add(ready);
+            }
+        } catch (IOException e) {
+            for (Path ready : pretes) {
+                try {
+                    Files.deleteIfExists(ready);
+                } catch (IOException suppression) {
+                    System.err.println("✗ " + ready + " non supprimé, il sera mis en place au prochain démarrage: " + suppression.getMessage());
+                }
+            }
+            throw e;
+        }
+        
+        for (TablePreparee table : tables) {
+            Path target = Paths.get(table.file);
+            try {
+                deplacerAtomiquement(Paths.get(table.file + ".ready"), target);
+            } catch (IOException e) {
+                System.err.println("⚠ " + table.file + " sera remplacé au prochain démarrage: " + e.getMessage());
+                continue;
+            }
+            if (table.objet != null) table.objet.valider(table.hash);
+            // Empreinte calculée pendant l'écriture : le prochain backup n'aura pas à relire la table
+            EntrepotBackups.enregistrerEmpreinte(target, table.hash);
+            // Sommes de contrôle calculées pendant l'écriture (voir ControleIntegrite)
+            try {
+                ControleIntegrite.ecrireSommes(target, table.ecrivain.sommes());
+            } catch (IOException e) {
+                System.err.println("⚠ Sommes de contrôle non enregistrées pour " + table.file + ": " + e.getMessage());
+            }
+        }
+        if (!tables.isEmpty()) synchroniserDossier(Paths.get(tables.get(0).file).toAbsolutePath().getParent());
+    }
+    
+    /**
+     * Jette les tables préparées non mises en place ("table.csv.tmp" et objet de backup).
+     */
+    private static void abandonner(List<TablePreparee> tables) {
+        for (TablePreparee table : tables) {
+            if (table.objet != null) table.objet.abandonner();
+            try {
+                Files.deleteIfExists(Paths.get(table.file + ".tmp"));
+            } catch (IOException e) {
+                // Ignorer : un ".tmp" restant est jeté au prochain démarrage
+            }
+        }
+    }
+    
+    /**
+     * Résumé d'une écriture de table pour les messages : lignes et taille. Le débit et les
+     * allocations par ligne se mesurent à part (voir BancEcritureCSV).
+     */
+    private static String mesureEcriture(EcrivainCSV ecrivain) {
+        return "(" + ecrivain.lignes() + " lignes, " + ecrivain.octetsEcrits() / 1024 + " Ko)";
+    }
+    
+    /**
+     * Même protocole que ecrireTableAtomique pour un contenu binaire quelconque.
+     *
+     * @return empreinte SHA-256 (hexadécimal) du contenu écrit
+     */
+    private static String ecrireFichierAtomique(String file, EcritureFichier contenu) throws IOException {
+        String hash = ecrireTemporaire(file, contenu);
+        Path target = Paths.get(file);
+        Path ready = Paths.get(file + ".ready");
+        deplacerAtomiquement(Paths.get(file + ".tmp"), ready);
+        deplacerAtomiquement(ready, target);
+        synchroniserDossier(target.toAbsolutePath().getParent());
+        return hash;
+    }
+    
+    /**
+     * Remplace une table par un contenu déjà vérifié (enregistrements mis en quarantaine retirés
+     * par ControleIntegrite), avec le même protocole ".tmp" / ".ready". L'empreinte est mémorisée :
+     * ce remplacement n'est pas pris pour une modification hors de l'application. Une table d'un
+     * autre dossier (ControleIntegrite lancé seul) n'a pas d'empreinte : rien n'est écrit dans data/.
+     */
+    static void remplacerTable(Path table, EcritureFichier contenu) throws IOException {
+        String hash = ecrireFichierAtomique(table.toString(), contenu);
+        Path dossier = table.toAbsolutePath().normalize().getParent();
+        if (Paths.get(DATA_FOLDER).toAbsolutePath().normalize().equals(dossier)) {
+            EntrepotBackups.enregistrerEmpreinte(table, hash);
+        }
+    }
+    
+    /**
+     * Étape 1 du remplacement atomique : écrit et force sur disque "fichier.tmp".
+     *
+     * @return empreinte SHA-256 (hexadécimal) du contenu écrit
+     */
+    private static String ecrireTemporaire(String file, EcritureFichier contenu) throws IOException {
+        Path tmp = Paths.get(file + ".tmp");
+        // Dossier du fichier lui-même (pas forcément data/ : voir remplacerTable)
+        Path dossier = tmp.toAbsolutePath().getParent();
+        if (dossier != null) Files.createDirectories(dossier);
+        
+        MessageDigest digest = EntrepotBackups.nouveauDigest();
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            contenu.ecrire(new DigestOutputStream(out, digest));
+            out.getChannel().force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+    
+    /**
+     * Déplacement atomique avec repli sur un remplacement simple si le système de fichiers
+     * ne supporte pas ATOMIC_MOVE.
+     */
+    private static void deplacerAtomiquement(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+    
+    /**
+     * Force l'écriture des entrées du dossier (renommages) sur disque.
+     * Non supporté sur certains systèmes (ex: Windows) : l'erreur est alors ignorée.
+     */
+    static void synchroniserDossier(Path dossier) {
+        try (java.nio.channels.FileChannel channel = java.nio.channels.FileChannel.open(dossier, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            // Ignorer : la durabilité du renommage dépend alors du système de fichiers
+        }
+    }
+    
+    /**
+     * Vérification au démarrage : termine ou annule les remplacements de tables interrompus
+     * par un arrêt brutal (kill, coupure de courant, shutdown hook interrompu...).
+     */
+    public static void terminerRemplacementsInterrompus() {
+        String[] files = {CONDUCTEURS_FILE, PASSAGERS_FILE, TRAJETS_FILE, SNAPSHOT_FILE};
+        
+        for (String file : files) {
+            Path target = Paths.get(file);
+            Path tmp = Paths.get(file + ".tmp");
+            Path ready = Paths.get(file + ".ready");
+            try {
+                if (Files.exists(ready)) {
+                    // Le nouveau fichier était complet : on termine le remplacement
+                    deplacerAtomiquement(ready, target);
+                    System.out.println("✓ Remplacement interrompu terminé: " + file);
+                }
+                if (Files.deleteIfExists(tmp)) {
+                    // Écriture incomplète : l'ancien fichier est intact, on jette le temporaire
+                    System.out.println("ℹ Écriture incomplète ignorée: " + tmp.getFileName());
+                }
+            } catch (IOException e) {
+                System.err.println("⚠ Vérification échouée pour " + file + ": " + e.getMessage());
+            }
+        }
+    }
+    
+    // ============================================================
+    // ÉTAPE 3 : Opérations DE LECTURE - chargement des données depuis CSV
+    // ============================================================
+    
+    /**
+     * Charge les conducteurs depuis le fichier CSV.
+     *
+     * COMMENTAIRE DE FONCTIONNEMENT :
+     * 1. Ouvre un LecteurCSV (fichier projeté en mémoire, lecture en une seule passe)
+     * 2. Saute la ligne d'en-tête
+     * 3. Parcourt chaque enregistrement (les champs entre guillemets peuvent contenir ';')
+     * 4. Crée des objets Conducteur à partir des champs
+     *
+     * @return Liste d'objets Conducteur
+     */
+    public static List<Conducteur> loadConducteurs() {
+        List<Conducteur> conducteurs = new ArrayList<>();
+        Path filePath = Paths.get(CONDUCTEURS_FILE);
+        
+        // Vérifie si le fichier existe
+        if (!Files.exists(filePath)) {
+            System.out.println("ℹ Fichier conducteurs non trouvé, liste vide retournée");
+            return conducteurs;
+        }
+        
+        try {
+            ByteBuffer buffer = LecteurCSV.projeter(filePath);
+            LecteurCSV lecteur = new LecteurCSV(buffer);
+            List<ControleIntegrite.Rejet> rejets = new ArrayList<>();
+            
+            // Saute la ligne d'en-tête
+            lecteur.suivant();
+            
+            while (lecteur.suivant()) {
+                // Valide qu'il y a suffisamment de colonnes
+                if (lecteur.nombreChamps() >= 12) {
+                    try {
+                        conducteurs.add(lireConducteur(lecteur, 0));
+                    } catch (Exception e) {
+                        System.err.println("⚠ Erreur parsing conducteur: " + e.getMessage());
+                        rejets.add(new ControleIntegrite.Rejet(lecteur.debutEnregistrement(), lecteur.finEnregistrement(), String.valueOf(e.getMessage())));
+                    }
+                }
+            }
+            ControleIntegrite.mettreEnQuarantaine(filePath, buffer, rejets);
+            
+            System.out.println("✓ " + conducteurs.size() + " conducteurs chargés");
+            
+        } catch (IOException e) {
+            System.err.println("✗ Erreur lecture conducteurs: " + e.getMessage());
+        }
+        
+        return conducteurs;
+    }
+    
+    /**
+     * Charge les passagers depuis le fichier CSV.
+     */
+    public static List<Passager> loadPassagers() {
+        List<Passager> passagers = new ArrayList<>();
+        Path filePath = Paths.get(PASSAGERS_FILE);
+        
+        if (!Files.exists(filePath)) {
+            System.out.println("ℹ Fichier passagers non trouvé, liste vide retournée");
+            return passagers;
+        }
+        
+        try {
+            ByteBuffer buffer = LecteurCSV.projeter(filePath);
+            LecteurCSV lecteur = new LecteurCSV(buffer);
+            List<ControleIntegrite.Rejet> rejets = new ArrayList<>();
+            lecteur.suivant(); // en-tête
+            
+            while (lecteur.suivant()) {
+                if (lecteur.nombreChamps() >= 9) {
+                    try {
+                        passagers.add(lirePassager(lecteur, 0));
+                    } catch (Exception e) {
+                        System.err.println("⚠ Erreur parsing passager: " + e.getMessage());
+                        rejets.add(new ControleIntegrite.Rejet(lecteur.debutEnregistrement(), lecteur.finEnregistrement(), String.valueOf(e.getMessage())));
+                    }
+                }
+            }
+            ControleIntegrite.mettreEnQuarantaine(filePath, buffer, rejets);
+            
+            System.out.println("✓ " + passagers.size() + " passagers chargés");
+            
+        } catch (IOException e) {
+            System.err.println("✗ Erreur lecture passagers: " + e.getMessage());
+        }
+        
+        return passagers;
+    }
+    
+    /**
+     * Charge les trajets depuis le fichier CSV.
+     * Remarque : nécessite que les conducteurs et passagers soient chargés au préalable
+     * afin de reconstruire les références par CIN.
+     *
+     * COMMENTAIRE DE FONCTIONNEMENT (chargement parallèle) :
+     * 1. Le fichier projeté est découpé en blocs qui commencent tous au début d'un
+     *    enregistrement (LecteurCSV.decouperEnBlocs tient compte des guillemets)
+     * 2. Chaque bloc est lu par son propre LecteurCSV dans le pool fork-join : les champs
+     *    sont convertis (chaînes, nombres, listes de CIN) sans toucher aux objets partagés
+     * 3. Fusion séquentielle dans l'ordre du fichier : résolution des CIN via IndexCIN et
+     *    création des Trajet, exactement comme un chargement séquentiel
+     * Les petits fichiers (moins de SEUIL_CHARGEMENT_PARALLELE octets) sont lus en un seul bloc.
      */
     public static List<Trajet> loadTrajets(Vector<User> users) {
+        // Index CIN -> utilisateur construit une seule fois pour toutes les références du fichier
+        return loadTrajets(new IndexCIN(users));
+    }
+    
+    private static List<Trajet> loadTrajets(IndexCIN index) {
         List<Trajet> trajets = new ArrayList<>();
         Path filePath = Paths.get(TRAJETS_FILE);
         
@@ -512,87 +1071,34 @@ public class CSVDatabase {
             return trajets;
         }
         
-        try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(
-                    new FileInputStream(TRAJETS_FILE), 
-                    StandardCharsets.UTF_8))) {
-            
-            String line;
-            boolean isHeader = true;
+        long debut = System.nanoTime();
+        
+        try {
+            // Étape parallèle : conversion des champs, bloc par bloc (l'ordre des blocs est conservé)
+            List<List<LigneTrajet>> blocs = lireLignesTrajets(filePath);
+            int nbBlocs = blocs.size();
             
-            while ((line = reader.readLine()) != null) {
-                if (isHeader) {
-                    isHeader = false;
-                    continue;
-                }
-                
-                if (line.trim().isEmpty()) continue;
-                
-                String[] values = line.split(DELIMITER, -1);
-                
-                if (values.length >= 7) {
+            // Étape séquentielle : résolution des références dans l'ordre du fichier
+            List<ControleIntegrite.Rejet> rejets = new ArrayList<>();
+            for (List<LigneTrajet> bloc : blocs) {
+                for (LigneTrajet ligne : bloc) {
+                    if (ligne.erreur != null) {
+                        System.err.println("⚠ Erreur parsing trajet: " + ligne.erreur);
+                        rejets.add(ligne.rejet(ligne.erreur));
+                        continue;
+                    }
                     try {
-                        // Recherche du conducteur et du passager par CIN
-                        Conducteur conducteur = findConducteurByCIN(users, values[5]);
-                        Passager passager = findPassagerByCIN(users, values[6]);
-
-                        // Si format nouveau (avec maxPlaces et listes)
-                        int maxPlaces = 1;
-                        Vector<Passager> accepted = new Vector<>();
-                        Vector<Passager> pending = new Vector<>();
-
-                        if (values.length >= 10) {
-                            try {
-                                maxPlaces = Integer.parseInt(values[7].trim().isEmpty() ? "1" : values[7].trim());
-                            } catch (NumberFormatException e) {
-                                maxPlaces = (conducteur != null) ? conducteur.getPlacesDisponibles() : 1;
-                            }
-                            // parse accepted CINs
-                            String acceptedStr = unescapeCSV(values[8]);
-                            if (!acceptedStr.isEmpty()) {
-                                String[] ac = acceptedStr.split(",");
-                                for (String cin : ac) {
-                                    Passager p = findPassagerByCIN(users, cin.trim());
-                                    if (p != null) accepted.add(p);
-                                }
-                            }
-                            // parse pending CINs
-                            String pendingStr = unescapeCSV(values[9]);
-                            if (!pendingStr.isEmpty()) {
-                                String[] pc = pendingStr.split(",");
-                                for (String cin : pc) {
-                                    Passager p = findPassagerByCIN(users, cin.trim());
-                                    if (p != null) pending.add(p);
-                                }
-                            }
-                        } else {
-                            // Ancien format : si passager non nul, l'ajouter aux acceptés
-                            if (passager != null) accepted.add(passager);
-                            maxPlaces = (conducteur != null) ? conducteur.getPlacesDisponibles() : 1;
-                        }
-
-                        Trajet t = new Trajet(
-                            unescapeCSV(values[0]),  // Depart
-                            unescapeCSV(values[1]),  // Arrivee
-                            Duration.ofMinutes(Long.parseLong(values[2])), // Duree
-                            unescapeCSV(values[3]),  // Status
-                            Float.parseFloat(values[4]), // Prix
-                            conducteur,
-                            maxPlaces
-                        );
-
-                        // Attacher les listes de passagers acceptés et en attente
-                        for (Passager p : accepted) t.getPassagersAcceptes().add(p);
-                        for (Passager p : pending) t.getPassagersDemandes().add(p);
-
-                        trajets.add(t);
+                        trajets.add(construireTrajet(ligne, index));
                     } catch (Exception e) {
                         System.err.println("⚠ Erreur parsing trajet: " + e.getMessage());
+                        rejets.add(ligne.rejet(String.valueOf(e.getMessage())));
                     }
                 }
             }
+            quarantaineTrajets(filePath, blocs, rejets);
             
-            System.out.println("✓ " + trajets.size() + " trajets chargés");
+            System.out.println("✓ " + trajets.size() + " trajets chargés ("
+                + (System.nanoTime() - debut) / 1_000_000 + " ms, " + nbBlocs + " bloc(s))");
             
         } catch (IOException e) {
             System.err.println("✗ Erreur lecture trajets: " + e.getMessage());
@@ -601,67 +1107,472 @@ public class CSVDatabase {
         return trajets;
     }
     
+    /**
+     * Convertit les enregistrements d'un fichier trajets sans résoudre les CIN, en blocs lus en
+     * parallèle (un seul bloc sous SEUIL_CHARGEMENT_PARALLELE octets).
+     * Ne touche à aucun objet partagé : utilisable hors de l'EDT (voir SurveillanceDonnees).
+     *
+     * @return les lignes, bloc par bloc, dans l'ordre du fichier
+     */
+    static List<List<LigneTrajet>> lireLignesTrajets(Path filePath) throws IOException {
+        ByteBuffer buffer = LecteurCSV.projeter(filePath);
+        LecteurCSV entete = new LecteurCSV(buffer);
+        entete.suivant(); // en-tête
+        
+        int nbBlocs = 1;
+        if (buffer.limit() >= SEUIL_CHARGEMENT_PARALLELE) {
+            nbBlocs = Runtime.getRuntime().availableProcessors() * 2;
+        }
+        int[] coupures = LecteurCSV.decouperEnBlocs(buffer, entete.position(), buffer.limit(), nbBlocs);
+        return IntStream.range(0, nbBlocs)
+            .parallel()
+            .mapToObj(i -> lireBlocTrajets(buffer, coupures[i], coupures[i + 1]))
+            .collect(Collectors.toList());
+    }
+    
+    /**
+     * Lit les enregistrements de la portion [debut, fin) du fichier trajets.
+     * Appelée en parallèle : ne manipule que des données locales au bloc.
+     */
+    private static List<LigneTrajet> lireBlocTrajets(ByteBuffer buffer, int debut, int fin) {
+        List<LigneTrajet> lignes = new ArrayList<>();
+        LecteurCSV lecteur = new LecteurCSV(buffer, debut, fin);
+        while (lecteur.suivant()) {
+            if (lecteur.nombreChamps() >= 7) {
+                LigneTrajet ligne;
+                try {
+                    ligne = lireLigneTrajet(lecteur, 0);
+                } catch (Exception e) {
+                    ligne = LigneTrajet.enErreur(String.valueOf(e.getMessage()));
+                }
+                ligne.source = buffer;
+                ligne.debut = lecteur.debutEnregistrement();
+                ligne.fin = lecteur.finEnregistrement();
+                lignes.add(ligne);
+            }
+        }
+        return lignes;
+    }
+    
+    /**
+     * Charge le snapshot binaire s'il est plus récent que les trois CSV.
+     * Un CSV modifié à la main (ou restauré) après le dernier snapshot le rend donc caduc.
+     *
+     * @return le contenu du snapshot, ou null s'il faut charger les CSV
+     */
+    public static SnapshotBinaire.Contenu loadSnapshot() {
+        Path snapshot = Paths.get(SNAPSHOT_FILE);
+        try {
+            if (!Files.exists(snapshot)) return null;
+            String perime = csvPlusRecent();
+            if (perime != null) {
+                System.out.println("ℹ Snapshot binaire plus ancien que " + perime + ", chargement CSV");
+                return null;
+            }
+            
+            long debut = System.nanoTime();
+            SnapshotBinaire.Contenu contenu = SnapshotBinaire.lire(LecteurCSV.projeter(snapshot));
+            System.out.println("✓ Snapshot binaire chargé: " + contenu.conducteurs.size() + " conducteurs, "
+                + contenu.passagers.size() + " passagers, " + contenu.trajets.size() + " trajets ("
+                + (System.nanoTime() - debut) / 1_000_000 + " ms)");
+            return contenu;
+        } catch (IOException e) {
+            System.err.println("⚠ Snapshot binaire illisible (" + e.getMessage() + "), chargement CSV");
+            return null;
+        }
+    }
+    
+    /**
+     * @return true si le snapshot binaire existe et n'est plus ancien qu'aucun CSV
+     */
+    private static boolean snapshotAJour() {
+        try {
+            return Files.exists(Paths.get(SNAPSHOT_FILE)) && csvPlusRecent() == null;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+    
+    /**
+     * @return premier CSV absent ou modifié après le snapshot binaire, null s'il n'y en a pas
+     */
+    private static String csvPlusRecent() throws IOException {
+        FileTime dateSnapshot = Files.getLastModifiedTime(Paths.get(SNAPSHOT_FILE));
+        for (String file : new String[] {CONDUCTEURS_FILE, PASSAGERS_FILE, TRAJETS_FILE}) {
+            Path csv = Paths.get(file);
+            if (!Files.exists(csv) || Files.getLastModifiedTime(csv).compareTo(dateSnapshot) > 0) return file;
+        }
+        return null;
+    }
+    
     // ============================================================
     // ÉTAPE 4 : Méthodes d'aide
     // ============================================================
     
     /**
-     * Échappe les caractères spéciaux dans les valeurs CSV.
-     * Si une valeur contient le délimiteur ou des guillemets, on l'entoure de guillemets
-     * et on double les guillemets internes conformément à la norme CSV.
+     * Construit la ligne CSV d'un conducteur (sans retour à la ligne).
+     * Utilisée par le journal des mutations (les tables sont écrites par ecrireConducteur).
      */
-    private static String escapeCSV(String value) {
-        if (value == null) return "";
+    static String ligneConducteur(Conducteur c) {
+        return EcrivainCSV.ligne(e -> ecrireConducteur(e, c));
+    }
+    
+    /**
+     * Construit la ligne CSV d'un passager (sans retour à la ligne).
+     */
+    static String lignePassager(Passager p) {
+        return EcrivainCSV.ligne(e -> ecrirePassager(e, p));
+    }
+    
+    /**
+     * Construit la ligne CSV d'un trajet (sans retour à la ligne).
+     */
+    static String ligneTrajet(Trajet t) {
+        return EcrivainCSV.ligne(e -> ecrireTrajet(e, t));
+    }
+    
+    /**
+     * Écrit les champs d'un conducteur (sans retour à la ligne).
+     */
+    static void ecrireConducteur(EcrivainCSV e, Conducteur c) throws IOException {
+        e.champ(c.getCin());
+        e.champ(c.getNom());
+        e.champ(c.getPrenom());
+        e.champ(c.getTel());
+        e.champ(c.getAnneeUniversitaire().getValue());
+        e.champ(c.getAdresse());
+        e.champ(c.getMail());
+        e.champ(c.getPasswordHash());
+        e.champ(c.getNomVoiture());
+        e.champ(c.getMarqueVoiture());
+        e.champ(c.getMatricule());
+        e.champ(c.getPlacesDisponibles());
+    }
+    
+    /**
+     * Écrit les champs d'un passager (sans retour à la ligne).
+     */
+    static void ecrirePassager(EcrivainCSV e, Passager p) throws IOException {
+        e.champ(p.getCin());
+        e.champ(p.getNom());
+        e.champ(p.getPrenom());
+        e.champ(p.getTel());
+        e.champ(p.getAnneeUniversitaire().getValue());
+        e.champ(p.getAdresse());
+        e.champ(p.getMail());
+        e.champ(p.getPasswordHash());
+        e.champ(p.isChercheCovoit());
+    }
+    
+    /**
+     * Écrit les champs d'un trajet (sans retour à la ligne).
+     */
+    static void ecrireTrajet(EcrivainCSV e, Trajet t) throws IOException {
+        e.champ(t.getDepartTrajet());
+        e.champ(t.getArriveeTrajet());
+        e.champ(t.getDureeTrajet().toMinutes());
+        e.champ(t.getStatusTrajet());
+        e.champ(t.getPrix());
+        e.champ(t.getConducteur() != null ? t.getConducteur().getCin() : null);
+        // Pour compatibilité ascendante, le premier CIN de passager accepté dans l'ancienne colonne
+        e.champ(t.getPassagersAcceptes().isEmpty() ? null : t.getPassagersAcceptes().get(0).getCin());
+        e.champ(t.getMaxPlaces());
+        e.champCINs(t.getPassagersAcceptes());
+        e.champCINs(t.getPassagersDemandes());
+        e.champ(t.getId());
+    }
+    
+    /**
+     * Crée un Conducteur à partir de l'enregistrement courant (12 colonnes à partir de "debut").
+     */
+    static Conducteur lireConducteur(LecteurCSV l, int debut) {
+        return new Conducteur(
+            l.champ(debut),          // CIN
+            l.champ(debut + 1),      // Nom
+            l.champ(debut + 2),      // Prenom
+            l.champ(debut + 3),      // Tel
+            Year.of(l.champEntier(debut + 4)), // AnneeUniv
+            l.champ(debut + 5),      // Adresse
+            l.champ(debut + 6),      // Mail
+            l.champ(debut + 7),      // PasswordHash (déjà haché)
+            true,                     // isHashedPassword = true
+            DictionnaireChaines.partager(l.champ(debut + 8)), // NomVoiture
+            DictionnaireChaines.partager(l.champ(debut + 9)), // MarqueVoiture
+            l.champ(debut + 10),     // Matricule
+            l.champEntier(debut + 11) // PlacesDisponibles
+        );
+    }
+    
+    /**
+     * Crée un Passager à partir de l'enregistrement courant (9 colonnes à partir de "debut").
+     */
+    static Passager lirePassager(LecteurCSV l, int debut) {
+        // Remarque : le constructeur de Passager peut nécessiter une référence vers un Conducteur
+        // Nous passons null initialement ; les relations seront recréées lors du chargement des trajets
+        return new Passager(
+            l.champ(debut),          // CIN
+            l.champ(debut + 1),      // Nom
+            l.champ(debut + 2),      // Prenom
+            l.champ(debut + 3),      // Tel
+            Year.of(l.champEntier(debut + 4)), // AnneeUniv
+            l.champ(debut + 5),      // Adresse
+            l.champ(debut + 6),      // Mail
+            l.champ(debut + 7),      // PasswordHash (déjà haché)
+            true,                     // isHashedPassword = true
+            Boolean.parseBoolean(l.champ(debut + 8)), // ChercheCovoit
+            null  // Conducteur - sera défini lors du chargement des trajets
+        );
+    }
+    
+    /**
+     * Crée un Trajet à partir de l'enregistrement courant (au moins 7 colonnes à partir de "debut"),
+     * en reconstruisant les références vers les conducteurs et passagers par CIN.
+     */
+    static Trajet lireTrajet(LecteurCSV l, int debut, IndexCIN index) {
+        return construireTrajet(lireLigneTrajet(l, debut), index);
+    }
+    
+    /**
+     * Champs d'un enregistrement trajet déjà convertis, avant résolution des références.
+     * Permet de séparer la lecture (parallélisable) de la résolution des CIN (séquentielle).
+     */
+    static class LigneTrajet {
+        String depart;
+        String arrivee;
+        long dureeMinutes;
+        String status;
+        float prix;
+        String conducteurCIN;
+        String passagerCIN;
+        boolean nouveauFormat;
+        // null si la colonne MaxPlaces est invalide (repli sur les places du conducteur)
+        Integer maxPlaces;
+        String[] acceptes;
+        String[] demandes;
+        long id;
+        String erreur;
+        // Position de l'enregistrement dans le fichier lu (lireLignesTrajets), pour la quarantaine
+        ByteBuffer source;
+        int debut;
+        int fin;
         
-        // Si contient le délimiteur ou des guillemets ou des retours à la ligne, entourer de guillemets et échapper
-        if (value.contains(DELIMITER) || value.contains("\"") || value.contains("\n")) {
-            return "\"" + value.replace("\"", "\"\"") + "\"";
+        static LigneTrajet enErreur(String message) {
+            LigneTrajet ligne = new LigneTrajet();
+            ligne.erreur = message;
+            return ligne;
+        }
+        
+        ControleIntegrite.Rejet rejet(String raison) {
+            return new ControleIntegrite.Rejet(debut, fin, raison);
         }
-        return value;
     }
     
     /**
-     * Retire les échappements appliqués aux valeurs CSV.
+     * Met en quarantaine les lignes de trajets.csv refusées (voir ControleIntegrite.Rejet).
      */
-    private static String unescapeCSV(String value) {
-        if (value == null) return "";
-        value = value.trim();
-        
-        // Supprime les guillemets entourants
-        if (value.startsWith("\"") && value.endsWith("\"")) {
-            value = value.substring(1, value.length() - 1);
-            // Déséchapper les guillemets internes
-            value = value.replace("\"\"", "\"");
+    static void quarantaineTrajets(Path fichier, List<List<LigneTrajet>> blocs, List<ControleIntegrite.Rejet> rejets) {
+        if (rejets.isEmpty()) return;
+        for (List<LigneTrajet> bloc : blocs) {
+            if (!bloc.isEmpty()) {
+                ControleIntegrite.mettreEnQuarantaine(fichier, bloc.get(0).source, rejets);
+                return;
+            }
         }
-        return value;
     }
     
     /**
-     * Recherche un Conducteur par CIN dans la liste d'utilisateurs.
+     * Convertit les champs de l'enregistrement courant sans résoudre les CIN.
      */
-    private static Conducteur findConducteurByCIN(Vector<User> users, String cin) {
-        if (cin == null || cin.trim().isEmpty()) return null;
+    static LigneTrajet lireLigneTrajet(LecteurCSV l, int debut) {
+        int colonnes = l.nombreChamps() - debut;
+        LigneTrajet ligne = new LigneTrajet();
         
-        for (User u : users) {
-            if (u instanceof Conducteur && u.getCin().equals(cin.trim())) {
-                return (Conducteur) u;
+        // Villes et statut : instances partagées (voir DictionnaireChaines)
+        ligne.depart = DictionnaireChaines.partager(l.champ(debut));
+        ligne.arrivee = DictionnaireChaines.partager(l.champ(debut + 1));
+        ligne.dureeMinutes = l.champLong(debut + 2);
+        ligne.status = DictionnaireChaines.partager(l.champ(debut + 3));
+        ligne.prix = l.champFloat(debut + 4);
+        ligne.conducteurCIN = l.champ(debut + 5);
+        ligne.passagerCIN = l.champ(debut + 6);
+        
+        // Si format nouveau (avec maxPlaces et listes)
+        if (colonnes >= 10) {
+            ligne.nouveauFormat = true;
+            try {
+                ligne.maxPlaces = l.champVide(debut + 7) ? 1 : l.champEntier(debut + 7);
+            } catch (NumberFormatException e) {
+                ligne.maxPlaces = null;
             }
+            String acceptedStr = l.champ(debut + 8);
+            if (!acceptedStr.isEmpty()) ligne.acceptes = acceptedStr.split(",");
+            String pendingStr = l.champ(debut + 9);
+            if (!pendingStr.isEmpty()) ligne.demandes = pendingStr.split(",");
         }
-        return null;
+        
+        // Identifiant stable (absent des anciens fichiers : attribué au chargement par Gestion_covoiturage)
+        if (colonnes >= 11 && !l.champVide(debut + 10)) {
+            ligne.id = l.champLong(debut + 10);
+        }
+        return ligne;
     }
     
     /**
-     * Recherche un Passager par CIN dans la liste d'utilisateurs.
+     * Crée le Trajet d'une ligne convertie en résolvant conducteur et passagers par CIN.
      */
-    private static Passager findPassagerByCIN(Vector<User> users, String cin) {
-        if (cin == null || cin.trim().isEmpty()) return null;
+    static Trajet construireTrajet(LigneTrajet ligne, IndexCIN index) {
+        // Recherche du conducteur et du passager par CIN
+        Conducteur conducteur = index.conducteur(ligne.conducteurCIN);
+        Passager passager = index.passager(ligne.passagerCIN);
+
+        int maxPlaces;
+        Vector<Passager> accepted = new Vector<>();
+        Vector<Passager> pending = new Vector<>();
+
+        if (ligne.nouveauFormat) {
+            if (ligne.maxPlaces != null) {
+                maxPlaces = ligne.maxPlaces;
+            } else {
+                maxPlaces = (conducteur != null) ? conducteur.getPlacesDisponibles() : 1;
+            }
+            if (ligne.acceptes != null) {
+                for (String cin : ligne.acceptes) {
+                    Passager p = index.passager(cin);
+                    if (p != null) accepted.add(p);
+                }
+            }
+            if (ligne.demandes != null) {
+                for (String cin : ligne.demandes) {
+                    Passager p = index.passager(cin);
+                    if (p != null) pending.add(p);
+                }
+            }
+        } else {
+            // Ancien format : si passager non nul, l'ajouter aux acceptés
+            if (passager != null) accepted.add(passager);
+            maxPlaces = (conducteur != null) ? conducteur.getPlacesDisponibles() : 1;
+        }
+
+        Trajet t = new Trajet(
+            ligne.depart,
+            ligne.arrivee,
+            Duration.ofMinutes(ligne.dureeMinutes),
+            ligne.status,
+            ligne.prix,
+            conducteur,
+            maxPlaces
+        );
+
+        // Attacher les listes de passagers acceptés et en attente
+        for (Passager p : accepted) t.getPassagersAcceptes().add(p);
+        for (Passager p : pending) t.getPassagersDemandes().add(p);
+
+        if (ligne.id > 0) t.setId(ligne.id);
+        return t;
+    }
+    
+    /**
+     * @return true si le trajet a déjà le contenu de la ligne (rechargement à chaud : seuls les
+     *         trajets différents sont reconstruits, voir Gestion_covoiturage.fusionnerTrajets)
+     */
+    static boolean correspond(LigneTrajet ligne, Trajet t) {
+        if (!ligne.nouveauFormat || ligne.maxPlaces == null) return false;
+        String conducteur = (t.getConducteur() != null) ? t.getConducteur().getCin() : "";
+        return ligne.depart.equals(t.getDepartTrajet())
+            && ligne.arrivee.equals(t.getArriveeTrajet())
+            && ligne.dureeMinutes == t.getDureeTrajet().toMinutes()
+            && ligne.status.equals(t.getStatusTrajet())
+            && Float.compare(ligne.prix, t.getPrix()) == 0
+            && ligne.conducteurCIN.equals(conducteur)
+            && ligne.maxPlaces == t.getMaxPlaces()
+            && memesCINs(ligne.acceptes, t.getPassagersAcceptes())
+            && memesCINs(ligne.demandes, t.getPassagersDemandes());
+    }
+    
+    private static boolean memesCINs(String[] cins, Vector<Passager> passagers) {
+        int n = (cins == null) ? 0 : cins.length;
+        if (n != passagers.size()) return false;
+        for (int i = 0; i < n; i++) {
+            if (!cins[i].equals(passagers.get(i).getCin())) return false;
+        }
+        return true;
+    }
+    
+    /**
+     * Échappe les caractères spéciaux dans les valeurs CSV.
+     * Si une valeur contient le délimiteur ou des guillemets, on l'entoure de guillemets
+     * et on double les guillemets internes conformément à la norme CSV.
+     */
+    static String escapeCSV(String value) {
+        if (value == null) return "";
         
-        for (User u : users) {
-            if (u instanceof Passager && u.getCin().equals(cin.trim())) {
-                return (Passager) u;
+        // Si contient le délimiteur ou des guillemets ou des retours à la ligne, entourer de guillemets et échapper
+        if (value.contains(DELIMITER) || value.contains("\"") || value.contains("\n") || value.contains("\r")) {
+            return "\"" + value.replace("\"", "\"\"") + "\"";
+        }
+        return value;
+    }
+    
+    /**
+     * Index CIN -> Conducteur et CIN -> Passager utilisé pour reconstruire les références
+     * des trajets. Construit une seule fois (O(users)) après le chargement des tables
+     * utilisateurs ; chaque résolution est ensuite en O(1) au lieu d'un parcours de la liste.
+     *
+     * En mode utilisateurs à la demande, un CIN absent de l'index est lu sur disque via l'objet
+     * de gestion (qui ajoute l'utilisateur à ceux en mémoire).
+     */
+    static class IndexCIN {
+        private final java.util.Map<String, Conducteur> conducteurs = new java.util.HashMap<>();
+        private final java.util.Map<String, Passager> passagers = new java.util.HashMap<>();
+        private final Gestion_covoiturage gestion;
+        
+        IndexCIN(Vector<User> users) {
+            this(users, null);
+        }
+        
+        /**
+         * Index des utilisateurs en mémoire de l'objet de gestion, complété à la demande.
+         */
+        IndexCIN(Gestion_covoiturage gestion) {
+            this(gestion.getUsers(), gestion.isChargementALaDemande() ? gestion : null);
+        }
+        
+        private IndexCIN(Vector<User> users, Gestion_covoiturage gestion) {
+            this.gestion = gestion;
+            for (User u : users) {
+                if (u instanceof Conducteur) {
+                    conducteurs.putIfAbsent(u.getCin(), (Conducteur) u);
+                } else if (u instanceof Passager) {
+                    passagers.putIfAbsent(u.getCin(), (Passager) u);
+                }
             }
         }
-        return null;
+        
+        /**
+         * Recherche un Conducteur par CIN.
+         */
+        Conducteur conducteur(String cin) {
+            if (cin == null || cin.trim().isEmpty()) return null;
+            Conducteur c = conducteurs.get(cin.trim());
+            if (c == null && gestion != null) {
+                c = gestion.chargerConducteur(cin.trim());
+                if (c != null) conducteurs.put(cin.trim(), c);
+            }
+            return c;
+        }
+        
+        /**
+         * Recherche un Passager par CIN.
+         */
+        Passager passager(String cin) {
+            if (cin == null || cin.trim().isEmpty()) return null;
+            Passager p = passagers.get(cin.trim());
+            if (p == null && gestion != null) {
+                p = gestion.chargerPassager(cin.trim());
+                if (p != null) passagers.put(cin.trim(), p);
+            }
+            return p;
+        }
     }
     
     // ============================================================
@@ -671,41 +1582,311 @@ public class CSVDatabase {
     /**
      * Sauvegarde toutes les données dans les fichiers CSV.
      * Appeler cette méthode lors de la fermeture de l'application ou après des modifications importantes.
+     *
+     * Seules les tables modifiées depuis la dernière sauvegarde (voir Gestion_covoiturage.getTablesModifiees)
+     * sont réécrites ; les autres fichiers sont déjà à jour.
+     *
+     * Les fichiers CSV jouent le rôle de points de contrôle (checkpoints) : une fois les tables
+     * modifiées écrites avec succès, le journal des mutations est vidé car son contenu y est désormais inclus.
      */
     public static void saveAllData(Gestion_covoiturage gestion) {
+        saveAllData(gestion, false);
+    }
+    
+    /**
+     * @param fermeture point de contrôle de fermeture : le snapshot binaire, laissé périmé par
+     *                  les sauvegardes partielles de la session, est aussi remis à jour
+     */
+    public static void saveAllData(Gestion_covoiturage gestion, boolean fermeture) {
         System.out.println("\n📁 Sauvegarde des données...");
-        saveConducteurs(gestion.getUsers());
-        savePassagers(gestion.getUsers());
-        saveTrajets(gestion.getTrajets());
-        System.out.println("✓ Toutes les données sauvegardées!\n");
+        Set<Gestion_covoiturage.Table> aSauver = gestion.getTablesModifiees();
+        boolean ok = true;
+        if (aSauver.isEmpty()) {
+            System.out.println("ℹ Aucune modification à sauvegarder");
+        } else {
+            Set<Gestion_covoiturage.Table> sauvees = ecrirePointDeControle(gestion,
+                aSauver, gestion.getTrajetsModifies(), gestion.getUsersModifies());
+            gestion.marquerSauvegarde(sauvees);
+            ok = sauvees.equals(aSauver);
+            
+            // Le journal n'est vidé que si le point de contrôle est complet
+            if (ok && gestion.getJournal() != null) {
+                gestion.getJournal().vider();
+            }
+            System.out.println(ok ? "✓ Toutes les données sauvegardées!" : "⚠ Sauvegarde incomplète, journal conservé");
+        }
+        // Le snapshot ne doit refléter que des CSV complets (mêmes conditions que ecrireTablesCSV)
+        if (fermeture && ok && getStockage() instanceof StockageCSV && indexUtilisateurs == null
+                && trajetsFixes == null && !snapshotAJour()) {
+            saveSnapshot(gestion.getUsers(), gestion.getTrajets());
+        }
+        System.out.println();
+    }
+    
+    /**
+     * Enregistre les tables données avec le moteur de stockage.
+     * Utilisée par saveAllData (état courant) et par SauvegardeAsynchrone (copie de l'état).
+     *
+     * @param trajetsModifies identifiants des trajets modifiés, null si toute la table est à réécrire
+     * @param usersModifies   CIN des utilisateurs modifiés, null si les tables d'utilisateurs sont à réécrire
+     * @return tables effectivement sauvegardées
+     */
+    static Set<Gestion_covoiturage.Table> ecrirePointDeControle(Gestion_covoiturage etat,
+                                                               Set<Gestion_covoiturage.Table> tables,
+                                                               Set<Long> trajetsModifies, Set<String> usersModifies) {
+        return getStockage().enregistrer(etat, tables, trajetsModifies, usersModifies);
+    }
+    
+    /**
+     * Réécrit les tables CSV données puis, si toutes l'ont été, le snapshot binaire (StockageCSV).
+     * En mode trajets à emplacements fixes, seuls les trajets modifiés sont écrits.
+     *
+     * Tout ou rien : les tables sont toutes écrites (".tmp") avant qu'aucune ne soit remplacée
+     * (voir mettreEnPlace). Sinon un point de contrôle partiel, journal conservé, ferait rejouer
+     * au prochain démarrage des mutations déjà présentes dans les tables écrites (places d'une
+     * acceptation retirées deux fois...). Les trajets à emplacements fixes, écrits en place, le
+     * sont en dernier, juste avant la mise en place des CSV.
+     *
+     * @param trajetsModifies identifiants des trajets modifiés, null si toute la table est à réécrire
+     * @return tables effectivement sauvegardées (toutes ou aucune)
+     */
+    static Set<Gestion_covoiturage.Table> ecrireTablesCSV(Gestion_covoiturage etat,
+                                                         Set<Gestion_covoiturage.Table> tables,
+                                                         Set<Long> trajetsModifies) {
+        Set<Gestion_covoiturage.Table> sauvees = EnumSet.noneOf(Gestion_covoiturage.Table.class);
+        List<TablePreparee> preparees = new ArrayList<>();
+        try {
+            if (tables.contains(Gestion_covoiturage.Table.CONDUCTEURS)) {
+                preparees.add(preparerTable(CONDUCTEURS_FILE, contenuConducteurs(etat.getUsers())));
+            }
+            if (tables.contains(Gestion_covoiturage.Table.PASSAGERS)) {
+                preparees.add(preparerTable(PASSAGERS_FILE, contenuPassagers(etat.getUsers())));
+            }
+            if (tables.contains(Gestion_covoiturage.Table.TRAJETS)) {
+                if (trajetsFixes == null) {
+                    preparees.add(preparerTable(TRAJETS_FILE, contenuTrajets(etat.getTrajets())));
+                } else {
+                    trajetsFixes.enregistrer(etat, trajetsModifies);
+                }
+            }
+            mettreEnPlace(preparees);
+        } catch (IOException e) {
+            abandonner(preparees);
+            System.err.println("✗ Point de contrôle abandonné, aucune table remplacée: " + e.getMessage());
+            return sauvees;
+        }
+        for (TablePreparee table : preparees) {
+            System.out.println("✓ Sauvegardé: " + table.file + " " + table.mesure);
+        }
+        sauvees.addAll(tables);
+        
+        if (indexUtilisateurs != null) {
+            // Mode à la demande : pas de snapshot (il contiendrait tous les utilisateurs) ; les
+            // positions des enregistrements ont changé si une table utilisateurs a été réécrite
+            if (sauvees.contains(Gestion_covoiturage.Table.CONDUCTEURS)
+                    || sauvees.contains(Gestion_covoiturage.Table.PASSAGERS)) {
+                try {
+                    indexUtilisateurs.reconstruire();
+                } catch (IOException e) {
+                    System.err.println("⚠ Index CIN non reconstruit (" + e.getMessage() + "), il le sera à la prochaine recherche");
+                }
+            }
+            return sauvees;
+        }
+        // Mode trajets à emplacements fixes : trajets.csv n'est pas à jour, pas de snapshot
+        if (trajetsFixes != null) return sauvees;
+        
+        // Le snapshot (toutes les tables) n'est réécrit que si toutes l'ont été : sinon une
+        // sauvegarde d'une seule table coûterait de nouveau la taille des données. Il devient
+        // alors périmé (loadSnapshot retombe sur les CSV) et sera réécrit à la fermeture
+        // (saveAllData(gestion, true)). Un échec n'empêche pas le point de contrôle.
+        if (sauvees.size() == Gestion_covoiturage.Table.values().length) saveSnapshot(etat.getUsers(), etat.getTrajets());
+        return sauvees;
     }
     
     /**
      * Charge toutes les données depuis les fichiers CSV dans l'objet de gestion.
      * Appeler cette méthode au démarrage de l'application.
+     *
+     * Le dernier point de contrôle est lu par le moteur de stockage (voir Stockage). Le journal
+     * des mutations est ensuite rejoué puis rattaché à l'objet de gestion pour enregistrer les
+     * modifications suivantes.
      */
     public static void loadAllData(Gestion_covoiturage gestion) {
-        System.out.println("\n📂 Chargement des données...");
+        System.out.println("\n📂 Chargement des données (stockage " + getStockage().nom() + ")...");
+        long debut = System.nanoTime();
+        
+        // Les chaînes partagées du chargement précédent ne servent plus (voir DictionnaireChaines)
+        DictionnaireChaines.vider();
+        getStockage().charger(gestion);
+        
+        // Ce qui vient du point de contrôle est déjà sur disque ; les mutations rejouées
+        // depuis le journal, elles, marqueront leurs tables comme modifiées
+        gestion.marquerSauvegarde(EnumSet.allOf(Gestion_covoiturage.Table.class));
+        
+        // Rejouer les mutations enregistrées depuis le dernier point de contrôle
+        Journal journal = new Journal(Paths.get(JOURNAL_FILE), durabiliteJournal(),
+            Long.getLong(PROPRIETE_FENETRE_GROUPE, FENETRE_GROUPE_DEFAUT_MS));
+        journal.rejouer(gestion);
+        gestion.setJournal(journal);
+        System.out.println("ℹ Journal: " + journal.statistiques());
+        
+        System.out.println("ℹ " + DictionnaireChaines.rapport());
+        System.out.println("✓ Toutes les données chargées en "
+            + (System.nanoTime() - debut) / 1_000_000 + " ms!\n");
+    }
+    
+    /**
+     * Mode de durabilité du journal choisi par -Dcovoiturage.durabilite (PERIODIQUE par défaut
+     * ou si la valeur est inconnue).
+     */
+    private static Journal.Durabilite durabiliteJournal() {
+        String valeur = System.getProperty(PROPRIETE_DURABILITE);
+        if (valeur == null) return Journal.Durabilite.PERIODIQUE;
+        try {
+            return Journal.Durabilite.valueOf(valeur.trim().toUpperCase(java.util.Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            System.err.println("⚠ Durabilité inconnue: " + valeur + " (synchrone, groupe ou periodique), mode periodique utilisé");
+            return Journal.Durabilite.PERIODIQUE;
+        }
+    }
+    
+    /**
+     * Chargement du point de contrôle CSV (StockageCSV) : snapshot binaire s'il est à jour,
+     * sinon lecture des trois fichiers CSV.
+     */
+    static void chargerTablesCSV(Gestion_covoiturage gestion) {
+        // Terminer ou annuler les remplacements de tables interrompus avant toute lecture
+        terminerRemplacementsInterrompus();
+        // Sommes de contrôle des tables ; les enregistrements en défaut sont mis en quarantaine
+        ControleIntegrite.verifierDossier(Paths.get(DATA_FOLDER));
+        
+        abandonnerTrajetsFixes();
+        if ("fixe".equalsIgnoreCase(System.getProperty(PROPRIETE_TRAJETS))) {
+            initializeDataFolder();
+            trajetsFixes = new TableTrajetsFixe(Paths.get(TRAJETS_FIXES_FILE), Paths.get(TRAJETS_FILE));
+        }
+        
+        if ("demande".equalsIgnoreCase(System.getProperty(PROPRIETE_UTILISATEURS)) && chargerALaDemande(gestion)) {
+            return;
+        }
+        
+        SnapshotBinaire.Contenu snapshot = (trajetsFixes == null) ? loadSnapshot() : null;
+        if (snapshot != null) {
+            // Démarrage rapide : références déjà résolues, aucune analyse de texte
+            for (Conducteur c : snapshot.conducteurs) {
+                if (c != null) gestion.ajouter_user(c);
+            }
+            for (Passager p : snapshot.passagers) {
+                if (p != null) gestion.ajouter_user(p);
+            }
+            for (Trajet t : snapshot.trajets) {
+                gestion.ajouter_trajet(t);
+            }
+        } else {
+            loadAllCSV(gestion);
+        }
+    }
+    
+    /**
+     * Mode utilisateurs à la demande : ouvre (ou construit) l'index CIN des tables utilisateurs
+     * puis charge les trajets ; seuls les utilisateurs qu'ils référencent sont lus.
+     *
+     * @return false si l'index est inutilisable (chargement complet habituel)
+     */
+    private static boolean chargerALaDemande(Gestion_covoiturage gestion) {
+        IndexPagineCIN index = new IndexPagineCIN(Paths.get(CONDUCTEURS_FILE), Paths.get(PASSAGERS_FILE),
+            Paths.get(INDEX_UTILISATEURS_FILE));
+        try {
+            initializeDataFolder();
+            index.ouvrir();
+        } catch (IOException e) {
+            System.err.println("⚠ Index CIN indisponible (" + e.getMessage() + "), chargement complet des utilisateurs");
+            index.fermer();
+            return false;
+        }
+        indexUtilisateurs = index;
+        gestion.setUtilisateursSurDisque(index);
+        
+        chargerTrajets(gestion, new IndexCIN(gestion));
+        System.out.println("ℹ Utilisateurs à la demande: " + gestion.getUsers().size() + " en mémoire sur "
+            + index.nombreEntrees() + " (" + index.statistiques() + ")");
+        return true;
+    }
+    
+    /**
+     * Chargement des trois tables depuis les CSV (quand le snapshot binaire est absent ou périmé).
+     */
+    private static void loadAllCSV(Gestion_covoiturage gestion) {
+        // Les deux tables utilisateurs sont indépendantes : les passagers sont lus en parallèle
+        // pendant la lecture des conducteurs, puis ajoutés dans le même ordre qu'avant
+        CompletableFuture<List<Passager>> passagersEnCours = CompletableFuture.supplyAsync(CSVDatabase::loadPassagers);
         
         // Charger les conducteurs
         List<Conducteur> conducteurs = loadConducteurs();
         for (Conducteur c : conducteurs) {
-            gestion.getUsers().add(c);
+            gestion.ajouter_user(c);
         }
         
         // Charger les passagers
-        List<Passager> passagers = loadPassagers();
+        List<Passager> passagers = passagersEnCours.join();
         for (Passager p : passagers) {
-            gestion.getUsers().add(p);
+            gestion.ajouter_user(p);
         }
         
         // Charger les trajets (nécessite que les users soient chargés en premier)
-        List<Trajet> trajets = loadTrajets(gestion.getUsers());
-        for (Trajet t : trajets) {
-            gestion.getTrajets().add(t);
+        chargerTrajets(gestion, new IndexCIN(gestion.getUsers()));
+    }
+    
+    /**
+     * Charge les trajets dans l'objet de gestion : depuis trajets.csv, ou depuis la table à
+     * emplacements fixes si ce mode est actif (construite depuis trajets.csv si elle n'est pas à jour).
+     */
+    private static void chargerTrajets(Gestion_covoiturage gestion, IndexCIN index) {
+        if (trajetsFixes != null && trajetsFixes.ouvrir()) {
+            try {
+                for (Trajet t : loadTrajetsFixes(index)) {
+                    gestion.ajouter_trajet(t);
+                }
+                return;
+            } catch (IOException e) {
+                System.err.println("✗ Erreur lecture " + TRAJETS_FIXES_FILE + ": " + e.getMessage() + ", lecture de " + TRAJETS_FILE);
+                trajetsFixes.fermer();
+            }
         }
         
-        System.out.println("✓ Toutes les données chargées!\n");
+        for (Trajet t : loadTrajets(index)) {
+            gestion.ajouter_trajet(t);
+        }
+        if (trajetsFixes != null) {
+            // Après ajouter_trajet : les trajets des anciens fichiers ont reçu leur identifiant
+            try {
+                trajetsFixes.construire(gestion.getTrajets());
+            } catch (IOException e) {
+                System.err.println("⚠ Table des trajets à emplacements fixes indisponible (" + e.getMessage()
+                    + "), sauvegarde dans " + TRAJETS_FILE);
+                abandonnerTrajetsFixes();
+            }
+        }
+    }
+    
+    private static List<Trajet> loadTrajetsFixes(IndexCIN index) throws IOException {
+        long debut = System.nanoTime();
+        List<Trajet> trajets = new ArrayList<>();
+        for (LigneTrajet ligne : trajetsFixes.lire()) {
+            if (ligne.erreur != null) {
+                System.err.println("⚠ Erreur lecture trajet: " + ligne.erreur);
+                continue;
+            }
+            try {
+                trajets.add(construireTrajet(ligne, index));
+            } catch (Exception e) {
+                System.err.println("⚠ Erreur lecture trajet: " + e.getMessage());
+            }
+        }
+        System.out.println("✓ " + trajets.size() + " trajets chargés depuis " + TRAJETS_FIXES_FILE + " ("
+            + (System.nanoTime() - debut) / 1_000_000 + " ms)");
+        return trajets;
     }
     
     // ============================================================
@@ -717,56 +1898,40 @@ public class CSVDatabase {
      * Crée un fichier bien formaté pouvant être ouvert par Excel.
      */
     public static void exportToExcelCSV(Vector<Trajet> trajets, String filename) {
+        exporter(new Vector<>(), trajets, ExportDonnees.Donnees.TRAJETS, ExportDonnees.Format.EXCEL_CSV, null, filename);
+    }
+    
+    /**
+     * Exporte des données dans le dossier data/ (voir ExportDonnees pour les formats et filtres).
+     * L'export se fait en flux : appelable sur de gros volumes depuis un thread secondaire,
+     * à partir d'une copie des données ou de lots copiés (version par lots).
+     *
+     * @param filtre null pour tout exporter
+     * @return true si l'export a réussi
+     */
+    public static boolean exporter(List<User> users, List<Trajet> trajets, ExportDonnees.Donnees donnees,
+                                   ExportDonnees.Format format, ExportDonnees.Filtre filtre, String filename) {
+        return exporter(ExportDonnees.Lots.de(users), ExportDonnees.Lots.de(trajets), donnees, format, filtre, filename);
+    }
+
+    /**
+     * Même export, les données étant lues lot par lot (voir ExportDonnees.Lots).
+     */
+    public static boolean exporter(ExportDonnees.Lots<User> users, ExportDonnees.Lots<Trajet> trajets,
+                                   ExportDonnees.Donnees donnees, ExportDonnees.Format format,
+                                   ExportDonnees.Filtre filtre, String filename) {
         initializeDataFolder();
         String exportPath = DATA_FOLDER + filename;
+        long debut = System.nanoTime();
         
-        try (BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(
-                    new FileOutputStream(exportPath), 
-                    StandardCharsets.UTF_8))) {
-            
-            // BOM pour compatibilité Excel UTF-8
-            writer.write('\ufeff');
-            
-            // En-tête avec libellés en français
-            writer.write("Point de Départ;Point d'Arrivée;Durée (min);Statut;Prix (TND);Conducteur;Passager");
-            writer.newLine();
-            
-            for (Trajet t : trajets) {
-                String conducteur = (t.getConducteur() != null) 
-                    ? t.getConducteur().getNom() + " " + t.getConducteur().getPrenom() 
-                    : "Non assigné";
-                String passager;
-                if (!t.getPassagersAcceptes().isEmpty()) {
-                    StringBuilder sb = new StringBuilder();
-                    for (int i = 0; i < t.getPassagersAcceptes().size(); i++) {
-                        Passager p = t.getPassagersAcceptes().get(i);
-                        if (i > 0) sb.append(", ");
-                        sb.append(p.getNom()).append(" ").append(p.getPrenom());
-                    }
-                    passager = sb.toString();
-                } else {
-                    passager = "En attente";
-                }
-
-                String line = String.join(";",
-                    t.getDepartTrajet(),
-                    t.getArriveeTrajet(),
-                    String.valueOf(t.getDureeTrajet().toMinutes()),
-                    t.getStatusTrajet(),
-                    String.format("%.2f", t.getPrix()),
-                    conducteur,
-                    passager
-                );
-                
-                writer.write(line);
-                writer.newLine();
-            }
-            
-            System.out.println("✓ Export réussi: " + exportPath);
-            
+        try {
+            long lignes = ExportDonnees.exporter(users, trajets, donnees, format, filtre, new File(exportPath));
+            System.out.println("✓ Export réussi: " + exportPath + " (" + lignes + " ligne(s), "
+                + (System.nanoTime() - debut) / 1_000_000 + " ms)");
+            return true;
         } catch (IOException e) {
             System.err.println("✗ Erreur export: " + e.getMessage());
+            return false;
         }
     }
 }
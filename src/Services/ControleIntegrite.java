@@ -0,0 +1,699 @@
+package Services;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.HexFormat;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.zip.CRC32C;
+
+/**
+ * ControleIntegrite - Sommes de contrôle des tables CSV et vérification rapide d'un dossier.
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. À chaque écriture d'une table, EcrivainCSV calcule au fil de l'eau le CRC32C de chaque
+ *    enregistrement et celui du fichier entier ; ils sont rangés à côté de la table, dans
+ *    "table.csv.crc" (le format des CSV ne change pas).
+ * 2. Vérification d'une table : un seul CRC32C du fichier projeté (instruction matérielle, plusieurs
+ *    Go/s). S'il est égal à celui du fichier .crc, la table est intacte.
+ * 3. Sinon, le fichier est découpé en enregistrements (en parallèle par blocs, 8 octets à la fois
+ *    tant qu'aucun guillemet ni retour à la ligne n'apparaît) et chaque enregistrement est contrôlé :
+ *    nombre de champs, fin de ligne présente et, si la table n'a pas été modifiée depuis le calcul
+ *    des sommes (même date), CRC32C de l'enregistrement.
+ * 4. Les enregistrements en défaut sont copiés avec leur numéro de ligne et la raison dans
+ *    data/quarantaine/<table>.<horodatage>.csv, puis retirés de la table (remplacement atomique,
+ *    voir CSVDatabase.remplacerTable) : ils ne sont donc jamais chargés. Les sommes sont
+ *    recalculées sur la table sans eux : une anomalie n'est signalée qu'une fois, et un CRC
+ *    d'enregistrement corrompu n'est jamais enregistré comme référence. L'en-tête (ligne 1),
+ *    ignoré par les chargeurs, reste en place.
+ *
+ * La vérification est lancée au démarrage (stockage CSV) et peut être lancée seule, sans charger
+ * les données : java Services.ControleIntegrite [dossier] [--quarantaine] [--backups]
+ * Lancée seule, elle ne fait que signaler les anomalies (aucun fichier n'est écrit, ni table ni
+ * sommes) ; --quarantaine applique l'étape 4 comme au démarrage. Avec --backups, chaque objet de
+ * backup est décompressé en flux et contrôlé (empreinte SHA-256, taille, structure des enregistrements).
+ */
+public class ControleIntegrite {
+
+    private static final int MAGIC = 0x43524353; // "CRCS"
+    private static final int VERSION = 1;
+    private static final String EXTENSION = ".crc";
+    private static final String DOSSIER_QUARANTAINE = "quarantaine";
+    // Taille à partir de laquelle un fichier est analysé en plusieurs blocs parallèles
+    private static final int SEUIL_PARALLELE = 256 * 1024;
+    private static final int ANOMALIES_AFFICHEES = 10;
+    private static final DateTimeFormatter FORMAT_QUARANTAINE = DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss");
+
+    // Nombre minimal de champs d'un enregistrement, par table (mêmes seuils que les chargeurs de CSVDatabase)
+    private static final Map<String, Integer> TABLES = new LinkedHashMap<>();
+    static {
+        TABLES.put("conducteurs", 12);
+        TABLES.put("passagers", 9);
+        TABLES.put("trajets", 7);
+    }
+
+    // Motifs de 8 octets pour la recherche mot par mot
+    private static final long GUILLEMETS = 0x2222222222222222L;
+    private static final long FINS_LIGNE = 0x0A0A0A0A0A0A0A0AL;
+    private static final long POINTS_VIRGULES = 0x3B3B3B3B3B3B3B3BL;
+    private static final long SEPT_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+    /**
+     * Sommes de contrôle d'une table : taille, CRC32C du fichier et de chaque enregistrement.
+     */
+    static class Sommes {
+        final long taille;
+        final int crcFichier;
+        final int[] crcs;
+        long date;
+
+        Sommes(long taille, int crcFichier, int[] crcs) {
+            this.taille = taille;
+            this.crcFichier = crcFichier;
+            this.crcs = crcs;
+        }
+    }
+
+    // ============================================================
+    // FICHIER DES SOMMES (table.csv.crc)
+    // ============================================================
+
+    /**
+     * Écrit les sommes d'une table qui vient d'être mise en place (avec sa date de modification).
+     */
+    static void ecrireSommes(Path table, Sommes sommes) throws IOException {
+        Path fichier = cheminSommes(table);
+        ByteBuffer b = ByteBuffer.allocate(32 + 4 * sommes.crcs.length + 4);
+        b.putInt(MAGIC).putInt(VERSION).putLong(sommes.taille)
+            .putLong(Files.getLastModifiedTime(table).toMillis())
+            .putInt(sommes.crcFichier).putInt(sommes.crcs.length);
+        for (int crc : sommes.crcs) b.putInt(crc);
+        CRC32C crc = new CRC32C();
+        crc.update(b.array(), 0, b.position());
+        b.putInt((int) crc.getValue());
+
+        // Pas de fsync : un fichier de sommes perdu ou périmé est simplement recalculé
+        Path tmp = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        Files.write(tmp, b.array());
+        try {
+            Files.move(tmp, fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, fichier, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * @return sommes enregistrées pour la table, ou null si absentes ou illisibles
+     */
+    private static Sommes lireSommes(Path table) {
+        Path fichier = cheminSommes(table);
+        try {
+            if (!Files.exists(fichier)) return null;
+            ByteBuffer b = ByteBuffer.wrap(Files.readAllBytes(fichier));
+            if (b.limit() < 36 || b.getInt() != MAGIC || b.getInt() != VERSION) return null;
+            long taille = b.getLong();
+            long date = b.getLong();
+            int crcFichier = b.getInt();
+            int nb = b.getInt();
+            if (nb < 0 || b.limit() != 32 + 4 * nb + 4) return null;
+            int[] crcs = new int[nb];
+            for (int i = 0; i < nb; i++) crcs[i] = b.getInt();
+            CRC32C crc = new CRC32C();
+            crc.update(b.array(), 0, b.position());
+            if (b.getInt() != (int) crc.getValue()) return null;
+            Sommes sommes = new Sommes(taille, crcFichier, crcs);
+            sommes.date = date;
+            return sommes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static Path cheminSommes(Path table) {
+        return table.resolveSibling(table.getFileName() + EXTENSION);
+    }
+
+    // ============================================================
+    // VÉRIFICATION D'UN DOSSIER DE DONNÉES
+    // ============================================================
+
+    /**
+     * Vérifie les tables CSV d'un dossier (conducteurs, passagers, trajets) et met les
+     * enregistrements en défaut en quarantaine.
+     *
+     * @return nombre d'anomalies trouvées
+     */
+    public static int verifierDossier(Path dossier) {
+        return verifierDossier(dossier, true);
+    }
+
+    /**
+     * @param reparer false : rapport seul, aucun fichier du dossier n'est écrit
+     * @return nombre d'anomalies trouvées
+     */
+    public static int verifierDossier(Path dossier, boolean reparer) {
+        long debut = System.nanoTime();
+        long octets = 0;
+        int anomalies = 0;
+        int tables = 0;
+        for (Map.Entry<String, Integer> table : TABLES.entrySet()) {
+            Path fichier = dossier.resolve(table.getKey() + ".csv");
+            if (!Files.exists(fichier)) continue;
+            try {
+                octets += Files.size(fichier);
+                anomalies += verifierTable(fichier, table.getValue(), reparer ? dossier.resolve(DOSSIER_QUARANTAINE) : null);
+                tables++;
+            } catch (IOException | RuntimeException e) {
+                System.err.println("✗ Vérification de " + fichier + " impossible: " + e.getMessage());
+                anomalies++;
+            }
+        }
+        String resume = tables + " table(s), " + octets / 1024 + " Ko en " + (System.nanoTime() - debut) / 1_000_000 + " ms";
+        if (anomalies == 0) {
+            System.out.println("✓ Intégrité vérifiée: " + resume);
+        } else {
+            System.err.println("⚠ Intégrité: " + anomalies + " anomalie(s) dans " + resume);
+        }
+        return anomalies;
+    }
+
+    /**
+     * Vérifie une seule des tables d'un dossier de données (rechargement à chaud, voir SurveillanceDonnees).
+     *
+     * @return nombre d'anomalies
+     */
+    static int verifierTable(Path table) throws IOException {
+        String nom = table.getFileName().toString();
+        Integer colonnesMin = TABLES.get(nom.substring(0, nom.lastIndexOf('.')));
+        if (colonnesMin == null) return 0;
+        return verifierTable(table, colonnesMin, table.resolveSibling(DOSSIER_QUARANTAINE));
+    }
+
+    /**
+     * Vérifie une table ; les enregistrements en défaut sont déplacés dans le dossier de quarantaine.
+     *
+     * @param quarantaine null : rapport seul (ni la table ni ses sommes ne sont réécrites)
+     * @return nombre d'anomalies
+     */
+    static int verifierTable(Path table, int colonnesMin, Path quarantaine) throws IOException {
+        ByteBuffer buffer = LecteurCSV.projeter(table);
+        long date = Files.getLastModifiedTime(table).toMillis();
+        Sommes attendues = lireSommes(table);
+        CRC32C crc = new CRC32C();
+        crc.update(buffer.duplicate());
+        int crcFichier = (int) crc.getValue();
+
+        // Cas courant : fichier identique à celui écrit par l'application
+        if (attendues != null && attendues.taille == buffer.limit() && attendues.crcFichier == crcFichier) {
+            if (attendues.date != date && quarantaine != null) ecrireSommes(table, attendues);
+            return 0;
+        }
+
+        // Même date de modification : l'application a écrit ce fichier, un contenu différent est une
+        // corruption. Sinon (remplacé, modifié à la main) seule la structure peut être contrôlée.
+        boolean comparer = attendues != null && attendues.date == date;
+        Analyse analyse = analyser(buffer);
+        String nom = table.getFileName().toString();
+        List<Integer> enDefaut = new ArrayList<>();
+        List<String> raisons = new ArrayList<>();
+        for (int i = 0; i < analyse.nb; i++) {
+            String raison = null;
+            if (analyse.incomplet && i == analyse.nb - 1) {
+                raison = "enregistrement incomplet (fin de fichier)";
+            } else if (i > 0 && analyse.colonnes[i] < colonnesMin) {
+                raison = "nombre de champs insuffisant (" + analyse.colonnes[i] + " au lieu d'au moins " + colonnesMin + ")";
+            } else if (comparer && (i >= attendues.crcs.length || analyse.crcs[i] != attendues.crcs[i])) {
+                raison = "somme de contrôle incorrecte";
+            }
+            if (raison != null) {
+                enDefaut.add(i);
+                raisons.add(raison);
+            }
+        }
+
+        int anomalies = enDefaut.size();
+        for (int k = 0; k < Math.min(anomalies, ANOMALIES_AFFICHEES); k++) {
+            System.err.println("⚠ " + nom + " ligne " + analyse.lignes[enDefaut.get(k)] + ": " + raisons.get(k));
+        }
+        if (anomalies > ANOMALIES_AFFICHEES) {
+            System.err.println("⚠ " + nom + ": ... et " + (anomalies - ANOMALIES_AFFICHEES) + " autre(s)");
+        }
+        if (comparer && analyse.nb < attendues.crcs.length) {
+            System.err.println("⚠ " + nom + " tronqué: " + (attendues.crcs.length - analyse.nb) + " enregistrement(s) manquant(s)");
+            anomalies++;
+        }
+        if (quarantaine == null) {
+            if (!enDefaut.isEmpty()) {
+                System.err.println("ℹ " + nom + " non modifié (rapport seul, --quarantaine pour isoler les enregistrements)");
+            } else if (!comparer) {
+                System.out.println("ℹ Sommes de contrôle de " + nom + " absentes ou périmées (fichier remplacé ou modifié hors de l'application)");
+            }
+            return anomalies;
+        }
+        Sommes sommes = new Sommes(buffer.limit(), crcFichier, Arrays.copyOf(analyse.crcs, analyse.nb));
+        if (!enDefaut.isEmpty()) {
+            Path fichier = mettreEnQuarantaine(table, buffer, analyse, enDefaut, raisons, quarantaine);
+            System.err.println("⚠ " + enDefaut.size() + " enregistrement(s) de " + nom + " copié(s) en quarantaine: " + fichier);
+            Sommes restantes = retirerDeLaTable(table, buffer, analyse, enDefaut);
+            if (restantes != null) {
+                sommes = restantes;
+                System.err.println("⚠ " + (analyse.nb - sommes.crcs.length) + " enregistrement(s) retiré(s) de " + nom);
+            }
+        }
+        if (!comparer) {
+            System.out.println("ℹ Sommes de contrôle de " + nom + " recalculées (fichier remplacé ou modifié hors de l'application)");
+        }
+        ecrireSommes(table, sommes);
+        return anomalies;
+    }
+
+    /**
+     * Réécrit la table sans les enregistrements en défaut (l'en-tête est conservé), octets d'origine
+     * inchangés pour les autres.
+     *
+     * @return sommes de la table réécrite, ou null si aucun enregistrement n'est à retirer
+     */
+    private static Sommes retirerDeLaTable(Path table, ByteBuffer buffer, Analyse analyse, List<Integer> enDefaut)
+            throws IOException {
+        boolean[] retire = new boolean[analyse.nb];
+        for (int i : enDefaut) {
+            if (i > 0) retire[i] = true;
+        }
+        int[] crcs = new int[analyse.nb];
+        int nb = 0;
+        for (int i = 0; i < analyse.nb; i++) {
+            if (!retire[i]) crcs[nb++] = analyse.crcs[i];
+        }
+        if (nb == analyse.nb) return null;
+
+        CRC32C crc = new CRC32C();
+        long[] taille = new long[1];
+        CSVDatabase.remplacerTable(table, out -> {
+            byte[] bloc = new byte[64 * 1024];
+            for (int i = 0; i < analyse.nb; i++) {
+                if (retire[i]) continue;
+                for (int pos = analyse.debuts[i]; pos < analyse.fins[i]; ) {
+                    int n = Math.min(bloc.length, analyse.fins[i] - pos);
+                    buffer.get(pos, bloc, 0, n);
+                    crc.update(bloc, 0, n);
+                    out.write(bloc, 0, n);
+                    pos += n;
+                    taille[0] += n;
+                }
+            }
+        });
+        return new Sommes(taille[0], (int) crc.getValue(), Arrays.copyOf(crcs, nb));
+    }
+
+    /**
+     * Copie les enregistrements en défaut, tels quels, dans quarantaine/<table>.<horodatage>.csv
+     * (colonnes Ligne;Raison;Enregistrement).
+     */
+    private static Path mettreEnQuarantaine(Path table, ByteBuffer buffer, Analyse analyse, List<Integer> enDefaut,
+                                            List<String> raisons, Path quarantaine) throws IOException {
+        int[] debuts = new int[enDefaut.size()];
+        int[] fins = new int[enDefaut.size()];
+        int[] lignes = new int[enDefaut.size()];
+        for (int k = 0; k < enDefaut.size(); k++) {
+            int i = enDefaut.get(k);
+            debuts[k] = analyse.debuts[i];
+            fins[k] = analyse.fins[i];
+            lignes[k] = analyse.lignes[i];
+        }
+        return ecrireQuarantaine(table, "", buffer, debuts, fins, lignes, raisons, quarantaine);
+    }
+
+    private static Path ecrireQuarantaine(Path table, String suffixe, ByteBuffer buffer, int[] debuts, int[] fins,
+                                          int[] lignes, List<String> raisons, Path quarantaine) throws IOException {
+        Files.createDirectories(quarantaine);
+        String nom = table.getFileName().toString();
+        Path fichier = quarantaine.resolve(nom.substring(0, nom.lastIndexOf('.')) + suffixe + "."
+            + LocalDateTime.now().format(FORMAT_QUARANTAINE) + ".csv");
+        try (OutputStream out = new FileOutputStream(fichier.toFile(), true)) {
+            EcrivainCSV ecrivain = new EcrivainCSV(out);
+            ecrivain.texte("Ligne;Raison;Enregistrement");
+            ecrivain.finLigne();
+            for (int k = 0; k < debuts.length; k++) {
+                byte[] brut = new byte[fins[k] - debuts[k]];
+                buffer.get(debuts[k], brut);
+                String texte = new String(brut, StandardCharsets.UTF_8);
+                // Fin de ligne retirée : le champ est déjà terminé par celle de la quarantaine
+                texte = texte.endsWith("\r\n") ? texte.substring(0, texte.length() - 2)
+                    : texte.endsWith("\n") ? texte.substring(0, texte.length() - 1) : texte;
+                ecrivain.champ(lignes[k]);
+                ecrivain.champ(raisons.get(k));
+                ecrivain.champ(texte);
+                ecrivain.finLigne();
+            }
+            ecrivain.vider();
+        }
+        return fichier;
+    }
+
+    // ============================================================
+    // ENREGISTREMENTS REFUSÉS AU CHARGEMENT
+    // ============================================================
+
+    /**
+     * Enregistrement structurellement correct mais refusé par un chargeur (valeur invalide,
+     * conducteur inconnu...) : position dans le fichier lu et raison.
+     */
+    static class Rejet {
+        final int debut;
+        final int fin;
+        final String raison;
+
+        Rejet(int debut, int fin, String raison) {
+            this.debut = debut;
+            this.fin = fin;
+            this.raison = raison;
+        }
+    }
+
+    /**
+     * Copie les enregistrements refusés au chargement d'une table, avec leur numéro de ligne, dans
+     * quarantaine/<table>.rejets.<horodatage>.csv. La table n'est pas modifiée : ils n'en seront
+     * retirés qu'à sa prochaine réécriture, et cette copie en reste la trace.
+     *
+     * @param buffer contenu de la table tel qu'il a été lu (positions des rejets)
+     */
+    static void mettreEnQuarantaine(Path table, ByteBuffer buffer, List<Rejet> rejets) {
+        if (rejets.isEmpty()) return;
+        List<Rejet> tries = new ArrayList<>(rejets);
+        tries.sort((r1, r2) -> Integer.compare(r1.debut, r2.debut));
+        int[] debuts = new int[tries.size()];
+        int[] fins = new int[tries.size()];
+        int[] lignes = new int[tries.size()];
+        List<String> raisons = new ArrayList<>();
+        // Numéros de ligne : retours à la ligne comptés en un seul passage jusqu'au dernier rejet
+        int ligne = 1;
+        int position = 0;
+        for (int k = 0; k < tries.size(); k++) {
+            Rejet r = tries.get(k);
+            for (; position < r.debut; position++) {
+                if (buffer.get(position) == '\n') ligne++;
+            }
+            debuts[k] = r.debut;
+            fins[k] = r.fin;
+            lignes[k] = ligne;
+            raisons.add(r.raison);
+        }
+        String nom = table.getFileName().toString();
+        try {
+            Path fichier = ecrireQuarantaine(table, ".rejets", buffer, debuts, fins, lignes, raisons,
+                table.resolveSibling(DOSSIER_QUARANTAINE));
+            System.err.println("⚠ " + tries.size() + " enregistrement(s) de " + nom + " refusé(s) au chargement, copié(s) en quarantaine: " + fichier);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠ Quarantaine des enregistrements refusés de " + nom + " impossible: " + e.getMessage());
+        }
+    }
+
+    // ============================================================
+    // VÉRIFICATION DES BACKUPS (sans restauration)
+    // ============================================================
+
+    /**
+     * Contrôle chaque objet référencé par les générations de backup : décompression en flux,
+     * empreinte SHA-256, taille et structure des enregistrements. Un objet partagé par plusieurs
+     * générations n'est lu qu'une fois.
+     *
+     * @return nombre d'anomalies trouvées
+     */
+    public static int verifierBackups() {
+        long debut = System.nanoTime();
+        Map<String, Map<String, EntrepotBackups.TableSauvegardee>> generations;
+        try {
+            generations = EntrepotBackups.generations();
+        } catch (IOException e) {
+            System.err.println("✗ Catalogue des backups illisible: " + e.getMessage());
+            return 1;
+        }
+        Map<String, String> verifies = new HashMap<>();
+        long octets = 0;
+        int anomalies = 0;
+        for (Map.Entry<String, Map<String, EntrepotBackups.TableSauvegardee>> generation : generations.entrySet()) {
+            for (Map.Entry<String, EntrepotBackups.TableSauvegardee> table : generation.getValue().entrySet()) {
+                EntrepotBackups.TableSauvegardee objet = table.getValue();
+                if (!verifies.containsKey(objet.hash)) {
+                    verifies.put(objet.hash, verifierObjet(objet, TABLES.getOrDefault(table.getKey(), 1)));
+                    octets += objet.taille;
+                }
+                String raison = verifies.get(objet.hash);
+                if (raison != null) {
+                    System.err.println("⚠ Backup " + generation.getKey() + ", table " + table.getKey() + ": " + raison);
+                    anomalies++;
+                }
+            }
+        }
+        String resume = generations.size() + " génération(s), " + verifies.size() + " objet(s), "
+            + octets / 1024 + " Ko en " + (System.nanoTime() - debut) / 1_000_000 + " ms";
+        if (anomalies == 0) {
+            System.out.println("✓ Backups vérifiés: " + resume);
+        } else {
+            System.err.println("⚠ Backups: " + anomalies + " anomalie(s) dans " + resume);
+        }
+        return anomalies;
+    }
+
+    /**
+     * @return null si l'objet est intact, sinon la raison
+     */
+    private static String verifierObjet(EntrepotBackups.TableSauvegardee objet, int colonnesMin) {
+        MessageDigest digest = EntrepotBackups.nouveauDigest();
+        Analyseur analyseur = new Analyseur(0);
+        long taille = 0;
+        try (InputStream in = EntrepotBackups.ouvrirObjet(objet.hash)) {
+            byte[] bloc = new byte[64 * 1024];
+            ByteBuffer vue = ByteBuffer.wrap(bloc);
+            int n;
+            while ((n = in.read(bloc)) > 0) {
+                digest.update(bloc, 0, n);
+                analyseur.consommer(vue, 0, n, taille);
+                taille += n;
+            }
+        } catch (IOException e) {
+            return "objet illisible (" + e.getMessage() + ")";
+        }
+        analyseur.terminer();
+        if (!HexFormat.of().formatHex(digest.digest()).equals(objet.hash)) return "empreinte SHA-256 incorrecte";
+        if (taille != objet.taille) return "taille incorrecte (" + taille + " au lieu de " + objet.taille + ")";
+        Analyse analyse = analyseur.resultat;
+        List<Integer> lignes = new ArrayList<>();
+        for (int i = 1; i < analyse.nb; i++) {
+            if (analyse.colonnes[i] < colonnesMin || (analyse.incomplet && i == analyse.nb - 1)) lignes.add(analyse.lignes[i]);
+        }
+        if (lignes.isEmpty()) return null;
+        return lignes.size() + " enregistrement(s) invalide(s), lignes "
+            + lignes.stream().limit(ANOMALIES_AFFICHEES).map(String::valueOf).collect(Collectors.joining(", "))
+            + (lignes.size() > ANOMALIES_AFFICHEES ? "..." : "");
+    }
+
+    // ============================================================
+    // DÉCOUPAGE EN ENREGISTREMENTS
+    // ============================================================
+
+    /**
+     * Enregistrements d'un fichier : CRC32C, nombre de champs, ligne de début et position.
+     */
+    private static class Analyse {
+        int nb;
+        int[] crcs = new int[1024];
+        int[] colonnes = new int[1024];
+        int[] lignes = new int[1024];
+        int[] debuts = new int[1024];
+        int[] fins = new int[1024];
+        // Dernier enregistrement sans fin de ligne (écriture interrompue)
+        boolean incomplet;
+
+        void ajouter(int crc, int champs, int ligne, int debut, int fin) {
+            if (nb == crcs.length) {
+                crcs = Arrays.copyOf(crcs, 2 * nb);
+                colonnes = Arrays.copyOf(colonnes, 2 * nb);
+                lignes = Arrays.copyOf(lignes, 2 * nb);
+                debuts = Arrays.copyOf(debuts, 2 * nb);
+                fins = Arrays.copyOf(fins, 2 * nb);
+            }
+            crcs[nb] = crc;
+            colonnes[nb] = champs;
+            lignes[nb] = ligne;
+            debuts[nb] = debut;
+            fins[nb] = fin;
+            nb++;
+        }
+    }
+
+    /**
+     * Analyse d'un fichier projeté, en blocs parallèles qui commencent chacun au début d'un
+     * enregistrement (voir LecteurCSV.decouperEnBlocs), puis concaténation dans l'ordre.
+     */
+    private static Analyse analyser(ByteBuffer buffer) {
+        int nbBlocs = (buffer.limit() >= SEUIL_PARALLELE) ? Runtime.getRuntime().availableProcessors() * 2 : 1;
+        int[] coupures = LecteurCSV.decouperEnBlocs(buffer, 0, buffer.limit(), nbBlocs);
+        List<Analyseur> blocs = IntStream.range(0, nbBlocs)
+            .parallel()
+            .mapToObj(i -> {
+                Analyseur a = new Analyseur(coupures[i]);
+                a.consommer(buffer, coupures[i], coupures[i + 1], coupures[i]);
+                a.terminer();
+                return a;
+            })
+            .collect(Collectors.toList());
+
+        Analyse total = new Analyse();
+        int lignesPrecedentes = 0;
+        for (Analyseur bloc : blocs) {
+            Analyse a = bloc.resultat;
+            for (int i = 0; i < a.nb; i++) {
+                total.ajouter(a.crcs[i], a.colonnes[i], a.lignes[i] + lignesPrecedentes, a.debuts[i], a.fins[i]);
+            }
+            total.incomplet = a.incomplet;
+            lignesPrecedentes += bloc.ligne - 1;
+        }
+        return total;
+    }
+
+    /**
+     * Découpage en enregistrements au fil des octets (fichier projeté ou flux par morceaux).
+     * Un retour à la ligne entre guillemets ne termine pas l'enregistrement ; les lignes vides
+     * ne comptent pas (LecteurCSV les ignore, EcrivainCSV n'en écrit pas).
+     */
+    private static class Analyseur {
+        final Analyse resultat = new Analyse();
+        private final CRC32C crc = new CRC32C();
+        private boolean entreGuillemets;
+        private boolean vide = true;
+        private int champs = 1;
+        // Ligne physique courante et ligne de début de l'enregistrement courant
+        int ligne = 1;
+        private int ligneDebut = 1;
+        private long debutEnregistrement;
+        private long position;
+
+        /**
+         * @param debut position dans le fichier du premier octet analysé (début d'un enregistrement)
+         */
+        Analyseur(long debut) {
+            this.debutEnregistrement = debut;
+            this.position = debut;
+        }
+
+        /**
+         * @param decalage position dans le fichier de l'octet debut
+         */
+        void consommer(ByteBuffer buffer, int debut, int fin, long decalage) {
+            ByteBuffer mots = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+            ByteBuffer vue = buffer.duplicate();
+            int segment = debut;
+            int i = debut;
+            while (i < fin) {
+                // 8 octets sans guillemet ni retour à la ligne : seuls les ';' comptent
+                if (i + 8 <= fin) {
+                    long mot = mots.getLong(i);
+                    if ((octetsEgaux(mot, GUILLEMETS) | octetsEgaux(mot, FINS_LIGNE)) == 0) {
+                        if (!entreGuillemets) champs += Long.bitCount(octetsEgaux(mot, POINTS_VIRGULES));
+                        if (mot != 0x0D0D0D0D0D0D0D0DL) vide = false;
+                        i += 8;
+                        continue;
+                    }
+                }
+                byte c = buffer.get(i);
+                if (c == '"') {
+                    entreGuillemets = !entreGuillemets;
+                    vide = false;
+                } else if (c == '\n') {
+                    ligne++;
+                    if (!entreGuillemets) {
+                        vue.limit(i + 1).position(segment);
+                        crc.update(vue);
+                        vue.clear();
+                        segment = i + 1;
+                        finir(decalage + (i + 1 - debut));
+                    }
+                } else if (c == ';') {
+                    if (!entreGuillemets) champs++;
+                    vide = false;
+                } else if (c != '\r') {
+                    vide = false;
+                }
+                i++;
+            }
+            if (segment < fin) {
+                vue.limit(fin).position(segment);
+                crc.update(vue);
+            }
+            position = decalage + (fin - debut);
+        }
+
+        private void finir(long fin) {
+            if (!vide) {
+                resultat.ajouter((int) crc.getValue(), champs, ligneDebut, (int) debutEnregistrement, (int) fin);
+            }
+            crc.reset();
+            champs = 1;
+            vide = true;
+            ligneDebut = ligne;
+            debutEnregistrement = fin;
+        }
+
+        /**
+         * Fin des données : un enregistrement commencé sans fin de ligne est incomplet.
+         */
+        void terminer() {
+            if (position > debutEnregistrement) {
+                boolean compte = !vide;
+                finir(position);
+                resultat.incomplet = compte;
+            }
+        }
+
+        /**
+         * @return octet de poids fort à 1 pour chaque octet de mot égal à celui du motif
+         */
+        private static long octetsEgaux(long mot, long motif) {
+            long t = mot ^ motif;
+            return ~(((t & SEPT_BITS) + SEPT_BITS) | t | SEPT_BITS);
+        }
+    }
+
+    // ============================================================
+    // VÉRIFICATION AUTONOME
+    // ============================================================
+
+    /**
+     * Vérifie un dossier de données sans lancer l'application :
+     * java Services.ControleIntegrite [dossier] [--quarantaine] [--backups]
+     * Rapport seul sauf avec --quarantaine. Code de sortie 1 si une anomalie est trouvée.
+     */
+    public static void main(String[] args) {
+        Path dossier = Paths.get("data");
+        boolean backups = false;
+        boolean quarantaine = false;
+        for (String arg : args) {
+            if ("--backups".equals(arg)) {
+                backups = true;
+            } else if ("--quarantaine".equals(arg)) {
+                quarantaine = true;
+            } else {
+                dossier = Paths.get(arg);
+            }
+        }
+        int anomalies = verifierDossier(dossier, quarantaine);
+        if (backups) anomalies += verifierBackups();
+        System.exit(anomalies == 0 ? 0 : 1);
+    }
+}
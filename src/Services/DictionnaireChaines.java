@@ -0,0 +1,104 @@
+package Services;
+
+import Models.Trajet;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * DictionnaireChaines - Dictionnaire partagé des chaînes répétées (villes, statuts, marques et
+ * modèles de voiture).
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Les chargeurs (CSV, snapshot binaire, SQL) et Gestion_covoiturage.ajouter_trajet passent
+ *    les champs à faible diversité par partager().
+ * 2. La première occurrence d'une valeur est gardée dans le dictionnaire ; les suivantes sont
+ *    remplacées par cette instance et la copie lue devient immédiatement récupérable par le GC.
+ *    Un fichier de 100 000 trajets entre quelques centaines de villes ne garde donc que quelques
+ *    centaines de chaînes au lieu de 200 000.
+ * 3. Deux champs égaux sont alors la même instance : equals() et equalsIgnoreCase() répondent dès
+ *    leur premier test (identité), sans comparer les caractères. Les statuts de Trajet sont
+ *    enregistrés d'avance, ce qui rend les tests isPending()... immédiats.
+ *
+ * Seuls les champs à faible diversité passent par le dictionnaire : un CIN, un téléphone, une
+ * adresse ou une empreinte de mot de passe sont (presque) propres à chaque utilisateur et n'y
+ * feraient qu'ajouter une entrée. Le dictionnaire est vidé au début de chaque chargement complet
+ * (CSVDatabase.loadAllData) : il ne garde que les valeurs des données chargées depuis, et ne
+ * grossit donc pas d'une restauration ou d'un rechargement à l'autre.
+ * Le dictionnaire est accessible depuis plusieurs threads (lecture parallèle des trajets).
+ */
+public class DictionnaireChaines {
+
+    // Coût approximatif d'une chaîne (objet String + tableau d'octets) et d'une entrée du dictionnaire
+    private static final int ENTETE_CHAINE = 24 + 16;
+    private static final int ENTREE_DICTIONNAIRE = 48;
+
+    private static final Map<String, String> chaines = new ConcurrentHashMap<>();
+    private static final LongAdder valeurs = new LongAdder();
+    private static final LongAdder doublons = new LongAdder();
+    private static final LongAdder octetsEvites = new LongAdder();
+
+    static {
+        enregistrerStatuts();
+    }
+
+    private static void enregistrerStatuts() {
+        for (String statut : new String[] {Trajet.STATUS_PENDING, Trajet.STATUS_PENDING_APPROVAL,
+                Trajet.STATUS_IN_PROGRESS, Trajet.STATUS_FINISHED}) {
+            chaines.put(statut, statut);
+        }
+    }
+
+    /**
+     * Oublie les valeurs et les compteurs (avant un chargement complet). Les objets déjà chargés
+     * gardent leurs chaînes ; seules les valeurs lues ensuite ne sont plus partagées avec elles.
+     */
+    static void vider() {
+        chaines.clear();
+        valeurs.reset();
+        doublons.reset();
+        octetsEvites.reset();
+        enregistrerStatuts();
+    }
+
+    /**
+     * @return l'instance partagée égale à s (s lui-même à sa première occurrence), ou null
+     */
+    public static String partager(String s) {
+        if (s == null) return null;
+        String partagee = chaines.putIfAbsent(s, s);
+        // Instance déjà partagée (trajet chargé puis ajouté à la gestion...) : rien à compter
+        if (partagee == s) return s;
+        valeurs.increment();
+        if (partagee == null) return s;
+        doublons.increment();
+        octetsEvites.add(taille(s));
+        return partagee;
+    }
+
+    /**
+     * Taille approximative d'une chaîne sur le tas (chaînes compactes : 1 octet par caractère
+     * Latin-1, 2 sinon), alignée sur 8 octets.
+     */
+    private static long taille(String s) {
+        int octets = s.length();
+        for (int i = 0; i < s.length(); i++) {
+            if (s.charAt(i) > 0xFF) {
+                octets = 2 * s.length();
+                break;
+            }
+        }
+        return ENTETE_CHAINE + ((octets + 7) & ~7);
+    }
+
+    /**
+     * Résumé pour les messages : valeurs lues, instances partagées et mémoire évitée (estimation,
+     * déduction faite de la place occupée par le dictionnaire lui-même).
+     */
+    public static String rapport() {
+        long evites = octetsEvites.sum() - (long) chaines.size() * ENTREE_DICTIONNAIRE;
+        return "Dictionnaire de chaînes: " + chaines.size() + " valeur(s) distincte(s) pour " + valeurs.sum()
+            + " lue(s), " + doublons.sum() + " doublon(s) partagé(s), ~" + Math.max(0, evites) / 1024
+            + " Ko de tas économisés";
+    }
+}
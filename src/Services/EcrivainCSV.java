@@ -0,0 +1,379 @@
+package Services;
+
+import Models.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.List;
+import java.util.zip.CRC32C;
+
+/**
+ * EcrivainCSV - Écriture des tables CSV sans chaînes temporaires.
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Chaque champ est encodé directement en UTF-8 dans un tampon d'octets réutilisé
+ *    (TAILLE_TAMPON), sans passer par escapeCSV, String.join ni String.valueOf.
+ * 2. L'échappement se fait au fil de l'écriture : un premier parcours du texte (sans copie)
+ *    indique s'il faut des guillemets, puis les caractères sont écrits en doublant les guillemets.
+ * 3. Les entiers sont écrits chiffre par chiffre ; les listes de CIN des trajets sont écrites
+ *    directement depuis les passagers.
+ * 4. Le tampon est vidé par blocs entiers vers le flux de sortie (fichier temporaire, empreinte
+ *    SHA-256 et objet de backup compressé, voir CSVDatabase.ecrireTableAtomique).
+ * 5. Sur demande (calculerSommes), le CRC32C de chaque enregistrement et du fichier est calculé
+ *    sur le tampon avant son vidage (voir ControleIntegrite).
+ *
+ * Le résultat est identique, octet pour octet, à l'ancienne écriture par BufferedWriter :
+ * mêmes règles d'échappement que CSVDatabase.escapeCSV, même séparateur de lignes, même
+ * remplacement ('?') d'un caractère non encodable.
+ */
+public class EcrivainCSV {
+
+    private static final int TAILLE_TAMPON = 64 * 1024;
+    private static final byte DELIMITER = ';';
+    private static final byte GUILLEMET = '"';
+    private static final byte[] FIN_LIGNE = System.lineSeparator().getBytes(StandardCharsets.US_ASCII);
+
+    // Texte des derniers prix écrits (Float.toString alloue) : les prix se répètent d'un trajet
+    // à l'autre et d'une sauvegarde à l'autre. Cache partagé, une case = un objet immuable.
+    private static final int TAILLE_CACHE_PRIX = 4096;
+    private static final Prix[] cachePrix = new Prix[TAILLE_CACHE_PRIX];
+
+    private final OutputStream sortie;
+    private final byte[] tampon;
+    private int position;
+    private boolean debutLigne = true;
+    private long octetsEcrits;
+    private long lignes;
+    // Sommes de contrôle (null si non demandées) : l'enregistrement en cours commence à debutSomme
+    private CRC32C crcFichier;
+    private CRC32C crcEnregistrement;
+    private int debutSomme;
+    private int[] crcs;
+
+    public EcrivainCSV(OutputStream sortie) {
+        this(sortie, TAILLE_TAMPON);
+    }
+
+    private EcrivainCSV(OutputStream sortie, int taille) {
+        this.sortie = sortie;
+        this.tampon = new byte[taille];
+    }
+
+    /**
+     * Construit une ligne isolée (journal) avec le même encodage que les tables.
+     */
+    static String ligne(Ligne contenu) {
+        ByteArrayOutputStream memoire = new ByteArrayOutputStream(256);
+        EcrivainCSV e = new EcrivainCSV(memoire, 1024);
+        try {
+            contenu.ecrire(e);
+            e.vider();
+        } catch (IOException ex) {
+            // Impossible : écriture en mémoire
+            throw new IllegalStateException(ex);
+        }
+        return memoire.toString(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Contenu d'une ligne isolée.
+     */
+    interface Ligne {
+        void ecrire(EcrivainCSV e) throws IOException;
+    }
+
+    /**
+     * Calcule, pendant l'écriture, le CRC32C de chaque enregistrement et du fichier entier
+     * (à appeler avant d'écrire la première ligne).
+     */
+    void calculerSommes() {
+        crcFichier = new CRC32C();
+        crcEnregistrement = new CRC32C();
+        crcs = new int[1024];
+    }
+
+    /**
+     * @return sommes de ce qui a été écrit (après vider), ou null si calculerSommes n'a pas été appelé
+     */
+    ControleIntegrite.Sommes sommes() {
+        if (crcs == null) return null;
+        return new ControleIntegrite.Sommes(octetsEcrits, (int) crcFichier.getValue(), Arrays.copyOf(crcs, (int) lignes));
+    }
+
+    // ============================================================
+    // CHAMPS
+    // ============================================================
+
+    /**
+     * Texte brut, sans séparateur ni échappement (ligne d'en-tête).
+     */
+    public void texte(String s) throws IOException {
+        encoder(s, false);
+    }
+
+    /**
+     * Champ texte, entre guillemets s'il contient le délimiteur, un guillemet ou un retour à la ligne.
+     * Un texte null est écrit comme un champ vide.
+     */
+    public void champ(String s) throws IOException {
+        separateur();
+        if (s == null) return;
+        // Cas courant (rien à échapper) en un seul passage : écriture directe, annulée si un
+        // caractère spécial apparaît. Un champ plus grand que le tampon est d'abord examiné.
+        int taille = 3 * s.length() + 2;
+        if (taille <= tampon.length) {
+            reserver(taille);
+            if (encoderSiSimple(s)) return;
+        } else if (!aEchapper(s)) {
+            encoder(s, false);
+            return;
+        }
+        octet(GUILLEMET);
+        encoder(s, true);
+        octet(GUILLEMET);
+    }
+
+    public void champ(long valeur) throws IOException {
+        separateur();
+        if (valeur == Long.MIN_VALUE) {
+            encoder(Long.toString(valeur), false);
+            return;
+        }
+        reserver(20);
+        if (valeur < 0) {
+            tampon[position++] = '-';
+            valeur = -valeur;
+        }
+        int debut = position;
+        do {
+            tampon[position++] = (byte) ('0' + valeur % 10);
+            valeur /= 10;
+        } while (valeur != 0);
+        // Chiffres écrits à l'envers
+        for (int i = debut, j = position - 1; i < j; i++, j--) {
+            byte b = tampon[i];
+            tampon[i] = tampon[j];
+            tampon[j] = b;
+        }
+    }
+
+    public void champ(boolean valeur) throws IOException {
+        separateur();
+        encoder(valeur ? "true" : "false", false);
+    }
+
+    /**
+     * Prix : même texte que String.valueOf(float), relu à l'identique par LecteurCSV.champFloat.
+     */
+    public void champ(float valeur) throws IOException {
+        separateur();
+        int bits = Float.floatToRawIntBits(valeur);
+        int i = (bits ^ (bits >>> 16)) & (TAILLE_CACHE_PRIX - 1);
+        Prix prix = cachePrix[i];
+        if (prix == null || prix.bits != bits) {
+            prix = new Prix(bits, Float.toString(valeur));
+            cachePrix[i] = prix;
+        }
+        encoder(prix.texte, false);
+    }
+
+    /**
+     * Liste des CIN de passagers séparés par des virgules, échappée comme un seul champ
+     * (même résultat que escapeCSV(Trajet.getPassagersAcceptesCINs())).
+     */
+    public void champCINs(List<? extends User> passagers) throws IOException {
+        separateur();
+        boolean echapper = false;
+        for (int i = 0; i < passagers.size() && !echapper; i++) {
+            echapper = aEchapper(passagers.get(i).getCin());
+        }
+        if (echapper) octet(GUILLEMET);
+        for (int i = 0; i < passagers.size(); i++) {
+            if (i > 0) octet((byte) ',');
+            encoder(passagers.get(i).getCin(), echapper);
+        }
+        if (echapper) octet(GUILLEMET);
+    }
+
+    /**
+     * Recopie tel quel un enregistrement déjà encodé (portion [debut, fin) d'une table projetée).
+     */
+    public void brut(ByteBuffer source, int debut, int fin) throws IOException {
+        int taille = fin - debut;
+        while (taille > 0) {
+            if (position == tampon.length) ecrireBloc();
+            int n = Math.min(taille, tampon.length - position);
+            source.get(debut, tampon, position, n);
+            position += n;
+            debut += n;
+            taille -= n;
+        }
+    }
+
+    public void finLigne() throws IOException {
+        reserver(FIN_LIGNE.length);
+        System.arraycopy(FIN_LIGNE, 0, tampon, position, FIN_LIGNE.length);
+        position += FIN_LIGNE.length;
+        debutLigne = true;
+        if (crcs != null) {
+            crcEnregistrement.update(tampon, debutSomme, position - debutSomme);
+            if (lignes == crcs.length) crcs = Arrays.copyOf(crcs, 2 * crcs.length);
+            crcs[(int) lignes] = (int) crcEnregistrement.getValue();
+            crcEnregistrement.reset();
+            debutSomme = position;
+        }
+        lignes++;
+    }
+
+    /**
+     * Écrit le contenu du tampon dans le flux de sortie puis le vide (fin de table).
+     */
+    public void vider() throws IOException {
+        ecrireBloc();
+        sortie.flush();
+    }
+
+    private void ecrireBloc() throws IOException {
+        if (crcs != null) {
+            crcEnregistrement.update(tampon, debutSomme, position - debutSomme);
+            crcFichier.update(tampon, 0, position);
+            debutSomme = 0;
+        }
+        if (position > 0) {
+            sortie.write(tampon, 0, position);
+            octetsEcrits += position;
+            position = 0;
+        }
+    }
+
+    public long octetsEcrits() {
+        return octetsEcrits + position;
+    }
+
+    public long lignes() {
+        return lignes;
+    }
+
+    // ============================================================
+    // ENCODAGE
+    // ============================================================
+
+    private void separateur() throws IOException {
+        if (debutLigne) {
+            debutLigne = false;
+        } else {
+            octet(DELIMITER);
+        }
+    }
+
+    private static boolean aEchapper(String s) {
+        if (s == null) return false;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == ';' || c == '"' || c == '\n' || c == '\r') return true;
+        }
+        return false;
+    }
+
+    private void octet(byte b) throws IOException {
+        if (position == tampon.length) ecrireBloc();
+        tampon[position++] = b;
+    }
+
+    private void reserver(int octets) throws IOException {
+        if (tampon.length - position < octets) ecrireBloc();
+    }
+
+    /**
+     * Encode s sans guillemets si aucun caractère ne l'impose ; la place (3 octets par caractère
+     * au plus) doit être disponible dans le tampon.
+     *
+     * @return false (rien n'est écrit) si le champ doit être mis entre guillemets
+     */
+    private boolean encoderSiSimple(String s) {
+        int debut = position;
+        int n = s.length();
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                // Texte non ASCII : fin du champ par l'encodage complet (place déjà réservée)
+                position = debut;
+                if (aEchapper(s)) return false;
+                encoderCaracteres(s, false);
+                return true;
+            }
+            if (c == ';' || c == '"' || c == '\n' || c == '\r') {
+                position = debut;
+                return false;
+            }
+            tampon[position++] = (byte) c;
+        }
+        return true;
+    }
+
+    /**
+     * Encode s en UTF-8 dans le tampon ; doublerGuillemets double chaque '"' (champ entre guillemets).
+     */
+    private void encoder(String s, boolean doublerGuillemets) throws IOException {
+        if (s == null) return;
+        // Au plus 3 octets par caractère (une paire de substitution : 4 octets pour 2 caractères)
+        if (3 * s.length() <= tampon.length) {
+            reserver(3 * s.length());
+            encoderCaracteres(s, doublerGuillemets);
+            return;
+        }
+        // Texte plus grand que le tampon : vidage au fil de l'encodage
+        int i = 0;
+        while (i < s.length()) {
+            int fin = Math.min(s.length(), i + 1024);
+            // Ne pas séparer une paire de substitution
+            if (fin < s.length() && Character.isHighSurrogate(s.charAt(fin - 1))) fin++;
+            String morceau = s.substring(i, fin);
+            reserver(3 * morceau.length());
+            encoderCaracteres(morceau, doublerGuillemets);
+            i = fin;
+        }
+    }
+
+    /**
+     * Encodage UTF-8 proprement dit ; la place nécessaire a été réservée par l'appelant.
+     */
+    private void encoderCaracteres(String s, boolean doublerGuillemets) {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c < 0x80) {
+                tampon[position++] = (byte) c;
+                if (c == '"' && doublerGuillemets) tampon[position++] = GUILLEMET;
+            } else if (c < 0x800) {
+                tampon[position++] = (byte) (0xC0 | (c >> 6));
+                tampon[position++] = (byte) (0x80 | (c & 0x3F));
+            } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                int cp = Character.toCodePoint(c, s.charAt(++i));
+                tampon[position++] = (byte) (0xF0 | (cp >> 18));
+                tampon[position++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                tampon[position++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                tampon[position++] = (byte) (0x80 | (cp & 0x3F));
+            } else if (Character.isSurrogate(c)) {
+                // Demi-paire isolée : remplacée comme le fait OutputStreamWriter
+                tampon[position++] = '?';
+            } else {
+                tampon[position++] = (byte) (0xE0 | (c >> 12));
+                tampon[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                tampon[position++] = (byte) (0x80 | (c & 0x3F));
+            }
+        }
+    }
+
+    private static class Prix {
+        final int bits;
+        final String texte;
+
+        Prix(int bits, String texte) {
+            this.bits = bits;
+            this.texte = texte;
+        }
+    }
+}
@@ -0,0 +1,532 @@
+package Services;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * EntrepotBackups - Backups dédupliqués par contenu (data/backups/).
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Chaque version d'une table est stockée UNE seule fois dans objets/, compressée en GZIP sous
+ *    le nom de l'empreinte SHA-256 de son contenu NON compressé (ex: objets/3fa2...9c.csv.gz).
+ *    Une table inchangée n'est donc jamais recopiée.
+ * 2. Un backup est une "génération" : un ensemble cohérent de tables (toutes prises au même
+ *    instant), avec pour chacune l'empreinte et la taille de son contenu. Toutes les générations
+ *    sont décrites dans un seul fichier, le catalogue (catalogue.txt), une ligne par génération,
+ *    nommée par son horodatage (AAAAMMJJ_HHMMSS_mmm).
+ * 3. L'objet compressé est produit pendant l'écriture de la table, dans la même passe
+ *    (CSVDatabase.ecrireTableAtomique + ObjetEnCours) ; l'empreinte est mémorisée avec la taille
+ *    et la date du fichier (empreintes.txt). Créer un backup ne relit donc pas les tables : un
+ *    simple stat suffit, l'objet existe déjà. Une table modifiée hors de l'application est
+ *    relue et compressée à ce moment-là.
+ * 4. Les anciens objets non compressés (objets/<empreinte>.csv) restent lisibles.
+ * 5. La rotation ne touche que les métadonnées : les générations des RETENTION_JOURS derniers
+ *    jours sont conservées (au moins un nombre minimal), puis les objets qui ne sont plus
+ *    référencés par aucune génération ni par une table actuelle sont supprimés.
+ * 6. Le catalogue est gardé en mémoire, trié par horodatage : trouver la génération en vigueur
+ *    à un instant donné (restauration) ne parcourt aucun dossier.
+ */
+public class EntrepotBackups {
+
+    private static final String BACKUP_FOLDER = "data/backups/";
+    private static final Path OBJETS = Paths.get(BACKUP_FOLDER, "objets");
+    private static final Path CATALOGUE = Paths.get(BACKUP_FOLDER, "catalogue.txt");
+    // Ancien format (un manifeste par génération), importé dans le catalogue au premier usage
+    private static final Path GENERATIONS = Paths.get(BACKUP_FOLDER, "generations");
+    private static final Path EMPREINTES = Paths.get(BACKUP_FOLDER, "empreintes.txt");
+    private static final String DELIMITER = ";";
+    private static final String EXTENSION = ".csv.gz";
+    private static final String EXTENSION_ANCIENNE = ".csv";
+    private static final java.time.format.DateTimeFormatter FORMAT_GENERATION =
+        java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS");
+
+    /**
+     * Empreinte connue d'un fichier, valable tant que sa taille et sa date n'ont pas changé.
+     */
+    private static class Empreinte {
+        final String hash;
+        final long taille;
+        final long date;
+
+        Empreinte(String hash, long taille, long date) {
+            this.hash = hash;
+            this.taille = taille;
+            this.date = date;
+        }
+    }
+
+    // Cache des empreintes (clé = chemin de la table), chargé au premier usage
+    private static Map<String, Empreinte> empreintes;
+
+    /**
+     * Une table dans une génération : empreinte SHA-256 et taille de son contenu non compressé.
+     */
+    static class TableSauvegardee {
+        final String hash;
+        final long taille;
+
+        TableSauvegardee(String hash, long taille) {
+            this.hash = hash;
+            this.taille = taille;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof TableSauvegardee
+                && ((TableSauvegardee) o).hash.equals(hash) && ((TableSauvegardee) o).taille == taille;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash.hashCode();
+        }
+    }
+
+    // Catalogue : nom de génération (horodatage) -> tables, chargé au premier usage
+    private static TreeMap<String, Map<String, TableSauvegardee>> catalogue;
+
+    // ============================================================
+    // EMPREINTES
+    // ============================================================
+
+    /**
+     * Digest utilisé pour nommer les objets (voir CSVDatabase.ecrireFichierAtomique).
+     */
+    static MessageDigest nouveauDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 indisponible", e);
+        }
+    }
+
+    /**
+     * Mémorise l'empreinte d'une table qui vient d'être écrite.
+     */
+    static synchronized void enregistrerEmpreinte(Path fichier, String hash) {
+        try {
+            chargerEmpreintes();
+            empreintes.put(fichier.toString(), new Empreinte(hash, Files.size(fichier),
+                Files.getLastModifiedTime(fichier).toMillis()));
+            sauverEmpreintes();
+        } catch (IOException e) {
+            // Cache seulement : l'empreinte sera recalculée au prochain backup
+            System.err.println("⚠ Empreinte non enregistrée pour " + fichier + ": " + e.getMessage());
+        }
+    }
+
+    /**
+     * @return true si le fichier a encore la taille et la date de sa dernière empreinte connue,
+     *         c'est-à-dire s'il n'a pas été modifié depuis que l'application l'a écrit ou lu
+     */
+    static synchronized boolean empreinteAJour(Path fichier) {
+        try {
+            chargerEmpreintes();
+            Empreinte connue = empreintes.get(fichier.toString());
+            return connue != null && connue.taille == Files.size(fichier)
+                && connue.date == Files.getLastModifiedTime(fichier).toMillis();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * Empreinte actuelle d'une table : depuis le cache si le fichier n'a pas changé,
+     * sinon (fichier modifié hors de l'application) recalculée en le relisant.
+     */
+    private static String empreinte(Path fichier) throws IOException {
+        long taille = Files.size(fichier);
+        long date = Files.getLastModifiedTime(fichier).toMillis();
+        Empreinte connue = empreintes.get(fichier.toString());
+        if (connue != null && connue.taille == taille && connue.date == date) {
+            return connue.hash;
+        }
+
+        MessageDigest digest = nouveauDigest();
+        try (InputStream in = Files.newInputStream(fichier)) {
+            byte[] tampon = new byte[64 * 1024];
+            int n;
+            while ((n = in.read(tampon)) > 0) digest.update(tampon, 0, n);
+        }
+        String hash = HexFormat.of().formatHex(digest.digest());
+        empreintes.put(fichier.toString(), new Empreinte(hash, taille, date));
+        sauverEmpreintes();
+        return hash;
+    }
+
+    private static void chargerEmpreintes() throws IOException {
+        if (empreintes != null) return;
+        empreintes = new HashMap<>();
+        if (!Files.exists(EMPREINTES)) return;
+        for (String ligne : Files.readAllLines(EMPREINTES, StandardCharsets.UTF_8)) {
+            String[] champs = ligne.split(DELIMITER);
+            if (champs.length == 4) {
+                try {
+                    empreintes.put(champs[0], new Empreinte(champs[1], Long.parseLong(champs[2]), Long.parseLong(champs[3])));
+                } catch (NumberFormatException ignored) {
+                    // Ligne invalide : l'empreinte sera recalculée
+                }
+            }
+        }
+    }
+
+    private static void sauverEmpreintes() throws IOException {
+        Files.createDirectories(EMPREINTES.getParent());
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Empreinte> e : empreintes.entrySet()) {
+            Empreinte emp = e.getValue();
+            sb.append(e.getKey()).append(DELIMITER).append(emp.hash).append(DELIMITER)
+              .append(emp.taille).append(DELIMITER).append(emp.date).append('\n');
+        }
+        Path tmp = Paths.get(EMPREINTES + ".tmp");
+        Files.write(tmp, sb.toString().getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp, EMPREINTES, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // ============================================================
+    // OBJETS COMPRESSÉS
+    // ============================================================
+
+    /**
+     * Objet compressé écrit en même temps qu'une table (voir CSVDatabase.ecrireTableAtomique).
+     *
+     * COMMENTAIRE DE FONCTIONNEMENT :
+     * - dedoubler() renvoie un flux qui écrit dans la table ET dans objets/xxx.gz.tmp
+     * - valider(hash) renomme le temporaire en objets/<hash>.csv.gz une fois l'empreinte connue
+     * - le backup est secondaire : une erreur côté objet l'abandonne sans faire échouer
+     *   l'écriture de la table (l'objet sera recréé depuis la table au prochain backup)
+     */
+    static class ObjetEnCours {
+        private final Path tmp;
+        private OutputStream gzip;
+
+        private ObjetEnCours(Path tmp, OutputStream gzip) {
+            this.tmp = tmp;
+            this.gzip = gzip;
+        }
+
+        OutputStream dedoubler(OutputStream principal) {
+            return new FilterOutputStream(principal) {
+                @Override
+                public void write(int b) throws IOException {
+                    out.write(b);
+                    if (gzip != null) {
+                        try {
+                            gzip.write(b);
+                        } catch (IOException e) {
+                            abandonner();
+                        }
+                    }
+                }
+
+                @Override
+                public void write(byte[] b, int off, int len) throws IOException {
+                    out.write(b, off, len);
+                    if (gzip != null) {
+                        try {
+                            gzip.write(b, off, len);
+                        } catch (IOException e) {
+                            abandonner();
+                        }
+                    }
+                }
+            };
+        }
+
+        /**
+         * Termine la compression et range l'objet sous son empreinte.
+         */
+        void valider(String hash) {
+            if (gzip == null) return;
+            try {
+                gzip.close();
+                gzip = null;
+                Path objet = OBJETS.resolve(hash + EXTENSION);
+                if (Files.exists(objet)) {
+                    Files.deleteIfExists(tmp);
+                } else {
+                    Files.move(tmp, objet, StandardCopyOption.ATOMIC_MOVE);
+                }
+            } catch (IOException e) {
+                System.err.println("⚠ Objet de backup non enregistré: " + e.getMessage());
+                abandonner();
+            }
+        }
+
+        void abandonner() {
+            try {
+                if (gzip != null) gzip.close();
+            } catch (IOException ignored) {
+                // Le temporaire est supprimé ci-dessous
+            }
+            gzip = null;
+            try {
+                Files.deleteIfExists(tmp);
+            } catch (IOException ignored) {
+                // Supprimé par la prochaine rotation (non référencé)
+            }
+        }
+    }
+
+    /**
+     * Prépare l'objet compressé d'une table sur le point d'être écrite.
+     *
+     * @return null si le dossier des objets est inaccessible (la table est écrite sans objet)
+     */
+    static ObjetEnCours nouvelObjet() {
+        try {
+            Files.createDirectories(OBJETS);
+            Path tmp = Files.createTempFile(OBJETS, "objet", ".gz.tmp");
+            return new ObjetEnCours(tmp, new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), 64 * 1024));
+        } catch (IOException e) {
+            System.err.println("⚠ Objet de backup non créé: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Fichier d'un objet : compressé, ou ancien format non compressé.
+     *
+     * @return null si l'objet n'existe pas
+     */
+    private static Path trouverObjet(String hash) {
+        Path objet = OBJETS.resolve(hash + EXTENSION);
+        if (Files.exists(objet)) return objet;
+        Path ancien = OBJETS.resolve(hash + EXTENSION_ANCIENNE);
+        return Files.exists(ancien) ? ancien : null;
+    }
+
+    /**
+     * Compresse une table existante en objet (table modifiée hors de l'application).
+     */
+    private static void compresser(Path fichier, String hash) throws IOException {
+        Path tmp = Files.createTempFile(OBJETS, "objet", ".gz.tmp");
+        try {
+            try (OutputStream out = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)), 64 * 1024)) {
+                Files.copy(fichier, out);
+            }
+            Files.move(tmp, OBJETS.resolve(hash + EXTENSION), StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * Ouvre le contenu (décompressé) d'un objet, en flux : aucun fichier intermédiaire.
+     */
+    static synchronized InputStream ouvrirObjet(String hash) throws IOException {
+        Path objet = trouverObjet(hash);
+        if (objet == null) throw new FileNotFoundException("objet de backup manquant: " + hash);
+        InputStream in = Files.newInputStream(objet);
+        if (!objet.getFileName().toString().endsWith(EXTENSION)) return in;
+        try {
+            return new GZIPInputStream(in, 64 * 1024);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    // ============================================================
+    // GÉNÉRATIONS
+    // ============================================================
+
+    /**
+     * Crée une génération contenant l'état actuel des tables (nom de table -> fichier).
+     * Aucune génération n'est créée si toutes les tables sont identiques à la précédente.
+     *
+     * @param generationsMinimum nombre de générations toujours conservées, même anciennes
+     * @param retentionJours     les générations plus récentes que ce nombre de jours sont conservées
+     * @return nom de la génération créée, ou null si rien n'a changé
+     */
+    static synchronized String creerGeneration(Map<String, Path> tables, int generationsMinimum, int retentionJours) throws IOException {
+        chargerEmpreintes();
+        chargerCatalogue();
+        Files.createDirectories(OBJETS);
+
+        // Une entrée par table existante (taille non compressée)
+        Map<String, TableSauvegardee> generation = new LinkedHashMap<>();
+        int nouveauxObjets = 0;
+        for (Map.Entry<String, Path> table : tables.entrySet()) {
+            Path fichier = table.getValue();
+            if (!Files.exists(fichier)) continue;
+            String hash = empreinte(fichier);
+            if (trouverObjet(hash) == null) {
+                // Normalement déjà produit pendant l'écriture de la table
+                compresser(fichier, hash);
+                nouveauxObjets++;
+            }
+            generation.put(table.getKey(), new TableSauvegardee(hash, Files.size(fichier)));
+        }
+
+        if (!catalogue.isEmpty() && catalogue.lastEntry().getValue().equals(generation)) {
+            return null;
+        }
+
+        String nom = java.time.LocalDateTime.now().format(FORMAT_GENERATION);
+        catalogue.put(nom, generation);
+        rotation(generationsMinimum, retentionJours);
+        System.out.println("ℹ Génération " + nom + ": " + nouveauxObjets + " table(s) compressée(s) depuis le disque, "
+            + generation.size() + " table(s) référencée(s)");
+        return nom;
+    }
+
+    /**
+     * Supprime les générations expirées, enregistre le catalogue puis supprime les objets orphelins
+     * (dans cet ordre : le catalogue sur disque ne référence jamais un objet supprimé).
+     *
+     * Les noms de génération sont horodatés ("yyyyMMdd_HHmmss_SSS") : l'ordre alphabétique est
+     * l'ordre chronologique, la date limite se compare donc directement aux noms.
+     */
+    private static void rotation(int generationsMinimum, int retentionJours) throws IOException {
+        String limite = java.time.LocalDateTime.now().minusDays(retentionJours).format(FORMAT_GENERATION);
+        boolean supprimees = false;
+        while (catalogue.size() > generationsMinimum && catalogue.firstKey().compareTo(limite) < 0) {
+            catalogue.pollFirstEntry();
+            supprimees = true;
+        }
+        sauverCatalogue();
+        if (!supprimees) return;
+
+        // Objets encore utiles : générations restantes + tables actuelles (objet créé à l'écriture,
+        // référencé par le prochain backup)
+        Set<String> references = new HashSet<>();
+        for (Map<String, TableSauvegardee> generation : catalogue.values()) {
+            for (TableSauvegardee table : generation.values()) references.add(table.hash);
+        }
+        for (Empreinte empreinte : empreintes.values()) references.add(empreinte.hash);
+
+        long uneHeure = System.currentTimeMillis() - 3600_000L;
+        try (DirectoryStream<Path> objets = Files.newDirectoryStream(OBJETS)) {
+            for (Path objet : objets) {
+                if (objet.getFileName().toString().endsWith(".tmp")) {
+                    // Récent : écriture de table en cours ; ancien : écriture interrompue
+                    if (Files.getLastModifiedTime(objet).toMillis() < uneHeure) Files.deleteIfExists(objet);
+                } else if (!references.contains(hashObjet(objet))) {
+                    Files.deleteIfExists(objet);
+                }
+            }
+        }
+    }
+
+    /**
+     * Génération en vigueur à un instant donné : la plus récente créée au plus tard à cet instant.
+     *
+     * @param instant null pour la génération la plus récente
+     * @return nom de la génération et ses tables (table -> empreinte, taille), ou null si aucune
+     */
+    static synchronized Map.Entry<String, Map<String, TableSauvegardee>> generationAu(java.time.LocalDateTime instant) throws IOException {
+        chargerCatalogue();
+        if (instant == null) return catalogue.lastEntry();
+        // Borne incluse : toute génération horodatée dans la milliseconde de l'instant
+        return catalogue.floorEntry(instant.format(FORMAT_GENERATION));
+    }
+
+    /**
+     * @return noms (horodatages) des générations disponibles, de la plus ancienne à la plus récente
+     */
+    static synchronized List<String> listerGenerations() throws IOException {
+        chargerCatalogue();
+        return new ArrayList<>(catalogue.keySet());
+    }
+
+    /**
+     * @return toutes les générations (horodatage -> tables), de la plus ancienne à la plus récente
+     */
+    static synchronized Map<String, Map<String, TableSauvegardee>> generations() throws IOException {
+        chargerCatalogue();
+        return new TreeMap<>(catalogue);
+    }
+
+    // ============================================================
+    // CATALOGUE
+    // ============================================================
+
+    /**
+     * Format d'une ligne : "generation;table;empreinte;taille;table;empreinte;taille;..."
+     */
+    private static void chargerCatalogue() throws IOException {
+        if (catalogue != null) return;
+        TreeMap<String, Map<String, TableSauvegardee>> lu = new TreeMap<>();
+        if (Files.exists(CATALOGUE)) {
+            for (String ligne : Files.readAllLines(CATALOGUE, StandardCharsets.UTF_8)) {
+                String[] champs = ligne.split(DELIMITER);
+                if (champs.length < 4 || (champs.length - 1) % 3 != 0) continue;
+                Map<String, TableSauvegardee> generation = new LinkedHashMap<>();
+                try {
+                    for (int i = 1; i < champs.length; i += 3) {
+                        generation.put(champs[i], new TableSauvegardee(champs[i + 1], Long.parseLong(champs[i + 2])));
+                    }
+                } catch (NumberFormatException e) {
+                    System.err.println("⚠ Ligne du catalogue de backups ignorée: " + champs[0]);
+                    continue;
+                }
+                lu.put(champs[0], generation);
+            }
+            catalogue = lu;
+            return;
+        }
+
+        // Premier usage : import des anciens manifestes (generations/*.txt)
+        List<Path> manifestes = new ArrayList<>();
+        if (Files.isDirectory(GENERATIONS)) {
+            try (DirectoryStream<Path> contenu = Files.newDirectoryStream(GENERATIONS, "*.txt")) {
+                for (Path p : contenu) manifestes.add(p);
+            }
+        }
+        for (Path manifeste : manifestes) {
+            Map<String, TableSauvegardee> generation = new LinkedHashMap<>();
+            for (String ligne : Files.readAllLines(manifeste, StandardCharsets.UTF_8)) {
+                String[] champs = ligne.split(DELIMITER);
+                if (champs.length != 3) continue;
+                try {
+                    generation.put(champs[0], new TableSauvegardee(champs[1], Long.parseLong(champs[2])));
+                } catch (NumberFormatException ignored) {
+                    // Ligne invalide : table absente de cette génération
+                }
+            }
+            String nom = manifeste.getFileName().toString();
+            lu.put(nom.substring(0, nom.length() - ".txt".length()), generation);
+        }
+        catalogue = lu;
+        if (manifestes.isEmpty()) return;
+        sauverCatalogue();
+        for (Path manifeste : manifestes) Files.deleteIfExists(manifeste);
+        System.out.println("ℹ Catalogue des backups créé à partir de " + manifestes.size() + " génération(s)");
+    }
+
+    private static void sauverCatalogue() throws IOException {
+        Files.createDirectories(CATALOGUE.getParent());
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Map<String, TableSauvegardee>> generation : catalogue.entrySet()) {
+            sb.append(generation.getKey());
+            for (Map.Entry<String, TableSauvegardee> table : generation.getValue().entrySet()) {
+                sb.append(DELIMITER).append(table.getKey())
+                  .append(DELIMITER).append(table.getValue().hash)
+                  .append(DELIMITER).append(table.getValue().taille);
+            }
+            sb.append('\n');
+        }
+        Path tmp = Paths.get(CATALOGUE + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmp.toFile())) {
+            out.write(sb.toString().getBytes(StandardCharsets.UTF_8));
+            out.getChannel().force(true);
+        }
+        Files.move(tmp, CATALOGUE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Empreinte d'un objet, d'après son nom.
+     */
+    private static String hashObjet(Path objet) {
+        String nom = objet.getFileName().toString();
+        int point = nom.indexOf('.');
+        return (point < 0) ? nom : nom.substring(0, point);
+    }
+}
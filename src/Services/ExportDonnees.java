@@ -0,0 +1,570 @@
+package Services;
+
+import Models.*;
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.text.DecimalFormatSymbols;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * ExportDonnees - Export en flux des trajets, utilisateurs et demandes (usage externe).
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. On choisit les données (Donnees), le format (Format) et éventuellement un Filtre
+ *    (conducteur, statut, ou critère libre sur le trajet).
+ * 2. Chaque ligne est écrite dès qu'elle est produite : aucune liste intermédiaire, aucun
+ *    String.format. La mémoire utilisée ne dépend pas du nombre de lignes exportées.
+ * 3. Formats :
+ *    - EXCEL_CSV : BOM UTF-8, ';', libellés français, décimales selon la langue du système
+ *    - JSON_LINES : un objet JSON par ligne
+ *    - COLONNES_GZIP : fichier binaire compressé, organisé en groupes de LIGNES_PAR_GROUPE
+ *      lignes ; dans un groupe, les valeurs sont rangées colonne par colonne (voir SortieColonnes)
+ *
+ * Les filtres s'appliquent aux trajets et aux demandes ; les utilisateurs sont exportés en
+ * entier (sans le hash du mot de passe).
+ */
+public class ExportDonnees {
+
+    public enum Format { EXCEL_CSV, JSON_LINES, COLONNES_GZIP }
+
+    public enum Donnees { TRAJETS, UTILISATEURS, DEMANDES }
+
+    /**
+     * Critères de sélection des trajets (tous optionnels, combinés par ET).
+     */
+    public static class Filtre {
+        private String conducteurCIN;
+        private String status;
+        private Predicate<Trajet> critere;
+
+        public Filtre conducteur(String cin) {
+            this.conducteurCIN = cin;
+            return this;
+        }
+
+        public Filtre status(String status) {
+            this.status = status;
+            return this;
+        }
+
+        /**
+         * Critère supplémentaire quelconque (ex: prix, ville de départ).
+         */
+        public Filtre et(Predicate<Trajet> critere) {
+            this.critere = (this.critere == null) ? critere : this.critere.and(critere);
+            return this;
+        }
+
+        boolean accepte(Trajet t) {
+            if (conducteurCIN != null
+                    && (t.getConducteur() == null || !conducteurCIN.equals(t.getConducteur().getCin()))) {
+                return false;
+            }
+            if (status != null && !status.equals(t.getStatusTrajet())) return false;
+            return critere == null || critere.test(t);
+        }
+    }
+
+    /**
+     * Source des lignes à exporter, lue lot par lot : permet de n'avoir qu'un lot en mémoire
+     * et de le préparer ailleurs (ex: sur l'EDT, voir MainFrame.exporter).
+     */
+    @FunctionalInterface
+    public interface Lots<T> {
+        /**
+         * @return le lot suivant, null quand il n'y en a plus
+         */
+        List<T> suivant() throws IOException;
+
+        /**
+         * Un seul lot : la liste entière.
+         */
+        static <T> Lots<T> de(List<T> liste) {
+            boolean[] lu = {false};
+            return () -> {
+                if (lu[0]) return null;
+                lu[0] = true;
+                return liste;
+            };
+        }
+    }
+
+    private static final Filtre AUCUN_FILTRE = new Filtre();
+
+    // Taille d'un groupe de lignes du format COLONNES_GZIP (mémoire bornée pendant l'export)
+    private static final int LIGNES_PAR_GROUPE = 4096;
+    private static final int MAGIC_COLONNES = 0x43564345; // "CVCE"
+
+    private static final byte TYPE_TEXTE = 0;
+    private static final byte TYPE_ENTIER = 1;
+    private static final byte TYPE_DECIMAL = 2;
+
+    /**
+     * Colonne exportée : libellé (Excel), clé (JSON / colonnes) et type.
+     */
+    private static class Colonne {
+        final String libelle;
+        final String cle;
+        final byte type;
+
+        Colonne(String libelle, String cle, byte type) {
+            this.libelle = libelle;
+            this.cle = cle;
+            this.type = type;
+        }
+    }
+
+    private static final Colonne[] COLONNES_TRAJETS = {
+        new Colonne("Id", "id", TYPE_ENTIER),
+        new Colonne("Point de Départ", "depart", TYPE_TEXTE),
+        new Colonne("Point d'Arrivée", "arrivee", TYPE_TEXTE),
+        new Colonne("Durée (min)", "duree_min", TYPE_ENTIER),
+        new Colonne("Statut", "statut", TYPE_TEXTE),
+        new Colonne("Prix (TND)", "prix", TYPE_DECIMAL),
+        new Colonne("Places", "places", TYPE_ENTIER),
+        new Colonne("CIN Conducteur", "conducteur_cin", TYPE_TEXTE),
+        new Colonne("Conducteur", "conducteur", TYPE_TEXTE),
+        new Colonne("Passager", "passagers", TYPE_TEXTE),
+    };
+
+    private static final Colonne[] COLONNES_UTILISATEURS = {
+        new Colonne("Type", "type", TYPE_TEXTE),
+        new Colonne("CIN", "cin", TYPE_TEXTE),
+        new Colonne("Nom", "nom", TYPE_TEXTE),
+        new Colonne("Prénom", "prenom", TYPE_TEXTE),
+        new Colonne("Téléphone", "tel", TYPE_TEXTE),
+        new Colonne("Année", "annee", TYPE_ENTIER),
+        new Colonne("Adresse", "adresse", TYPE_TEXTE),
+        new Colonne("Email", "mail", TYPE_TEXTE),
+        new Colonne("Voiture", "voiture", TYPE_TEXTE),
+        new Colonne("Marque", "marque", TYPE_TEXTE),
+        new Colonne("Matricule", "matricule", TYPE_TEXTE),
+        new Colonne("Places", "places", TYPE_ENTIER),
+        new Colonne("Cherche covoiturage", "cherche_covoit", TYPE_ENTIER),
+    };
+
+    private static final Colonne[] COLONNES_DEMANDES = {
+        new Colonne("Id trajet", "trajet_id", TYPE_ENTIER),
+        new Colonne("Point de Départ", "depart", TYPE_TEXTE),
+        new Colonne("Point d'Arrivée", "arrivee", TYPE_TEXTE),
+        new Colonne("Statut trajet", "statut_trajet", TYPE_TEXTE),
+        new Colonne("CIN Conducteur", "conducteur_cin", TYPE_TEXTE),
+        new Colonne("CIN Passager", "passager_cin", TYPE_TEXTE),
+        new Colonne("Passager", "passager", TYPE_TEXTE),
+        new Colonne("État demande", "etat", TYPE_TEXTE),
+    };
+
+    // ============================================================
+    // EXPORT
+    // ============================================================
+
+    /**
+     * Exporte les données demandées vers un fichier.
+     *
+     * Les listes ne doivent pas être modifiées pendant l'export : depuis l'interface, passer par
+     * la version par lots (chaque lot est une copie).
+     *
+     * @param filtre null pour tout exporter
+     * @return nombre de lignes écrites
+     */
+    public static long exporter(List<User> users, List<Trajet> trajets, Donnees donnees, Format format,
+                                Filtre filtre, File destination) throws IOException {
+        return exporter(Lots.de(users), Lots.de(trajets), donnees, format, filtre, destination);
+    }
+
+    /**
+     * Même export, les utilisateurs et trajets étant lus lot par lot (seule la source
+     * correspondant à donnees est lue).
+     */
+    public static long exporter(Lots<User> users, Lots<Trajet> trajets, Donnees donnees, Format format,
+                                Filtre filtre, File destination) throws IOException {
+        if (filtre == null) filtre = AUCUN_FILTRE;
+        Colonne[] colonnes;
+        switch (donnees) {
+            case TRAJETS: colonnes = COLONNES_TRAJETS; break;
+            case UTILISATEURS: colonnes = COLONNES_UTILISATEURS; break;
+            default: colonnes = COLONNES_DEMANDES; break;
+        }
+
+        try (Sortie sortie = ouvrir(format, colonnes, new FileOutputStream(destination))) {
+            long lignes = 0;
+            if (donnees == Donnees.UTILISATEURS) {
+                for (List<User> lot = users.suivant(); lot != null; lot = users.suivant()) {
+                    lignes += exporterUtilisateurs(lot, sortie);
+                }
+            } else {
+                for (List<Trajet> lot = trajets.suivant(); lot != null; lot = trajets.suivant()) {
+                    lignes += (donnees == Donnees.TRAJETS)
+                        ? exporterTrajets(lot, filtre, sortie)
+                        : exporterDemandes(lot, filtre, sortie);
+                }
+            }
+            return lignes;
+        }
+    }
+
+    private static long exporterTrajets(List<Trajet> trajets, Filtre filtre, Sortie s) throws IOException {
+        long lignes = 0;
+        StringBuilder noms = new StringBuilder();
+        for (Trajet t : trajets) {
+            if (!filtre.accepte(t)) continue;
+            Conducteur c = t.getConducteur();
+            s.entier(t.getId());
+            s.texte(t.getDepartTrajet());
+            s.texte(t.getArriveeTrajet());
+            s.entier(t.getDureeTrajet().toMinutes());
+            s.texte(t.getStatusTrajet());
+            s.decimal(t.getPrix());
+            s.entier(t.getMaxPlaces());
+            s.texte((c != null) ? c.getCin() : null);
+            s.texte((c != null) ? c.getNom() + " " + c.getPrenom() : "Non assigné");
+
+            List<Passager> acceptes = t.getPassagersAcceptes();
+            if (acceptes.isEmpty()) {
+                s.texte("En attente");
+            } else {
+                noms.setLength(0);
+                for (int i = 0; i < acceptes.size(); i++) {
+                    if (i > 0) noms.append(", ");
+                    noms.append(acceptes.get(i).getNom()).append(' ').append(acceptes.get(i).getPrenom());
+                }
+                s.texte(noms);
+            }
+            s.finLigne();
+            lignes++;
+        }
+        return lignes;
+    }
+
+    private static long exporterUtilisateurs(List<User> users, Sortie s) throws IOException {
+        long lignes = 0;
+        for (User u : users) {
+            if (u == null) continue;
+            Conducteur c = (u instanceof Conducteur) ? (Conducteur) u : null;
+            Passager p = (u instanceof Passager) ? (Passager) u : null;
+            s.texte((c != null) ? "CONDUCTEUR" : (p != null) ? "PASSAGER" : "USER");
+            s.texte(u.getCin());
+            s.texte(u.getNom());
+            s.texte(u.getPrenom());
+            s.texte(u.getTel());
+            if (u.getAnneeUniversitaire() != null) s.entier(u.getAnneeUniversitaire().getValue()); else s.vide();
+            s.texte(u.getAdresse());
+            s.texte(u.getMail());
+            s.texte((c != null) ? c.getNomVoiture() : null);
+            s.texte((c != null) ? c.getMarqueVoiture() : null);
+            s.texte((c != null) ? c.getMatricule() : null);
+            if (c != null) s.entier(c.getPlacesDisponibles()); else s.vide();
+            if (p != null) s.entier(p.isChercheCovoit() ? 1 : 0); else s.vide();
+            s.finLigne();
+            lignes++;
+        }
+        return lignes;
+    }
+
+    /**
+     * Historique des demandes : une ligne par passager accepté ou en attente de chaque trajet.
+     */
+    private static long exporterDemandes(List<Trajet> trajets, Filtre filtre, Sortie s) throws IOException {
+        long lignes = 0;
+        for (Trajet t : trajets) {
+            if (!filtre.accepte(t)) continue;
+            lignes += exporterDemandes(t, t.getPassagersAcceptes(), "ACCEPTEE", s);
+            lignes += exporterDemandes(t, t.getPassagersDemandes(), "EN_ATTENTE", s);
+        }
+        return lignes;
+    }
+
+    private static long exporterDemandes(Trajet t, List<Passager> passagers, String etat, Sortie s) throws IOException {
+        for (Passager p : passagers) {
+            s.entier(t.getId());
+            s.texte(t.getDepartTrajet());
+            s.texte(t.getArriveeTrajet());
+            s.texte(t.getStatusTrajet());
+            s.texte((t.getConducteur() != null) ? t.getConducteur().getCin() : null);
+            s.texte(p.getCin());
+            s.texte(p.getNom() + " " + p.getPrenom());
+            s.texte(etat);
+            s.finLigne();
+        }
+        return passagers.size();
+    }
+
+    // ============================================================
+    // FORMATS DE SORTIE
+    // ============================================================
+
+    private static Sortie ouvrir(Format format, Colonne[] colonnes, OutputStream out) throws IOException {
+        try {
+            switch (format) {
+                case EXCEL_CSV: return new SortieExcel(colonnes, out);
+                case JSON_LINES: return new SortieJson(colonnes, out);
+                default: return new SortieColonnes(colonnes, out);
+            }
+        } catch (IOException e) {
+            out.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Reçoit les valeurs d'une ligne dans l'ordre des colonnes, puis finLigne().
+     */
+    private abstract static class Sortie implements Closeable {
+        final Colonne[] colonnes;
+        int colonne;
+
+        Sortie(Colonne[] colonnes) {
+            this.colonnes = colonnes;
+        }
+
+        abstract void texte(CharSequence valeur) throws IOException;
+        abstract void entier(long valeur) throws IOException;
+        abstract void decimal(float valeur) throws IOException;
+        abstract void vide() throws IOException;
+        abstract void finLigne() throws IOException;
+    }
+
+    /**
+     * Base des formats texte : la ligne est construite dans un StringBuilder réutilisé.
+     */
+    private abstract static class SortieTexte extends Sortie {
+        final Writer writer;
+        final StringBuilder ligne = new StringBuilder(256);
+
+        SortieTexte(Colonne[] colonnes, OutputStream out) {
+            super(colonnes);
+            this.writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 64 * 1024);
+        }
+
+        @Override
+        void finLigne() throws IOException {
+            ligne.append('\n');
+            writer.append(ligne);
+            ligne.setLength(0);
+            colonne = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            writer.close();
+        }
+    }
+
+    private static class SortieExcel extends SortieTexte {
+        private final char separateurDecimal = DecimalFormatSymbols.getInstance().getDecimalSeparator();
+
+        SortieExcel(Colonne[] colonnes, OutputStream out) throws IOException {
+            super(colonnes, out);
+            // BOM pour compatibilité Excel UTF-8
+            writer.write('\ufeff');
+            for (int i = 0; i < colonnes.length; i++) texte(colonnes[i].libelle);
+            finLigne();
+        }
+
+        private void separateur() {
+            if (colonne++ > 0) ligne.append(';');
+        }
+
+        @Override
+        void texte(CharSequence valeur) {
+            separateur();
+            if (valeur == null) return;
+            boolean guillemets = false;
+            for (int i = 0; i < valeur.length() && !guillemets; i++) {
+                char ch = valeur.charAt(i);
+                guillemets = ch == ';' || ch == '"' || ch == '\n' || ch == '\r';
+            }
+            if (!guillemets) {
+                ligne.append(valeur);
+                return;
+            }
+            ligne.append('"');
+            for (int i = 0; i < valeur.length(); i++) {
+                char ch = valeur.charAt(i);
+                if (ch == '"') ligne.append('"');
+                ligne.append(ch);
+            }
+            ligne.append('"');
+        }
+
+        @Override
+        void entier(long valeur) {
+            separateur();
+            ligne.append(valeur);
+        }
+
+        /**
+         * Deux décimales, comme "%.2f" dans la langue du système, sans passer par String.format.
+         */
+        @Override
+        void decimal(float valeur) {
+            separateur();
+            long centimes = Math.round(Math.abs((double) valeur) * 100);
+            if (valeur < 0 && centimes != 0) ligne.append('-');
+            ligne.append(centimes / 100).append(separateurDecimal);
+            long reste = centimes % 100;
+            if (reste < 10) ligne.append('0');
+            ligne.append(reste);
+        }
+
+        @Override
+        void vide() {
+            separateur();
+        }
+    }
+
+    private static class SortieJson extends SortieTexte {
+
+        SortieJson(Colonne[] colonnes, OutputStream out) {
+            super(colonnes, out);
+        }
+
+        private void cle() {
+            ligne.append((colonne == 0) ? "{\"" : ",\"").append(colonnes[colonne].cle).append("\":");
+            colonne++;
+        }
+
+        @Override
+        void texte(CharSequence valeur) {
+            cle();
+            if (valeur == null) {
+                ligne.append("null");
+                return;
+            }
+            ligne.append('"');
+            for (int i = 0; i < valeur.length(); i++) {
+                char ch = valeur.charAt(i);
+                switch (ch) {
+                    case '"': ligne.append("\\\""); break;
+                    case '\\': ligne.append("\\\\"); break;
+                    case '\n': ligne.append("\\n"); break;
+                    case '\r': ligne.append("\\r"); break;
+                    case '\t': ligne.append("\\t"); break;
+                    default:
+                        if (ch < 0x20) {
+                            ligne.append("\\u00").append(Character.forDigit(ch >> 4, 16)).append(Character.forDigit(ch & 0xF, 16));
+                        } else {
+                            ligne.append(ch);
+                        }
+                }
+            }
+            ligne.append('"');
+        }
+
+        @Override
+        void entier(long valeur) {
+            cle();
+            ligne.append(valeur);
+        }
+
+        @Override
+        void decimal(float valeur) {
+            cle();
+            ligne.append(valeur);
+        }
+
+        @Override
+        void vide() {
+            cle();
+            ligne.append("null");
+        }
+
+        @Override
+        void finLigne() throws IOException {
+            ligne.append('}');
+            super.finLigne();
+        }
+    }
+
+    /**
+     * Format COLONNES_GZIP (flux GZIP) :
+     *   int MAGIC_COLONNES, int nbColonnes, puis pour chaque colonne : clé (UTF) et type (byte)
+     *   puis des groupes : int nbLignes (> 0), puis pour chaque colonne : int taille + octets
+     *   et enfin int 0 (fin du fichier).
+     * Dans un groupe, une colonne TEXTE contient pour chaque ligne un int (longueur UTF-8, -1 si
+     * absente) suivi des octets ; ENTIER un long ; DECIMAL un float. Une valeur absente d'une
+     * colonne numérique vaut Long.MIN_VALUE / NaN.
+     */
+    private static class SortieColonnes extends Sortie {
+        private final DataOutputStream out;
+        private final ByteArrayOutputStream[] tampons;
+        private final DataOutputStream[] valeurs;
+        private int lignes;
+
+        SortieColonnes(Colonne[] colonnes, OutputStream fichier) throws IOException {
+            super(colonnes);
+            this.out = new DataOutputStream(new GZIPOutputStream(new BufferedOutputStream(fichier, 64 * 1024), 64 * 1024));
+            this.tampons = new ByteArrayOutputStream[colonnes.length];
+            this.valeurs = new DataOutputStream[colonnes.length];
+            out.writeInt(MAGIC_COLONNES);
+            out.writeInt(colonnes.length);
+            for (int i = 0; i < colonnes.length; i++) {
+                out.writeUTF(colonnes[i].cle);
+                out.writeByte(colonnes[i].type);
+                tampons[i] = new ByteArrayOutputStream();
+                valeurs[i] = new DataOutputStream(tampons[i]);
+            }
+        }
+
+        @Override
+        void texte(CharSequence valeur) throws IOException {
+            DataOutputStream col = valeurs[colonne++];
+            if (valeur == null) {
+                col.writeInt(-1);
+                return;
+            }
+            byte[] octets = valeur.toString().getBytes(StandardCharsets.UTF_8);
+            col.writeInt(octets.length);
+            col.write(octets);
+        }
+
+        @Override
+        void entier(long valeur) throws IOException {
+            valeurs[colonne++].writeLong(valeur);
+        }
+
+        @Override
+        void decimal(float valeur) throws IOException {
+            valeurs[colonne++].writeFloat(valeur);
+        }
+
+        @Override
+        void vide() throws IOException {
+            DataOutputStream col = valeurs[colonne];
+            switch (colonnes[colonne++].type) {
+                case TYPE_TEXTE: col.writeInt(-1); break;
+                case TYPE_ENTIER: col.writeLong(Long.MIN_VALUE); break;
+                default: col.writeFloat(Float.NaN); break;
+            }
+        }
+
+        @Override
+        void finLigne() throws IOException {
+            colonne = 0;
+            if (++lignes == LIGNES_PAR_GROUPE) ecrireGroupe();
+        }
+
+        private void ecrireGroupe() throws IOException {
+            if (lignes == 0) return;
+            out.writeInt(lignes);
+            for (ByteArrayOutputStream tampon : tampons) {
+                out.writeInt(tampon.size());
+                tampon.writeTo(out);
+                tampon.reset();
+            }
+            lignes = 0;
+        }
+
+        @Override
+        public void close() throws IOException {
+            try {
+                ecrireGroupe();
+                out.writeInt(0);
+            } finally {
+                out.close();
+            }
+        }
+    }
+}
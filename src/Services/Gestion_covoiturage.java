@@ -1,8 +1,15 @@
 package Services;
 
 import Models.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.Vector;
 
 /**
@@ -21,8 +28,18 @@ import java.util.Vector;
  *   acceptation de passagers)
  * - veiller à la cohérence des structures (mise à jour des places disponibles, mapping
  *   demandes_par_conducteur, historique des passagers acceptés, statut des trajets)
+ * - savoir quelles tables (et quels trajets) ont changé depuis la dernière sauvegarde,
+ *   pour que CSVDatabase ne réécrive que celles-ci
+ * - tenir à jour des index (utilisateurs par CIN, trajets par conducteur, réservations par
+ *   passager, villes de départ / d'arrivée, trajets ouverts par prix) pour que les recherches
+ *   et les vues de l'UI ne parcourent pas toutes les collections
  */
 public class Gestion_covoiturage {
+    /**
+     * Tables persistées, utilisées pour le suivi des modifications non sauvegardées.
+     */
+    public enum Table { CONDUCTEURS, PASSAGERS, TRAJETS }
+
     private int Index_trajet_conducteur = -1;
     private int Index_conducteur = -1;
     private int Index_passager = -1;
@@ -31,50 +48,634 @@ public class Gestion_covoiturage {
     private Vector<User> passagers_acceptes = new Vector<>();
     // demandes par conducteur : clé = CIN du conducteur, valeur = liste des CINs des passagers ayant demandé ce conducteur
     private Map<String, Vector<String>> demandes_par_conducteur = new HashMap<>();
+    // Journal des mutations : null tant que les données ne sont pas chargées (pas de journalisation pendant le chargement)
+    private Journal journal;
+    // Dernier identifiant de trajet attribué
+    private long dernierIdTrajet = 0;
+    // Tables et trajets (par identifiant) modifiés depuis la dernière sauvegarde
+    private final Set<Table> tablesModifiees = EnumSet.noneOf(Table.class);
+    private final Set<Long> trajetsModifies = new HashSet<>();
+    // Table des trajets marquée modifiée dans son ensemble (les identifiants ne suffisent plus)
+    private boolean tousLesTrajets = false;
+    // CIN des utilisateurs ajoutés ou modifiés depuis la dernière sauvegarde des deux tables
+    // d'utilisateurs, et tables d'utilisateurs marquées modifiées dans leur ensemble
+    private final Set<String> usersModifies = new HashSet<>();
+    private boolean tousLesUsers = false;
+    // Copies faites pour la dernière sauvegarde, réutilisées tant que l'original n'a pas changé
+    private final Map<User, User> copiesUsers = new IdentityHashMap<>();
+    private final Map<Trajet, Trajet> copiesTrajets = new IdentityHashMap<>();
+    // Mode utilisateurs à la demande (voir IndexPagineCIN) : null si tous les utilisateurs sont en mémoire
+    private IndexPagineCIN utilisateursSurDisque;
+    // Index par CIN des utilisateurs en mémoire (y compris ceux lus sur disque en mode à la demande,
+    // pour ne jamais créer deux objets pour un même enregistrement)
+    private final RegistreUtilisateurs registre = new RegistreUtilisateurs();
+    // Trajets de chaque conducteur (clé : CIN normalisé), dans l'ordre de la liste trajets
+    private final Map<String, List<Trajet>> trajetsParConducteur = new HashMap<>();
+    // Trajets par identifiant (rechercher_trajet, rejeu du journal, rechargement à chaud)
+    private final Map<Long, Trajet> trajetsParId = new HashMap<>();
+    // Trajets acceptés / demandés de chaque passager
+    private final IndexReservations reservations = new IndexReservations();
+    // Recherche par sous-chaîne sur les villes de départ et d'arrivée
+    private final IndexVilles villes = new IndexVilles();
+    // Trajets réservables triés par prix puis places disponibles
+    private final IndexTrajetsOuverts ouverts = new IndexTrajetsOuverts();
+    // Posé sur chaque trajet de la liste : répercute ses changements sur les index ci-dessus
+    private final Trajet.Ecouteur ecouteurTrajets = new Trajet.Ecouteur() {
+        @Override
+        public void passagerAjoute(Trajet t, Passager p, boolean accepte) {
+            reservations.passagerAjoute(t, p, accepte);
+            if (accepte) ouverts.mettreAJour(t);
+        }
+
+        @Override
+        public void passagerRetire(Trajet t, Passager p, boolean accepte) {
+            reservations.passagerRetire(t, p, accepte);
+            if (accepte) ouverts.mettreAJour(t);
+        }
+
+        @Override
+        public void trajetModifie(Trajet t) {
+            ouverts.mettreAJour(t);
+        }
+
+        @Override
+        public void villesModifiees(Trajet t, String ancienDepart, String ancienneArrivee) {
+            villes.villesModifiees(t, ancienDepart, ancienneArrivee);
+        }
+    };
 
     // Getters
+    // La liste ne doit pas être modifiée directement (index par CIN) : ajouter_user / setUsers
     public Vector<User> getUsers() { return users; }
     public Vector<Trajet> getTrajets() { return trajets; }
     public Vector<User> getPassagers_acceptes() { return passagers_acceptes; }
+    public Journal getJournal() { return journal; }
 
     // Setters
-    public void setUsers(Vector<User> users) { this.users = users; }
-    public void setTrajets(Vector<Trajet> trajets) { this.trajets = trajets; }
+    public void setUsers(Vector<User> users) {
+        this.users = users;
+        registre.reconstruire(users);
+        marquerModifie(Table.CONDUCTEURS);
+        marquerModifie(Table.PASSAGERS);
+    }
+    public void setTrajets(Vector<Trajet> trajets) {
+        for (Trajet t : this.trajets) t.setEcouteur(null);
+        reservations.vider();
+        villes.vider();
+        ouverts.vider();
+        this.trajets = trajets;
+        reindexerTrajets();
+        trajetsParId.clear();
+        for (Trajet t : trajets) {
+            trajetsParId.put(t.getId(), t);
+            indexerContenu(t);
+        }
+        marquerModifie(Table.TRAJETS);
+    }
+    public void setJournal(Journal journal) { this.journal = journal; }
+
+    /**
+     * Oublie toutes les données en mémoire (collections, index, suivi des modifications) avant
+     * un rechargement complet depuis les tables (restauration d'un backup, voir
+     * CSVDatabase.restoreFromBackup). Le journal doit déjà être détaché.
+     */
+    synchronized void reinitialiser() {
+        for (Trajet t : trajets) t.setEcouteur(null);
+        users.clear();
+        trajets.clear();
+        passagers_acceptes.clear();
+        demandes_par_conducteur.clear();
+        registre.reconstruire(users);
+        trajetsParConducteur.clear();
+        trajetsParId.clear();
+        reservations.vider();
+        villes.vider();
+        ouverts.vider();
+        tablesModifiees.clear();
+        trajetsModifies.clear();
+        tousLesTrajets = false;
+        usersModifies.clear();
+        tousLesUsers = false;
+        copiesUsers.clear();
+        copiesTrajets.clear();
+        utilisateursSurDisque = null;
+        Index_trajet_conducteur = -1;
+        Index_conducteur = -1;
+        Index_passager = -1;
+    }
+
+    /**
+     * Active le mode utilisateurs à la demande : seuls les utilisateurs utilisés (connexion,
+     * références des trajets...) sont en mémoire, les autres sont lus via l'index au besoin.
+     */
+    public void setUtilisateursSurDisque(IndexPagineCIN index) { this.utilisateursSurDisque = index; }
+    public boolean isChargementALaDemande() { return utilisateursSurDisque != null; }
+
+    // ===== Suivi des modifications non sauvegardées =====
+
+    /**
+     * Marque une table comme modifiée depuis la dernière sauvegarde.
+     */
+    public synchronized void marquerModifie(Table table) {
+        tablesModifiees.add(table);
+        if (table == Table.TRAJETS) tousLesTrajets = true;
+        else tousLesUsers = true;
+        // Les utilisateurs modifiés ne sont pas identifiés : toutes les copies sont à refaire
+        // (les copies de trajets pointent vers les copies d'utilisateurs)
+        if (table != Table.TRAJETS) copiesUsers.clear();
+        copiesTrajets.clear();
+    }
+
+    /**
+     * Marque un trajet (et donc la table des trajets) comme modifié.
+     */
+    public synchronized void marquerModifie(Trajet t) {
+        tablesModifiees.add(Table.TRAJETS);
+        trajetsModifies.add(t.getId());
+        copiesTrajets.remove(t);
+    }
+
+    /**
+     * Marque un utilisateur (et donc sa table) comme modifié.
+     */
+    public synchronized void marquerModifie(User u) {
+        if (u == null) return;
+        marquerAjoute(u);
+        copiesUsers.remove(u);
+        // Les copies de trajets pointent vers l'ancienne copie de l'utilisateur
+        copiesTrajets.clear();
+    }
+
+    /**
+     * Marque la table d'un utilisateur ajouté (conducteurs ou passagers) comme modifiée.
+     */
+    private synchronized void marquerAjoute(User u) {
+        // Un nouvel utilisateur ne change aucune copie existante : il sera copié à la prochaine sauvegarde
+        if (u instanceof Conducteur) tablesModifiees.add(Table.CONDUCTEURS);
+        else if (u instanceof Passager) tablesModifiees.add(Table.PASSAGERS);
+        if (u.getCin() != null) usersModifies.add(u.getCin().trim());
+    }
+
+    /**
+     * @return copie de l'ensemble des tables modifiées depuis la dernière sauvegarde
+     */
+    public synchronized Set<Table> getTablesModifiees() {
+        return tablesModifiees.isEmpty() ? EnumSet.noneOf(Table.class) : EnumSet.copyOf(tablesModifiees);
+    }
+
+    /**
+     * @return copie des identifiants des trajets modifiés (ajoutés, supprimés ou mis à jour),
+     *         ou null si toute la table des trajets est à réécrire
+     */
+    public synchronized Set<Long> getTrajetsModifies() {
+        return tousLesTrajets ? null : new HashSet<>(trajetsModifies);
+    }
+
+    /**
+     * @return copie des CIN des utilisateurs ajoutés ou modifiés (conducteurs et passagers
+     *         confondus), ou null si les tables d'utilisateurs sont à réécrire entièrement
+     */
+    public synchronized Set<String> getUsersModifies() {
+        return tousLesUsers ? null : new HashSet<>(usersModifies);
+    }
+
+    public synchronized boolean aDesModificationsNonSauvegardees() {
+        return !tablesModifiees.isEmpty();
+    }
+
+    /**
+     * Renvoie les tables modifiées et les considère comme prises en charge par une sauvegarde
+     * (en cas d'échec, la sauvegarde les marque de nouveau comme modifiées).
+     */
+    public synchronized Set<Table> prendreTablesModifiees() {
+        Set<Table> tables = getTablesModifiees();
+        tablesModifiees.clear();
+        trajetsModifies.clear();
+        tousLesTrajets = false;
+        usersModifies.clear();
+        tousLesUsers = false;
+        return tables;
+    }
+
+    /**
+     * Indique que les tables données viennent d'être sauvegardées.
+     */
+    public synchronized void marquerSauvegarde(Set<Table> tables) {
+        tablesModifiees.removeAll(tables);
+        if (tables.contains(Table.TRAJETS)) {
+            trajetsModifies.clear();
+            tousLesTrajets = false;
+        }
+        // Les CIN ne sont pas rangés par table : oubliés quand aucune table d'utilisateurs n'est plus à écrire
+        if (!tablesModifiees.contains(Table.CONDUCTEURS) && !tablesModifiees.contains(Table.PASSAGERS)) {
+            usersModifies.clear();
+            tousLesUsers = false;
+        }
+    }
+
+    // ===== Copie pour la sauvegarde en arrière-plan =====
+
+    /**
+     * Copie profonde des utilisateurs et trajets, à écrire par SauvegardeAsynchrone pendant que
+     * l'interface continue de modifier les objets d'origine.
+     *
+     * Les copies ne sont jamais modifiées : celles des objets inchangés depuis la sauvegarde
+     * précédente sont réutilisées. Après un changement de prix ou une demande, seuls les trajets
+     * concernés sont recopiés ; un changement sur les utilisateurs (acceptation, fin de trajet)
+     * fait tout recopier.
+     *
+     * Les chaînes étant immuables, seuls les objets sont recréés (pas de validation ni de hachage :
+     * constructeurs de chargement) ; les références trajet -> conducteur/passagers pointent vers
+     * les copies. La copie est indexée par identifiant (rechercher_trajet), comme l'original.
+     */
+    public synchronized Gestion_covoiturage copiePourSauvegarde() {
+        Gestion_covoiturage copie = new Gestion_covoiturage();
+        copie.users.ensureCapacity(users.size());
+        for (User u : users) {
+            copie.users.add(copierUser(u, copiesUsers));
+        }
+        copie.trajets.ensureCapacity(trajets.size());
+        for (Trajet t : trajets) {
+            Trajet c = copiesTrajets.get(t);
+            if (c == null) {
+                c = copierTrajet(t, copiesUsers);
+                copiesTrajets.put(t, c);
+            }
+            copie.trajets.add(c);
+            copie.trajetsParId.put(c.getId(), c);
+        }
+        copie.dernierIdTrajet = dernierIdTrajet;
+        return copie;
+    }
+
+    // ===== Export par lots =====
+
+    /**
+     * Identifiants des trajets, dans l'ordre de getTrajets() : seule copie faite d'un coup pour
+     * un export, les trajets eux-mêmes sont relus par lots (copieTrajets).
+     */
+    public synchronized long[] idsTrajets() {
+        long[] ids = new long[trajets.size()];
+        for (int i = 0; i < ids.length; i++) ids[i] = trajets.get(i).getId();
+        return ids;
+    }
+
+    /**
+     * CIN des utilisateurs conducteurs et passagers, dans l'ordre de getUsers() (voir copieUtilisateurs).
+     *
+     * @param conducteurs reçoit, pour chaque CIN, true s'il s'agit d'un conducteur
+     */
+    public synchronized List<String> cinsUtilisateurs(List<Boolean> conducteurs) {
+        List<String> cins = new ArrayList<>(users.size());
+        for (User u : users) {
+            if (u == null || u.getCin() == null) continue;
+            if (!(u instanceof Conducteur) && !(u instanceof Passager)) continue;
+            cins.add(u.getCin());
+            conducteurs.add(u instanceof Conducteur);
+        }
+        return cins;
+    }
+
+    /**
+     * Copie des trajets ids[debut..fin[ encore présents (un trajet supprimé depuis est ignoré).
+     * Mêmes copies que copiePourSauvegarde, sans réutilisation : le lot appartient à l'appelant.
+     */
+    public synchronized List<Trajet> copieTrajets(long[] ids, int debut, int fin) {
+        Map<User, User> copies = new IdentityHashMap<>();
+        List<Trajet> lot = new ArrayList<>(fin - debut);
+        for (int i = debut; i < fin; i++) {
+            Trajet t = trajetsParId.get(ids[i]);
+            if (t != null) lot.add(copierTrajet(t, copies));
+        }
+        return lot;
+    }
+
+    /**
+     * Copie des utilisateurs cins[debut..fin[ encore en mémoire (recherche dans le registre, sans
+     * lecture sur disque en mode à la demande ; un utilisateur supprimé depuis est ignoré).
+     */
+    public synchronized List<User> copieUtilisateurs(List<String> cins, List<Boolean> conducteurs,
+                                                     int debut, int fin) {
+        Map<User, User> copies = new IdentityHashMap<>();
+        List<User> lot = new ArrayList<>(fin - debut);
+        for (int i = debut; i < fin; i++) {
+            User u = conducteurs.get(i) ? registre.conducteur(cins.get(i)) : registre.passager(cins.get(i));
+            if (u != null) lot.add(copierUser(u, copies));
+        }
+        return lot;
+    }
+
+    private static Trajet copierTrajet(Trajet t, Map<User, User> copies) {
+        Trajet c = new Trajet(t.getDepartTrajet(), t.getArriveeTrajet(), t.getDureeTrajet(), t.getStatusTrajet(),
+            t.getPrix(), (Conducteur) copierUser(t.getConducteur(), copies), t.getMaxPlaces());
+        for (Passager p : t.getPassagersAcceptes()) c.getPassagersAcceptes().add((Passager) copierUser(p, copies));
+        for (Passager p : t.getPassagersDemandes()) c.getPassagersDemandes().add((Passager) copierUser(p, copies));
+        c.setId(t.getId());
+        c.setTrajet_valide(t.isTrajet_valide());
+        return c;
+    }
+
+    private static User copierUser(User u, Map<User, User> copies) {
+        if (u == null) return null;
+        User copie = copies.get(u);
+        if (copie != null) return copie;
+        if (u instanceof Conducteur) {
+            Conducteur c = (Conducteur) u;
+            copie = new Conducteur(c.getCin(), c.getNom(), c.getPrenom(), c.getTel(), c.getAnneeUniversitaire(),
+                c.getAdresse(), c.getMail(), c.getPasswordHash(), true,
+                c.getNomVoiture(), c.getMarqueVoiture(), c.getMatricule(), c.getPlacesDisponibles());
+        } else if (u instanceof Passager) {
+            Passager p = (Passager) u;
+            copie = new Passager(p.getCin(), p.getNom(), p.getPrenom(), p.getTel(), p.getAnneeUniversitaire(),
+                p.getAdresse(), p.getMail(), p.getPasswordHash(), true, p.isChercheCovoit(), null);
+        } else {
+            // Simple User : jamais persisté, inutile de le copier
+            copie = u;
+        }
+        copies.put(u, copie);
+        return copie;
+    }
+
+    // ===== Mutations des collections (journalisées) =====
+
+    /**
+     * Ajoute un utilisateur (conducteur ou passager) à la plateforme.
+     */
+    public void ajouter_user(User u) {
+        if (u == null) return;
+        users.add(u);
+        registre.ajouter(u);
+        marquerAjoute(u);
+        if (journal != null) journal.userAjoute(u);
+    }
+
+    /**
+     * Ajoute un trajet et lui attribue un identifiant s'il n'en a pas encore.
+     */
+    public void ajouter_trajet(Trajet t) {
+        if (t == null) return;
+        preparerTrajet(t);
+        trajets.add(t);
+        trajetsParId.put(t.getId(), t);
+        indexerTrajet(t);
+        indexerContenu(t);
+        marquerModifie(t);
+        if (journal != null) journal.trajetAjoute(t);
+    }
+
+    /**
+     * Attribue un identifiant au trajet s'il n'en a pas encore et partage ses chaînes.
+     */
+    private void preparerTrajet(Trajet t) {
+        if (t.getId() <= 0) {
+            t.setId(++dernierIdTrajet);
+        } else {
+            dernierIdTrajet = Math.max(dernierIdTrajet, t.getId());
+        }
+        // Villes et statut partagés avec les trajets déjà chargés (voir DictionnaireChaines)
+        t.setDepartTrajet(DictionnaireChaines.partager(t.getDepartTrajet()));
+        t.setArriveeTrajet(DictionnaireChaines.partager(t.getArriveeTrajet()));
+        if (t.getStatusTrajet() != null) t.setStatusTrajet(DictionnaireChaines.partager(t.getStatusTrajet()));
+    }
+
+    /**
+     * Supprime un trajet de la plateforme.
+     */
+    public boolean supprimer_trajet(Trajet t) {
+        if (t == null || !trajets.remove(t)) return false;
+        trajetsParId.remove(t.getId(), t);
+        desindexerTrajet(t, t.getConducteur());
+        desindexerContenu(t);
+        marquerModifie(t);
+        if (journal != null) journal.trajetSupprime(t);
+        return true;
+    }
+
+    /**
+     * Trajets d'un conducteur, dans l'ordre de getTrajets() (lecture seule).
+     * Coût proportionnel au nombre de trajets du conducteur, pas à celui de la plateforme.
+     */
+    public List<Trajet> trajets_du_conducteur(String cin) {
+        List<Trajet> liste = (cin == null) ? null : trajetsParConducteur.get(IndexPagineCIN.cle(cin));
+        return liste == null ? Collections.emptyList() : Collections.unmodifiableList(liste);
+    }
+
+    /**
+     * Trajets où le passager a été accepté, dans l'ordre de création (nouvelle liste).
+     */
+    public List<Trajet> reservations_du_passager(String cin) {
+        return reservations.acceptes(cin);
+    }
+
+    /**
+     * Trajets où le passager a une demande en attente, dans l'ordre de création (nouvelle liste).
+     */
+    public List<Trajet> demandes_du_passager(String cin) {
+        return reservations.demandes(cin);
+    }
+
+    /**
+     * Trajets dont la ville de départ et celle d'arrivée contiennent les textes donnés (sans tenir
+     * compte de la casse ; texte vide = pas de critère), dans l'ordre de création. Les filtres
+     * d'affichage (places, statut, prix) restent à l'appelant.
+     */
+    public List<Trajet> rechercher_trajets(String depart, String arrivee) {
+        List<Trajet> trouves = villes.rechercher(depart, arrivee);
+        return trouves != null ? trouves : Collections.unmodifiableList(trajets);
+    }
+
+    /**
+     * Trajets réservables (conducteur, non terminés, au moins placesMin places libres) de prix
+     * inférieur ou égal à prixMax, par prix croissant puis places disponibles décroissantes.
+     * Les villes sont filtrées comme rechercher_trajets (texte vide ou null = pas de critère).
+     */
+    public List<Trajet> rechercher_trajets_ouverts(String depart, String arrivee, double prixMax, int placesMin) {
+        List<Trajet> parVilles = villes.rechercher(depart, arrivee);
+        return parVilles == null ? ouverts.rechercher(prixMax, placesMin) : ouverts.filtrer(parVilles, prixMax, placesMin);
+    }
+
+    /**
+     * Nombre de trajets réservables (tableaux de bord).
+     */
+    public int nombre_trajets_ouverts() {
+        return ouverts.taille();
+    }
+
+    private void indexerTrajet(Trajet t) {
+        if (t.getConducteur() == null) return;
+        trajetsParConducteur.computeIfAbsent(IndexPagineCIN.cle(t.getConducteur().getCin()), k -> new ArrayList<>()).add(t);
+    }
+
+    private void desindexerTrajet(Trajet t, Conducteur conducteur) {
+        if (conducteur == null) return;
+        String cle = IndexPagineCIN.cle(conducteur.getCin());
+        List<Trajet> liste = trajetsParConducteur.get(cle);
+        if (liste != null && liste.remove(t) && liste.isEmpty()) trajetsParConducteur.remove(cle);
+    }
+
+    /**
+     * Indexe le contenu du trajet (passagers, villes, prix et places) et s'abonne à ses changements.
+     */
+    private void indexerContenu(Trajet t) {
+        t.setEcouteur(ecouteurTrajets);
+        reservations.indexer(t);
+        villes.indexer(t);
+        ouverts.mettreAJour(t);
+    }
+
+    private void desindexerContenu(Trajet t) {
+        t.setEcouteur(null);
+        reservations.desindexer(t);
+        villes.desindexer(t);
+        ouverts.retirer(t);
+    }
+
+    /**
+     * Reconstruit l'index par conducteur (liste remplacée, trajets réaffectés).
+     */
+    private void reindexerTrajets() {
+        trajetsParConducteur.clear();
+        for (Trajet t : trajets) indexerTrajet(t);
+    }
+
+    /**
+     * Recherche un trajet par son identifiant (index, sans parcourir les trajets)
+     */
+    public Trajet rechercher_trajet(long id) {
+        return trajetsParId.get(id);
+    }
+
+    /**
+     * Modifie le prix d'un trajet
+     */
+    public void modifier_prix_trajet(Trajet t, float prix) {
+        if (t == null) return;
+        t.setPrix(prix);
+        marquerModifie(t);
+        if (journal != null) journal.prixModifie(t, prix);
+    }
+
+    /**
+     * Termine un trajet : marque le trajet comme TERMINÉ, restaure les places du conducteur
+     * et remet les passagers acceptés en recherche (chercheCovoit = true).
+     */
+    public void terminer_trajet(Trajet t) {
+        if (t == null) return;
+        Conducteur conducteur = t.getConducteur();
+        int acceptedCount = (t.getPassagersAcceptes() != null) ? t.getPassagersAcceptes().size() : 0;
+
+        // Restauration des places : préférer t.getMaxPlaces() si défini, sinon ajouter acceptedCount
+        int restoredPlaces = t.getMaxPlaces();
+        if (restoredPlaces <= 0 && conducteur != null) {
+            restoredPlaces = conducteur.getPlacesDisponibles() + acceptedCount;
+        }
+
+        // Marquer le trajet comme TERMINÉ
+        t.setStatusTrajet(Trajet.STATUS_FINISHED);
+        t.setTrajet_valide(false);
+
+        // Remettre les passagers en recherche (chercheCovoit = true)
+        if (t.getPassagersAcceptes() != null) {
+            for (Passager p : t.getPassagersAcceptes()) {
+                if (p != null) p.setChercheCovoit(true);
+            }
+        }
+
+        // Restaurer les places du conducteur
+        if (conducteur != null) conducteur.setPlacesDisponibles(restoredPlaces);
+
+        marquerModifie(t);
+        marquerModifie(conducteur);
+        if (t.getPassagersAcceptes() != null) {
+            for (Passager p : t.getPassagersAcceptes()) marquerModifie(p);
+        }
+        if (journal != null) journal.trajetTermine(t);
+    }
 
     // ===== Recherche d'utilisateurs =====
 
     /**
-     * Recherche un utilisateur par son CIN
+     * Recherche un utilisateur par son CIN (sans tenir compte de la casse), en O(1) via le registre.
      */
     public User rechercher_user(String ref) {
-        for (User U : users) {
-            if (U.getCin().equalsIgnoreCase(ref)) {
-                return U;
-            }
+        User trouve = registre.utilisateur(ref);
+        if (trouve != null) return trouve;
+        // Mode à la demande : l'utilisateur peut n'être que sur disque
+        if (utilisateursSurDisque != null && ref != null) {
+            User u = chargerConducteur(ref);
+            return u != null ? u : chargerPassager(ref);
         }
         return null;
     }
 
     /**
-     * Recherche un conducteur par son CIN
+     * Mode à la demande : lit un conducteur sur disque et l'ajoute aux utilisateurs en mémoire.
+     * Il n'est ni journalisé ni marqué modifié (il est déjà dans la table).
+     *
+     * @return null si le mode n'est pas actif ou si aucun conducteur n'a ce CIN
      */
-    public Conducteur rechercher_conducteur(String cin) {
-        User user = rechercher_user(cin);
-        if (user != null && user instanceof Conducteur) {
-            return (Conducteur) user;
+    synchronized Conducteur chargerConducteur(String cin) {
+        if (utilisateursSurDisque == null || cin == null) return null;
+        Conducteur c = registre.conducteur(cin);
+        if (c == null) {
+            c = utilisateursSurDisque.conducteur(cin);
+            ajouterDepuisDisque(c);
         }
-        return null;
+        return c;
     }
 
     /**
-     * Recherche un passager par son CIN
+     * Mode à la demande : même chose que chargerConducteur pour un passager.
      */
-    public Passager rechercher_passager(String cin) {
-        User user = rechercher_user(cin);
-        if (user != null && user instanceof Passager) {
-            return (Passager) user;
+    synchronized Passager chargerPassager(String cin) {
+        if (utilisateursSurDisque == null || cin == null) return null;
+        Passager p = registre.passager(cin);
+        if (p == null) {
+            p = utilisateursSurDisque.passager(cin);
+            ajouterDepuisDisque(p);
         }
-        return null;
+        return p;
+    }
+
+    private void ajouterDepuisDisque(User u) {
+        if (u == null) return;
+        users.add(u);
+        registre.ajouter(u);
+    }
+
+    /**
+     * Recherche un conducteur par son CIN (table des conducteurs du registre, en O(1)).
+     */
+    public Conducteur rechercher_conducteur(String cin) {
+        Conducteur c = registre.conducteur(cin);
+        return c != null ? c : chargerConducteur(cin);
+    }
+
+    /**
+     * Recherche un passager par son CIN (table des passagers du registre, en O(1)).
+     */
+    public Passager rechercher_passager(String cin) {
+        Passager p = registre.passager(cin);
+        return p != null ? p : chargerPassager(cin);
+    }
+
+    // ===== Utilisateur connecté (compatibilité console) =====
+
+    /**
+     * Mémorise les positions du conducteur connecté et de son premier trajet.
+     */
+    public void selectionner_conducteur(Conducteur c) {
+        if (c == null) return;
+        Index_conducteur = users.indexOf(c);
+        List<Trajet> siens = trajets_du_conducteur(c.getCin());
+        Index_trajet_conducteur = siens.isEmpty() ? -1 : trajets.indexOf(siens.get(0));
+    }
+
+    /**
+     * Mémorise la position du passager connecté.
+     */
+    public void selectionner_passager(Passager p) {
+        if (p != null) Index_passager = users.indexOf(p);
     }
 
     // ===== API utilisée par l'UI (gestion des demandes / acceptations) =====
@@ -117,9 +718,28 @@ public class Gestion_covoiturage {
             Vector<String> demandes = demandes_par_conducteur.computeIfAbsent(t.getConducteur().getCin(), k -> new Vector<>());
             if (!demandes.contains(cinPassager)) demandes.add(cinPassager);
         }
+        if (added) marquerModifie(t);
+        if (added && journal != null) journal.demandeAjoutee(t, cinPassager);
         return added;
     }
 
+    /**
+     * Annuler la demande d'un passager pour un trajet (retire la demande du trajet et du mapping conducteur).
+     */
+    public boolean annuler_demande_pour_trajet(Trajet t, String cinPassager) {
+        if (t == null || cinPassager == null || cinPassager.trim().isEmpty()) return false;
+        Passager p = rechercher_passager(cinPassager);
+        if (p == null) return false;
+
+        boolean removed = t.removeDemand(p);
+        if (t.getConducteur() != null) {
+            supprimer_demande_pour_conducteur(t.getConducteur().getCin(), cinPassager);
+        }
+        if (removed) marquerModifie(t);
+        if (removed && journal != null) journal.demandeAnnulee(t, cinPassager);
+        return removed;
+    }
+
     /**
      * Accepter un passager pour un trajet afin qu'il soit ajouté à la liste des passagers acceptés et
      * retiré de celle des demandes.
@@ -162,6 +782,282 @@ public class Gestion_covoiturage {
         t.setTrajet_valide(true);
         if (!t.getPassagersAcceptes().isEmpty()) t.setStatusTrajet(Trajet.STATUS_IN_PROGRESS);
 
+        // Trajet, places du conducteur et état du passager ont changé
+        marquerModifie(t);
+        marquerModifie(conducteur);
+        marquerModifie(p);
+        if (journal != null) journal.passagerAccepte(t, cinPassager);
         return true;
     }
+
+    // ===== Rechargement à chaud (voir SurveillanceDonnees) =====
+
+    /**
+     * Résultat de la fusion d'une table relue après une modification hors de l'application.
+     */
+    static class Fusion {
+        int ajouts;
+        int modifications;
+        int suppressions;
+        // Enregistrements laissés tels qu'en mémoire (modification non sauvegardée plus récente)
+        int conflits;
+        // Identifiants des trajets ajoutés, modifiés ou supprimés
+        final Set<Long> trajets = new HashSet<>();
+
+        boolean vide() {
+            return ajouts + modifications + suppressions == 0;
+        }
+
+        @Override
+        public String toString() {
+            String resume = ajouts + " ajout(s), " + modifications + " modification(s), " + suppressions + " suppression(s)";
+            return conflits > 0 ? resume + ", " + conflits + " conservé(s) en mémoire" : resume;
+        }
+    }
+
+    /**
+     * Fusionne, par CIN, le contenu relu d'une table utilisateurs modifiée hors de l'application :
+     * les utilisateurs existants sont mis à jour en place (les trajets gardent leurs références),
+     * les nouveaux sont ajoutés et les absents retirés.
+     *
+     * Rien n'est journalisé ni marqué modifié : la table sur disque contient déjà ce résultat.
+     * Seule exception, les trajets d'un utilisateur retiré : il en est détaché (conducteur,
+     * passager accepté ou en attente, voir detacherSupprimes) et ils sont marqués modifiés.
+     * Si la table a des modifications non sauvegardées, les utilisateurs déjà en mémoire gardent
+     * leur version (une acceptation a pu changer leurs places ou leur état depuis la dernière
+     * sauvegarde, et la prochaine sauvegarde écrit la table entière) et les absents du fichier
+     * sont conservés (ils ont pu être ajoutés depuis) : seuls les nouveaux sont ajoutés.
+     * En mode à la demande, seuls les utilisateurs déjà en mémoire sont concernés (les autres
+     * sont lus via l'index) : lus ne contient que ceux de consultes trouvés dans la table.
+     *
+     * @param consultes CIN relus (voir cinsEnMemoire), null si lus est la table entière ; un
+     *                  utilisateur chargé depuis n'est pas considéré comme supprimé
+     */
+    synchronized Fusion fusionnerUtilisateurs(Table table, List<? extends User> lus, List<String> consultes) {
+        Class<? extends User> type = (table == Table.CONDUCTEURS) ? Conducteur.class : Passager.class;
+        Fusion fusion = new Fusion();
+
+        boolean garderEnMemoire = tablesModifiees.contains(table);
+        Set<String> lusCIN = new HashSet<>();
+        for (User lu : lus) {
+            lusCIN.add(IndexPagineCIN.cle(lu.getCin()));
+            User u = (table == Table.CONDUCTEURS) ? registre.conducteur(lu.getCin()) : registre.passager(lu.getCin());
+            if (u == null) {
+                if (utilisateursSurDisque != null) continue;
+                users.add(lu);
+                registre.ajouter(lu);
+                fusion.ajouts++;
+            } else if (!ligneCSV(u).equals(ligneCSV(lu))) {
+                if (garderEnMemoire) {
+                    fusion.conflits++;
+                    continue;
+                }
+                copierDonnees(lu, u);
+                fusion.modifications++;
+            }
+        }
+
+        Set<String> consultesCIN = null;
+        if (consultes != null) {
+            consultesCIN = new HashSet<>();
+            for (String cin : consultes) consultesCIN.add(IndexPagineCIN.cle(cin));
+        }
+        Set<String> relus = consultesCIN;
+        List<User> supprimes = new ArrayList<>();
+        users.removeIf(u -> {
+            if (!type.isInstance(u) || lusCIN.contains(IndexPagineCIN.cle(u.getCin()))) return false;
+            if (relus != null && !relus.contains(IndexPagineCIN.cle(u.getCin()))) return false;
+            if (garderEnMemoire) {
+                fusion.conflits++;
+                return false;
+            }
+            supprimes.add(u);
+            fusion.suppressions++;
+            return true;
+        });
+        if (fusion.suppressions > 0) {
+            registre.reconstruire(users);
+            detacherSupprimes(supprimes);
+        }
+
+        // Les copies pour la sauvegarde ne correspondent plus (les trajets pointent vers les utilisateurs)
+        if (!fusion.vide()) {
+            copiesUsers.clear();
+            copiesTrajets.clear();
+        }
+        return fusion;
+    }
+
+    /**
+     * @return CIN des utilisateurs de la table présents en mémoire (mode à la demande : ceux à
+     *         relire lors d'un rechargement à chaud)
+     */
+    synchronized List<String> cinsEnMemoire(Table table) {
+        Class<? extends User> type = (table == Table.CONDUCTEURS) ? Conducteur.class : Passager.class;
+        List<String> cins = new ArrayList<>();
+        for (User u : users) {
+            if (type.isInstance(u) && u.getCin() != null) cins.add(u.getCin());
+        }
+        return cins;
+    }
+
+    /**
+     * Retire des trajets les utilisateurs supprimés de leur table : un conducteur est détaché de
+     * ses trajets, un passager de ceux où il est accepté ou en attente. Les index suivent
+     * (trajetsParConducteur directement, réservations et trajets ouverts via l'écouteur) et les
+     * trajets concernés sont marqués modifiés pour que trajets.csv ne les référence plus.
+     */
+    private void detacherSupprimes(List<User> supprimes) {
+        for (User u : supprimes) {
+            if (u instanceof Conducteur) {
+                Conducteur c = (Conducteur) u;
+                demandes_par_conducteur.remove(c.getCin());
+                List<Trajet> siens = trajetsParConducteur.get(IndexPagineCIN.cle(c.getCin()));
+                if (siens == null) continue;
+                for (Trajet t : new ArrayList<>(siens)) {
+                    if (t.getConducteur() != c) continue;
+                    desindexerTrajet(t, c);
+                    t.setConducteur(null);
+                    marquerModifie(t);
+                }
+            } else if (u instanceof Passager) {
+                Passager p = (Passager) u;
+                for (Trajet t : reservations.acceptes(p.getCin())) {
+                    if (t.removeAccepted(p)) marquerModifie(t);
+                }
+                for (Trajet t : reservations.demandes(p.getCin())) {
+                    if (t.removeDemand(p)) marquerModifie(t);
+                }
+                for (Vector<String> demandes : demandes_par_conducteur.values()) demandes.remove(p.getCin());
+            }
+        }
+        Set<User> retires = Collections.newSetFromMap(new IdentityHashMap<>());
+        retires.addAll(supprimes);
+        passagers_acceptes.removeIf(retires::contains);
+    }
+
+    /**
+     * Fusionne, par identifiant, les lignes relues de trajets.csv modifié hors de l'application.
+     * Seules les lignes différentes du trajet en mémoire (voir CSVDatabase.correspond) sont
+     * reconstruites ; un trajet existant est mis à jour en place.
+     *
+     * Un trajet modifié depuis la dernière sauvegarde garde sa version en mémoire : ses mutations
+     * sont dans le journal et seront de nouveau appliquées au fichier à la prochaine sauvegarde.
+     * Si la table entière est marquée modifiée, c'est le cas de tous les trajets déjà en mémoire.
+     * Les lignes sans identifiant (ajoutées à la main) reçoivent le leur et sont marquées
+     * modifiées, pour qu'il soit écrit dans le fichier.
+     *
+     * @param blocs lignes converties par CSVDatabase.lireLignesTrajets
+     */
+    synchronized Fusion fusionnerTrajets(List<List<CSVDatabase.LigneTrajet>> blocs) {
+        Fusion fusion = new Fusion();
+        CSVDatabase.IndexCIN index = null;
+        Set<Long> lusIds = new HashSet<>();
+        boolean reaffectes = false;
+        List<ControleIntegrite.Rejet> rejets = new ArrayList<>();
+        for (List<CSVDatabase.LigneTrajet> bloc : blocs) {
+            for (CSVDatabase.LigneTrajet ligne : bloc) {
+                if (ligne.erreur != null) {
+                    rejets.add(ligne.rejet(ligne.erreur));
+                    continue;
+                }
+                Trajet t = (ligne.id > 0) ? trajetsParId.get(ligne.id) : null;
+                if (ligne.id > 0) lusIds.add(ligne.id);
+                if (t != null && (tousLesTrajets || trajetsModifies.contains(t.getId()))) {
+                    fusion.conflits++;
+                    continue;
+                }
+                if (t != null && CSVDatabase.correspond(ligne, t)) continue;
+
+                if (index == null) index = new CSVDatabase.IndexCIN(this);
+                Trajet lu;
+                try {
+                    lu = CSVDatabase.construireTrajet(ligne, index);
+                } catch (Exception e) {
+                    System.err.println("⚠ Erreur parsing trajet: " + e.getMessage());
+                    rejets.add(ligne.rejet(String.valueOf(e.getMessage())));
+                    continue;
+                }
+                if (t == null) {
+                    preparerTrajet(lu);
+                    trajets.add(lu);
+                    trajetsParId.put(lu.getId(), lu);
+                    indexerTrajet(lu);
+                    indexerContenu(lu);
+                    lusIds.add(lu.getId());
+                    if (ligne.id <= 0) marquerModifie(lu);
+                    fusion.trajets.add(lu.getId());
+                    fusion.ajouts++;
+                } else if (!CSVDatabase.ligneTrajet(lu).equals(CSVDatabase.ligneTrajet(t))) {
+                    Conducteur avant = t.getConducteur();
+                    // Villes et listes de passagers remplacées directement : hors des index pendant la copie
+                    desindexerContenu(t);
+                    copierDonnees(lu, t);
+                    indexerContenu(t);
+                    // Réaffecté : sa place dans la liste du nouveau conducteur dépend de l'ordre global
+                    if (avant != t.getConducteur()) reaffectes = true;
+                    copiesTrajets.remove(t);
+                    fusion.trajets.add(t.getId());
+                    fusion.modifications++;
+                }
+            }
+        }
+
+        // Table entière marquée modifiée : impossible de distinguer les trajets non sauvegardés
+        if (!tousLesTrajets) {
+            trajets.removeIf(t -> {
+                if (lusIds.contains(t.getId()) || trajetsModifies.contains(t.getId())) return false;
+                trajetsParId.remove(t.getId(), t);
+                desindexerTrajet(t, t.getConducteur());
+                desindexerContenu(t);
+                copiesTrajets.remove(t);
+                fusion.trajets.add(t.getId());
+                fusion.suppressions++;
+                return true;
+            });
+        }
+        if (reaffectes) reindexerTrajets();
+        CSVDatabase.quarantaineTrajets(CSVDatabase.fichierTable(Table.TRAJETS), blocs, rejets);
+        return fusion;
+    }
+
+    private static String ligneCSV(User u) {
+        return (u instanceof Conducteur) ? CSVDatabase.ligneConducteur((Conducteur) u)
+                                         : CSVDatabase.lignePassager((Passager) u);
+    }
+
+    private static void copierDonnees(User source, User cible) {
+        cible.setNom(source.getNom());
+        cible.setPrenom(source.getPrenom());
+        cible.setTel(source.getTel());
+        cible.setAnneeUniversitaire(source.getAnneeUniversitaire());
+        cible.setAdresse(source.getAdresse());
+        cible.setMail(source.getMail());
+        cible.setPasswordHash(source.getPasswordHash());
+        if (source instanceof Conducteur) {
+            Conducteur s = (Conducteur) source;
+            Conducteur c = (Conducteur) cible;
+            c.setNomVoiture(s.getNomVoiture());
+            c.setMarqueVoiture(s.getMarqueVoiture());
+            c.setMatricule(s.getMatricule());
+            c.setPlacesDisponibles(s.getPlacesDisponibles());
+        } else {
+            ((Passager) cible).setChercheCovoit(((Passager) source).isChercheCovoit());
+        }
+    }
+
+    private static void copierDonnees(Trajet source, Trajet cible) {
+        cible.setDepartTrajet(DictionnaireChaines.partager(source.getDepartTrajet()));
+        cible.setArriveeTrajet(DictionnaireChaines.partager(source.getArriveeTrajet()));
+        cible.setDureeTrajet(source.getDureeTrajet());
+        cible.setPrix(source.getPrix());
+        // setConducteur ajuste statut et places : les valeurs lues sont appliquées ensuite
+        cible.setConducteur(source.getConducteur());
+        cible.setStatusTrajet(DictionnaireChaines.partager(source.getStatusTrajet()));
+        cible.setMaxPlaces(source.getMaxPlaces());
+        cible.getPassagersAcceptes().clear();
+        cible.getPassagersAcceptes().addAll(source.getPassagersAcceptes());
+        cible.getPassagersDemandes().clear();
+        cible.getPassagersDemandes().addAll(source.getPassagersDemandes());
+    }
 }
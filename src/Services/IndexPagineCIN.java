@@ -0,0 +1,490 @@
+package Services;
+
+import Models.*;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * IndexPagineCIN - Index sur disque CIN -> enregistrement des tables conducteurs et passagers,
+ * utilisé en mode "utilisateurs à la demande" (-Dcovoiturage.utilisateurs=demande).
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Les deux CSV utilisateurs sont parcourus une fois : pour chaque enregistrement on retient
+ *    le CIN, la table et la position (en octets) de l'enregistrement dans le fichier.
+ * 2. Ces entrées sont triées par CIN et écrites dans data/utilisateurs.idx, réparties en pages
+ *    de TAILLE_PAGE octets. Le sommaire (premier CIN de chaque page) est écrit à la fin du
+ *    fichier : c'est le seul niveau gardé en mémoire (arbre B+ à deux niveaux).
+ * 3. Une recherche = recherche dichotomique dans le sommaire, lecture de la page (gardée dans
+ *    un cache LRU de PAGES_EN_CACHE pages), recherche dichotomique dans la page, puis lecture
+ *    de l'enregistrement CSV à sa position.
+ * 4. L'en-tête de l'index contient la taille et la date des deux CSV : si l'un d'eux a changé
+ *    (sauvegarde, restauration, modification à la main), l'index est reconstruit.
+ *
+ * Format : en-tête (TAILLE_ENTETE octets), pages, sommaire.
+ * Page : nombre d'entrées (short) puis, pour chaque entrée, longueur du CIN (short), CIN (UTF-8),
+ * table (octet : 0 conducteurs, 1 passagers), position de l'enregistrement (long).
+ */
+public class IndexPagineCIN {
+
+    private static final int MAGIC = 0x43494E58; // "CINX"
+    private static final int VERSION = 1;
+    private static final int TAILLE_ENTETE = 64;
+    private static final int TAILLE_PAGE = 4096;
+    private static final int TAILLE_MAX_CLE = 1024;
+    // Pages décodées gardées en mémoire (environ 200 entrées par page)
+    private static final int PAGES_EN_CACHE = 64;
+
+    private static final byte CONDUCTEURS = 0;
+    private static final byte PASSAGERS = 1;
+
+    private final Path[] tables;
+    private final Path fichier;
+
+    private FileChannel canal;
+    // Premier CIN de chaque page
+    private String[] sommaire = new String[0];
+    private int nbEntrees;
+    // Taille et date des tables au moment de la construction de l'index
+    private final long[] tailles = new long[2];
+    private final long[] dates = new long[2];
+    // Tables projetées en mémoire pour lire les enregistrements
+    private final ByteBuffer[] contenus = new ByteBuffer[2];
+
+    private final Map<Integer, Page> cache = new LinkedHashMap<Integer, Page>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, Page> plusAncienne) {
+            return size() > PAGES_EN_CACHE;
+        }
+    };
+    private long lecturesPages;
+    private long recherches;
+
+    public IndexPagineCIN(Path conducteurs, Path passagers, Path fichier) {
+        this.tables = new Path[] {conducteurs, passagers};
+        this.fichier = fichier;
+    }
+
+    /**
+     * Clé de recherche : les CIN sont comparés sans tenir compte de la casse ni des espaces,
+     * comme Gestion_covoiturage.rechercher_user.
+     */
+    static String cle(String cin) {
+        return cin == null ? "" : cin.trim().toUpperCase(Locale.ROOT);
+    }
+
+    // ============================================================
+    // OUVERTURE / CONSTRUCTION
+    // ============================================================
+
+    /**
+     * Ouvre l'index existant s'il correspond aux tables actuelles, sinon le reconstruit.
+     */
+    public synchronized void ouvrir() throws IOException {
+        if (!lireEntete()) reconstruire();
+    }
+
+    /**
+     * Reconstruit l'index à partir des deux tables (après leur réécriture par exemple).
+     */
+    public synchronized void reconstruire() throws IOException {
+        long debut = System.nanoTime();
+        fermer();
+
+        List<Entree> entrees = new ArrayList<>();
+        long[] nouvellesTailles = new long[2];
+        long[] nouvellesDates = new long[2];
+        for (byte t = CONDUCTEURS; t <= PASSAGERS; t++) {
+            BasicFileAttributes attributs = attributs(tables[t]);
+            nouvellesTailles[t] = attributs == null ? -1 : attributs.size();
+            nouvellesDates[t] = attributs == null ? -1 : attributs.lastModifiedTime().toMillis();
+            if (attributs == null) continue;
+            LecteurCSV lecteur = new LecteurCSV(LecteurCSV.projeter(tables[t]));
+            lecteur.suivant(); // en-tête
+            while (lecteur.suivant()) {
+                String cle = cle(lecteur.champ(0));
+                if (cle.isEmpty()) continue;
+                if (cle.getBytes(StandardCharsets.UTF_8).length > TAILLE_MAX_CLE) {
+                    System.err.println("⚠ CIN trop long ignoré par l'index (" + tables[t].getFileName()
+                        + ", ligne " + lecteur.numeroLigne() + ")");
+                    continue;
+                }
+                entrees.add(new Entree(cle, t, lecteur.debutEnregistrement()));
+            }
+        }
+        // Même CIN : conducteur avant passager, puis premier enregistrement du fichier
+        entrees.sort((a, b) -> {
+            int c = a.cle.compareTo(b.cle);
+            if (c != 0) return c;
+            if (a.table != b.table) return a.table - b.table;
+            return Long.compare(a.position, b.position);
+        });
+
+        ecrire(entrees, nouvellesTailles, nouvellesDates);
+        if (!lireEntete()) {
+            throw new IOException("Index " + fichier + " illisible après reconstruction");
+        }
+        System.out.println("✓ Index CIN construit: " + nbEntrees + " utilisateurs, " + sommaire.length
+            + " page(s) (" + (System.nanoTime() - debut) / 1_000_000 + " ms)");
+    }
+
+    private void ecrire(List<Entree> entrees, long[] nouvellesTailles, long[] nouvellesDates) throws IOException {
+        Path tmp = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+        List<String> premieres = new ArrayList<>();
+        try (FileChannel sortie = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer page = ByteBuffer.allocate(TAILLE_PAGE);
+            long position = TAILLE_ENTETE;
+            int i = 0;
+            while (i < entrees.size()) {
+                page.clear();
+                page.putShort((short) 0);
+                short nb = 0;
+                premieres.add(entrees.get(i).cle);
+                while (i < entrees.size()) {
+                    Entree e = entrees.get(i);
+                    byte[] octets = e.cle.getBytes(StandardCharsets.UTF_8);
+                    if (page.remaining() < 2 + octets.length + 1 + 8) break;
+                    page.putShort((short) octets.length).put(octets).put(e.table).putLong(e.position);
+                    nb++;
+                    i++;
+                }
+                page.putShort(0, nb);
+                page.position(TAILLE_PAGE).flip();
+                position += ecrireTout(sortie, page, position);
+            }
+
+            // Sommaire : premier CIN de chaque page
+            long positionSommaire = position;
+            for (String premiere : premieres) {
+                byte[] octets = premiere.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer b = ByteBuffer.allocate(2 + octets.length);
+                b.putShort((short) octets.length).put(octets).flip();
+                position += ecrireTout(sortie, b, position);
+            }
+
+            ByteBuffer entete = ByteBuffer.allocate(TAILLE_ENTETE);
+            entete.putInt(MAGIC).putInt(VERSION)
+                .putLong(nouvellesTailles[CONDUCTEURS]).putLong(nouvellesDates[CONDUCTEURS])
+                .putLong(nouvellesTailles[PASSAGERS]).putLong(nouvellesDates[PASSAGERS])
+                .putInt(entrees.size()).putInt(premieres.size()).putLong(positionSommaire);
+            entete.position(TAILLE_ENTETE).flip();
+            ecrireTout(sortie, entete, 0);
+            sortie.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        // L'index se reconstruit à partir des tables : un simple remplacement suffit (pas de fsync du dossier)
+        try {
+            Files.move(tmp, fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, fichier, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    private static int ecrireTout(FileChannel sortie, ByteBuffer b, long position) throws IOException {
+        int total = 0;
+        while (b.hasRemaining()) total += sortie.write(b, position + total);
+        return total;
+    }
+
+    /**
+     * Lit l'en-tête et le sommaire de l'index.
+     *
+     * @return false si l'index est absent, illisible ou ne correspond plus aux tables
+     */
+    private boolean lireEntete() throws IOException {
+        fermer();
+        if (!Files.exists(fichier)) return false;
+        FileChannel c = FileChannel.open(fichier, StandardOpenOption.READ);
+        try {
+            ByteBuffer entete = lire(c, 0, TAILLE_ENTETE);
+            if (entete == null || entete.getInt() != MAGIC || entete.getInt() != VERSION) {
+                c.close();
+                return false;
+            }
+            for (int t = CONDUCTEURS; t <= PASSAGERS; t++) {
+                tailles[t] = entete.getLong();
+                dates[t] = entete.getLong();
+            }
+            int entrees = entete.getInt();
+            int nbPages = entete.getInt();
+            long positionSommaire = entete.getLong();
+            if (!tablesInchangees() || nbPages < 0 || positionSommaire > c.size()) {
+                c.close();
+                return false;
+            }
+
+            ByteBuffer b = lire(c, positionSommaire, (int) (c.size() - positionSommaire));
+            if (b == null) {
+                c.close();
+                return false;
+            }
+            String[] premieres = new String[nbPages];
+            for (int p = 0; p < nbPages; p++) {
+                byte[] octets = new byte[b.getShort()];
+                b.get(octets);
+                premieres[p] = new String(octets, StandardCharsets.UTF_8);
+            }
+            for (int t = CONDUCTEURS; t <= PASSAGERS; t++) {
+                contenus[t] = tailles[t] < 0 ? null : LecteurCSV.projeter(tables[t]);
+            }
+            canal = c;
+            sommaire = premieres;
+            nbEntrees = entrees;
+            return true;
+        } catch (IOException | RuntimeException e) {
+            c.close();
+            System.err.println("⚠ Index CIN illisible (" + e.getMessage() + "), reconstruction");
+            return false;
+        }
+    }
+
+    /**
+     * @return true si les deux tables ont la taille et la date enregistrées dans l'en-tête
+     */
+    private boolean tablesInchangees() throws IOException {
+        for (int t = CONDUCTEURS; t <= PASSAGERS; t++) {
+            BasicFileAttributes attributs = attributs(tables[t]);
+            long taille = attributs == null ? -1 : attributs.size();
+            long date = attributs == null ? -1 : attributs.lastModifiedTime().toMillis();
+            if (taille != tailles[t] || date != dates[t]) return false;
+        }
+        return true;
+    }
+
+    private static BasicFileAttributes attributs(Path table) throws IOException {
+        try {
+            return Files.readAttributes(table, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+    }
+
+    private static ByteBuffer lire(FileChannel c, long position, int taille) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(taille);
+        while (b.hasRemaining()) {
+            if (c.read(b, position + b.position()) < 0) return null;
+        }
+        b.flip();
+        return b;
+    }
+
+    public synchronized void fermer() {
+        cache.clear();
+        contenus[CONDUCTEURS] = null;
+        contenus[PASSAGERS] = null;
+        if (canal != null) {
+            try {
+                canal.close();
+            } catch (IOException e) {
+                System.err.println("⚠ Fermeture de l'index CIN: " + e.getMessage());
+            }
+            canal = null;
+        }
+    }
+
+    // ============================================================
+    // RECHERCHE
+    // ============================================================
+
+    /**
+     * Recherche un utilisateur par CIN (conducteur en priorité, comme rechercher_user).
+     *
+     * @return null si aucun utilisateur n'a ce CIN
+     */
+    public User utilisateur(String cin) {
+        User u = conducteur(cin);
+        return u != null ? u : passager(cin);
+    }
+
+    public Conducteur conducteur(String cin) {
+        LecteurCSV l = enregistrement(cin, CONDUCTEURS, 12);
+        return l == null ? null : CSVDatabase.lireConducteur(l, 0);
+    }
+
+    public Passager passager(String cin) {
+        LecteurCSV l = enregistrement(cin, PASSAGERS, 9);
+        return l == null ? null : CSVDatabase.lirePassager(l, 0);
+    }
+
+    /**
+     * Relit des utilisateurs d'une table (rechargement à chaud en mode à la demande, après
+     * reconstruire()). Contrairement à conducteur() / passager(), une erreur d'accès à l'index est
+     * signalée : un CIN absent du résultat a bien été retiré de la table (ou n'est plus lisible,
+     * comme pour un chargement complet).
+     */
+    public synchronized List<User> relire(boolean conducteurs, Iterable<String> cins) throws IOException {
+        byte table = conducteurs ? CONDUCTEURS : PASSAGERS;
+        int champsMinimum = conducteurs ? 12 : 9;
+        if (canal == null || !tablesInchangees()) ouvrir();
+        List<User> lus = new ArrayList<>();
+        if (contenus[table] == null) return lus;
+        for (String cin : cins) {
+            String cle = cle(cin);
+            long position = cle.isEmpty() ? -1 : chercher(cle, table);
+            if (position < 0) continue;
+            LecteurCSV l = new LecteurCSV(contenus[table], (int) position, contenus[table].limit());
+            if (!l.suivant() || !cle.equals(cle(l.champ(0)))) {
+                throw new IOException("index périmé (" + tables[table].getFileName() + " modifié pendant la lecture)");
+            }
+            if (l.nombreChamps() < champsMinimum) continue;
+            try {
+                lus.add(conducteurs ? CSVDatabase.lireConducteur(l, 0) : CSVDatabase.lirePassager(l, 0));
+            } catch (RuntimeException e) {
+                System.err.println("⚠ Erreur parsing " + (conducteurs ? "conducteur " : "passager ") + cle + ": " + e.getMessage());
+            }
+        }
+        return lus;
+    }
+
+    /**
+     * @return lecteur positionné sur l'enregistrement du CIN dans la table, ou null
+     */
+    private synchronized LecteurCSV enregistrement(String cin, byte table, int champsMinimum) {
+        String cle = cle(cin);
+        if (cle.isEmpty()) return null;
+        try {
+            // Table réécrite ou restaurée depuis la construction : positions périmées
+            if (canal == null || !tablesInchangees()) ouvrir();
+            recherches++;
+            long position = chercher(cle, table);
+            if (position < 0) return null;
+
+            LecteurCSV l = new LecteurCSV(contenus[table], (int) position, contenus[table].limit());
+            if (l.suivant() && l.nombreChamps() >= champsMinimum && cle.equals(cle(l.champ(0)))) {
+                return l;
+            }
+            // L'enregistrement ne correspond pas (table remplacée entre deux vérifications) : on reconstruit
+            reconstruire();
+            position = chercher(cle, table);
+            if (position < 0) return null;
+            l = new LecteurCSV(contenus[table], (int) position, contenus[table].limit());
+            return l.suivant() && l.nombreChamps() >= champsMinimum ? l : null;
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠ Recherche du CIN " + cle + " dans l'index impossible: " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Position de la première entrée (cle, table), ou -1.
+     */
+    private long chercher(String cle, byte table) throws IOException {
+        // Dernière page dont le premier CIN est strictement inférieur : les entrées d'un même CIN
+        // peuvent commencer à la fin de la page précédant celle qui porte ce CIN dans le sommaire
+        int bas = 0;
+        int haut = sommaire.length - 1;
+        int p = 0;
+        while (bas <= haut) {
+            int milieu = (bas + haut) >>> 1;
+            if (sommaire[milieu].compareTo(cle) < 0) {
+                p = milieu;
+                bas = milieu + 1;
+            } else {
+                haut = milieu - 1;
+            }
+        }
+        for (; p < sommaire.length; p++) {
+            Page page = page(p);
+            int i = page.premiereEntree(cle, table);
+            if (i < page.cles.length) {
+                return page.cles[i].equals(cle) && page.tables[i] == table ? page.positions[i] : -1;
+            }
+        }
+        return -1;
+    }
+
+    private Page page(int p) throws IOException {
+        Page page = cache.get(p);
+        if (page == null) {
+            ByteBuffer b = lire(canal, TAILLE_ENTETE + (long) p * TAILLE_PAGE, TAILLE_PAGE);
+            if (b == null) throw new IOException("page " + p + " tronquée");
+            page = new Page(b);
+            cache.put(p, page);
+            lecturesPages++;
+        }
+        return page;
+    }
+
+    /**
+     * @return nombre d'utilisateurs enregistrés dans les tables (mémoire et disque)
+     */
+    public synchronized int nombreEntrees() {
+        return nbEntrees;
+    }
+
+    /**
+     * Résumé pour les messages : taille de l'index et efficacité du cache de pages.
+     */
+    public synchronized String statistiques() {
+        return nbEntrees + " entrées, " + sommaire.length + " page(s), " + recherches + " recherche(s), "
+            + lecturesPages + " page(s) lue(s) sur disque";
+    }
+
+    // ============================================================
+    // STRUCTURES
+    // ============================================================
+
+    private static class Entree {
+        final String cle;
+        final byte table;
+        final long position;
+
+        Entree(String cle, byte table, long position) {
+            this.cle = cle;
+            this.table = table;
+            this.position = position;
+        }
+    }
+
+    /**
+     * Page décodée : entrées triées par (CIN, table, position).
+     */
+    private static class Page {
+        final String[] cles;
+        final byte[] tables;
+        final long[] positions;
+
+        Page(ByteBuffer b) {
+            int nb = b.getShort();
+            cles = new String[nb];
+            tables = new byte[nb];
+            positions = new long[nb];
+            for (int i = 0; i < nb; i++) {
+                byte[] octets = new byte[b.getShort()];
+                b.get(octets);
+                cles[i] = new String(octets, StandardCharsets.UTF_8);
+                tables[i] = b.get();
+                positions[i] = b.getLong();
+            }
+        }
+
+        /**
+         * @return indice de la première entrée >= (cle, table), ou cles.length
+         */
+        int premiereEntree(String cle, byte table) {
+            int bas = 0;
+            int haut = cles.length;
+            while (bas < haut) {
+                int milieu = (bas + haut) >>> 1;
+                int c = cles[milieu].compareTo(cle);
+                if (c < 0 || (c == 0 && tables[milieu] < table)) {
+                    bas = milieu + 1;
+                } else {
+                    haut = milieu;
+                }
+            }
+            return bas;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package Services;
+
+import Models.Passager;
+import Models.Trajet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * IndexReservations - Trajets de chaque passager (acceptés / demandes en attente), par CIN.
+ *
+ * COMMENTAIRE DE FONCTIONNEMENT :
+ * - Évite aux écrans passager de parcourir tous les trajets puis tous leurs passagers : le coût
+ *   d'un écran dépend du nombre de réservations du passager, pas de la taille de la plateforme.
+ * - Reçoit, via l'écouteur (Trajet.Ecouteur) que Gestion_covoiturage pose sur ses trajets, les
+ *   changements faits par addDemand, acceptPassenger, removeDemand et removeAccepted.
+ * - Les listes des trajets modifiées directement (chargement, rechargement à chaud) sont prises
+ *   en compte par indexer / desindexer, appelés par Gestion_covoiturage autour de ces chemins.
+ * - Trajets triés par identifiant, c'est-à-dire dans l'ordre de création (celui de getTrajets()).
+ */
+class IndexReservations {
+
+    private static final Comparator<Trajet> ORDRE = Comparator.comparingLong(Trajet::getId);
+
+    private final Map<String, Set<Trajet>> acceptes = new HashMap<>();
+    private final Map<String, Set<Trajet>> demandes = new HashMap<>();
+
+    /**
+     * Indexe les passagers actuels du trajet.
+     */
+    void indexer(Trajet t) {
+        for (Passager p : t.getPassagersAcceptes()) passagerAjoute(t, p, true);
+        for (Passager p : t.getPassagersDemandes()) passagerAjoute(t, p, false);
+    }
+
+    /**
+     * Retire le trajet de l'index (suppression, ou avant de remplacer ses listes de passagers).
+     */
+    void desindexer(Trajet t) {
+        for (Passager p : t.getPassagersAcceptes()) passagerRetire(t, p, true);
+        for (Passager p : t.getPassagersDemandes()) passagerRetire(t, p, false);
+    }
+
+    void vider() {
+        acceptes.clear();
+        demandes.clear();
+    }
+
+    List<Trajet> acceptes(String cin) {
+        return liste(acceptes, cin);
+    }
+
+    List<Trajet> demandes(String cin) {
+        return liste(demandes, cin);
+    }
+
+    void passagerAjoute(Trajet t, Passager p, boolean accepte) {
+        if (p == null || p.getCin() == null) return;
+        (accepte ? acceptes : demandes).computeIfAbsent(IndexPagineCIN.cle(p.getCin()), k -> new TreeSet<>(ORDRE)).add(t);
+    }
+
+    void passagerRetire(Trajet t, Passager p, boolean accepte) {
+        if (p == null || p.getCin() == null) return;
+        Map<String, Set<Trajet>> index = accepte ? acceptes : demandes;
+        String cle = IndexPagineCIN.cle(p.getCin());
+        Set<Trajet> trajets = index.get(cle);
+        if (trajets != null && trajets.remove(t) && trajets.isEmpty()) index.remove(cle);
+    }
+
+    private static List<Trajet> liste(Map<String, Set<Trajet>> index, String cin) {
+        Set<Trajet> trajets = (cin == null) ? null : index.get(IndexPagineCIN.cle(cin));
+        return trajets == null ? Collections.emptyList() : new ArrayList<>(trajets);
+    }
+}
@@ -0,0 +1,100 @@
+package Services;
+
+import Models.Trajet;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * IndexTrajetsOuverts - Trajets réservables triés par prix puis par places disponibles, pour les
+ * filtres "prix maximum" et "au moins N places" des écrans passager.
+ *
+ * COMMENTAIRE DE FONCTIONNEMENT :
+ * - Un trajet est ouvert s'il a un conducteur, n'est pas terminé et a au moins une place libre
+ *   (les conditions déjà appliquées par les écrans de recherche).
+ * - Ordre : prix croissant, puis places disponibles décroissantes, puis identifiant (ordre de
+ *   création) pour départager. Une recherche "prix <= max" est une tête de l'arbre, déjà triée.
+ * - Le prix et les places d'un trajet changent en place : la clé utilisée à l'insertion est
+ *   mémorisée (cles) pour pouvoir retirer l'ancienne entrée quand le trajet est modifié.
+ * - Tenu à jour par Gestion_covoiturage : ajout / suppression de trajets, et notifications
+ *   Trajet.Ecouteur (setPrix, acceptPassenger, removeAccepted, changement de statut...).
+ */
+class IndexTrajetsOuverts {
+
+    /**
+     * Clé figée au moment de l'indexation.
+     */
+    private static final class Cle {
+        final double prix;
+        final int places;
+        final long id;
+
+        Cle(double prix, int places, long id) {
+            this.prix = prix;
+            this.places = places;
+            this.id = id;
+        }
+    }
+
+    private static final Comparator<Cle> ORDRE = Comparator.<Cle>comparingDouble(c -> c.prix)
+        .thenComparing(Comparator.<Cle>comparingInt(c -> c.places).reversed())
+        .thenComparingLong(c -> c.id);
+
+    private final TreeMap<Cle, Trajet> parPrix = new TreeMap<>(ORDRE);
+    private final Map<Trajet, Cle> cles = new HashMap<>();
+
+    /**
+     * Place le trajet selon son état actuel (l'ajoute, le déplace ou le retire).
+     */
+    void mettreAJour(Trajet t) {
+        retirer(t);
+        if (t.getConducteur() == null || t.isFinished() || t.getAvailablePlaces() <= 0) return;
+        Cle cle = new Cle(t.getPrix(), t.getAvailablePlaces(), t.getId());
+        cles.put(t, cle);
+        parPrix.put(cle, t);
+    }
+
+    void retirer(Trajet t) {
+        Cle cle = cles.remove(t);
+        if (cle != null) parPrix.remove(cle);
+    }
+
+    void vider() {
+        parPrix.clear();
+        cles.clear();
+    }
+
+    int taille() {
+        return parPrix.size();
+    }
+
+    /**
+     * @return les trajets ouverts de prix <= prixMax ayant au moins placesMin places libres,
+     *         par prix croissant
+     */
+    List<Trajet> rechercher(double prixMax, int placesMin) {
+        // Plus grande clé possible à ce prix : le moins de places, le plus grand identifiant
+        Cle borne = new Cle(prixMax, Integer.MIN_VALUE, Long.MAX_VALUE);
+        List<Trajet> resultat = new ArrayList<>();
+        for (Map.Entry<Cle, Trajet> e : parPrix.headMap(borne, true).entrySet()) {
+            if (e.getKey().places >= placesMin) resultat.add(e.getValue());
+        }
+        return resultat;
+    }
+
+    /**
+     * Même filtre appliqué à des candidats déjà sélectionnés (recherche par villes), dans le
+     * même ordre.
+     */
+    List<Trajet> filtrer(List<Trajet> candidats, double prixMax, int placesMin) {
+        TreeMap<Cle, Trajet> retenus = new TreeMap<>(ORDRE);
+        for (Trajet t : candidats) {
+            Cle cle = cles.get(t);
+            if (cle != null && cle.prix <= prixMax && cle.places >= placesMin) retenus.put(cle, t);
+        }
+        return new ArrayList<>(retenus.values());
+    }
+}
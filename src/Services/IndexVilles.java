@@ -0,0 +1,204 @@
+package Services;
+
+import Models.Trajet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * IndexVilles - Index inversé par trigrammes des villes de départ et d'arrivée, pour la
+ * recherche de trajets par sous-chaîne sans parcourir tous les trajets.
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Chaque ville est normalisée (minuscules) : la recherche garde le comportement de
+ *    toLowerCase().contains() des écrans passager.
+ * 2. Les villes se répètent beaucoup (quelques milliers de valeurs pour des centaines de
+ *    milliers de trajets) : les trigrammes pointent vers les villes distinctes, et chaque
+ *    ville vers ses trajets, triés par identifiant (un nouveau trajet s'ajoute à la fin).
+ * 3. Une recherche intersecte les villes des trigrammes de la requête (en partant de la plus
+ *    petite liste), vérifie chaque ville candidate avec contains(), puis réunit leurs trajets
+ *    (fusion de listes déjà triées). Avec départ et arrivée, les deux listes triées sont
+ *    intersectées en un seul passage.
+ *    Une requête de moins de 3 caractères n'a pas de trigramme : les villes distinctes sont
+ *    alors parcourues (jamais les trajets).
+ * 4. Tenu à jour par Gestion_covoiturage à l'ajout, à la suppression et à la modification
+ *    (rechargement à chaud) d'un trajet : desindexer avant, indexer après. Un changement de
+ *    ville fait par les setters du trajet arrive par son écouteur (villesModifiees), avec les
+ *    anciennes valeurs sous lesquelles il est rangé.
+ */
+class IndexVilles {
+
+    private static final Comparator<Trajet> ORDRE = Comparator.comparingLong(Trajet::getId);
+
+    /**
+     * Index d'un champ (départ ou arrivée).
+     */
+    private static class Champ {
+        private final Map<String, List<Trajet>> trajetsParVille = new HashMap<>();
+        private final Map<String, Set<String>> villesParTrigramme = new HashMap<>();
+
+        void ajouter(String ville, Trajet t) {
+            List<Trajet> trajets = trajetsParVille.get(ville);
+            if (trajets == null) {
+                trajets = new ArrayList<>();
+                trajetsParVille.put(ville, trajets);
+                for (String tri : trigrammes(ville)) {
+                    villesParTrigramme.computeIfAbsent(tri, k -> new HashSet<>()).add(ville);
+                }
+            }
+            if (trajets.isEmpty() || trajets.get(trajets.size() - 1).getId() < t.getId()) {
+                trajets.add(t);
+            } else {
+                int i = Collections.binarySearch(trajets, t, ORDRE);
+                trajets.add(i < 0 ? -i - 1 : i, t);
+            }
+        }
+
+        void retirer(String ville, Trajet t) {
+            List<Trajet> trajets = trajetsParVille.get(ville);
+            if (trajets == null) return;
+            int i = Collections.binarySearch(trajets, t, ORDRE);
+            if (i >= 0 && trajets.get(i) == t) {
+                trajets.remove(i);
+            } else if (!trajets.remove(t)) {
+                return;
+            }
+            if (!trajets.isEmpty()) return;
+            trajetsParVille.remove(ville);
+            for (String tri : trigrammes(ville)) {
+                Set<String> villes = villesParTrigramme.get(tri);
+                if (villes != null && villes.remove(ville) && villes.isEmpty()) villesParTrigramme.remove(tri);
+            }
+        }
+
+        /**
+         * @return les villes (normalisées) contenant la requête normalisée
+         */
+        Set<String> villes(String requete) {
+            if (requete.length() < 3) {
+                Set<String> resultat = new HashSet<>();
+                for (String ville : trajetsParVille.keySet()) {
+                    if (ville.contains(requete)) resultat.add(ville);
+                }
+                return resultat;
+            }
+            List<Set<String>> listes = new ArrayList<>();
+            for (String tri : trigrammes(requete)) {
+                Set<String> villes = villesParTrigramme.get(tri);
+                if (villes == null) return Collections.emptySet();
+                listes.add(villes);
+            }
+            listes.sort(Comparator.comparingInt(Set::size));
+            Set<String> resultat = new HashSet<>();
+            for (String ville : listes.get(0)) {
+                boolean partout = true;
+                for (int i = 1; i < listes.size() && partout; i++) partout = listes.get(i).contains(ville);
+                // Les trigrammes peuvent être présents sans être contigus : vérification finale
+                if (partout && ville.contains(requete)) resultat.add(ville);
+            }
+            return resultat;
+        }
+
+        /**
+         * @return les trajets des villes données, dans l'ordre de création
+         */
+        List<Trajet> trajets(Set<String> villes) {
+            if (villes.size() == 1) return trajetsParVille.get(villes.iterator().next());
+            List<Trajet> resultat = new ArrayList<>();
+            for (String ville : villes) resultat.addAll(trajetsParVille.get(ville));
+            // Concaténation de listes triées : le tri se contente de fusionner ces séquences
+            resultat.sort(ORDRE);
+            return resultat;
+        }
+
+        void vider() {
+            trajetsParVille.clear();
+            villesParTrigramme.clear();
+        }
+    }
+
+    private final Champ departs = new Champ();
+    private final Champ arrivees = new Champ();
+
+    void indexer(Trajet t) {
+        if (t.getDepartTrajet() != null) departs.ajouter(normaliser(t.getDepartTrajet()), t);
+        if (t.getArriveeTrajet() != null) arrivees.ajouter(normaliser(t.getArriveeTrajet()), t);
+    }
+
+    void desindexer(Trajet t) {
+        if (t.getDepartTrajet() != null) departs.retirer(normaliser(t.getDepartTrajet()), t);
+        if (t.getArriveeTrajet() != null) arrivees.retirer(normaliser(t.getArriveeTrajet()), t);
+    }
+
+    /**
+     * Range le trajet sous ses nouvelles villes (retiré des anciennes s'il y en avait).
+     */
+    void villesModifiees(Trajet t, String ancienDepart, String ancienneArrivee) {
+        deplacer(departs, ancienDepart, t.getDepartTrajet(), t);
+        deplacer(arrivees, ancienneArrivee, t.getArriveeTrajet(), t);
+    }
+
+    private static void deplacer(Champ champ, String ancienne, String nouvelle, Trajet t) {
+        String avant = (ancienne == null) ? null : normaliser(ancienne);
+        String apres = (nouvelle == null) ? null : normaliser(nouvelle);
+        if (avant == null ? apres == null : avant.equals(apres)) return;
+        if (avant != null) champ.retirer(avant, t);
+        if (apres != null) champ.ajouter(apres, t);
+    }
+
+    void vider() {
+        departs.vider();
+        arrivees.vider();
+    }
+
+    /**
+     * Trajets dont le départ et l'arrivée contiennent les textes donnés (sans tenir compte de la
+     * casse ; texte vide ou null = pas de critère), dans l'ordre de création.
+     *
+     * @return null si aucun critère n'est donné (l'appelant parcourt alors tous les trajets)
+     */
+    List<Trajet> rechercher(String depart, String arrivee) {
+        String d = (depart == null) ? "" : normaliser(depart);
+        String a = (arrivee == null) ? "" : normaliser(arrivee);
+        if (d.isEmpty() && a.isEmpty()) return null;
+
+        List<Trajet> parDepart = d.isEmpty() ? null : departs.trajets(departs.villes(d));
+        List<Trajet> parArrivee = a.isEmpty() ? null : arrivees.trajets(arrivees.villes(a));
+        if (parArrivee == null) return new ArrayList<>(parDepart);
+        if (parDepart == null) return new ArrayList<>(parArrivee);
+
+        // Intersection de deux listes triées par identifiant
+        List<Trajet> resultat = new ArrayList<>();
+        int i = 0, j = 0;
+        while (i < parDepart.size() && j < parArrivee.size()) {
+            Trajet t = parDepart.get(i);
+            int c = Long.compare(t.getId(), parArrivee.get(j).getId());
+            if (c < 0) {
+                i++;
+            } else if (c > 0) {
+                j++;
+            } else {
+                if (t == parArrivee.get(j)) resultat.add(t);
+                i++;
+                j++;
+            }
+        }
+        return resultat;
+    }
+
+    private static String normaliser(String ville) {
+        return ville.toLowerCase(Locale.ROOT);
+    }
+
+    private static List<String> trigrammes(String texte) {
+        List<String> trigrammes = new ArrayList<>();
+        for (int i = 0; i + 3 <= texte.length(); i++) trigrammes.add(texte.substring(i, i + 3));
+        return trigrammes;
+    }
+}
@@ -0,0 +1,545 @@
+package Services;
+
+import Models.*;
+import java.io.*;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Journal - Journal des mutations en ajout seul (write-ahead log).
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Chaque modification faite via Gestion_covoiturage (inscription, demande, acceptation,
+ *    fin de trajet, changement de prix...) ajoute UNE ligne à la fin de data/journal.log.
+ *    Le coût d'une sauvegarde dépend donc du nombre de changements, pas de la taille des tables.
+ * 2. Les fichiers CSV deviennent des points de contrôle : CSVDatabase.saveAllData les réécrit
+ *    puis vide le journal.
+ * 3. Au démarrage, CSVDatabase.loadAllData charge les CSV puis rejoue le journal, ce qui
+ *    récupère les modifications faites depuis le dernier point de contrôle.
+ *
+ * 4. Sauvegarde en arrière-plan (voir SauvegardeAsynchrone) : au moment où l'état est copié,
+ *    le journal courant est scellé en segment (journal.log.1, journal.log.2...) et un nouveau
+ *    journal.log est commencé. Une fois la sauvegarde écrite, seuls les segments qu'elle couvre
+ *    sont supprimés : les mutations faites pendant l'écriture restent dans journal.log.
+ *
+ * 5. Durabilité (voir Durabilite) : une mutation est au moins transmise au système de fichiers
+ *    avant le retour de la méthode. Selon le mode choisi, elle est en plus forcée sur disque
+ *    (fsync) seule, ou avec les mutations arrivées pendant la même fenêtre de quelques ms.
+ *    Si l'écriture ou le fsync échoue, la méthode lève UncheckedIOException au lieu de revenir
+ *    normalement : la garantie n'est pas tenue. La modification, déjà faite en mémoire par
+ *    Gestion_covoiturage, y reste (table marquée modifiée) et sera écrite par le prochain point
+ *    de contrôle ; le journal est rouvert à la mutation suivante.
+ *
+ * Format d'une ligne : TYPE;champ1;champ2;... (mêmes règles d'échappement que les CSV).
+ * Les trajets sont référencés par leur identifiant stable (Trajet.getId()).
+ */
+public class Journal {
+
+    // Types d'enregistrements
+    static final String CONDUCTEUR = "CONDUCTEUR";
+    static final String PASSAGER = "PASSAGER";
+    static final String TRAJET = "TRAJET";
+    static final String SUPPRESSION_TRAJET = "SUPPRESSION_TRAJET";
+    static final String DEMANDE = "DEMANDE";
+    static final String ANNULATION_DEMANDE = "ANNULATION_DEMANDE";
+    static final String ACCEPTATION = "ACCEPTATION";
+    static final String FIN_TRAJET = "FIN_TRAJET";
+    static final String PRIX = "PRIX";
+
+    private static final String DELIMITER = ";";
+
+    /**
+     * Garantie donnée au retour d'une mutation (compromis latence / fenêtre de perte).
+     */
+    public enum Durabilite {
+        /** fsync de chaque mutation avant le retour : aucune perte, un fsync par mutation */
+        SYNCHRONE,
+        /** Mutations arrivées pendant la même fenêtre écrites et forcées ensemble (un seul fsync),
+         *  le retour attend ce fsync : aucune perte, coût du fsync partagé entre threads */
+        GROUPE,
+        /** Comportement historique : ligne transmise au système, sans fsync ; une coupure de
+         *  courant peut perdre les mutations faites depuis la dernière sauvegarde périodique */
+        PERIODIQUE
+    }
+
+    private final Path fichier;
+    private final Durabilite durabilite;
+    // Mode GROUPE : durée pendant laquelle le meneur laisse arriver d'autres mutations
+    private final long fenetreGroupeMs;
+    private BufferedWriter writer;
+    private FileChannel canal;
+    // Mutations écrites dans le tampon / forcées sur disque (modes SYNCHRONE et GROUPE)
+    private long ecrites;
+    private long durables;
+    private long fsyncs;
+    // Mode GROUPE : un thread (le meneur) est en train de forcer un groupe sur disque
+    private boolean meneur;
+    // Mode GROUPE : nombre de mutations du dernier groupe forcé
+    private long dernierGroupe;
+    // Mutations (intervalles de numéros {de, a}) dont l'écriture ou le fsync a échoué ; les
+    // échecs sont rares, la liste n'est pas purgée
+    private final List<long[]> echecs = new ArrayList<>();
+    // Numéro du prochain segment scellé (déterminé au premier scellement)
+    private long prochainSegment = -1;
+    // Index CIN utilisé pendant la relecture (reconstruit seulement si des utilisateurs sont ajoutés)
+    private CSVDatabase.IndexCIN indexRejeu;
+
+    public Journal(Path fichier) {
+        this(fichier, Durabilite.PERIODIQUE, 0);
+    }
+
+    public Journal(Path fichier, Durabilite durabilite, long fenetreGroupeMs) {
+        this.fichier = fichier;
+        this.durabilite = durabilite;
+        this.fenetreGroupeMs = fenetreGroupeMs;
+    }
+
+    public Durabilite getDurabilite() {
+        return durabilite;
+    }
+
+    // ============================================================
+    // ÉCRITURE - une ligne par mutation
+    // ============================================================
+
+    public void userAjoute(User u) {
+        if (u instanceof Conducteur) {
+            enregistrer(CONDUCTEUR, CSVDatabase.ligneConducteur((Conducteur) u));
+        } else if (u instanceof Passager) {
+            enregistrer(PASSAGER, CSVDatabase.lignePassager((Passager) u));
+        }
+    }
+
+    public void trajetAjoute(Trajet t) {
+        enregistrer(TRAJET, CSVDatabase.ligneTrajet(t));
+    }
+
+    public void trajetSupprime(Trajet t) {
+        enregistrer(SUPPRESSION_TRAJET, String.valueOf(t.getId()));
+    }
+
+    public void demandeAjoutee(Trajet t, String cinPassager) {
+        enregistrer(DEMANDE, t.getId() + DELIMITER + CSVDatabase.escapeCSV(cinPassager));
+    }
+
+    public void demandeAnnulee(Trajet t, String cinPassager) {
+        enregistrer(ANNULATION_DEMANDE, t.getId() + DELIMITER + CSVDatabase.escapeCSV(cinPassager));
+    }
+
+    public void passagerAccepte(Trajet t, String cinPassager) {
+        enregistrer(ACCEPTATION, t.getId() + DELIMITER + CSVDatabase.escapeCSV(cinPassager));
+    }
+
+    public void trajetTermine(Trajet t) {
+        enregistrer(FIN_TRAJET, String.valueOf(t.getId()));
+    }
+
+    public void prixModifie(Trajet t, float prix) {
+        enregistrer(PRIX, t.getId() + DELIMITER + prix);
+    }
+
+    /**
+     * Ajoute une ligne au journal ; au retour elle est sur disque (SYNCHRONE, GROUPE) ou au
+     * moins transmise au système de fichiers (PERIODIQUE).
+     *
+     * @throws UncheckedIOException si la ligne n'a pas pu être écrite ou forcée sur disque
+     */
+    private void enregistrer(String type, String contenu) {
+        long numero;
+        synchronized (this) {
+            try {
+                if (writer == null) ouvrir();
+                writer.write(type + DELIMITER + contenu);
+                writer.newLine();
+                numero = ++ecrites;
+                // Mode GROUPE : flush et fsync faits par le meneur du groupe, hors du verrou
+                if (durabilite != Durabilite.GROUPE) {
+                    writer.flush();
+                    if (durabilite == Durabilite.SYNCHRONE) forcer(numero);
+                    return;
+                }
+            } catch (IOException e) {
+                System.err.println("✗ Erreur écriture journal: " + e.getMessage());
+                abandonnerEcriture(durables + 1);
+                throw new UncheckedIOException("Mutation non journalisée (" + type + ")", e);
+            }
+        }
+        attendreGroupe(numero);
+    }
+
+    /**
+     * Après un échec d'écriture ou de fsync : les mutations à partir de "de" déjà passées par ce
+     * writer ne sont pas durables (leurs threads en attente lèveront l'erreur) et le journal est
+     * fermé sans être forcé ; il sera rouvert (ligne incomplète terminée, voir ouvrir) à la
+     * mutation suivante.
+     */
+    private synchronized void abandonnerEcriture(long de) {
+        if (de <= ecrites) echecs.add(new long[]{de, ecrites});
+        if (writer != null) {
+            try {
+                writer.close();
+            } catch (IOException ignored) {
+                // Contenu du tampon perdu : les mutations concernées sont déjà en échec
+            }
+            writer = null;
+            canal = null;
+        }
+        notifyAll();
+    }
+
+    private boolean enEchec(long numero) {
+        for (long[] echec : echecs) {
+            if (echec[0] <= numero && numero <= echec[1]) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Mode GROUPE : attend que la mutation numéro soit sur disque. Le premier thread sans meneur
+     * en place le devient : il laisse passer la fenêtre, puis écrit et force en un seul fsync
+     * toutes les lignes en attente, y compris celles des autres threads, qui sont alors réveillés.
+     *
+     * La fenêtre n'est attendue que si le groupe précédent comptait plusieurs mutations : un
+     * thread seul (interface graphique) garde la latence du mode SYNCHRONE, et dès que plusieurs
+     * threads écrivent, les mutations arrivées pendant un fsync forment déjà le groupe suivant.
+     */
+    private void attendreGroupe(long numero) {
+        while (true) {
+            synchronized (this) {
+                while (durables < numero && !enEchec(numero) && meneur) {
+                    try {
+                        wait();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new UncheckedIOException(new InterruptedIOException("Attente du fsync du journal interrompue"));
+                    }
+                }
+                if (enEchec(numero)) throw new UncheckedIOException(new IOException("Mutation non forcée sur disque (journal)"));
+                if (durables >= numero) return;
+                meneur = true;
+            }
+            if (fenetreGroupeMs > 0 && dernierGroupe > 1) {
+                try {
+                    Thread.sleep(fenetreGroupeMs);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            long groupe;
+            long debutGroupe;
+            FileChannel aForcer;
+            synchronized (this) {
+                groupe = ecrites;
+                debutGroupe = durables + 1;
+                aForcer = canal;
+                try {
+                    if (writer != null) writer.flush();
+                } catch (IOException e) {
+                    System.err.println("✗ Erreur écriture journal: " + e.getMessage());
+                    meneur = false;
+                    abandonnerEcriture(debutGroupe);
+                    continue;
+                }
+            }
+            // fsync hors du verrou : les mutations suivantes s'accumulent pour le groupe suivant
+            // Sans canal, le journal a été fermé entre-temps (voir ci-dessous)
+            boolean force = aForcer != null;
+            try {
+                if (aForcer != null) aForcer.force(false);
+            } catch (ClosedChannelException e) {
+                // Journal fermé ou scellé entre-temps : fermer() a forcé son contenu (ou noté l'échec)
+                force = false;
+            } catch (IOException e) {
+                System.err.println("✗ Erreur fsync journal: " + e.getMessage());
+                synchronized (this) {
+                    meneur = false;
+                    abandonnerEcriture(debutGroupe);
+                }
+                continue;
+            }
+            synchronized (this) {
+                if (force) {
+                    fsyncs++;
+                    dernierGroupe = groupe - durables;
+                    durables = Math.max(durables, groupe);
+                }
+                meneur = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * fsync du journal courant ; les mutations jusqu'à numero sont alors durables.
+     * En cas d'échec, elles ne le sont pas (durables n'avance pas) : l'erreur est levée.
+     */
+    private void forcer(long numero) throws IOException {
+        canal.force(false);
+        fsyncs++;
+        durables = Math.max(durables, numero);
+        notifyAll();
+    }
+
+    /**
+     * Résumé pour les messages : mode, mutations écrites, fsync effectués.
+     */
+    public synchronized String statistiques() {
+        String mode = "durabilité " + durabilite
+            + (durabilite == Durabilite.GROUPE ? " (fenêtre " + fenetreGroupeMs + " ms)" : "");
+        if (durabilite == Durabilite.PERIODIQUE) return mode;
+        return mode + ", " + ecrites + " mutation(s), " + fsyncs + " fsync";
+    }
+
+    /**
+     * Ouvre le journal en mode ajout. Si la dernière ligne a été tronquée (arrêt brutal pendant
+     * une écriture), on termine la ligne pour que la mutation suivante ne s'y colle pas.
+     */
+    private void ouvrir() throws IOException {
+        Files.createDirectories(fichier.toAbsolutePath().getParent());
+        boolean nouveau = !Files.exists(fichier);
+        boolean ligneIncomplete = false;
+        if (!nouveau && Files.size(fichier) > 0) {
+            try (RandomAccessFile raf = new RandomAccessFile(fichier.toFile(), "r")) {
+                raf.seek(raf.length() - 1);
+                ligneIncomplete = raf.read() != '\n';
+            }
+        }
+        FileOutputStream flux = new FileOutputStream(fichier.toFile(), true);
+        canal = flux.getChannel();
+        writer = new BufferedWriter(new OutputStreamWriter(flux, StandardCharsets.UTF_8));
+        if (ligneIncomplete) writer.newLine();
+        // Un fsync du fichier ne suffit pas à rendre durable sa création
+        if (nouveau && durabilite != Durabilite.PERIODIQUE) {
+            CSVDatabase.synchroniserDossier(fichier.toAbsolutePath().getParent());
+        }
+    }
+
+    /**
+     * Vide le journal (segments scellés compris) : appelé après un point de contrôle CSV complet.
+     */
+    public synchronized void vider() {
+        fermer();
+        try {
+            Files.deleteIfExists(fichier);
+            for (Segment segment : segments()) {
+                Files.deleteIfExists(segment.chemin);
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Erreur vidage journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Scelle le journal courant en segment numéroté ; les mutations suivantes iront dans un
+     * nouveau journal.log.
+     *
+     * @return numéro du dernier segment scellé (0 si aucun) : un point de contrôle de l'état
+     *         actuel couvre tous les segments jusqu'à ce numéro
+     */
+    public synchronized long sceller() {
+        fermer();
+        try {
+            if (prochainSegment < 0) {
+                List<Segment> existants = segments();
+                prochainSegment = existants.isEmpty() ? 1 : existants.get(existants.size() - 1).numero + 1;
+            }
+            if (Files.exists(fichier) && Files.size(fichier) > 0) {
+                Files.move(fichier, cheminSegment(prochainSegment), StandardCopyOption.ATOMIC_MOVE);
+                prochainSegment++;
+            }
+        } catch (IOException e) {
+            // Sans scellement, la mutation restera dans journal.log : on ne supprimera rien de plus
+            System.err.println("✗ Erreur scellement journal: " + e.getMessage());
+        }
+        return prochainSegment - 1;
+    }
+    
+    /**
+     * Supprime les segments scellés couverts par un point de contrôle.
+     */
+    public synchronized void supprimerSegments(long jusqua) {
+        try {
+            for (Segment segment : segments()) {
+                if (segment.numero <= jusqua) Files.deleteIfExists(segment.chemin);
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Erreur suppression segments journal: " + e.getMessage());
+        }
+    }
+    
+    /**
+     * Segment scellé du journal.
+     */
+    private static class Segment {
+        final long numero;
+        final Path chemin;
+        
+        Segment(long numero, Path chemin) {
+            this.numero = numero;
+            this.chemin = chemin;
+        }
+    }
+    
+    private Path cheminSegment(long numero) {
+        return fichier.resolveSibling(fichier.getFileName() + "." + numero);
+    }
+    
+    /**
+     * Segments scellés présents sur disque, du plus ancien au plus récent.
+     */
+    private List<Segment> segments() throws IOException {
+        List<Segment> resultat = new ArrayList<>();
+        Path dossier = fichier.toAbsolutePath().getParent();
+        if (!Files.isDirectory(dossier)) return resultat;
+        String prefixe = fichier.getFileName() + ".";
+        try (DirectoryStream<Path> contenu = Files.newDirectoryStream(dossier, prefixe + "*")) {
+            for (Path p : contenu) {
+                try {
+                    long numero = Long.parseLong(p.getFileName().toString().substring(prefixe.length()));
+                    resultat.add(new Segment(numero, p));
+                } catch (NumberFormatException ignored) {
+                    // Autre fichier portant le même préfixe
+                }
+            }
+        }
+        resultat.sort((a, b) -> Long.compare(a.numero, b.numero));
+        return resultat;
+    }
+
+    public synchronized void fermer() {
+        if (writer != null) {
+            try {
+                writer.flush();
+                // Lignes d'un groupe en attente : forcées avant la fermeture (le meneur ne le pourra plus)
+                if (durabilite != Durabilite.PERIODIQUE && durables < ecrites) forcer(ecrites);
+                writer.close();
+            } catch (IOException e) {
+                // Les mutations en attente d'un groupe ne sont pas durables : leurs threads lèveront l'erreur
+                if (durabilite != Durabilite.PERIODIQUE && durables < ecrites) echecs.add(new long[]{durables + 1, ecrites});
+                notifyAll();
+                try {
+                    writer.close();
+                } catch (IOException ignored) {}
+            }
+            writer = null;
+            canal = null;
+        }
+    }
+
+    // ============================================================
+    // RELECTURE - rejoue les mutations sur l'objet de gestion
+    // ============================================================
+
+    /**
+     * Rejoue toutes les mutations du journal sur l'objet de gestion.
+     * Doit être appelé AVANT de rattacher le journal à la gestion (sinon les mutations
+     * rejouées seraient journalisées une seconde fois).
+     *
+     * @return nombre de mutations appliquées
+     */
+    public int rejouer(Gestion_covoiturage gestion) {
+        int appliquees = 0;
+        indexRejeu = null;
+        try {
+            // Segments scellés non couverts par un point de contrôle, puis le journal courant
+            for (Segment segment : segments()) {
+                appliquees += rejouerFichier(gestion, segment.chemin);
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Erreur lecture segments journal: " + e.getMessage());
+        }
+        appliquees += rejouerFichier(gestion, fichier);
+
+        indexRejeu = null;
+        if (appliquees > 0) {
+            System.out.println("✓ " + appliquees + " mutations rejouées depuis le journal");
+        }
+        return appliquees;
+    }
+
+    private int rejouerFichier(Gestion_covoiturage gestion, Path chemin) {
+        if (!Files.exists(chemin)) return 0;
+
+        int appliquees = 0;
+        String nom = chemin.getFileName().toString();
+        try {
+            LecteurCSV lecteur = LecteurCSV.ouvrir(chemin);
+            while (lecteur.suivant()) {
+                // Dernière ligne sans retour à la ligne : écriture interrompue, mutation incomplète
+                if (!lecteur.estTermine()) {
+                    System.err.println("⚠ " + nom + " ligne " + lecteur.numeroLigne() + " incomplète, ignorée");
+                    break;
+                }
+                try {
+                    if (appliquer(gestion, lecteur)) appliquees++;
+                } catch (Exception e) {
+                    // Ligne incohérente : on l'ignore sans bloquer le démarrage
+                    System.err.println("⚠ " + nom + " ligne " + lecteur.numeroLigne() + " ignorée: " + e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("✗ Erreur lecture journal: " + e.getMessage());
+        }
+        return appliquees;
+    }
+
+    /**
+     * Applique l'enregistrement courant du lecteur (champ 0 = type, champs suivants = données).
+     */
+    private boolean appliquer(Gestion_covoiturage gestion, LecteurCSV l) {
+        String type = l.champ(0);
+
+        switch (type) {
+            case CONDUCTEUR: {
+                Conducteur c = CSVDatabase.lireConducteur(l, 1);
+                if (gestion.rechercher_user(c.getCin()) != null) return false;
+                gestion.ajouter_user(c);
+                indexRejeu = null;
+                return true;
+            }
+            case PASSAGER: {
+                Passager p = CSVDatabase.lirePassager(l, 1);
+                if (gestion.rechercher_user(p.getCin()) != null) return false;
+                gestion.ajouter_user(p);
+                indexRejeu = null;
+                return true;
+            }
+            case TRAJET: {
+                if (indexRejeu == null) indexRejeu = new CSVDatabase.IndexCIN(gestion);
+                Trajet t = CSVDatabase.lireTrajet(l, 1, indexRejeu);
+                if (gestion.rechercher_trajet(t.getId()) != null) return false;
+                gestion.ajouter_trajet(t);
+                return true;
+            }
+            default:
+                break;
+        }
+
+        Trajet t = gestion.rechercher_trajet(l.champLong(1));
+        if (t == null) return false;
+
+        switch (type) {
+            case SUPPRESSION_TRAJET:
+                return gestion.supprimer_trajet(t);
+            case DEMANDE:
+                return gestion.ajouter_demande_pour_trajet(t, l.champ(2));
+            case ANNULATION_DEMANDE:
+                return gestion.annuler_demande_pour_trajet(t, l.champ(2));
+            case ACCEPTATION:
+                return gestion.accepter_passager_pour_trajet(t, l.champ(2));
+            case FIN_TRAJET:
+                gestion.terminer_trajet(t);
+                return true;
+            case PRIX:
+                gestion.modifier_prix_trajet(t, l.champFloat(2));
+                return true;
+            default:
+                System.err.println("⚠ Type de mutation inconnu dans le journal: " + type);
+                return false;
+        }
+    }
+}
@@ -0,0 +1,376 @@
+package Services;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+
+/**
+ * LecteurCSV - Lecteur CSV en une seule passe, partagé par tous les chargements (tables et journal).
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Le fichier est projeté en mémoire (FileChannel.map) : pas de copie dans un tampon Java.
+ * 2. Un automate parcourt les octets une seule fois et mémorise, pour chaque champ de
+ *    l'enregistrement courant, sa position de début et de fin (tableaux réutilisés).
+ *    Aucune ligne, aucun tableau issu de split() ni aucune sous-chaîne n'est créé.
+ * 3. Les champs ne sont convertis en String qu'à la demande (champ(i)) ; les nombres sont
+ *    lus directement depuis les octets (champEntier, champLong, champFloat).
+ *
+ * Les guillemets suivent la RFC 4180 (tels que produits par CSVDatabase.escapeCSV) :
+ * un champ entre guillemets peut contenir le délimiteur ';', des retours à la ligne et
+ * des guillemets doublés ("").
+ *
+ * Les caractères spéciaux (; " \r \n) étant ASCII, l'automate travaille directement sur
+ * l'UTF-8 sans décoder les octets.
+ */
+public class LecteurCSV {
+
+    private static final byte DELIMITER = ';';
+    private static final byte GUILLEMET = '"';
+
+    // États de l'automate
+    private static final int DEBUT_CHAMP = 0;
+    private static final int NON_QUOTE = 1;
+    private static final int QUOTE = 2;
+    private static final int QUOTE_FERMANTE = 3;
+
+    // Puissances de 10 exactes en float (lecture rapide des prix)
+    private static final float[] PUISSANCES_10 = {1f, 1e1f, 1e2f, 1e3f, 1e4f, 1e5f, 1e6f, 1e7f, 1e8f, 1e9f, 1e10f};
+
+    private final ByteBuffer buffer;
+    private final int fin;
+    private int position;
+
+    // Description de l'enregistrement courant (tableaux réutilisés d'un enregistrement à l'autre)
+    private int nbChamps;
+    private int[] debuts = new int[16];
+    private int[] fins = new int[16];
+    private boolean[] guillemetsDoubles = new boolean[16];
+    private int debutEnregistrement;
+    private int finEnregistrement;
+    private boolean termine;
+    private int ligne = 1;
+    private int ligneEnregistrement;
+
+    // Tampon de décodage réutilisé pour la conversion octets -> String
+    private byte[] scratch = new byte[256];
+
+    /**
+     * Lit tout le contenu d'un tampon (projeté ou en mémoire).
+     */
+    public LecteurCSV(ByteBuffer buffer) {
+        this(buffer, 0, buffer.limit());
+    }
+
+    /**
+     * Lit la portion [debut, fin) d'un tampon. La portion doit commencer au début d'un enregistrement.
+     */
+    public LecteurCSV(ByteBuffer buffer, int debut, int fin) {
+        this.buffer = buffer;
+        this.fin = fin;
+        this.position = debut;
+        // Ignorer un éventuel BOM UTF-8 en tête de fichier
+        if (debut == 0 && fin >= 3
+                && (buffer.get(0) & 0xFF) == 0xEF && (buffer.get(1) & 0xFF) == 0xBB && (buffer.get(2) & 0xFF) == 0xBF) {
+            this.position = 3;
+        }
+    }
+
+    /**
+     * Projette un fichier en mémoire et renvoie un lecteur positionné sur le premier enregistrement.
+     *
+     * Remarque : sous Windows un fichier projeté reste verrouillé tant que la projection n'a pas été
+     * libérée par le ramasse-miettes, ce qui empêcherait son remplacement atomique lors de la
+     * sauvegarde suivante. Le fichier y est donc lu en mémoire en une seule fois.
+     */
+    public static LecteurCSV ouvrir(Path fichier) throws IOException {
+        return new LecteurCSV(projeter(fichier));
+    }
+
+    static ByteBuffer projeter(Path fichier) throws IOException {
+        if (System.getProperty("os.name", "").toLowerCase().startsWith("windows")) {
+            return ByteBuffer.wrap(Files.readAllBytes(fichier));
+        }
+        try (FileChannel channel = FileChannel.open(fichier, StandardOpenOption.READ)) {
+            long taille = channel.size();
+            if (taille > Integer.MAX_VALUE) {
+                throw new IOException("Fichier trop volumineux pour être projeté: " + fichier);
+            }
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, taille);
+        }
+    }
+
+    /**
+     * Découpe la portion [debut, fin) d'un tampon en blocs de tailles proches qui commencent tous
+     * au début d'un enregistrement, pour être lus en parallèle par plusieurs LecteurCSV.
+     *
+     * Un retour à la ligne peut se trouver à l'intérieur d'un champ entre guillemets : un simple
+     * parcours des octets (sans décodage ni allocation) suit donc l'état des guillemets pour ne
+     * couper qu'entre deux enregistrements.
+     *
+     * @return positions de coupure : le bloc i est [coupures[i], coupures[i + 1])
+     */
+    static int[] decouperEnBlocs(ByteBuffer buffer, int debut, int fin, int nbBlocs) {
+        int[] coupures = new int[nbBlocs + 1];
+        int taille = Math.max(1, (fin - debut) / nbBlocs);
+        coupures[0] = debut;
+        int n = 1;
+        int prochaineCible = debut + taille;
+        boolean entreGuillemets = false;
+        for (int k = debut; k < fin && n < nbBlocs; k++) {
+            byte b = buffer.get(k);
+            if (b == GUILLEMET) {
+                entreGuillemets = !entreGuillemets;
+            } else if (b == '\n' && !entreGuillemets && k + 1 >= prochaineCible) {
+                coupures[n++] = k + 1;
+                prochaineCible = k + 1 + taille;
+            }
+        }
+        // Blocs restants (fichier plus court que prévu) : vides
+        while (n <= nbBlocs) coupures[n++] = fin;
+        return coupures;
+    }
+
+    // ============================================================
+    // AUTOMATE - avance d'un enregistrement
+    // ============================================================
+
+    /**
+     * Avance jusqu'à l'enregistrement suivant (les lignes vides sont ignorées).
+     *
+     * @return false lorsque la fin du fichier est atteinte
+     */
+    public boolean suivant() {
+        while (position < fin) {
+            lireEnregistrement();
+            if (!estVide()) return true;
+        }
+        nbChamps = 0;
+        return false;
+    }
+
+    private void lireEnregistrement() {
+        nbChamps = 0;
+        debutEnregistrement = position;
+        ligneEnregistrement = ligne;
+        termine = false;
+
+        int etat = DEBUT_CHAMP;
+        int debutChamp = position;
+        int finChamp = position;
+        boolean doubles = false;
+
+        while (position < fin) {
+            byte b = buffer.get(position);
+            switch (etat) {
+                case DEBUT_CHAMP:
+                    if (b == GUILLEMET) {
+                        etat = QUOTE;
+                        debutChamp = position + 1;
+                        doubles = false;
+                        position++;
+                        continue;
+                    }
+                    etat = NON_QUOTE;
+                    debutChamp = position;
+                    doubles = false;
+                    // le même octet est traité par l'état NON_QUOTE
+                    continue;
+                case NON_QUOTE:
+                    if (b == DELIMITER) {
+                        ajouterChamp(debutChamp, position, false);
+                        etat = DEBUT_CHAMP;
+                    } else if (b == '\n' || b == '\r') {
+                        ajouterChamp(debutChamp, position, false);
+                        terminerLigne(b);
+                        return;
+                    }
+                    position++;
+                    continue;
+                case QUOTE:
+                    if (b == GUILLEMET) {
+                        finChamp = position;
+                        etat = QUOTE_FERMANTE;
+                    } else if (b == '\n') {
+                        ligne++;
+                    }
+                    position++;
+                    continue;
+                default: // QUOTE_FERMANTE
+                    if (b == GUILLEMET) {
+                        // guillemet doublé : fait partie de la valeur
+                        doubles = true;
+                        etat = QUOTE;
+                        position++;
+                    } else if (b == DELIMITER) {
+                        ajouterChamp(debutChamp, finChamp, doubles);
+                        etat = DEBUT_CHAMP;
+                        position++;
+                    } else if (b == '\n' || b == '\r') {
+                        ajouterChamp(debutChamp, finChamp, doubles);
+                        terminerLigne(b);
+                        return;
+                    } else {
+                        // Hors norme (texte après le guillemet fermant) : on garde le texte tel quel
+                        debutChamp = debutChamp - 1;
+                        etat = NON_QUOTE;
+                    }
+            }
+        }
+
+        // Fin du fichier sans retour à la ligne final
+        if (etat == QUOTE_FERMANTE) {
+            ajouterChamp(debutChamp, finChamp, doubles);
+        } else if (etat == QUOTE) {
+            ajouterChamp(debutChamp, position, doubles);
+        } else {
+            ajouterChamp(etat == DEBUT_CHAMP ? position : debutChamp, position, false);
+        }
+        finEnregistrement = position;
+    }
+
+    private void terminerLigne(byte b) {
+        finEnregistrement = position;
+        position++;
+        if (b == '\r' && position < fin && buffer.get(position) == '\n') position++;
+        ligne++;
+        termine = true;
+    }
+
+    private void ajouterChamp(int debut, int finChamp, boolean doubles) {
+        if (nbChamps == debuts.length) {
+            debuts = java.util.Arrays.copyOf(debuts, nbChamps * 2);
+            fins = java.util.Arrays.copyOf(fins, nbChamps * 2);
+            guillemetsDoubles = java.util.Arrays.copyOf(guillemetsDoubles, nbChamps * 2);
+        }
+        debuts[nbChamps] = debut;
+        fins[nbChamps] = finChamp;
+        guillemetsDoubles[nbChamps] = doubles;
+        nbChamps++;
+    }
+
+    private boolean estVide() {
+        if (nbChamps != 1) return false;
+        for (int i = debuts[0]; i < fins[0]; i++) {
+            if (buffer.get(i) > ' ') return false;
+        }
+        return true;
+    }
+
+    // ============================================================
+    // ACCÈS AUX CHAMPS DE L'ENREGISTREMENT COURANT
+    // ============================================================
+
+    public int nombreChamps() { return nbChamps; }
+
+    /** Numéro de ligne (à partir de 1) où commence l'enregistrement courant. */
+    public int numeroLigne() { return ligneEnregistrement; }
+
+    /** true si l'enregistrement courant se termine par un retour à la ligne (false : tronqué en fin de fichier). */
+    public boolean estTermine() { return termine; }
+
+    /** Position (octets) où commencera l'enregistrement suivant. */
+    public int position() { return position; }
+
+    /** Position (octets) du début de l'enregistrement courant. */
+    public int debutEnregistrement() { return debutEnregistrement; }
+
+    /** Position (octets) de la fin de l'enregistrement courant, retour à la ligne exclu. */
+    public int finEnregistrement() { return finEnregistrement; }
+
+    /**
+     * Valeur du champ i, sans guillemets, guillemets doublés remplacés et espaces de bord retirés.
+     */
+    public String champ(int i) {
+        int debut = debuts[i];
+        int finChamp = fins[i];
+        while (debut < finChamp && buffer.get(debut) == ' ') debut++;
+        while (finChamp > debut && buffer.get(finChamp - 1) == ' ') finChamp--;
+        int longueur = finChamp - debut;
+        if (longueur == 0) return "";
+
+        if (scratch.length < longueur) scratch = new byte[Math.max(longueur, scratch.length * 2)];
+        int n = 0;
+        for (int k = debut; k < finChamp; k++) {
+            byte b = buffer.get(k);
+            scratch[n++] = b;
+            // "" -> " (seulement pour les champs qui en contiennent)
+            if (b == GUILLEMET && guillemetsDoubles[i] && k + 1 < finChamp && buffer.get(k + 1) == GUILLEMET) k++;
+        }
+        return new String(scratch, 0, n, StandardCharsets.UTF_8);
+    }
+
+    /** true si le champ i est vide ou ne contient que des espaces. */
+    public boolean champVide(int i) {
+        for (int k = debuts[i]; k < fins[i]; k++) {
+            if (buffer.get(k) != ' ') return false;
+        }
+        return true;
+    }
+
+    /** Lit le champ i comme un entier, sans créer de String. */
+    public int champEntier(int i) {
+        long v = champLong(i);
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) {
+            throw new NumberFormatException("Entier hors limites: " + champ(i));
+        }
+        return (int) v;
+    }
+
+    /** Lit le champ i comme un entier long, sans créer de String. */
+    public long champLong(int i) {
+        int k = debuts[i];
+        int finChamp = fins[i];
+        while (k < finChamp && buffer.get(k) == ' ') k++;
+        while (finChamp > k && buffer.get(finChamp - 1) == ' ') finChamp--;
+        boolean negatif = false;
+        if (k < finChamp && (buffer.get(k) == '-' || buffer.get(k) == '+')) {
+            negatif = buffer.get(k) == '-';
+            k++;
+        }
+        if (k >= finChamp || finChamp - k > 18) throw new NumberFormatException("Nombre invalide: \"" + champ(i) + "\"");
+        long v = 0;
+        for (; k < finChamp; k++) {
+            int d = buffer.get(k) - '0';
+            if (d < 0 || d > 9) throw new NumberFormatException("Nombre invalide: \"" + champ(i) + "\"");
+            v = v * 10 + d;
+        }
+        return negatif ? -v : v;
+    }
+
+    /**
+     * Lit le champ i comme un float. Les décimaux simples (ex: "12.5") sont lus directement depuis
+     * les octets ; la division de deux floats exacts étant correctement arrondie, le résultat est
+     * identique à Float.parseFloat. Les autres formes (exposants, grande précision) passent par
+     * Float.parseFloat.
+     */
+    public float champFloat(int i) {
+        int k = debuts[i];
+        int finChamp = fins[i];
+        while (k < finChamp && buffer.get(k) == ' ') k++;
+        while (finChamp > k && buffer.get(finChamp - 1) == ' ') finChamp--;
+        boolean negatif = false;
+        if (k < finChamp && (buffer.get(k) == '-' || buffer.get(k) == '+')) {
+            negatif = buffer.get(k) == '-';
+            k++;
+        }
+        int mantisse = 0;
+        int decimales = -1;
+        int chiffres = 0;
+        for (; k < finChamp; k++) {
+            byte b = buffer.get(k);
+            if (b == '.' && decimales < 0) {
+                decimales = 0;
+                continue;
+            }
+            int d = b - '0';
+            if (d < 0 || d > 9 || ++chiffres > 7) return Float.parseFloat(champ(i));
+            mantisse = mantisse * 10 + d;
+            if (decimales >= 0) decimales++;
+        }
+        if (chiffres == 0 || decimales >= PUISSANCES_10.length) return Float.parseFloat(champ(i));
+        float v = decimales > 0 ? mantisse / PUISSANCES_10[decimales] : (float) mantisse;
+        return negatif ? -v : v;
+    }
+}
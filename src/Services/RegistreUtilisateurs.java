@@ -0,0 +1,62 @@
+package Services;
+
+import Models.Conducteur;
+import Models.Passager;
+import Models.User;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * RegistreUtilisateurs - Index en mémoire des utilisateurs de Gestion_covoiturage par CIN.
+ *
+ * COMMENTAIRE DE FONCTIONNEMENT :
+ * - La clé est le CIN normalisé (IndexPagineCIN.cle : sans espaces autour, sans tenir compte de
+ *   la casse), comme la comparaison equalsIgnoreCase de l'ancienne recherche linéaire.
+ * - Trois tables de hachage : tous les utilisateurs, les conducteurs, les passagers. Les
+ *   recherches typées (rechercher_conducteur / rechercher_passager) n'ont donc plus à filtrer
+ *   avec instanceof.
+ * - Si plusieurs utilisateurs ont le même CIN, le premier ajouté reste celui trouvé (même
+ *   résultat que le parcours de la liste dans l'ordre).
+ * - Tenu à jour par Gestion_covoiturage sur tous les chemins qui modifient sa liste users
+ *   (ajout, chargement à la demande, setUsers, rechargement à chaud).
+ */
+class RegistreUtilisateurs {
+
+    private final Map<String, User> utilisateurs = new HashMap<>();
+    private final Map<String, Conducteur> conducteurs = new HashMap<>();
+    private final Map<String, Passager> passagers = new HashMap<>();
+
+    void ajouter(User u) {
+        if (u == null || u.getCin() == null) return;
+        String cle = IndexPagineCIN.cle(u.getCin());
+        utilisateurs.putIfAbsent(cle, u);
+        if (u instanceof Conducteur) {
+            conducteurs.putIfAbsent(cle, (Conducteur) u);
+        } else if (u instanceof Passager) {
+            passagers.putIfAbsent(cle, (Passager) u);
+        }
+    }
+
+    /**
+     * Reconstruit l'index à partir d'une liste complète (remplacement ou suppressions).
+     */
+    void reconstruire(List<User> users) {
+        utilisateurs.clear();
+        conducteurs.clear();
+        passagers.clear();
+        for (User u : users) ajouter(u);
+    }
+
+    User utilisateur(String cin) {
+        return cin == null ? null : utilisateurs.get(IndexPagineCIN.cle(cin));
+    }
+
+    Conducteur conducteur(String cin) {
+        return cin == null ? null : conducteurs.get(IndexPagineCIN.cle(cin));
+    }
+
+    Passager passager(String cin) {
+        return cin == null ? null : passagers.get(IndexPagineCIN.cle(cin));
+    }
+}
@@ -0,0 +1,184 @@
+package Services;
+
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SauvegardeAsynchrone - Sauvegarde (backup + écriture des CSV + rotation) sur un thread dédié.
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. demander() est appelé depuis le thread de l'interface (EDT). Il ne fait que :
+ *    - prendre l'ensemble des tables modifiées,
+ *    - copier l'état de Gestion_covoiturage (copiePourSauvegarde, quelques millisecondes),
+ *    - sceller le journal (les mutations suivantes iront dans un nouveau segment).
+ * 2. Le thread "Sauvegarde-CSV" crée le backup (dédupliqué), réécrit les tables à partir de
+ *    la copie puis supprime les segments de journal couverts.
+ * 3. Les demandes qui arrivent pendant une écriture sont fusionnées : une seule sauvegarde en
+ *    attente au plus, avec l'union des tables modifiées et la copie la plus récente.
+ * 4. Le résultat (succès ou échec) est transmis à l'Ecouteur via l'Executor fourni
+ *    (SwingUtilities::invokeLater pour revenir sur l'EDT). En cas d'échec, les tables non
+ *    écrites sont de nouveau marquées comme modifiées.
+ */
+public class SauvegardeAsynchrone {
+
+    /**
+     * Reçoit le résultat des sauvegardes (appelé via l'Executor de notification).
+     */
+    public interface Ecouteur {
+        void sauvegardeTerminee(Set<Gestion_covoiturage.Table> tables);
+        void sauvegardeEchouee(Set<Gestion_covoiturage.Table> tables, String message);
+    }
+
+    /**
+     * Sauvegarde en attente d'écriture.
+     */
+    private static class Demande {
+        Gestion_covoiturage copie;
+        Set<Gestion_covoiturage.Table> tables;
+        // Identifiants des trajets modifiés (null : table entière), voir Stockage.enregistrer
+        Set<Long> trajetsModifies;
+        // CIN des utilisateurs modifiés (null : tables entières)
+        Set<String> usersModifies;
+        boolean avecBackup;
+        long segmentJournal;
+    }
+
+    private final Gestion_covoiturage gestion;
+    private final Executor notification;
+    private final Ecouteur ecouteur;
+    private final ExecutorService thread = Executors.newSingleThreadExecutor(r -> new Thread(r, "Sauvegarde-CSV"));
+    // Au plus une demande en attente (les suivantes y sont fusionnées)
+    private Demande enAttente;
+    // Tables dont la dernière écriture a échoué (utilisé uniquement par le thread de sauvegarde)
+    private final Set<Gestion_covoiturage.Table> aReprendre = EnumSet.noneOf(Gestion_covoiturage.Table.class);
+
+    public SauvegardeAsynchrone(Gestion_covoiturage gestion, Executor notification, Ecouteur ecouteur) {
+        this.gestion = gestion;
+        this.notification = notification;
+        this.ecouteur = ecouteur;
+    }
+
+    /**
+     * Demande une sauvegarde des tables modifiées. À appeler depuis le thread qui modifie les données.
+     *
+     * @param avecBackup créer d'abord un backup des tables qui vont être réécrites
+     * @return false s'il n'y avait rien à sauvegarder
+     */
+    public synchronized boolean demander(boolean avecBackup) {
+        if (thread.isShutdown()) return false;
+        Set<Gestion_covoiturage.Table> tables;
+        Set<Long> trajetsModifies;
+        Set<String> usersModifies;
+        synchronized (gestion) {
+            trajetsModifies = gestion.getTrajetsModifies();
+            usersModifies = gestion.getUsersModifies();
+            tables = gestion.prendreTablesModifiees();
+        }
+        if (tables.isEmpty()) return enAttente != null;
+
+        Gestion_covoiturage copie = gestion.copiePourSauvegarde();
+        long segment = (gestion.getJournal() != null) ? gestion.getJournal().sceller() : 0;
+
+        if (enAttente != null) {
+            // Une sauvegarde attend déjà : on la remplace par l'état le plus récent
+            enAttente.copie = copie;
+            enAttente.tables.addAll(tables);
+            if (enAttente.trajetsModifies != null) {
+                if (trajetsModifies == null) enAttente.trajetsModifies = null;
+                else enAttente.trajetsModifies.addAll(trajetsModifies);
+            }
+            if (enAttente.usersModifies != null) {
+                if (usersModifies == null) enAttente.usersModifies = null;
+                else enAttente.usersModifies.addAll(usersModifies);
+            }
+            enAttente.avecBackup |= avecBackup;
+            enAttente.segmentJournal = segment;
+            return true;
+        }
+
+        Demande demande = new Demande();
+        demande.copie = copie;
+        demande.tables = EnumSet.copyOf(tables);
+        demande.trajetsModifies = (trajetsModifies != null) ? new HashSet<>(trajetsModifies) : null;
+        demande.usersModifies = (usersModifies != null) ? new HashSet<>(usersModifies) : null;
+        demande.avecBackup = avecBackup;
+        demande.segmentJournal = segment;
+        enAttente = demande;
+        thread.execute(this::traiter);
+        return true;
+    }
+
+    /**
+     * Exécuté sur le thread de sauvegarde.
+     */
+    private void traiter() {
+        Demande demande;
+        synchronized (this) {
+            demande = enAttente;
+            enAttente = null;
+        }
+        if (demande == null) return;
+        // Une demande déjà en attente lors d'un échec ne contenait pas les tables en échec :
+        // elles sont réécrites ici (la copie contient l'état complet), sinon la suppression des
+        // segments de journal ferait perdre leurs mutations
+        if (!aReprendre.isEmpty()) {
+            demande.tables.addAll(aReprendre);
+            // Les trajets non écrits ne sont pas identifiés : table entière
+            if (aReprendre.contains(Gestion_covoiturage.Table.TRAJETS)) demande.trajetsModifies = null;
+            if (aReprendre.contains(Gestion_covoiturage.Table.CONDUCTEURS)
+                    || aReprendre.contains(Gestion_covoiturage.Table.PASSAGERS)) demande.usersModifies = null;
+            aReprendre.clear();
+        }
+
+        Set<Gestion_covoiturage.Table> sauvees = EnumSet.noneOf(Gestion_covoiturage.Table.class);
+        String erreur = null;
+        try {
+            System.out.println("\n📁 Sauvegarde en arrière-plan: " + demande.tables);
+            if (demande.avecBackup) CSVDatabase.createBackup();
+            sauvees = CSVDatabase.ecrirePointDeControle(demande.copie,
+                demande.tables, demande.trajetsModifies, demande.usersModifies);
+        } catch (RuntimeException e) {
+            erreur = e.toString();
+        }
+
+        Set<Gestion_covoiturage.Table> echouees = EnumSet.copyOf(demande.tables);
+        echouees.removeAll(sauvees);
+        if (echouees.isEmpty()) {
+            // Toutes les mutations scellées sont maintenant dans les CSV
+            if (gestion.getJournal() != null) gestion.getJournal().supprimerSegments(demande.segmentJournal);
+            System.out.println("✓ Sauvegarde en arrière-plan terminée\n");
+            Set<Gestion_covoiturage.Table> tables = demande.tables;
+            notification.execute(() -> ecouteur.sauvegardeTerminee(tables));
+        } else {
+            // Les segments scellés sont conservés (rejoués au prochain démarrage) et les tables
+            // non écrites seront reprises par la prochaine sauvegarde
+            aReprendre.addAll(echouees);
+            for (Gestion_covoiturage.Table table : echouees) gestion.marquerModifie(table);
+            String message = (erreur != null) ? erreur : "tables non écrites: " + echouees;
+            System.err.println("✗ Sauvegarde en arrière-plan échouée: " + message);
+            notification.execute(() -> ecouteur.sauvegardeEchouee(echouees, message));
+        }
+    }
+
+    /**
+     * Termine les sauvegardes en cours et en attente puis arrête le thread.
+     * Appelé à la fermeture de l'application (avant une éventuelle sauvegarde synchrone).
+     */
+    public void arreter() {
+        synchronized (this) {
+            thread.shutdown();
+        }
+        try {
+            if (!thread.awaitTermination(30, TimeUnit.SECONDS)) {
+                System.err.println("⚠ Sauvegarde en arrière-plan toujours en cours après 30 s");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
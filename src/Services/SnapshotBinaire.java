@@ -0,0 +1,373 @@
+package Services;
+
+import Models.*;
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Year;
+import java.util.*;
+
+/**
+ * SnapshotBinaire - Image binaire compacte des trois tables, écrite à côté des CSV.
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Les CSV restent la référence lisible ; le snapshot (data/snapshot.bin) n'est qu'un
+ *    accélérateur de démarrage, réécrit quand toutes les tables sont sauvegardées ensemble et
+ *    au point de contrôle de fermeture (saveAllData(gestion, true)) : une sauvegarde d'une
+ *    seule table le laisse périmé plutôt que de réécrire toutes les données.
+ * 2. Toutes les chaînes sont rangées une seule fois dans un dictionnaire (longueur + UTF-8) ;
+ *    les tables ne contiennent ensuite que des numéros d'entrée du dictionnaire.
+ * 3. Les tables sont stockées par colonnes de types primitifs (int, long, float) : prix,
+ *    durées et places sont relus sans analyse de texte.
+ * 4. Les références d'un trajet vers son conducteur et ses passagers sont des numéros de
+ *    ligne dans les tables conducteurs/passagers : aucune recherche par CIN au chargement.
+ *
+ * Au démarrage, CSVDatabase.loadAllData utilise le snapshot s'il est plus récent que les trois
+ * CSV (sinon, ou s'il est illisible, retour au chargement CSV), puis rejoue le journal.
+ *
+ * Format (entiers big-endian, comme DataOutputStream) :
+ *   MAGIC, VERSION,
+ *   dictionnaire : nombre, puis pour chaque chaîne longueur + octets UTF-8,
+ *   conducteurs  : nombre, puis une colonne par champ,
+ *   passagers    : nombre, puis une colonne par champ,
+ *   trajets      : nombre, puis une colonne par champ ; les listes de passagers sont une
+ *                  colonne de tailles suivie de toutes les références à la suite.
+ */
+public class SnapshotBinaire {
+
+    private static final int MAGIC = 0x43564231; // "CVB1"
+    private static final int VERSION = 1;
+    // Référence absente (chaîne null, conducteur inconnu)
+    private static final int AUCUN = -1;
+
+    /**
+     * Tables relues depuis un snapshot, dans l'ordre où elles ont été écrites.
+     */
+    public static class Contenu {
+        public final List<Conducteur> conducteurs = new ArrayList<>();
+        public final List<Passager> passagers = new ArrayList<>();
+        public final List<Trajet> trajets = new ArrayList<>();
+    }
+
+    // ============================================================
+    // ÉCRITURE
+    // ============================================================
+
+    /**
+     * Écrit le snapshot des utilisateurs et trajets dans le flux.
+     */
+    static void ecrire(OutputStream sortie, Vector<User> users, Vector<Trajet> trajets) throws IOException {
+        List<Conducteur> conducteurs = new ArrayList<>();
+        List<Passager> passagers = new ArrayList<>();
+        for (User u : users) {
+            if (u instanceof Conducteur) conducteurs.add((Conducteur) u);
+            else if (u instanceof Passager) passagers.add((Passager) u);
+        }
+
+        // Les tables sont d'abord écrites en mémoire pour construire le dictionnaire,
+        // qui doit précéder les tables dans le fichier
+        Dictionnaire dico = new Dictionnaire();
+        ByteArrayOutputStream tables = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(tables);
+        ecrireConducteurs(out, dico, conducteurs);
+        ecrirePassagers(out, dico, passagers);
+        ecrireTrajets(out, dico, trajets, conducteurs, passagers);
+        out.flush();
+
+        DataOutputStream fichier = new DataOutputStream(new BufferedOutputStream(sortie, 64 * 1024));
+        fichier.writeInt(MAGIC);
+        fichier.writeInt(VERSION);
+        fichier.writeInt(dico.chaines.size());
+        for (String s : dico.chaines) {
+            byte[] octets = s.getBytes(StandardCharsets.UTF_8);
+            fichier.writeInt(octets.length);
+            fichier.write(octets);
+        }
+        tables.writeTo(fichier);
+        fichier.flush();
+    }
+
+    private static void ecrireConducteurs(DataOutputStream out, Dictionnaire dico, List<Conducteur> cs) throws IOException {
+        out.writeInt(cs.size());
+        ecrireColonneUser(out, dico, cs);
+        for (Conducteur c : cs) out.writeInt(dico.id(c.getNomVoiture()));
+        for (Conducteur c : cs) out.writeInt(dico.id(c.getMarqueVoiture()));
+        for (Conducteur c : cs) out.writeInt(dico.id(c.getMatricule()));
+        for (Conducteur c : cs) out.writeInt(c.getPlacesDisponibles());
+    }
+
+    private static void ecrirePassagers(DataOutputStream out, Dictionnaire dico, List<Passager> ps) throws IOException {
+        out.writeInt(ps.size());
+        ecrireColonneUser(out, dico, ps);
+        for (Passager p : ps) out.writeBoolean(p.isChercheCovoit());
+    }
+
+    /**
+     * Colonnes communes à tous les utilisateurs : les sept colonnes de texte, puis l'année.
+     */
+    private static void ecrireColonneUser(DataOutputStream out, Dictionnaire dico, List<? extends User> us) throws IOException {
+        for (User u : us) out.writeInt(dico.id(u.getCin()));
+        for (User u : us) out.writeInt(dico.id(u.getNom()));
+        for (User u : us) out.writeInt(dico.id(u.getPrenom()));
+        for (User u : us) out.writeInt(dico.id(u.getTel()));
+        for (User u : us) out.writeInt(dico.id(u.getAdresse()));
+        for (User u : us) out.writeInt(dico.id(u.getMail()));
+        for (User u : us) out.writeInt(dico.id(u.getPasswordHash() != null ? u.getPasswordHash() : ""));
+        for (User u : us) out.writeInt(u.getAnneeUniversitaire().getValue());
+    }
+
+    private static void ecrireTrajets(DataOutputStream out, Dictionnaire dico, Vector<Trajet> ts,
+                                      List<Conducteur> conducteurs, List<Passager> passagers) throws IOException {
+        Numerotation numerosConducteurs = new Numerotation(conducteurs);
+        Numerotation numerosPassagers = new Numerotation(passagers);
+
+        out.writeInt(ts.size());
+        for (Trajet t : ts) out.writeInt(dico.id(t.getDepartTrajet()));
+        for (Trajet t : ts) out.writeInt(dico.id(t.getArriveeTrajet()));
+        for (Trajet t : ts) out.writeLong(t.getDureeTrajet().toMinutes());
+        for (Trajet t : ts) out.writeInt(dico.id(t.getStatusTrajet()));
+        for (Trajet t : ts) out.writeFloat(t.getPrix());
+        for (Trajet t : ts) out.writeInt(numerosConducteurs.numero(t.getConducteur()));
+        for (Trajet t : ts) out.writeInt(t.getMaxPlaces());
+        for (Trajet t : ts) out.writeLong(t.getId());
+        ecrireListes(out, ts, numerosPassagers, true);
+        ecrireListes(out, ts, numerosPassagers, false);
+    }
+
+    /**
+     * Colonne des tailles des listes de passagers (acceptés ou en attente), puis les références.
+     * Un passager absent de la table passagers est omis, comme au chargement CSV.
+     */
+    private static void ecrireListes(DataOutputStream out, Vector<Trajet> ts, Numerotation numerosPassagers,
+                                     boolean acceptes) throws IOException {
+        List<int[]> listes = new ArrayList<>(ts.size());
+        for (Trajet t : ts) {
+            Vector<Passager> liste = acceptes ? t.getPassagersAcceptes() : t.getPassagersDemandes();
+            int[] refs = new int[liste.size()];
+            int n = 0;
+            for (Passager p : liste) {
+                int numero = numerosPassagers.numero(p);
+                if (numero != AUCUN) refs[n++] = numero;
+            }
+            listes.add(Arrays.copyOf(refs, n));
+        }
+        for (int[] refs : listes) out.writeInt(refs.length);
+        for (int[] refs : listes) {
+            for (int ref : refs) out.writeInt(ref);
+        }
+    }
+
+    /**
+     * Numéro de ligne de chaque utilisateur dans sa table. Un objet absent de la table (copie
+     * portant le même CIN) est retrouvé par CIN, comme le ferait la relecture des CSV.
+     */
+    private static class Numerotation {
+        private final Map<User, Integer> parObjet = new IdentityHashMap<>();
+        private final Map<String, Integer> parCin = new HashMap<>();
+
+        Numerotation(List<? extends User> us) {
+            for (int i = 0; i < us.size(); i++) {
+                User u = us.get(i);
+                parObjet.put(u, i);
+                if (u.getCin() != null) parCin.putIfAbsent(u.getCin().trim(), i);
+            }
+        }
+
+        int numero(User u) {
+            if (u == null) return AUCUN;
+            Integer numero = parObjet.get(u);
+            if (numero == null && u.getCin() != null) numero = parCin.get(u.getCin().trim());
+            return numero != null ? numero : AUCUN;
+        }
+    }
+
+    /**
+     * Dictionnaire des chaînes : chaque chaîne distincte reçoit un numéro.
+     */
+    private static class Dictionnaire {
+        private final Map<String, Integer> numeros = new HashMap<>();
+        private final List<String> chaines = new ArrayList<>();
+
+        int id(String s) {
+            if (s == null) return AUCUN;
+            Integer numero = numeros.get(s);
+            if (numero == null) {
+                numero = chaines.size();
+                numeros.put(s, numero);
+                chaines.add(s);
+            }
+            return numero;
+        }
+    }
+
+    // ============================================================
+    // LECTURE
+    // ============================================================
+
+    /**
+     * Relit un snapshot complet.
+     *
+     * @throws IOException si le fichier n'est pas un snapshot valide ou est tronqué
+     */
+    static Contenu lire(ByteBuffer buffer) throws IOException {
+        try {
+            if (buffer.getInt() != MAGIC) throw new IOException("signature invalide");
+            int version = buffer.getInt();
+            if (version != VERSION) throw new IOException("version " + version + " non supportée");
+
+            String[] dico = lireDictionnaire(buffer);
+            Contenu contenu = new Contenu();
+            lireConducteurs(buffer, dico, contenu.conducteurs);
+            lirePassagers(buffer, dico, contenu.passagers);
+            lireTrajets(buffer, dico, contenu);
+            return contenu;
+        } catch (RuntimeException e) {
+            // Tronqué (BufferUnderflowException) ou incohérent (index hors limites)
+            throw new IOException("snapshot corrompu: " + e, e);
+        }
+    }
+
+    private static String[] lireDictionnaire(ByteBuffer buffer) {
+        String[] dico = new String[buffer.getInt()];
+        byte[] octets = new byte[256];
+        for (int i = 0; i < dico.length; i++) {
+            int longueur = buffer.getInt();
+            if (longueur > octets.length) octets = new byte[Math.max(longueur, octets.length * 2)];
+            buffer.get(octets, 0, longueur);
+            dico[i] = new String(octets, 0, longueur, StandardCharsets.UTF_8);
+        }
+        return dico;
+    }
+
+    private static void lireConducteurs(ByteBuffer buffer, String[] dico, List<Conducteur> resultat) {
+        int n = buffer.getInt();
+        String[][] communs = lireColonnesUser(buffer, dico, n);
+        int[] annees = lireInts(buffer, n);
+        String[] nomsVoiture = lireChainesPartagees(buffer, dico, n);
+        String[] marques = lireChainesPartagees(buffer, dico, n);
+        String[] matricules = lireChaines(buffer, dico, n);
+        int[] places = lireInts(buffer, n);
+
+        Map<Integer, Year> anneesCache = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            try {
+                resultat.add(new Conducteur(
+                    communs[0][i], communs[1][i], communs[2][i], communs[3][i],
+                    anneesCache.computeIfAbsent(annees[i], Year::of),
+                    communs[4][i], communs[5][i], communs[6][i], true,
+                    nomsVoiture[i], marques[i], matricules[i], places[i]));
+            } catch (IllegalArgumentException e) {
+                // Même règle que le chargement CSV : la ligne invalide est ignorée
+                System.err.println("⚠ Erreur snapshot conducteur: " + e.getMessage());
+                resultat.add(null);
+            }
+        }
+    }
+
+    private static void lirePassagers(ByteBuffer buffer, String[] dico, List<Passager> resultat) {
+        int n = buffer.getInt();
+        String[][] communs = lireColonnesUser(buffer, dico, n);
+        int[] annees = lireInts(buffer, n);
+        boolean[] cherche = new boolean[n];
+        for (int i = 0; i < n; i++) cherche[i] = buffer.get() != 0;
+
+        Map<Integer, Year> anneesCache = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            try {
+                resultat.add(new Passager(
+                    communs[0][i], communs[1][i], communs[2][i], communs[3][i],
+                    anneesCache.computeIfAbsent(annees[i], Year::of),
+                    communs[4][i], communs[5][i], communs[6][i], true,
+                    cherche[i], null));
+            } catch (IllegalArgumentException e) {
+                System.err.println("⚠ Erreur snapshot passager: " + e.getMessage());
+                resultat.add(null);
+            }
+        }
+    }
+
+    /**
+     * Lit les sept colonnes de texte communes : CIN, Nom, Prenom, Tel, Adresse, Mail, PasswordHash.
+     * La colonne des années, qui les suit, est lue par l'appelant.
+     */
+    private static String[][] lireColonnesUser(ByteBuffer buffer, String[] dico, int n) {
+        String[][] colonnes = new String[7][];
+        for (int c = 0; c < 7; c++) colonnes[c] = lireChaines(buffer, dico, n);
+        return colonnes;
+    }
+
+    private static void lireTrajets(ByteBuffer buffer, String[] dico, Contenu contenu) {
+        int n = buffer.getInt();
+        String[] departs = lireChainesPartagees(buffer, dico, n);
+        String[] arrivees = lireChainesPartagees(buffer, dico, n);
+        long[] durees = new long[n];
+        for (int i = 0; i < n; i++) durees[i] = buffer.getLong();
+        String[] status = lireChainesPartagees(buffer, dico, n);
+        float[] prix = new float[n];
+        for (int i = 0; i < n; i++) prix[i] = buffer.getFloat();
+        int[] conducteurs = lireInts(buffer, n);
+        int[] maxPlaces = lireInts(buffer, n);
+        long[] ids = new long[n];
+        for (int i = 0; i < n; i++) ids[i] = buffer.getLong();
+        int[] nbAcceptes = lireInts(buffer, n);
+        int[][] acceptes = new int[n][];
+        for (int i = 0; i < n; i++) acceptes[i] = lireInts(buffer, nbAcceptes[i]);
+        int[] nbDemandes = lireInts(buffer, n);
+        int[][] demandes = new int[n][];
+        for (int i = 0; i < n; i++) demandes[i] = lireInts(buffer, nbDemandes[i]);
+
+        for (int i = 0; i < n; i++) {
+            try {
+                Conducteur conducteur = conducteurs[i] == AUCUN ? null : contenu.conducteurs.get(conducteurs[i]);
+                Trajet t = new Trajet(departs[i], arrivees[i], Duration.ofMinutes(durees[i]),
+                    status[i], prix[i], conducteur, maxPlaces[i]);
+                for (int ref : acceptes[i]) {
+                    Passager p = contenu.passagers.get(ref);
+                    if (p != null) t.getPassagersAcceptes().add(p);
+                }
+                for (int ref : demandes[i]) {
+                    Passager p = contenu.passagers.get(ref);
+                    if (p != null) t.getPassagersDemandes().add(p);
+                }
+                if (ids[i] > 0) t.setId(ids[i]);
+                contenu.trajets.add(t);
+            } catch (IllegalArgumentException e) {
+                System.err.println("⚠ Erreur snapshot trajet: " + e.getMessage());
+            }
+        }
+    }
+
+    private static String[] lireChaines(ByteBuffer buffer, String[] dico, int n) {
+        String[] colonne = new String[n];
+        for (int i = 0; i < n; i++) {
+            int id = buffer.getInt();
+            colonne[i] = (id == AUCUN) ? null : dico[id];
+        }
+        return colonne;
+    }
+
+    /**
+     * Comme lireChaines, pour une colonne dont les valeurs passent par DictionnaireChaines.
+     * L'entrée du dictionnaire du snapshot est remplacée par l'instance partagée : chaque valeur
+     * distincte n'est donc cherchée qu'une fois dans DictionnaireChaines par colonne.
+     */
+    private static String[] lireChainesPartagees(ByteBuffer buffer, String[] dico, int n) {
+        String[] colonne = new String[n];
+        for (int i = 0; i < n; i++) {
+            int id = buffer.getInt();
+            if (id != AUCUN) {
+                dico[id] = DictionnaireChaines.partager(dico[id]);
+                colonne[i] = dico[id];
+            }
+        }
+        return colonne;
+    }
+
+    private static int[] lireInts(ByteBuffer buffer, int n) {
+        int[] colonne = new int[n];
+        buffer.asIntBuffer().get(colonne);
+        buffer.position(buffer.position() + 4 * n);
+        return colonne;
+    }
+}
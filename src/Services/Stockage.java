@@ -0,0 +1,58 @@
+package Services;
+
+import java.util.Set;
+
+/**
+ * Stockage - Moteur de persistance des points de contrôle (tables conducteurs, passagers, trajets).
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. CSVDatabase reste le point d'entrée de l'application (loadAllData, saveAllData,
+ *    SauvegardeAsynchrone) et délègue la lecture/écriture des tables au Stockage choisi.
+ * 2. Le journal des mutations (Journal) est indépendant du moteur : il est rejoué après
+ *    charger() et vidé une fois enregistrer() réussi.
+ * 3. Implémentations :
+ *    - StockageCSV : fichiers CSV + snapshot binaire + backups dédupliqués (par défaut)
+ *    - StockageSQL : base SQL embarquée via JDBC (H2, SQLite...), écriture ligne par ligne
+ * 4. Les recherches (par CIN, trajets d'un conducteur) passent par les index en mémoire de
+ *    Gestion_covoiturage, à jour des modifications non encore enregistrées : le stockage
+ *    n'est pas interrogé en dehors de charger().
+ */
+public interface Stockage {
+
+    /**
+     * Nom affiché dans les messages (ex: "CSV", "SQL jdbc:h2:./data/covoiturage").
+     */
+    String nom();
+
+    /**
+     * Charge le dernier point de contrôle dans l'objet de gestion (sans le journal).
+     */
+    void charger(Gestion_covoiturage gestion);
+
+    /**
+     * Enregistre les tables modifiées.
+     *
+     * @param etat            utilisateurs et trajets à enregistrer (état courant ou copie de
+     *                        Gestion_covoiturage.copiePourSauvegarde : rechercher_trajet y fonctionne)
+     * @param tables          tables à enregistrer
+     * @param trajetsModifies identifiants des trajets ajoutés, modifiés ou supprimés ; null si toute
+     *                        la table des trajets est à réécrire. Un moteur peut ignorer ce détail
+     *                        et réécrire les tables entières.
+     * @param usersModifies   CIN des utilisateurs ajoutés ou modifiés (conducteurs et passagers
+     *                        confondus) ; null si les tables d'utilisateurs sont à réécrire. Même remarque.
+     * @return tables effectivement enregistrées
+     */
+    Set<Gestion_covoiturage.Table> enregistrer(Gestion_covoiturage etat,
+                                               Set<Gestion_covoiturage.Table> tables, Set<Long> trajetsModifies,
+                                               Set<String> usersModifies);
+
+    /**
+     * Crée un backup de l'état actuellement enregistré.
+     */
+    void creerBackup();
+
+    /**
+     * Libère les ressources (connexion...). Appelé à la fermeture de l'application.
+     */
+    void fermer();
+}
@@ -0,0 +1,43 @@
+package Services;
+
+import java.util.Set;
+
+/**
+ * StockageCSV - Stockage par défaut : une table = un fichier CSV (dossier data/).
+ *
+ * COMMENTAIRE DE FONCTIONNEMENT :
+ * - charger() : snapshot binaire s'il est à jour, sinon lecture des CSV (voir CSVDatabase)
+ * - enregistrer() : réécriture atomique des tables modifiées entières puis du snapshot ;
+ *   le détail des trajets modifiés n'est utilisé qu'en mode trajets à emplacements fixes
+ *   (-Dcovoiturage.trajets=fixe, voir TableTrajetsFixe), où seuls ces trajets sont écrits
+ */
+public class StockageCSV implements Stockage {
+
+    @Override
+    public String nom() {
+        return "CSV";
+    }
+
+    @Override
+    public void charger(Gestion_covoiturage gestion) {
+        CSVDatabase.chargerTablesCSV(gestion);
+    }
+
+    @Override
+    public Set<Gestion_covoiturage.Table> enregistrer(Gestion_covoiturage etat,
+                                                      Set<Gestion_covoiturage.Table> tables, Set<Long> trajetsModifies,
+                                                      Set<String> usersModifies) {
+        // Un CSV d'utilisateurs se réécrit en entier : usersModifies n'est pas utilisé
+        return CSVDatabase.ecrireTablesCSV(etat, tables, trajetsModifies);
+    }
+
+    @Override
+    public void creerBackup() {
+        CSVDatabase.creerBackupCSV();
+    }
+
+    @Override
+    public void fermer() {
+        // Aucune ressource ouverte entre deux opérations
+    }
+}
@@ -0,0 +1,470 @@
+package Services;
+
+import Models.*;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.*;
+import java.time.Year;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.Vector;
+
+/**
+ * StockageSQL - Tables enregistrées dans une base SQL embarquée (fichier local) via JDBC.
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Trois tables : utilisateurs (clé type + CIN, index sur CIN), trajets (clé id, index sur
+ *    le CIN du conducteur) et trajet_passagers (passagers acceptés / en attente, index sur
+ *    le CIN du passager). Le SQL utilisé est commun à H2 et SQLite.
+ * 2. enregistrer() travaille dans une transaction : seuls les trajets modifiés (identifiants
+ *    suivis par Gestion_covoiturage) sont supprimés puis réinsérés, et seuls les utilisateurs
+ *    modifiés (CIN suivis de même) sont mis à jour ou insérés. Une table marquée modifiée dans
+ *    son ensemble est réécrite ; un CIN en double n'y est écrit qu'une fois (le premier, comme
+ *    RegistreUtilisateurs), la clé (type, CIN) refusant les doublons.
+ * 3. Au premier démarrage sur une base vide, les données sont importées depuis les CSV.
+ * 4. Le pilote JDBC n'est pas fourni avec l'application : ajouter le jar de H2 ou de SQLite au
+ *    classpath (il est trouvé automatiquement par DriverManager).
+ *
+ * Une seule connexion, partagée par le thread de l'interface et celui de la sauvegarde : toutes
+ * les opérations sont synchronisées.
+ */
+public class StockageSQL implements Stockage {
+
+    private static final Path DOSSIER_BACKUPS = Paths.get("data/backups/sql");
+    private static final int BACKUPS_CONSERVES = 5;
+
+    private static final String[] SCHEMA = {
+        "CREATE TABLE IF NOT EXISTS utilisateurs ("
+            + "type CHAR(1) NOT NULL, cin VARCHAR(32) NOT NULL, rang INTEGER NOT NULL,"
+            + " nom VARCHAR(255), prenom VARCHAR(255), tel VARCHAR(64), annee INTEGER,"
+            + " adresse VARCHAR(1024), mail VARCHAR(255), hash VARCHAR(255),"
+            + " voiture VARCHAR(255), marque VARCHAR(255), matricule VARCHAR(64), places INTEGER,"
+            + " cherche_covoit INTEGER, PRIMARY KEY (type, cin))",
+        "CREATE INDEX IF NOT EXISTS idx_utilisateurs_cin ON utilisateurs (cin)",
+        "CREATE TABLE IF NOT EXISTS trajets ("
+            + "id BIGINT PRIMARY KEY, depart VARCHAR(255), arrivee VARCHAR(255), duree_minutes BIGINT,"
+            + " statut VARCHAR(32), prix REAL, conducteur_cin VARCHAR(32), max_places INTEGER)",
+        "CREATE INDEX IF NOT EXISTS idx_trajets_conducteur ON trajets (conducteur_cin)",
+        "CREATE TABLE IF NOT EXISTS trajet_passagers ("
+            + "trajet_id BIGINT NOT NULL, accepte INTEGER NOT NULL, rang INTEGER NOT NULL,"
+            + " passager_cin VARCHAR(32) NOT NULL, PRIMARY KEY (trajet_id, accepte, rang))",
+        "CREATE INDEX IF NOT EXISTS idx_trajet_passagers_cin ON trajet_passagers (passager_cin)",
+    };
+
+    private static final String INSERER_UTILISATEUR = "INSERT INTO utilisateurs (type, cin, rang, nom, prenom, tel,"
+        + " annee, adresse, mail, hash, voiture, marque, matricule, places, cherche_covoit)"
+        + " VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERER_TRAJET = "INSERT INTO trajets (id, depart, arrivee, duree_minutes, statut,"
+        + " prix, conducteur_cin, max_places) VALUES (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String INSERER_PASSAGER = "INSERT INTO trajet_passagers (trajet_id, accepte, rang, passager_cin)"
+        + " VALUES (?, ?, ?, ?)";
+    private static final String MODIFIER_UTILISATEUR = "UPDATE utilisateurs SET nom = ?, prenom = ?, tel = ?,"
+        + " annee = ?, adresse = ?, mail = ?, hash = ?, voiture = ?, marque = ?, matricule = ?, places = ?,"
+        + " cherche_covoit = ? WHERE type = ? AND cin = ?";
+    private static final String COLONNES_UTILISATEUR = "type, cin, nom, prenom, tel, annee, adresse, mail, hash,"
+        + " voiture, marque, matricule, places, cherche_covoit";
+
+    private final String url;
+    private final Connection connexion;
+
+    /**
+     * Ouvre (et crée si besoin) la base.
+     *
+     * @param url URL JDBC, ex: "jdbc:h2:./data/covoiturage" ou "jdbc:sqlite:data/covoiturage.db"
+     * @throws SQLException si la base est inaccessible ou si aucun pilote ne correspond à l'URL
+     */
+    public StockageSQL(String url) throws SQLException {
+        this.url = url;
+        CSVDatabase.initializeDataFolder();
+        this.connexion = DriverManager.getConnection(url);
+        try (Statement st = connexion.createStatement()) {
+            for (String instruction : SCHEMA) st.execute(instruction);
+        } catch (SQLException e) {
+            connexion.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String nom() {
+        return "SQL " + url;
+    }
+
+    // ============================================================
+    // CHARGEMENT
+    // ============================================================
+
+    @Override
+    public synchronized void charger(Gestion_covoiturage gestion) {
+        try {
+            if (estVide()) {
+                importerCSV(gestion);
+                return;
+            }
+
+            // Conducteurs puis passagers, dans l'ordre d'enregistrement (comme les CSV)
+            try (Statement st = connexion.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT " + COLONNES_UTILISATEUR
+                     + " FROM utilisateurs ORDER BY type, rang")) {
+                while (rs.next()) {
+                    try {
+                        User u = lireUtilisateur(rs);
+                        if (u != null) gestion.ajouter_user(u);
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("⚠ Erreur utilisateur SQL " + rs.getString("cin") + ": " + e.getMessage());
+                    }
+                }
+            }
+
+            // Trajets par identifiant (ordre de création) fusionnés avec leurs passagers, triés de même
+            CSVDatabase.IndexCIN index = new CSVDatabase.IndexCIN(gestion.getUsers());
+            int nb = 0;
+            try (Statement st = connexion.createStatement();
+                 Statement stPassagers = connexion.createStatement();
+                 ResultSet rs = st.executeQuery("SELECT id, depart, arrivee, duree_minutes, statut, prix,"
+                     + " conducteur_cin, max_places FROM trajets ORDER BY id");
+                 ResultSet passagers = stPassagers.executeQuery("SELECT trajet_id, accepte, passager_cin"
+                     + " FROM trajet_passagers ORDER BY trajet_id, accepte DESC, rang")) {
+                boolean encorePassagers = passagers.next();
+                List<String> acceptes = new ArrayList<>();
+                List<String> demandes = new ArrayList<>();
+                while (rs.next()) {
+                    CSVDatabase.LigneTrajet ligne = new CSVDatabase.LigneTrajet();
+                    ligne.id = rs.getLong(1);
+                    ligne.depart = DictionnaireChaines.partager(rs.getString(2));
+                    ligne.arrivee = DictionnaireChaines.partager(rs.getString(3));
+                    ligne.dureeMinutes = rs.getLong(4);
+                    ligne.status = DictionnaireChaines.partager(rs.getString(5));
+                    ligne.prix = rs.getFloat(6);
+                    ligne.conducteurCIN = rs.getString(7);
+                    ligne.nouveauFormat = true;
+                    ligne.maxPlaces = rs.getInt(8);
+
+                    acceptes.clear();
+                    demandes.clear();
+                    while (encorePassagers && passagers.getLong(1) <= ligne.id) {
+                        if (passagers.getLong(1) == ligne.id) {
+                            (passagers.getInt(2) != 0 ? acceptes : demandes).add(passagers.getString(3));
+                        }
+                        encorePassagers = passagers.next();
+                    }
+                    ligne.acceptes = acceptes.toArray(new String[0]);
+                    ligne.demandes = demandes.toArray(new String[0]);
+
+                    try {
+                        gestion.ajouter_trajet(CSVDatabase.construireTrajet(ligne, index));
+                        nb++;
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("⚠ Erreur trajet SQL " + ligne.id + ": " + e.getMessage());
+                    }
+                }
+            }
+            System.out.println("✓ " + gestion.getUsers().size() + " utilisateurs et " + nb + " trajets chargés (SQL)");
+        } catch (SQLException e) {
+            System.err.println("✗ Erreur lecture base SQL: " + e.getMessage());
+        }
+    }
+
+    private boolean estVide() throws SQLException {
+        try (Statement st = connexion.createStatement();
+             ResultSet rs = st.executeQuery("SELECT (SELECT COUNT(*) FROM utilisateurs) + (SELECT COUNT(*) FROM trajets)")) {
+            return rs.next() && rs.getLong(1) == 0;
+        }
+    }
+
+    /**
+     * Base vide : lecture des CSV existants puis enregistrement complet dans la base.
+     */
+    private void importerCSV(Gestion_covoiturage gestion) {
+        CSVDatabase.chargerTablesCSV(gestion);
+        if (gestion.getUsers().isEmpty() && gestion.getTrajets().isEmpty()) return;
+        Set<Gestion_covoiturage.Table> toutes = EnumSet.allOf(Gestion_covoiturage.Table.class);
+        if (enregistrer(gestion, toutes, null, null).equals(toutes)) {
+            System.out.println("ℹ Base SQL initialisée à partir des fichiers CSV");
+        }
+    }
+
+    private static User lireUtilisateur(ResultSet rs) throws SQLException {
+        String type = rs.getString(1);
+        Year annee = Year.of(rs.getInt(6));
+        if ("C".equals(type)) {
+            return new Conducteur(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), annee,
+                rs.getString(7), rs.getString(8), rs.getString(9), true,
+                DictionnaireChaines.partager(rs.getString(10)), DictionnaireChaines.partager(rs.getString(11)),
+                rs.getString(12), rs.getInt(13));
+        }
+        if ("P".equals(type)) {
+            return new Passager(rs.getString(2), rs.getString(3), rs.getString(4), rs.getString(5), annee,
+                rs.getString(7), rs.getString(8), rs.getString(9), true,
+                rs.getInt(14) != 0, null);
+        }
+        return null;
+    }
+
+    // ============================================================
+    // ENREGISTREMENT
+    // ============================================================
+
+    @Override
+    public synchronized Set<Gestion_covoiturage.Table> enregistrer(Gestion_covoiturage etat,
+                                                                   Set<Gestion_covoiturage.Table> tables, Set<Long> trajetsModifies,
+                                                                   Set<String> usersModifies) {
+        long debut = System.nanoTime();
+        int lignes = 0;
+        boolean validee = false;
+        try {
+            connexion.setAutoCommit(false);
+            if (tables.contains(Gestion_covoiturage.Table.CONDUCTEURS)) lignes += enregistrerUtilisateurs(etat.getUsers(), "C", usersModifies);
+            if (tables.contains(Gestion_covoiturage.Table.PASSAGERS)) lignes += enregistrerUtilisateurs(etat.getUsers(), "P", usersModifies);
+            if (tables.contains(Gestion_covoiturage.Table.TRAJETS)) lignes += enregistrerTrajets(etat, trajetsModifies);
+            connexion.commit();
+            validee = true;
+            System.out.println("✓ Base SQL mise à jour: " + tables + ", " + lignes + " ligne(s) écrite(s) en "
+                + (System.nanoTime() - debut) / 1_000_000 + " ms");
+            return EnumSet.copyOf(tables);
+        } catch (SQLException e) {
+            System.err.println("✗ Erreur sauvegarde SQL: " + e.getMessage());
+            return EnumSet.noneOf(Gestion_covoiturage.Table.class);
+        } finally {
+            // Toute sortie sans commit (SQLException, mais aussi RuntimeException ou Error pendant
+            // le parcours des données) annule la transaction avant de repasser en auto-commit,
+            // sans quoi le retour à l'auto-commit validerait les écritures partielles
+            if (!validee) {
+                try {
+                    connexion.rollback();
+                } catch (SQLException ignored) {
+                    // La transaction est abandonnée à la fermeture de la connexion
+                }
+            }
+            try {
+                connexion.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                // Connexion inutilisable : la prochaine opération signalera l'erreur
+            }
+        }
+    }
+
+    /**
+     * Utilisateurs d'un type : réécriture de la table (cins null) ou mise à jour des seuls CIN
+     * donnés (UPDATE, sinon INSERT en fin de table ; un CIN absent de la mémoire est supprimé).
+     */
+    private int enregistrerUtilisateurs(Vector<User> users, String type, Set<String> cins) throws SQLException {
+        // Premier utilisateur de ce type pour chaque CIN (les doublons sont ignorés)
+        Map<String, User> parCle = new LinkedHashMap<>();
+        for (User u : users) {
+            if (u.getCin() != null && type.equals(typeDe(u))) parCle.putIfAbsent(IndexPagineCIN.cle(u.getCin()), u);
+        }
+
+        if (cins == null) {
+            try (PreparedStatement suppression = connexion.prepareStatement("DELETE FROM utilisateurs WHERE type = ?")) {
+                suppression.setString(1, type);
+                suppression.executeUpdate();
+            }
+            int rang = 0;
+            try (PreparedStatement insertion = connexion.prepareStatement(INSERER_UTILISATEUR)) {
+                for (User u : parCle.values()) {
+                    insertion.setString(1, type);
+                    insertion.setString(2, u.getCin());
+                    insertion.setInt(3, rang++);
+                    lierColonnes(insertion, 4, u);
+                    insertion.addBatch();
+                }
+                insertion.executeBatch();
+            }
+            return rang;
+        }
+
+        int lignes = 0;
+        Set<User> nouveaux = Collections.newSetFromMap(new IdentityHashMap<>());
+        try (PreparedStatement modification = connexion.prepareStatement(MODIFIER_UTILISATEUR);
+             PreparedStatement suppression = connexion.prepareStatement("DELETE FROM utilisateurs WHERE type = ? AND cin = ?")) {
+            for (String cin : cins) {
+                User u = parCle.get(IndexPagineCIN.cle(cin));
+                if (u == null) {
+                    suppression.setString(1, type);
+                    suppression.setString(2, cin);
+                    lignes += suppression.executeUpdate();
+                    continue;
+                }
+                lierColonnes(modification, 1, u);
+                modification.setString(13, type);
+                modification.setString(14, u.getCin());
+                if (modification.executeUpdate() > 0) lignes++;
+                else nouveaux.add(u);
+            }
+        }
+        if (nouveaux.isEmpty()) return lignes;
+
+        int rang;
+        try (PreparedStatement st = connexion.prepareStatement("SELECT COALESCE(MAX(rang), -1) FROM utilisateurs WHERE type = ?")) {
+            st.setString(1, type);
+            try (ResultSet rs = st.executeQuery()) {
+                rang = rs.next() ? rs.getInt(1) + 1 : 0;
+            }
+        }
+        try (PreparedStatement insertion = connexion.prepareStatement(INSERER_UTILISATEUR)) {
+            // Nouveaux utilisateurs après les existants, dans l'ordre de la liste
+            for (User u : parCle.values()) {
+                if (!nouveaux.contains(u)) continue;
+                insertion.setString(1, type);
+                insertion.setString(2, u.getCin());
+                insertion.setInt(3, rang++);
+                lierColonnes(insertion, 4, u);
+                insertion.addBatch();
+            }
+            insertion.executeBatch();
+        }
+        return lignes + nouveaux.size();
+    }
+
+    private static String typeDe(User u) {
+        return (u instanceof Conducteur) ? "C" : (u instanceof Passager) ? "P" : "";
+    }
+
+    /**
+     * Colonnes nom..cherche_covoit (12 paramètres à partir de premier).
+     */
+    private static void lierColonnes(PreparedStatement st, int premier, User u) throws SQLException {
+        boolean conducteur = u instanceof Conducteur;
+        Conducteur c = conducteur ? (Conducteur) u : null;
+        st.setString(premier, u.getNom());
+        st.setString(premier + 1, u.getPrenom());
+        st.setString(premier + 2, u.getTel());
+        st.setInt(premier + 3, u.getAnneeUniversitaire().getValue());
+        st.setString(premier + 4, u.getAdresse());
+        st.setString(premier + 5, u.getMail());
+        st.setString(premier + 6, u.getPasswordHash());
+        st.setString(premier + 7, conducteur ? c.getNomVoiture() : null);
+        st.setString(premier + 8, conducteur ? c.getMarqueVoiture() : null);
+        st.setString(premier + 9, conducteur ? c.getMatricule() : null);
+        st.setInt(premier + 10, conducteur ? c.getPlacesDisponibles() : 0);
+        st.setInt(premier + 11, (!conducteur && ((Passager) u).isChercheCovoit()) ? 1 : 0);
+    }
+
+    /**
+     * Trajets modifiés : suppression puis réinsertion (un trajet supprimé n'est pas réinséré).
+     *
+     * @param ids null pour réécrire toute la table
+     */
+    private int enregistrerTrajets(Gestion_covoiturage etat, Set<Long> ids) throws SQLException {
+        List<Trajet> aInserer = new ArrayList<>();
+        if (ids == null) {
+            try (Statement st = connexion.createStatement()) {
+                st.executeUpdate("DELETE FROM trajet_passagers");
+                st.executeUpdate("DELETE FROM trajets");
+            }
+            aInserer.addAll(etat.getTrajets());
+        } else {
+            if (ids.isEmpty()) return 0;
+            try (PreparedStatement passagers = connexion.prepareStatement("DELETE FROM trajet_passagers WHERE trajet_id = ?");
+                 PreparedStatement trajet = connexion.prepareStatement("DELETE FROM trajets WHERE id = ?")) {
+                for (long id : ids) {
+                    passagers.setLong(1, id);
+                    passagers.addBatch();
+                    trajet.setLong(1, id);
+                    trajet.addBatch();
+                }
+                passagers.executeBatch();
+                trajet.executeBatch();
+            }
+            for (long id : ids) {
+                Trajet t = etat.rechercher_trajet(id);
+                if (t != null) aInserer.add(t);
+            }
+        }
+
+        try (PreparedStatement trajet = connexion.prepareStatement(INSERER_TRAJET);
+             PreparedStatement passager = connexion.prepareStatement(INSERER_PASSAGER)) {
+            for (Trajet t : aInserer) {
+                trajet.setLong(1, t.getId());
+                trajet.setString(2, t.getDepartTrajet());
+                trajet.setString(3, t.getArriveeTrajet());
+                trajet.setLong(4, t.getDureeTrajet().toMinutes());
+                trajet.setString(5, t.getStatusTrajet());
+                trajet.setFloat(6, t.getPrix());
+                trajet.setString(7, (t.getConducteur() != null) ? t.getConducteur().getCin() : null);
+                trajet.setInt(8, t.getMaxPlaces());
+                trajet.addBatch();
+                ajouterPassagers(passager, t.getId(), 1, t.getPassagersAcceptes());
+                ajouterPassagers(passager, t.getId(), 0, t.getPassagersDemandes());
+            }
+            trajet.executeBatch();
+            passager.executeBatch();
+        }
+        return aInserer.size();
+    }
+
+    private static void ajouterPassagers(PreparedStatement insertion, long trajetId, int accepte,
+                                         List<Passager> passagers) throws SQLException {
+        for (int rang = 0; rang < passagers.size(); rang++) {
+            insertion.setLong(1, trajetId);
+            insertion.setInt(2, accepte);
+            insertion.setInt(3, rang);
+            insertion.setString(4, passagers.get(rang).getCin());
+            insertion.addBatch();
+        }
+    }
+
+    // ============================================================
+    // BACKUP ET FERMETURE
+    // ============================================================
+
+    /**
+     * Copie de la base avec la commande propre au moteur (H2 : SCRIPT compressé, SQLite :
+     * VACUUM INTO), dans data/backups/sql/. Les BACKUPS_CONSERVES plus récentes sont gardées.
+     */
+    @Override
+    public synchronized void creerBackup() {
+        String horodatage = java.time.LocalDateTime.now()
+            .format(java.time.format.DateTimeFormatter.ofPattern("yyyyMMdd_HHmmss_SSS"));
+        String instruction;
+        Path fichier;
+        if (url.startsWith("jdbc:h2:")) {
+            fichier = DOSSIER_BACKUPS.resolve(horodatage + ".sql.gz");
+            instruction = "SCRIPT TO '" + fichier + "' COMPRESSION GZIP";
+        } else if (url.startsWith("jdbc:sqlite:")) {
+            fichier = DOSSIER_BACKUPS.resolve(horodatage + ".db");
+            instruction = "VACUUM INTO '" + fichier + "'";
+        } else {
+            System.out.println("ℹ Backup non géré pour " + url + " (utiliser les outils de la base)");
+            return;
+        }
+
+        try {
+            Files.createDirectories(DOSSIER_BACKUPS);
+            try (Statement st = connexion.createStatement()) {
+                st.execute(instruction);
+            }
+            System.out.println("✓ Backup SQL créé: " + fichier);
+
+            List<Path> backups = new ArrayList<>();
+            try (DirectoryStream<Path> contenu = Files.newDirectoryStream(DOSSIER_BACKUPS)) {
+                for (Path p : contenu) backups.add(p);
+            }
+            backups.sort(null);
+            for (int i = 0; i < backups.size() - BACKUPS_CONSERVES; i++) {
+                Files.deleteIfExists(backups.get(i));
+            }
+        } catch (SQLException | IOException e) {
+            System.err.println("⚠️ Backup SQL échoué: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public synchronized void fermer() {
+        try {
+            connexion.close();
+        } catch (SQLException e) {
+            System.err.println("⚠ Fermeture de la base SQL: " + e.getMessage());
+        }
+    }
+}
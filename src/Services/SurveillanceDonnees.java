@@ -0,0 +1,233 @@
+package Services;
+
+import Models.User;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * SurveillanceDonnees - Rechargement à chaud des tables CSV modifiées hors de l'application
+ * (correction à la main de trajets.csv, ajout de passagers en masse...), sans redémarrage.
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. Un WatchService surveille le dossier de données sur le thread "Surveillance-Donnees" ;
+ *    seuls conducteurs.csv, passagers.csv et trajets.csv sont pris en compte (pas les
+ *    ".tmp", ".ready" ni les sommes de contrôle).
+ * 2. Les événements sont regroupés jusqu'à DELAI_STABILISATION_MS sans nouvel événement : un
+ *    éditeur ou un script qui écrit en plusieurs fois ne provoque qu'un seul rechargement.
+ * 3. Les écritures de l'application sont ignorées : après chacune, la taille et la date du
+ *    fichier sont mémorisées avec son empreinte (EntrepotBackups.empreinteAJour).
+ * 4. Une table modifiée par ailleurs est vérifiée (ControleIntegrite : les enregistrements en
+ *    défaut partent en quarantaine) puis relue sur ce thread, sans toucher aux objets partagés.
+ * 5. La fusion par clé (CIN, identifiant de trajet) s'exécute via l'Executor fourni
+ *    (SwingUtilities::invokeLater : sur l'EDT, comme les autres mutations) ; seuls les
+ *    enregistrements différents sont ajoutés, modifiés ou supprimés, en place
+ *    (voir Gestion_covoiturage.fusionnerUtilisateurs / fusionnerTrajets).
+ * 6. L'Ecouteur est ensuite prévenu, sur le même Executor (rafraîchissement des panneaux).
+ *
+ * Uniquement avec le stockage CSV : le stockage SQL n'a pas de fichiers à surveiller.
+ */
+public class SurveillanceDonnees {
+
+    /**
+     * Prévenu (via l'Executor) après la fusion des tables rechargées.
+     */
+    public interface Ecouteur {
+        void tablesRechargees(Set<Gestion_covoiturage.Table> tables);
+    }
+
+    private static final long DELAI_STABILISATION_MS = 300;
+
+    private final Gestion_covoiturage gestion;
+    private final Executor execution;
+    private final Ecouteur ecouteur;
+    private WatchService service;
+    private Thread thread;
+    // Taille et date de la dernière version de chaque table prise en compte (thread de surveillance)
+    private final Map<Gestion_covoiturage.Table, long[]> versionsVues = new EnumMap<>(Gestion_covoiturage.Table.class);
+
+    public SurveillanceDonnees(Gestion_covoiturage gestion, Executor execution, Ecouteur ecouteur) {
+        this.gestion = gestion;
+        this.execution = execution;
+        this.ecouteur = ecouteur;
+    }
+
+    /**
+     * Démarre la surveillance du dossier de données (à appeler une fois les données chargées).
+     *
+     * @return false si le stockage n'est pas CSV ou si le dossier ne peut pas être surveillé
+     */
+    public synchronized boolean demarrer() {
+        if (thread != null) return true;
+        if (!(CSVDatabase.getStockage() instanceof StockageCSV)) return false;
+        Path dossier = CSVDatabase.fichierTable(Gestion_covoiturage.Table.TRAJETS).toAbsolutePath().getParent();
+        try {
+            service = dossier.getFileSystem().newWatchService();
+            dossier.register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        } catch (IOException e) {
+            System.err.println("⚠ Surveillance de " + dossier + " impossible: " + e.getMessage());
+            return false;
+        }
+        // Les versions actuelles sont celles qui viennent d'être chargées
+        for (Gestion_covoiturage.Table table : Gestion_covoiturage.Table.values()) {
+            versionsVues.put(table, version(CSVDatabase.fichierTable(table)));
+        }
+        thread = new Thread(this::surveiller, "Surveillance-Donnees");
+        thread.setDaemon(true);
+        thread.start();
+        System.out.println("✓ Surveillance de " + dossier + " activée (rechargement à chaud)");
+        return true;
+    }
+
+    /**
+     * Arrête la surveillance (fermeture de l'application).
+     */
+    public synchronized void arreter() {
+        if (thread == null) return;
+        try {
+            service.close();
+        } catch (IOException e) {
+            // Ignorer : le thread s'arrête de toute façon
+        }
+        thread.interrupt();
+        thread = null;
+    }
+
+    /**
+     * Boucle du thread de surveillance.
+     */
+    private void surveiller() {
+        try {
+            while (true) {
+                WatchKey cle = service.take();
+                Set<Gestion_covoiturage.Table> tables = EnumSet.noneOf(Gestion_covoiturage.Table.class);
+                // Regrouper les événements jusqu'à ce que le dossier ne change plus
+                while (cle != null) {
+                    collecter(cle, tables);
+                    cle = service.poll(DELAI_STABILISATION_MS, TimeUnit.MILLISECONDS);
+                }
+                if (!tables.isEmpty()) recharger(tables);
+            }
+        } catch (InterruptedException | ClosedWatchServiceException e) {
+            // Arrêt demandé
+        }
+    }
+
+    private static void collecter(WatchKey cle, Set<Gestion_covoiturage.Table> tables) {
+        for (WatchEvent<?> evenement : cle.pollEvents()) {
+            if (evenement.kind() == StandardWatchEventKinds.OVERFLOW) {
+                // Événements perdus : toutes les tables sont comparées à leur dernière version
+                tables.addAll(EnumSet.allOf(Gestion_covoiturage.Table.class));
+                continue;
+            }
+            Path nom = (Path) evenement.context();
+            for (Gestion_covoiturage.Table table : Gestion_covoiturage.Table.values()) {
+                if (nom.equals(CSVDatabase.fichierTable(table).getFileName())) tables.add(table);
+            }
+        }
+        cle.reset();
+    }
+
+    /**
+     * Relit les tables réellement modifiées hors de l'application puis demande leur fusion.
+     */
+    private void recharger(Set<Gestion_covoiturage.Table> tables) {
+        Set<Gestion_covoiturage.Table> modifiees = EnumSet.noneOf(Gestion_covoiturage.Table.class);
+        for (Gestion_covoiturage.Table table : tables) {
+            Path fichier = CSVDatabase.fichierTable(table);
+            long[] version = version(fichier);
+            // Fichier absent (en cours de remplacement) ou déjà pris en compte
+            if (version == null || Arrays.equals(version, versionsVues.get(table))) continue;
+            versionsVues.put(table, version);
+            // Écrit par l'application (sauvegarde, export des trajets à emplacements fixes)
+            if (EntrepotBackups.empreinteAJour(fichier)) continue;
+            modifiees.add(table);
+        }
+        if (modifiees.isEmpty()) return;
+
+        long debut = System.nanoTime();
+        System.out.println("\n🔄 Tables modifiées hors de l'application: " + modifiees);
+        List<? extends User> conducteurs = null;
+        List<? extends User> passagers = null;
+        // CIN relus en mode à la demande (null : table entière relue)
+        List<String> conducteursConsultes = null;
+        List<String> passagersConsultes = null;
+        List<List<CSVDatabase.LigneTrajet>> trajets = null;
+        try {
+            for (Gestion_covoiturage.Table table : modifiees) {
+                ControleIntegrite.verifierTable(CSVDatabase.fichierTable(table));
+            }
+            boolean conducteursModifies = modifiees.contains(Gestion_covoiturage.Table.CONDUCTEURS);
+            boolean passagersModifies = modifiees.contains(Gestion_covoiturage.Table.PASSAGERS);
+            if (gestion.isChargementALaDemande()) {
+                // Index CIN reconstruit d'abord, puis seuls les utilisateurs en mémoire sont relus
+                if (conducteursModifies || passagersModifies) CSVDatabase.utilisateursModifiesHorsApplication();
+                if (conducteursModifies) {
+                    conducteursConsultes = gestion.cinsEnMemoire(Gestion_covoiturage.Table.CONDUCTEURS);
+                    conducteurs = CSVDatabase.relireUtilisateurs(Gestion_covoiturage.Table.CONDUCTEURS, conducteursConsultes);
+                }
+                if (passagersModifies) {
+                    passagersConsultes = gestion.cinsEnMemoire(Gestion_covoiturage.Table.PASSAGERS);
+                    passagers = CSVDatabase.relireUtilisateurs(Gestion_covoiturage.Table.PASSAGERS, passagersConsultes);
+                }
+            } else {
+                if (conducteursModifies) conducteurs = CSVDatabase.loadConducteurs();
+                if (passagersModifies) passagers = CSVDatabase.loadPassagers();
+            }
+            if (modifiees.contains(Gestion_covoiturage.Table.TRAJETS)) {
+                trajets = CSVDatabase.lireLignesTrajets(CSVDatabase.fichierTable(Gestion_covoiturage.Table.TRAJETS));
+            }
+        } catch (IOException | RuntimeException e) {
+            System.err.println("✗ Rechargement de " + modifiees + " impossible: " + e.getMessage());
+            return;
+        }
+
+        List<? extends User> conducteursLus = conducteurs;
+        List<? extends User> passagersLus = passagers;
+        List<String> conducteursRelus = conducteursConsultes;
+        List<String> passagersRelus = passagersConsultes;
+        List<List<CSVDatabase.LigneTrajet>> trajetsLus = trajets;
+        execution.execute(() -> {
+            // Utilisateurs d'abord : les trajets relus y font référence
+            if (conducteursLus != null) {
+                System.out.println("✓ Conducteurs rechargés: "
+                    + gestion.fusionnerUtilisateurs(Gestion_covoiturage.Table.CONDUCTEURS, conducteursLus, conducteursRelus));
+            }
+            if (passagersLus != null) {
+                System.out.println("✓ Passagers rechargés: "
+                    + gestion.fusionnerUtilisateurs(Gestion_covoiturage.Table.PASSAGERS, passagersLus, passagersRelus));
+            }
+            if (trajetsLus != null) {
+                Gestion_covoiturage.Fusion fusion = gestion.fusionnerTrajets(trajetsLus);
+                CSVDatabase.trajetsModifiesHorsApplication(gestion, fusion.trajets);
+                System.out.println("✓ Trajets rechargés: " + fusion);
+            }
+            System.out.println("✓ Rechargement à chaud terminé en " + (System.nanoTime() - debut) / 1_000_000 + " ms\n");
+            ecouteur.tablesRechargees(modifiees);
+        });
+    }
+
+    /**
+     * @return taille et date de modification du fichier, null s'il est absent
+     */
+    private static long[] version(Path fichier) {
+        try {
+            return new long[] {Files.size(fichier), Files.getLastModifiedTime(fichier).toMillis()};
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,676 @@
+package Services;
+
+import Models.*;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.zip.CRC32C;
+
+/**
+ * TableTrajetsFixe - Table des trajets à emplacements de taille fixe, mise à jour sur place
+ * (mode -Dcovoiturage.trajets=fixe, stockage CSV).
+ *
+ * EXPLICATION PAS À PAS :
+ * 1. data/trajets.fixe contient un en-tête puis un emplacement de TAILLE_EMPLACEMENT octets par
+ *    trajet, dans l'ordre d'ajout : identifiant, statut, prix, durée, places, et la position
+ *    de la partie variable.
+ * 2. La partie variable (villes, CIN du conducteur, listes de passagers) est écrite, encodée comme
+ *    une ligne CSV, dans une zone de débordement en ajout seul : data/trajets.debord.<génération>.
+ * 3. Sauvegarde d'un trajet modifié (prix, statut, demande...) : son emplacement est réécrit à sa
+ *    position ; la partie variable n'est ajoutée au débordement que si elle a changé. Le coût ne
+ *    dépend que du nombre de trajets modifiés, pas de la taille de la table.
+ * 4. Écriture sûre des emplacements (double écriture) : les nouvelles images de l'en-tête et des
+ *    emplacements sont d'abord écrites et forcées sur disque dans trajets.fixe.double, puis écrites
+ *    à leur place. Après un arrêt brutal, les images encore présentes sont réappliquées à
+ *    l'ouverture : un emplacement n'est jamais à moitié écrit.
+ * 5. Réécriture complète (nouvelle génération de débordement puis remplacement atomique de
+ *    trajets.fixe) : au premier démarrage, quand toute la table a changé, ou quand les trajets
+ *    supprimés et les anciennes parties variables occupent plus de la moitié des fichiers.
+ *
+ * trajets.csv n'est plus réécrit à chaque sauvegarde : il est régénéré pour les backups
+ * (voir exporterCSV). Sa taille et sa date sont notées dans l'en-tête ; s'il a changé depuis
+ * (restauration, modification à la main), il redevient la référence et la table est reconstruite.
+ */
+public class TableTrajetsFixe {
+
+    private static final int MAGIC = 0x54524A46; // "TRJF"
+    private static final int VERSION = 1;
+    private static final int TAILLE_ENTETE = 64;
+    private static final int TAILLE_EMPLACEMENT = 64;
+    // Réécriture complète au-delà de cette part de place perdue (si la table dépasse TAILLE_MIN_COMPACTAGE)
+    private static final double PART_PERDUE_MAX = 0.5;
+    private static final long TAILLE_MIN_COMPACTAGE = 1024 * 1024;
+
+    private static final String[] STATUTS = {Trajet.STATUS_PENDING, Trajet.STATUS_PENDING_APPROVAL,
+        Trajet.STATUS_IN_PROGRESS, Trajet.STATUS_FINISHED};
+
+    private final Path fichier;
+    private final Path doubleEcriture;
+    private final Path csv;
+
+    private FileChannel canal;
+    private FileChannel debord;
+    private long generation;
+    private long tailleDebord;
+    private long csvTaille;
+    private long csvDate;
+    // Emplacements dans l'ordre du fichier (un trajet supprimé garde son emplacement, id = 0)
+    private final List<Emplacement> emplacements = new ArrayList<>();
+    private final Map<Long, Integer> numeros = new HashMap<>();
+    private long tailleVivante;
+    private int emplacementsLibres;
+    // trajets.csv a le même contenu que la table (construite depuis lui, ou exportée depuis)
+    private boolean csvAJour;
+
+    public TableTrajetsFixe(Path fichier, Path csv) {
+        this.fichier = fichier;
+        this.doubleEcriture = fichier.resolveSibling(fichier.getFileName() + ".double");
+        this.csv = csv;
+    }
+
+    // ============================================================
+    // OUVERTURE
+    // ============================================================
+
+    /**
+     * Ouvre la table existante (après avoir terminé une mise à jour interrompue).
+     *
+     * @return false si la table est absente, illisible, ou si trajets.csv a changé depuis :
+     *         les trajets sont alors à charger depuis le CSV puis à passer à reecrire()
+     */
+    public synchronized boolean ouvrir() {
+        fermer();
+        try {
+            if (!Files.exists(fichier)) return false;
+            terminerDoubleEcriture();
+            canal = FileChannel.open(fichier, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            ByteBuffer entete = lire(canal, 0, TAILLE_ENTETE);
+            if (entete == null || !lireEntete(entete)) {
+                System.err.println("⚠ Table des trajets " + fichier + " illisible, reconstruction depuis le CSV");
+                fermer();
+                return false;
+            }
+            if (!csvInchange()) {
+                System.out.println("ℹ " + csv + " modifié depuis la dernière synchronisation, reconstruction de la table des trajets");
+                fermer();
+                return false;
+            }
+            debord = FileChannel.open(cheminDebord(generation), StandardOpenOption.READ, StandardOpenOption.WRITE);
+            // Ajout interrompu avant la mise à jour des emplacements : la fin est inutilisée
+            if (debord.size() > tailleDebord) debord.truncate(tailleDebord);
+
+            long nb = (canal.size() - TAILLE_ENTETE) / TAILLE_EMPLACEMENT;
+            ByteBuffer tout = lire(canal, TAILLE_ENTETE, (int) (nb * TAILLE_EMPLACEMENT));
+            for (int i = 0; i < nb; i++) {
+                Emplacement e = Emplacement.lire(tout);
+                if (e == null) {
+                    System.err.println("✗ Emplacement " + i + " de " + fichier + " corrompu, reconstruction depuis le CSV");
+                    fermer();
+                    return false;
+                }
+                ajouterEmplacement(e);
+            }
+            return true;
+        } catch (IOException e) {
+            System.err.println("⚠ Table des trajets " + fichier + " inutilisable (" + e.getMessage() + "), reconstruction depuis le CSV");
+            fermer();
+            return false;
+        }
+    }
+
+    private boolean lireEntete(ByteBuffer b) {
+        if (b.getInt() != MAGIC || b.getInt() != VERSION || b.getInt() != TAILLE_EMPLACEMENT) return false;
+        b.getInt(); // nombre d'emplacements (indicatif : déduit de la taille du fichier)
+        generation = b.getLong();
+        tailleDebord = b.getLong();
+        csvTaille = b.getLong();
+        csvDate = b.getLong();
+        csvAJour = b.getInt() != 0;
+        int crc = b.getInt();
+        return crc == crc(b, 0, b.position() - 4);
+    }
+
+    private ByteBuffer imageEntete() {
+        return imageEntete(emplacements.size());
+    }
+
+    private ByteBuffer imageEntete(int nbEmplacements) {
+        ByteBuffer b = ByteBuffer.allocate(TAILLE_ENTETE);
+        b.putInt(MAGIC).putInt(VERSION).putInt(TAILLE_EMPLACEMENT).putInt(nbEmplacements)
+            .putLong(generation).putLong(tailleDebord).putLong(csvTaille).putLong(csvDate).putInt(csvAJour ? 1 : 0);
+        b.putInt(crc(b, 0, b.position()));
+        b.position(TAILLE_ENTETE).flip();
+        return b;
+    }
+
+    private boolean csvInchange() throws IOException {
+        long[] attributs = attributsCSV();
+        return attributs[0] == csvTaille && attributs[1] == csvDate;
+    }
+
+    private long[] attributsCSV() throws IOException {
+        try {
+            BasicFileAttributes a = Files.readAttributes(csv, BasicFileAttributes.class);
+            return new long[] {a.size(), a.lastModifiedTime().toMillis()};
+        } catch (NoSuchFileException e) {
+            return new long[] {-1, -1};
+        }
+    }
+
+    public synchronized void fermer() {
+        emplacements.clear();
+        numeros.clear();
+        tailleVivante = 0;
+        emplacementsLibres = 0;
+        for (FileChannel c : new FileChannel[] {canal, debord}) {
+            if (c == null) continue;
+            try {
+                c.close();
+            } catch (IOException e) {
+                System.err.println("⚠ Fermeture de la table des trajets: " + e.getMessage());
+            }
+        }
+        canal = null;
+        debord = null;
+    }
+
+    // ============================================================
+    // LECTURE
+    // ============================================================
+
+    /**
+     * Trajets de la table, dans l'ordre des emplacements, prêts pour CSVDatabase.construireTrajet.
+     */
+    synchronized List<CSVDatabase.LigneTrajet> lire() throws IOException {
+        List<CSVDatabase.LigneTrajet> lignes = new ArrayList<>();
+        ByteBuffer variables = LecteurCSV.projeter(cheminDebord(generation));
+        for (Emplacement e : emplacements) {
+            if (e.id == 0) continue;
+            LecteurCSV l = partieVariable(variables, e);
+            if (l == null) {
+                lignes.add(CSVDatabase.LigneTrajet.enErreur("partie variable du trajet " + e.id + " corrompue"));
+                continue;
+            }
+            CSVDatabase.LigneTrajet ligne = new CSVDatabase.LigneTrajet();
+            ligne.id = e.id;
+            ligne.status = STATUTS[e.statut];
+            ligne.prix = e.prix;
+            ligne.dureeMinutes = e.duree;
+            ligne.maxPlaces = e.maxPlaces;
+            ligne.nouveauFormat = true;
+            ligne.depart = DictionnaireChaines.partager(l.champ(0));
+            ligne.arrivee = DictionnaireChaines.partager(l.champ(1));
+            ligne.conducteurCIN = l.champ(2);
+            String acceptes = l.champ(3);
+            String demandes = l.champ(4);
+            if (!acceptes.isEmpty()) ligne.acceptes = acceptes.split(",");
+            if (!demandes.isEmpty()) ligne.demandes = demandes.split(",");
+            ligne.passagerCIN = ligne.acceptes != null ? ligne.acceptes[0] : "";
+            lignes.add(ligne);
+        }
+        return lignes;
+    }
+
+    /**
+     * @return lecteur positionné sur la partie variable d'un emplacement, null si elle est corrompue
+     */
+    private static LecteurCSV partieVariable(ByteBuffer variables, Emplacement e) {
+        if (e.positionDebord + e.tailleDebord > variables.limit()
+                || crc(variables, (int) e.positionDebord, e.tailleDebord) != e.crcDebord) {
+            return null;
+        }
+        LecteurCSV l = new LecteurCSV(variables, (int) e.positionDebord, (int) e.positionDebord + e.tailleDebord);
+        return (l.suivant() && l.nombreChamps() >= 5) ? l : null;
+    }
+
+    /**
+     * @return true si trajets.csv a déjà le contenu de la table (export inutile)
+     */
+    synchronized boolean csvAJour() {
+        return csvAJour;
+    }
+
+    /**
+     * Régénère trajets.csv à partir de la table (backup, fermeture), dans le format de
+     * CSVDatabase.saveTrajets : les listes de passagers sont recopiées sans être découpées.
+     */
+    synchronized void exporterCSV(EcrivainCSV ecrivain) throws IOException {
+        ByteBuffer variables = LecteurCSV.projeter(cheminDebord(generation));
+        for (Emplacement e : emplacements) {
+            if (e.id == 0) continue;
+            LecteurCSV l = partieVariable(variables, e);
+            if (l == null) {
+                System.err.println("⚠ Export des trajets: partie variable du trajet " + e.id + " corrompue");
+                continue;
+            }
+            String acceptes = l.champ(3);
+            int virgule = acceptes.indexOf(',');
+            ecrivain.champ(l.champ(0));
+            ecrivain.champ(l.champ(1));
+            ecrivain.champ(e.duree);
+            ecrivain.champ(STATUTS[e.statut]);
+            ecrivain.champ(e.prix);
+            ecrivain.champ(l.champ(2));
+            // Premier passager accepté dans l'ancienne colonne PassagerCIN
+            ecrivain.champ(virgule < 0 ? acceptes : acceptes.substring(0, virgule));
+            ecrivain.champ(e.maxPlaces);
+            ecrivain.champ(acceptes);
+            ecrivain.champ(l.champ(4));
+            ecrivain.champ(e.id);
+            ecrivain.finLigne();
+        }
+    }
+
+    /**
+     * À appeler après exporterCSV une fois trajets.csv en place.
+     */
+    synchronized void noterCSV() throws IOException {
+        long[] attributs = attributsCSV();
+        csvTaille = attributs[0];
+        csvDate = attributs[1];
+        csvAJour = true;
+        ecrireImages(List.of(new Image(0, imageEntete())));
+    }
+
+    // ============================================================
+    // ÉCRITURE
+    // ============================================================
+
+    /**
+     * Construit la table à partir des trajets qui viennent d'être lus dans trajets.csv.
+     */
+    synchronized void construire(List<Trajet> trajets) throws IOException {
+        reecrire(trajets, true);
+    }
+
+    /**
+     * Réécrit toute la table (nouvelle génération de débordement).
+     */
+    public synchronized void reecrire(List<Trajet> trajets) throws IOException {
+        reecrire(trajets, false);
+    }
+
+    private void reecrire(List<Trajet> trajets, boolean depuisCSV) throws IOException {
+        long debut = System.nanoTime();
+        // Table jamais ouverte : la taille et la date de trajets.csv sont notées telles quelles
+        long[] attributs = (depuisCSV || canal == null) ? attributsCSV() : new long[] {csvTaille, csvDate};
+        long nouvelleGeneration = generation + 1;
+        Path nouveauDebord = cheminDebord(nouvelleGeneration);
+        Path tmp = fichier.resolveSibling(fichier.getFileName() + ".tmp");
+
+        List<Emplacement> nouveaux = new ArrayList<>(trajets.size());
+        long taille = 0;
+        try (FileChannel variables = FileChannel.open(nouveauDebord, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+             FileChannel sortie = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteArrayOutputStream bloc = new ByteArrayOutputStream(64 * 1024);
+            ByteBuffer images = ByteBuffer.allocate(64 * TAILLE_EMPLACEMENT);
+            long position = TAILLE_ENTETE;
+            for (Trajet t : trajets) {
+                byte[] partie = partieVariable(t);
+                Emplacement e = Emplacement.de(t, taille + bloc.size(), partie);
+                bloc.write(partie);
+                nouveaux.add(e);
+                if (bloc.size() >= 64 * 1024) {
+                    taille += ecrireTout(variables, ByteBuffer.wrap(bloc.toByteArray()), taille);
+                    bloc.reset();
+                }
+                e.ecrire(images);
+                if (!images.hasRemaining()) {
+                    images.flip();
+                    position += ecrireTout(sortie, images, position);
+                    images.clear();
+                }
+            }
+            taille += ecrireTout(variables, ByteBuffer.wrap(bloc.toByteArray()), taille);
+            images.flip();
+            ecrireTout(sortie, images, position);
+            variables.force(true);
+
+            // En-tête de la nouvelle table
+            fermer();
+            generation = nouvelleGeneration;
+            tailleDebord = taille;
+            csvTaille = attributs[0];
+            csvDate = attributs[1];
+            csvAJour = depuisCSV;
+            for (Emplacement e : nouveaux) ajouterEmplacement(e);
+            ecrireTout(sortie, imageEntete(), 0);
+            sortie.force(true);
+        } catch (IOException e) {
+            Files.deleteIfExists(tmp);
+            Files.deleteIfExists(nouveauDebord);
+            fermer();
+            throw e;
+        }
+        try {
+            Files.move(tmp, fichier, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(tmp, fichier, StandardCopyOption.REPLACE_EXISTING);
+        }
+        Files.deleteIfExists(doubleEcriture);
+        supprimerAnciensDebords();
+
+        canal = FileChannel.open(fichier, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        debord = FileChannel.open(nouveauDebord, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        System.out.println("✓ Table des trajets réécrite: " + trajets.size() + " emplacements ("
+            + (System.nanoTime() - debut) / 1_000_000 + " ms)");
+    }
+
+    /**
+     * Enregistre les trajets ajoutés, modifiés ou supprimés depuis la dernière sauvegarde.
+     *
+     * Les trajets sont retrouvés par identifiant (rechercher_trajet) ; une fois les images écrites,
+     * seuls les emplacements concernés sont mis à jour en mémoire (emplacements, numeros).
+     *
+     * @param etat utilisateurs et trajets (état courant ou copie pour la sauvegarde)
+     * @param ids  identifiants concernés ; null pour réécrire toute la table
+     */
+    public synchronized void enregistrer(Gestion_covoiturage etat, Set<Long> ids) throws IOException {
+        if (canal == null || ids == null || compactageNecessaire()) {
+            reecrire(etat.getTrajets());
+            return;
+        }
+        if (ids.isEmpty()) return;
+        long debut = System.nanoTime();
+
+        // Parties variables à ajouter au débordement, images et nouveaux contenus des emplacements modifiés
+        ByteArrayOutputStream ajouts = new ByteArrayOutputStream();
+        List<Image> images = new ArrayList<>();
+        List<Integer> numerosModifies = new ArrayList<>();
+        List<Emplacement> modifies = new ArrayList<>();
+        int nombre = emplacements.size();
+        for (long id : new TreeSet<>(ids)) {
+            Trajet t = etat.rechercher_trajet(id);
+            Integer numero = numeros.get(id);
+            Emplacement e;
+            if (t == null) {
+                if (numero == null) continue;
+                e = Emplacement.libre();
+            } else {
+                byte[] partie = partieVariable(t);
+                Emplacement ancien = (numero == null) ? null : emplacements.get(numero);
+                if (ancien != null && ancien.tailleDebord == partie.length && ancien.crcDebord == crc(partie)) {
+                    e = Emplacement.de(t, ancien.positionDebord, partie);
+                } else {
+                    e = Emplacement.de(t, tailleDebord + ajouts.size(), partie);
+                    ajouts.write(partie);
+                }
+                // Nouveau trajet : emplacement ajouté en fin de table (identifiants croissants)
+                if (numero == null) numero = nombre++;
+            }
+            numerosModifies.add(numero);
+            modifies.add(e);
+            ByteBuffer b = ByteBuffer.allocate(TAILLE_EMPLACEMENT);
+            e.ecrire(b);
+            b.flip();
+            images.add(new Image(TAILLE_ENTETE + (long) numero * TAILLE_EMPLACEMENT, b));
+        }
+        if (images.isEmpty()) return;
+
+        // 1. Parties variables (au-delà de la taille valide : invisibles tant que l'en-tête n'a pas changé)
+        if (ajouts.size() > 0) {
+            ecrireTout(debord, ByteBuffer.wrap(ajouts.toByteArray()), tailleDebord);
+            debord.force(true);
+        }
+        long ancienneTaille = tailleDebord;
+        tailleDebord += ajouts.size();
+        csvAJour = false;
+        images.add(new Image(0, imageEntete(nombre)));
+        // 2. Double écriture puis mise à jour sur place
+        try {
+            ecrireImages(images);
+        } catch (IOException e) {
+            tailleDebord = ancienneTaille;
+            throw e;
+        }
+
+        for (int k = 0; k < modifies.size(); k++) remplacerEmplacement(numerosModifies.get(k), modifies.get(k));
+        System.out.println("✓ Table des trajets: " + modifies.size() + " emplacement(s) mis à jour sur place, "
+            + ajouts.size() + " octet(s) ajoutés au débordement (" + (System.nanoTime() - debut) / 1000 + " µs)");
+    }
+
+    private boolean compactageNecessaire() {
+        long total = emplacements.size() * (long) TAILLE_EMPLACEMENT + tailleDebord;
+        long perdu = emplacementsLibres * (long) TAILLE_EMPLACEMENT + (tailleDebord - tailleVivante);
+        return total >= TAILLE_MIN_COMPACTAGE && perdu > total * PART_PERDUE_MAX;
+    }
+
+    /**
+     * Double écriture : images forcées dans trajets.fixe.double, puis écrites à leur place.
+     */
+    private void ecrireImages(List<Image> images) throws IOException {
+        int taille = 0;
+        for (Image i : images) taille += 8 + 4 + i.octets.remaining() + 4;
+        ByteBuffer journal = ByteBuffer.allocate(4 + taille);
+        journal.putInt(images.size());
+        for (Image i : images) {
+            int debut = journal.position();
+            journal.putLong(i.position).putInt(i.octets.remaining()).put(i.octets.duplicate());
+            journal.putInt(crc(journal, debut, journal.position() - debut));
+        }
+        journal.flip();
+        try (FileChannel d = FileChannel.open(doubleEcriture, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ecrireTout(d, journal, 0);
+            d.force(true);
+        }
+        for (Image i : images) ecrireTout(canal, i.octets.duplicate(), i.position);
+        canal.force(true);
+        Files.deleteIfExists(doubleEcriture);
+    }
+
+    /**
+     * Réapplique les images d'une double écriture interrompue (complète seulement : une double
+     * écriture incomplète signifie que la table n'a pas encore été touchée).
+     */
+    private void terminerDoubleEcriture() throws IOException {
+        if (!Files.exists(doubleEcriture)) return;
+        ByteBuffer journal = ByteBuffer.wrap(Files.readAllBytes(doubleEcriture));
+        List<Image> images = new ArrayList<>();
+        try {
+            int nb = journal.getInt();
+            for (int k = 0; k < nb; k++) {
+                int debut = journal.position();
+                long position = journal.getLong();
+                byte[] octets = new byte[journal.getInt()];
+                journal.get(octets);
+                if (journal.getInt() != crc(journal, debut, journal.position() - 4 - debut)) {
+                    images = null;
+                    break;
+                }
+                images.add(new Image(position, ByteBuffer.wrap(octets)));
+            }
+        } catch (RuntimeException e) {
+            images = null;
+        }
+        if (images != null) {
+            try (FileChannel c = FileChannel.open(fichier, StandardOpenOption.WRITE)) {
+                for (Image i : images) ecrireTout(c, i.octets, i.position);
+                c.force(true);
+            }
+            System.out.println("ℹ Mise à jour interrompue de la table des trajets terminée (" + images.size() + " image(s))");
+        }
+        Files.delete(doubleEcriture);
+    }
+
+    private void supprimerAnciensDebords() throws IOException {
+        String prefixe = fichier.getFileName().toString().replace(".fixe", "") + ".debord.";
+        Path dossier = fichier.toAbsolutePath().getParent();
+        try (DirectoryStream<Path> fichiers = Files.newDirectoryStream(dossier, prefixe + "*")) {
+            for (Path p : fichiers) {
+                if (!p.getFileName().toString().equals(prefixe + generation)) Files.deleteIfExists(p);
+            }
+        }
+    }
+
+    private Path cheminDebord(long gen) {
+        return fichier.resolveSibling(fichier.getFileName().toString().replace(".fixe", "") + ".debord." + gen);
+    }
+
+    /**
+     * Remplace l'emplacement "numero" (ou l'ajoute s'il est juste après le dernier) en tenant à
+     * jour numeros, tailleVivante et emplacementsLibres.
+     */
+    private void remplacerEmplacement(int numero, Emplacement e) {
+        if (numero == emplacements.size()) {
+            ajouterEmplacement(e);
+            return;
+        }
+        Emplacement ancien = emplacements.get(numero);
+        if (ancien.id != 0) {
+            numeros.remove(ancien.id);
+            tailleVivante -= ancien.tailleDebord;
+        } else {
+            emplacementsLibres--;
+        }
+        if (e.id != 0) {
+            numeros.put(e.id, numero);
+            tailleVivante += e.tailleDebord;
+        } else {
+            emplacementsLibres++;
+        }
+        emplacements.set(numero, e);
+    }
+
+    private void ajouterEmplacement(Emplacement e) {
+        if (e.id != 0) {
+            numeros.put(e.id, emplacements.size());
+            tailleVivante += e.tailleDebord;
+        } else {
+            emplacementsLibres++;
+        }
+        emplacements.add(e);
+    }
+
+    /**
+     * Partie variable d'un trajet : Depart;Arrivee;ConducteurCIN;AcceptedCINs;PendingCINs (encodage CSV).
+     */
+    private static byte[] partieVariable(Trajet t) throws IOException {
+        ByteArrayOutputStream memoire = new ByteArrayOutputStream(128);
+        EcrivainCSV e = new EcrivainCSV(memoire);
+        e.champ(t.getDepartTrajet());
+        e.champ(t.getArriveeTrajet());
+        e.champ(t.getConducteur() != null ? t.getConducteur().getCin() : null);
+        e.champCINs(t.getPassagersAcceptes());
+        e.champCINs(t.getPassagersDemandes());
+        e.vider();
+        return memoire.toByteArray();
+    }
+
+    // ============================================================
+    // OUTILS
+    // ============================================================
+
+    private static int crc(byte[] octets) {
+        CRC32C crc = new CRC32C();
+        crc.update(octets);
+        return (int) crc.getValue();
+    }
+
+    private static int crc(ByteBuffer b, int debut, int taille) {
+        CRC32C crc = new CRC32C();
+        crc.update(b.duplicate().limit(debut + taille).position(debut));
+        return (int) crc.getValue();
+    }
+
+    private static ByteBuffer lire(FileChannel c, long position, int taille) throws IOException {
+        ByteBuffer b = ByteBuffer.allocate(taille);
+        while (b.hasRemaining()) {
+            if (c.read(b, position + b.position()) < 0) return null;
+        }
+        b.flip();
+        return b;
+    }
+
+    private static int ecrireTout(FileChannel c, ByteBuffer b, long position) throws IOException {
+        int total = 0;
+        while (b.hasRemaining()) total += c.write(b, position + total);
+        return total;
+    }
+
+    /**
+     * Contenu à écrire à une position de trajets.fixe (en-tête ou emplacement).
+     */
+    private static class Image {
+        final long position;
+        final ByteBuffer octets;
+
+        Image(long position, ByteBuffer octets) {
+            this.position = position;
+            this.octets = octets;
+        }
+    }
+
+    /**
+     * Emplacement d'un trajet : id (0 si supprimé), statut, prix, durée, places, partie variable, CRC.
+     */
+    private static class Emplacement {
+        long id;
+        byte statut;
+        float prix;
+        long duree;
+        int maxPlaces;
+        long positionDebord;
+        int tailleDebord;
+        int crcDebord;
+
+        static Emplacement libre() {
+            return new Emplacement();
+        }
+
+        static Emplacement de(Trajet t, long positionDebord, byte[] partie) {
+            Emplacement e = new Emplacement();
+            e.id = t.getId();
+            for (byte s = 0; s < STATUTS.length; s++) {
+                if (STATUTS[s].equals(t.getStatusTrajet())) e.statut = s;
+            }
+            e.prix = t.getPrix();
+            e.duree = t.getDureeTrajet().toMinutes();
+            e.maxPlaces = t.getMaxPlaces();
+            e.positionDebord = positionDebord;
+            e.tailleDebord = partie.length;
+            e.crcDebord = crc(partie);
+            return e;
+        }
+
+        void ecrire(ByteBuffer b) {
+            int debut = b.position();
+            b.putLong(id).put(statut).put(new byte[3]).putFloat(prix).putLong(duree).putInt(maxPlaces)
+                .putLong(positionDebord).putInt(tailleDebord).putInt(crcDebord);
+            b.putInt(crc(b, debut, b.position() - debut));
+            b.position(debut + TAILLE_EMPLACEMENT);
+        }
+
+        /**
+         * @return null si le CRC de l'emplacement est faux
+         */
+        static Emplacement lire(ByteBuffer b) {
+            int debut = b.position();
+            Emplacement e = new Emplacement();
+            e.id = b.getLong();
+            e.statut = b.get();
+            b.position(b.position() + 3);
+            e.prix = b.getFloat();
+            e.duree = b.getLong();
+            e.maxPlaces = b.getInt();
+            e.positionDebord = b.getLong();
+            e.tailleDebord = b.getInt();
+            e.crcDebord = b.getInt();
+            int attendu = crc(b, debut, b.position() - debut);
+            boolean valide = b.getInt() == attendu && e.statut >= 0 && e.statut < STATUTS.length;
+            b.position(debut + TAILLE_EMPLACEMENT);
+            return valide ? e : null;
+        }
+    }
+}